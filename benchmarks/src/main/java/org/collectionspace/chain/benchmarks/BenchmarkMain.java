@@ -0,0 +1,31 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks as JMH's own main would, taking the same options, except that unless told
+ * otherwise the results are also written as JSON to jmh-result.json, so that runs can be compared.
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmd=new CommandLineOptions(args);
+		if(cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		ChainedOptionsBuilder options=new OptionsBuilder().parent(cmd);
+		if(!cmd.getResultFormat().hasValue())
+			options=options.resultFormat(ResultFormatType.JSON).result(cmd.getResult().orElse("jmh-result.json"));
+		new Runner(options.build()).run();
+	}
+}
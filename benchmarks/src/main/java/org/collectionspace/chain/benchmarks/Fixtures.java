@@ -0,0 +1,98 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.collectionspace.chain.csp.inner.CoreConfig;
+import org.collectionspace.chain.csp.persistence.services.ServicesStorageGenerator;
+import org.collectionspace.chain.csp.schema.Record;
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.csp.api.container.CSPManager;
+import org.collectionspace.csp.api.core.CSPDependencyException;
+import org.collectionspace.csp.container.impl.CSPManagerImpl;
+import org.collectionspace.csp.helper.core.ConfigFinder;
+import org.collectionspace.csp.helper.test.TestConfigFinder;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.io.SAXReader;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * What the benchmarks work on: the default tenant's config, as the app would load it, and the sample
+ * records the services tests use, as the services would send them.
+ *
+ */
+public class Fixtures {
+	/* Where the sample records are on the classpath */
+	private static final String SAMPLES="org/collectionspace/chain/csp/persistence/services/";
+
+	private static Spec spec;
+
+	/* Loaded once per JVM: it takes seconds, and nothing changes it */
+	public static synchronized Spec getSpec() throws CSPDependencyException {
+		if(spec==null) {
+			CSPManager cspm=new CSPManagerImpl();
+			cspm.register(new CoreConfig());
+			cspm.register(new Spec());
+			cspm.register(new ServicesStorageGenerator());
+			cspm.go();
+			cspm.configure(TestConfigFinder.getConfigStream(),new ConfigFinder(null),false);
+			spec=(Spec)cspm.getConfigRoot().getRoot(Spec.SPEC_ROOT);
+		}
+		return spec;
+	}
+
+	public static Record getRecord(String id) throws CSPDependencyException {
+		Record out=getSpec().getRecord(id);
+		if(out==null)
+			throw new IllegalArgumentException("No record "+id+" in the default tenant");
+		return out;
+	}
+
+	private static InputStream getSample(String name) {
+		InputStream in=Thread.currentThread().getContextClassLoader().getResourceAsStream(SAMPLES+name);
+		if(in==null)
+			throw new IllegalArgumentException("No sample "+name);
+		return in;
+	}
+
+	public static Document getDocument(String name) throws DocumentException {
+		return new SAXReader().read(getSample(name));
+	}
+
+	public static JSONObject getJSON(String name) throws IOException, JSONException {
+		InputStream in=getSample(name);
+		try {
+			return new JSONObject(IOUtils.toString(in,"UTF-8"));
+		} finally {
+			in.close();
+		}
+	}
+
+	/* The sample record, as XML and as JSON, for each record type benchmarked */
+	public static String getSampleXML(String record) {
+		return getSampleNames(record)[0];
+	}
+
+	public static String getSampleJSON(String record) {
+		return getSampleNames(record)[1];
+	}
+
+	private static String[] getSampleNames(String record) {
+		if("collection-object".equals(record))
+			return new String[]{"objectsXMLJSON.xml","objectsJSON.json"};
+		if("acquisition".equals(record))
+			return new String[]{"acquisitionXMLJSON.xml","acquisitionJSON.json"};
+		if("media".equals(record))
+			return new String[]{"media.xml","mediaJSON.json"};
+		return new String[]{record+".xml",record+".json"};
+	}
+}
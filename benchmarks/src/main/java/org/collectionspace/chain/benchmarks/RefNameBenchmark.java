@@ -0,0 +1,71 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.chain.csp.persistence.services.RefName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing refNames: the same few over and over, as in a record read or an autocomplete, and ones never
+ * seen before, which miss the interned results and so time the parser itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations=3,time=1)
+@Measurement(iterations=5,time=1)
+public class RefNameBenchmark {
+	private static final String[] KNOWN={
+		"urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(JohnDoe1234)'John Doe'",
+		"urn:cspace:core.collectionspace.org:vocabularies:name(languages):item:name(eng)'English'",
+		"urn:cspace:core.collectionspace.org:orgauthorities:name(organization):item:name(Museum5678)'The Museum'",
+		"urn:cspace:core.collectionspace.org:placeauthorities:name(place):item:name(london)'London (England)'",
+		"urn:cspace:core.collectionspace.org:locationauthorities:name(location):item:name(shelf12)'Shelf 12'",
+	};
+	private static final int UNSEEN=1<<16;
+
+	private String[] unseen;
+	private int next;
+
+	@Setup
+	public void setup() {
+		// More than are kept, so that they keep being parsed afresh
+		unseen=new String[UNSEEN];
+		for(int i=0;i<UNSEEN;i++)
+			unseen[i]="urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(p"+i+")'Person "+i+"'";
+	}
+
+	@Benchmark
+	public RefName.AuthorityItem itemKnown() {
+		next=(next+1)%KNOWN.length;
+		return RefName.AuthorityItem.parse(KNOWN[next]);
+	}
+
+	@Benchmark
+	public RefName.Authority authorityKnown() {
+		next=(next+1)%KNOWN.length;
+		return RefName.Authority.parse(KNOWN[next]);
+	}
+
+	@Benchmark
+	public RefName.AuthorityItem itemUnseen() {
+		next=(next+1)&(UNSEEN-1);
+		return RefName.AuthorityItem.parse(unseen[next]);
+	}
+}
@@ -0,0 +1,69 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.chain.csp.persistence.services.GenericStorage;
+import org.collectionspace.csp.helper.core.RequestCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The per-request cache, with keys like the ones storage uses for gleaned values: each lookup builds the
+ * key from the class and the name parts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations=3,time=1)
+@Measurement(iterations=5,time=1)
+public class RequestCacheBenchmark {
+	private static final int KEYS=64;
+
+	private RequestCache cache;
+	private String[][] names;
+	private int next;
+
+	@Setup
+	public void setup() {
+		cache=new RequestCache();
+		names=new String[KEYS][];
+		for(int i=0;i<KEYS;i++) {
+			names[i]=new String[]{"glean","collectionobjects/1b2b3b4b-5b6b-7b8b-9b0b-"+(100000000000L+i),"summary"};
+			cache.setCached(GenericStorage.class,names[i],"value "+i);
+		}
+	}
+
+	@Benchmark
+	public Object getHit() {
+		next=(next+1)%KEYS;
+		return cache.getCached(GenericStorage.class,names[next]);
+	}
+
+	@Benchmark
+	public Object getMiss() {
+		next=(next+1)%KEYS;
+		return cache.getCached(RequestCacheBenchmark.class,names[next]);
+	}
+
+	@Benchmark
+	public Object set() {
+		next=(next+1)%KEYS;
+		cache.setCached(GenericStorage.class,names[next],names);
+		return cache;
+	}
+}
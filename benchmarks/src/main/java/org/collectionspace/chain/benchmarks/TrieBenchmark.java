@@ -0,0 +1,103 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.chain.csp.schema.Instance;
+import org.collectionspace.chain.csp.schema.Record;
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.chain.pathtrie.Trie;
+import org.collectionspace.chain.pathtrie.TrieMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Finding the method for a request path, in a trie laid out like WebUI's for the default tenant: each
+ * record's list, read, search, uispec and so on, records related to records, and the vocabularies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations=3,time=1)
+@Measurement(iterations=5,time=1)
+public class TrieBenchmark {
+	@Param({"read","uispec","related","vocabulary","miss"})
+	public String request;
+
+	private Trie trie;
+	private String[] path;
+
+	/* Hands what it's called with to the blackhole, so that dispatch can't be optimised away */
+	private static class Sink implements TrieMethod {
+		public void run(Object in,String[] tail) {
+			((Blackhole)in).consume(tail);
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		Spec spec=Fixtures.getSpec();
+		TrieMethod sink=new Sink();
+		trie=new Trie();
+		trie.addMethod(new String[]{"login"},0,sink);
+		trie.addMethod(new String[]{"loginstatus"},0,sink);
+		trie.addMethod(new String[]{"relationships"},0,sink);
+		trie.addMethod(new String[]{"relationships"},1,sink);
+		trie.addMethod(new String[]{"relationships","search"},0,sink);
+		for(Record r : spec.getAllRecords()) {
+			String url=r.getWebURL();
+			trie.addMethod(new String[]{url},0,sink);
+			trie.addMethod(new String[]{url},1,sink);
+			for(String sub : new String[]{"search","uispec","uischema","autocomplete","generator"})
+				trie.addMethod(new String[]{url,sub},0,sink);
+			trie.addMethod(new String[]{url,"termList"},1,sink);
+			trie.addMethod(new String[]{url,"authorities"},1,sink);
+			trie.addMethod(new String[]{r.getTabURL(),"uispec"},0,sink);
+			trie.addMethod(new String[]{r.getSearchURL(),"uispec"},0,sink);
+			for(Record r2 : spec.getAllRecords()) {
+				if(r2.isType("procedure"))
+					trie.addMethod(new String[]{url,r2.getWebURL()},1,sink);
+			}
+			if(r.isType("authority")) {
+				for(Instance n : r.getAllInstances()) {
+					trie.addMethod(new String[]{"vocabularies",n.getWebURL()},0,sink);
+					trie.addMethod(new String[]{"vocabularies",n.getWebURL()},1,sink);
+					trie.addMethod(new String[]{"vocabularies",n.getWebURL(),"autocomplete"},0,sink);
+					trie.addMethod(new String[]{"vocabularies",n.getWebURL(),"search"},0,sink);
+				}
+			}
+		}
+		String object=Fixtures.getRecord("collection-object").getWebURL();
+		if("read".equals(request))
+			path=new String[]{object,"1b2b3b4b-5b6b-7b8b-9b0b-aabbccddeeff"};
+		else if("uispec".equals(request))
+			path=new String[]{object,"uispec"};
+		else if("related".equals(request))
+			path=new String[]{object,Fixtures.getRecord("intake").getWebURL(),"1b2b3b4b-5b6b-7b8b-9b0b-aabbccddeeff"};
+		else if("vocabulary".equals(request))
+			path=new String[]{"vocabularies",Fixtures.getRecord("person").getAllInstances()[0].getWebURL(),"1b2b3b4b-5b6b-7b8b-9b0b-aabbccddeeff"};
+		else
+			path=new String[]{"no","such","path"};
+	}
+
+	@Benchmark
+	public boolean call(Blackhole bh) throws Exception {
+		return trie.call(path,bh);
+	}
+}
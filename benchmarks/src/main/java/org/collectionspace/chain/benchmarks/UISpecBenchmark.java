@@ -0,0 +1,66 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.chain.csp.schema.Record;
+import org.collectionspace.chain.csp.webui.nuispec.UISpec;
+import org.collectionspace.csp.api.ui.UIException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generating a record's uispec from the config. Served uispecs are built once and kept, so this is
+ * mostly what tenant startup pays, per record and view.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations=3,time=2)
+@Measurement(iterations=5,time=2)
+public class UISpecBenchmark {
+	@Param({"collection-object","acquisition","person"})
+	public String record;
+
+	@Param({"screen","search"})
+	public String view;
+
+	/* Gets at the generation itself, rather than the kept copy */
+	private static class Generator extends UISpec {
+		Generator(Record r,String view) {
+			super(r,view);
+		}
+
+		JSONObject generate() throws UIException {
+			return uispec();
+		}
+	}
+
+	private Generator generator;
+
+	@Setup
+	public void setup() throws Exception {
+		generator=new Generator(Fixtures.getRecord(record),view);
+	}
+
+	@Benchmark
+	public JSONObject generate() throws UIException {
+		return generator.generate();
+	}
+}
@@ -0,0 +1,60 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.chain.csp.persistence.services.XmlJsonConversion;
+import org.collectionspace.chain.csp.schema.Record;
+import org.dom4j.Document;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converting the common part of a record between what the services send and what the UI gets, both ways.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations=3,time=2)
+@Measurement(iterations=5,time=2)
+public class XmlJsonConversionBenchmark {
+	@Param({"collection-object","acquisition","intake","media","movement"})
+	public String record;
+
+	private Record r;
+	private Document xml;
+	private JSONObject json;
+
+	@Setup
+	public void setup() throws Exception {
+		r=Fixtures.getRecord(record);
+		xml=Fixtures.getDocument(Fixtures.getSampleXML(record));
+		json=Fixtures.getJSON(Fixtures.getSampleJSON(record));
+	}
+
+	@Benchmark
+	public JSONObject toJson() throws Exception {
+		return XmlJsonConversion.convertToJson(r,xml,"","common","","");
+	}
+
+	@Benchmark
+	public Document toXml() throws Exception {
+		return XmlJsonConversion.convertToXml(r,json,"common","");
+	}
+}
@@ -0,0 +1,90 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.connection;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.collectionspace.chain.benchmarks.Fixtures;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a multipart record from the services and splitting it into its parts. In this package, as
+ * ReturnedMultipartDocument is only made here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations=3,time=2)
+@Measurement(iterations=5,time=2)
+public class ReturnedMultipartDocumentBenchmark {
+	@Param({"collection-object","acquisition","intake"})
+	public String record;
+
+	private byte[] body;
+
+	/* Just what setResponse looks at */
+	private static class Response extends GetMethod {
+		private final byte[] body;
+
+		Response(byte[] body) {
+			this.body=body;
+		}
+
+		@Override
+		public InputStream getResponseBodyAsStream() {
+			return new ByteArrayInputStream(body);
+		}
+
+		@Override
+		public Header getResponseHeader(String name) {
+			if("Content-Type".equalsIgnoreCase(name))
+				return new Header("Content-Type","application/xml");
+			return null;
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		// The sample's common part, with a core part, in the services' envelope
+		Document common=Fixtures.getDocument(Fixtures.getSampleXML(record));
+		Document doc=DocumentHelper.createDocument();
+		Element root=doc.addElement("document");
+		root.addAttribute("name",Fixtures.getRecord(record).getServicesURL());
+		root.add(common.getRootElement().createCopy());
+		Element core=root.addElement("ns2:collectionspace_core","http://collectionspace.org/collectionspace_core/");
+		core.addElement("uri").setText("/"+Fixtures.getRecord(record).getServicesURL()+"/1b2b3b4b-5b6b-7b8b-9b0b-aabbccddeeff");
+		core.addElement("createdAt").setText("2014-01-01T00:00:00.000Z");
+		core.addElement("updatedAt").setText("2014-01-01T00:00:00.000Z");
+		core.addElement("workflowState").setText("project");
+		body=doc.asXML().getBytes("UTF-8");
+	}
+
+	@Benchmark
+	public ReturnedMultipartDocument parse() throws Exception {
+		ReturnedMultipartDocument out=new ReturnedMultipartDocument();
+		out.setResponse(new Response(body),200);
+		return out;
+	}
+}
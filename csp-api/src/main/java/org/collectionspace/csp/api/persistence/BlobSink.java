@@ -0,0 +1,37 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.csp.api.persistence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Somewhere a storage can stream blob content to, rather than returning it as a byte[] in the
+ * JSON it retrieves. Passed to retrieveJSON in the restrictions, under RESTRICTION_KEY.
+ *
+ */
+public interface BlobSink {
+	public static final String RESTRICTION_KEY="blobSink";
+
+	/**
+	 * The Range header of the original request, to pass on, or null for the whole blob
+	 * @return
+	 */
+	public String getRange();
+
+	/**
+	 * Start the response. Called at most once, before any content is written.
+	 * @param status - status to respond with, eg 206 for a partial response
+	 * @param contentType
+	 * @param contentDisposition - may be null
+	 * @param length - content length, or -1 if not known
+	 * @param contentRange - Content-Range of a partial response, or null
+	 * @return the stream to write the content to
+	 * @throws IOException
+	 */
+	public OutputStream open(int status,String contentType,String contentDisposition,long length,String contentRange) throws IOException;
+}
@@ -6,10 +6,12 @@
  */
 package org.collectionspace.csp.api.ui;
 
+import java.io.InputStream;
 import java.util.Set;
 
 import javax.servlet.http.HttpSession;
 
+import org.collectionspace.csp.api.persistence.BlobSink;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -32,6 +34,13 @@ public interface UIRequest {
 	public void sendUnknown(byte[] data, String contenttype, String contentDisposition) throws UIException;
 	public void sendUnknown(String data, String contenttype, String contentDisposition) throws UIException;
 	public void sendJSONResponse(JSONObject out) throws UIException;
+	/**
+	 * Somewhere to stream binary content straight to the client, or null if this request can't
+	 * stream and the content must be sent with sendUnknown
+	 * @return
+	 * @throws UIException
+	 */
+	public BlobSink getBlobSink() throws UIException;
 	public void sendJSONResponse(JSONArray out) throws UIException;
 
 	JSONObject getJSONBody() throws UIException;
@@ -39,12 +48,39 @@ public interface UIRequest {
 	String getBody() throws UIException;
 	String getContentType() throws UIException;
 	public byte[] getbyteBody() throws UIException;
+	/**
+	 * The uploaded file as a stream, or null if it isn't available as one. Can be read once,
+	 * and not at all if getbyteBody has been called.
+	 * @return
+	 * @throws UIException
+	 */
+	public InputStream getbyteBodyStream() throws UIException;
 	String getFileName() throws UIException;
 	Boolean isJSON() throws UIException;
 
 	public int getCacheMaxAgeSeconds();
 	public void setCacheMaxAgeSeconds(int cacheMaxAgeSeconds);
 
+	/**
+	 * Add an informational header to the response, if it is still possible to do so.
+	 * @param name
+	 * @param value
+	 */
+	public void setResponseHeader(String name,String value);
+
+	/**
+	 * A header of the request, or null if it wasn't sent or this request doesn't have headers
+	 * @param name
+	 * @return
+	 */
+	public String getRequestHeader(String name);
+
+	/**
+	 * Tell the client that what it has is still current (304) rather than sending a body
+	 * @throws UIException
+	 */
+	public void sendNotModified() throws UIException;
+
 	public void setFailure(boolean isit,Exception why) throws UIException;
 	
 	public void setOperationPerformed(Operation op) throws UIException;
@@ -12,9 +12,13 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.Map.Entry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +50,8 @@ public class ConfigFinder implements EntityResolver {
 	private static final String classNearDefaultXml = "org.collectionspace.chain.controller.ChainServlet";
 	private static final String TEST_CONFIG = "TEST_CONFIG"; 
 	public static final String CSPACE_JEESERVER_HOME = "CSPACE_JEESERVER_HOME";
+	public static final String TENANT_CONFIG_PREFIX = "cspace-config-";
+	public static final String TENANT_CONFIG_SUFFIX = ".xml";
 
 	private ServletContext ctx;
 	private File configBase;
@@ -443,4 +449,63 @@ public class ConfigFinder implements EntityResolver {
 			throw new SAXException("Error parsing", e);
 		}
 	}
+
+	/**
+	 * Is one config given for whichever tenant is asked for: by the TEST_CONFIG environment variable, or
+	 * the config-data, config-path or config-filename context attributes? If so findTenants can't say
+	 * which tenants there are.
+	 * @return
+	 */
+	public boolean hasSingleConfig() {
+		if (getDataFromEnvironmentVariableAsFile() != null) {
+			return true;
+		}
+		return ctx != null && (ctx.getAttribute("config-data") != null || ctx.getAttribute("config-path") != null
+				|| ctx.getAttribute("config-filename") != null);
+	}
+
+	/**
+	 * The tenants there is a cspace-config-{tenant}.xml for in the places we look for config files
+	 * by name: the config base directory, the JBoss conf directory, and directories on the classpath
+	 * (which is where Tomcat's lib directory puts them).
+	 *
+	 * A config given by TEST_CONFIG or the config-* context attributes (see hasSingleConfig) serves any
+	 * tenant and names none, so isn't counted here: list its tenants in bootstrap-tenants instead.
+	 * @return tenant ids, in order
+	 */
+	public Set<String> findTenants() {
+		Set<File> dirs = new LinkedHashSet<File>();
+		if (configBase != null) {
+			dirs.add(configBase);
+		}
+		if (System.getProperty("jboss.home.dir") != null) {
+			dirs.add(new File(System.getProperty("jboss.home.dir") + "/server/cspace/conf"));
+		}
+		try {
+			Enumeration<URL> roots = Thread.currentThread().getContextClassLoader().getResources("");
+			while (roots.hasMoreElements()) {
+				URL root = roots.nextElement();
+				if ("file".equals(root.getProtocol())) {
+					dirs.add(new File(URLDecoder.decode(root.getFile(), "UTF-8")));
+				}
+			}
+		} catch (IOException x) {
+			log.warn("Could not list the classpath looking for tenant configs", x);
+		}
+		Set<String> result = new TreeSet<String>();
+		for (File dir : dirs) {
+			String[] names = dir.list();
+			if (names == null) {
+				continue;
+			}
+			for (String name : names) {
+				if (name.startsWith(TENANT_CONFIG_PREFIX) && name.endsWith(TENANT_CONFIG_SUFFIX)
+						&& name.length() > TENANT_CONFIG_PREFIX.length() + TENANT_CONFIG_SUFFIX.length()) {
+					result.add(name.substring(TENANT_CONFIG_PREFIX.length(), name.length() - TENANT_CONFIG_SUFFIX.length()));
+				}
+			}
+		}
+		log.debug(String.format("Found config for tenants %s in %s", result, dirs));
+		return result;
+	}
 }
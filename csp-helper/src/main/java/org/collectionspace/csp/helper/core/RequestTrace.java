@@ -0,0 +1,276 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.csp.helper.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.collectionspace.csp.api.core.CSPRequestCache;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Timings for one UI request: a tree of spans (services calls, XML/JSON conversion, ...) and a set of
+ * counters (cache hits and misses).
+ *
+ * The trace is carried in the request's CSPRequestCache, and is also bound to the thread serving the
+ * request for code which has no cache to hand. Everything here is a no-op when there is no trace, so
+ * callers needn't check.
+ *
+ */
+public class RequestTrace {
+	private static final String[] CACHE_KEY=new String[]{"trace"};
+	private static final ThreadLocal<RequestTrace> current=new ThreadLocal<RequestTrace>();
+	private static final Pattern CSID=Pattern.compile("^[0-9a-fA-F-]{16,}$");
+
+	public static final Span NONE=new Span(null,null,null);
+
+	private final String method,path;
+	private final long started=System.currentTimeMillis();
+	private final Span root;
+	private final Map<String,Long> counters=new TreeMap<String,Long>();
+	/* innermost open span on each thread working on this request */
+	private final ThreadLocal<Span> open=new ThreadLocal<Span>();
+
+	public RequestTrace(String method,String path) {
+		this.method=method;
+		this.path=path;
+		root=new Span(this,"request",method+" "+path);
+	}
+
+	/**
+	 * The trace carried by this request cache, or null
+	 * @param cache
+	 * @return
+	 */
+	public static RequestTrace get(CSPRequestCache cache) {
+		if(cache==null)
+			return null;
+		return (RequestTrace)cache.getCached(RequestTrace.class,CACHE_KEY);
+	}
+
+	public static void set(CSPRequestCache cache,RequestTrace trace) {
+		cache.setCached(RequestTrace.class,CACHE_KEY,trace);
+	}
+
+	/** The trace bound to this thread, or null */
+	public static RequestTrace current() { return current.get(); }
+
+	/**
+	 * Bind to the current thread until unbind.
+	 * @param trace
+	 * @return the trace previously bound, to pass back to unbind
+	 */
+	public static RequestTrace bind(RequestTrace trace) {
+		RequestTrace previous=current.get();
+		current.set(trace);
+		return previous;
+	}
+
+	public static void unbind(RequestTrace previous) {
+		if(previous==null)
+			current.remove();
+		else
+			current.set(previous);
+	}
+
+	/** Start a span in the cache's trace, falling back to the thread's */
+	public static Span startSpan(CSPRequestCache cache,String name,String detail) {
+		RequestTrace trace=get(cache);
+		if(trace==null)
+			trace=current();
+		return trace==null?NONE:trace.start(name,detail);
+	}
+
+	/** Start a span in the thread's trace */
+	public static Span startSpan(String name,String detail) {
+		RequestTrace trace=current();
+		return trace==null?NONE:trace.start(name,detail);
+	}
+
+	public static void count(CSPRequestCache cache,String counter) {
+		RequestTrace trace=get(cache);
+		if(trace==null)
+			trace=current();
+		if(trace!=null)
+			trace.count(counter);
+	}
+
+	/**
+	 * Replace csids in a services uri with {csid} and drop the query, so that calls can be grouped
+	 * @param uri
+	 * @return
+	 */
+	public static String template(String uri) {
+		if(uri==null)
+			return "";
+		int q=uri.indexOf('?');
+		if(q!=-1)
+			uri=uri.substring(0,q);
+		StringBuffer out=new StringBuffer();
+		for(String part : uri.split("/",-1)) {
+			if(out.length()>0 || uri.startsWith("/"))
+				out.append('/');
+			out.append(CSID.matcher(part).matches()?"{csid}":part);
+		}
+		String t=out.toString();
+		return uri.startsWith("/")?t.substring(1):t;
+	}
+
+	public Span start(String name,String detail) {
+		Span parent=open.get();
+		if(parent==null)
+			parent=root;
+		Span out=new Span(this,name,detail);
+		parent.addChild(out);
+		out.parent=parent;
+		open.set(out);
+		return out;
+	}
+
+	public synchronized void count(String counter) {
+		Long value=counters.get(counter);
+		counters.put(counter,value==null?1:value+1);
+	}
+
+	public void finish() { root.end(); }
+	public String getMethod() { return method; }
+	public String getPath() { return path; }
+	public long getStarted() { return started; }
+	public long getDuration() { return root.getDuration(); }
+
+	/**
+	 * Summary for a Server-Timing response header: the total, then time and count for each kind of span,
+	 * then the counters.
+	 * @return
+	 */
+	public String getServerTiming() {
+		Map<String,long[]> totals=new LinkedHashMap<String,long[]>();
+		root.total(totals,new HashSet<String>());
+		StringBuffer out=new StringBuffer();
+		out.append("total;dur=").append(getDuration());
+		for(Map.Entry<String,long[]> e : totals.entrySet()) {
+			out.append(", ").append(e.getKey()).append(";dur=").append(e.getValue()[0]);
+			out.append(";desc=\"").append(e.getValue()[1]).append("\"");
+		}
+		synchronized(this) {
+			for(Map.Entry<String,Long> e : counters.entrySet())
+				out.append(", ").append(e.getKey()).append(";desc=\"").append(e.getValue()).append("\"");
+		}
+		return out.toString();
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		JSONObject out=new JSONObject();
+		out.put("method",method);
+		out.put("path",path);
+		out.put("started",started);
+		out.put("duration",getDuration());
+		synchronized(this) {
+			out.put("counters",new JSONObject(counters));
+		}
+		out.put("spans",root.toJSON());
+		return out;
+	}
+
+	/**
+	 * One timed piece of work. Call end when done, normally in a finally.
+	 */
+	public static class Span {
+		private final RequestTrace trace;
+		private final String name,detail;
+		private final long start=System.currentTimeMillis();
+		private volatile long end=-1;
+		private Span parent;
+		private List<Span> children;
+		private Map<String,Object> attributes;
+
+		Span(RequestTrace trace,String name,String detail) {
+			this.trace=trace;
+			this.name=name;
+			this.detail=detail;
+		}
+
+		private synchronized void addChild(Span child) {
+			if(children==null)
+				children=new ArrayList<Span>();
+			children.add(child);
+		}
+
+		public synchronized Span set(String key,Object value) {
+			if(trace==null)
+				return this;
+			if(attributes==null)
+				attributes=new LinkedHashMap<String,Object>();
+			attributes.put(key,value);
+			return this;
+		}
+
+		public void end() {
+			if(trace==null || end!=-1)
+				return;
+			end=System.currentTimeMillis();
+			if(trace.open.get()==this) {
+				if(parent==trace.root)
+					trace.open.remove();
+				else
+					trace.open.set(parent);
+			}
+		}
+
+		public long getDuration() {
+			long e=end;
+			return (e==-1?System.currentTimeMillis():e)-start;
+		}
+
+		/* Time and count by name. Nested spans of the same name are only counted at the outermost */
+		private synchronized void total(Map<String,long[]> totals,Set<String> enclosing) {
+			if(children==null)
+				return;
+			for(Span child : children) {
+				boolean outer=enclosing.add(child.name);
+				if(outer) {
+					long[] t=totals.get(child.name);
+					if(t==null) {
+						t=new long[2];
+						totals.put(child.name,t);
+					}
+					t[0]+=child.getDuration();
+					t[1]++;
+				}
+				child.total(totals,enclosing);
+				if(outer)
+					enclosing.remove(child.name);
+			}
+		}
+
+		synchronized JSONObject toJSON() throws JSONException {
+			JSONObject out=new JSONObject();
+			out.put("name",name);
+			if(detail!=null)
+				out.put("detail",detail);
+			out.put("start",start-trace.root.start);
+			out.put("duration",getDuration());
+			if(attributes!=null)
+				out.put("attributes",new JSONObject(attributes));
+			if(children!=null) {
+				JSONArray kids=new JSONArray();
+				for(Span child : children)
+					kids.put(child.toJSON());
+				out.put("children",kids);
+			}
+			return out;
+		}
+	}
+}
@@ -25,6 +25,7 @@ public class ResponseCache {
 	private static ResponseCache instance = new ResponseCache();
 	
 	public static final String USER_PERMS_CACHE = "userperms";
+	public static final String GLEANED_CACHE = "gleaned";
 
 	
 	private ResponseCache() {
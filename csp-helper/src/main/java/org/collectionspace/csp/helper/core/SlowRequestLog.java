@@ -0,0 +1,83 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.csp.helper.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The most recent requests which took longer than a threshold, with their traces. Fixed size: once full
+ * the oldest is overwritten.
+ *
+ */
+public class SlowRequestLog {
+	public static final int DEFAULT_CAPACITY=100;
+	public static final long DEFAULT_THRESHOLD=1000;
+
+	private final RequestTrace[] ring;
+	private final long threshold;
+	private int next=0,size=0;
+	private long recorded=0,seen=0;
+
+	public SlowRequestLog() { this(DEFAULT_CAPACITY,DEFAULT_THRESHOLD); }
+
+	public SlowRequestLog(int capacity,long threshold) {
+		ring=new RequestTrace[Math.max(1,capacity)];
+		this.threshold=threshold;
+	}
+
+	public long getThreshold() { return threshold; }
+
+	/**
+	 * Keep the trace if the request was slow
+	 * @param trace a finished trace
+	 * @return true if it was kept
+	 */
+	public synchronized boolean record(RequestTrace trace) {
+		seen++;
+		if(trace.getDuration()<threshold)
+			return false;
+		ring[next]=trace;
+		next=(next+1)%ring.length;
+		if(size<ring.length)
+			size++;
+		recorded++;
+		return true;
+	}
+
+	public synchronized RequestTrace[] getSlowRequests() {
+		RequestTrace[] out=new RequestTrace[size];
+		for(int i=0;i<size;i++)
+			out[i]=ring[(next-1-i+ring.length)%ring.length];
+		return out;
+	}
+
+	public synchronized void clear() {
+		for(int i=0;i<ring.length;i++)
+			ring[i]=null;
+		next=size=0;
+	}
+
+	/** Newest first */
+	public JSONObject toJSON() throws JSONException {
+		JSONObject out=new JSONObject();
+		RequestTrace[] slow;
+		synchronized(this) {
+			slow=getSlowRequests();
+			out.put("seen",seen);
+			out.put("slow",recorded);
+		}
+		out.put("thresholdMs",threshold);
+		out.put("capacity",ring.length);
+		JSONArray requests=new JSONArray();
+		for(RequestTrace trace : slow)
+			requests.put(trace.toJSON());
+		out.put("requests",requests);
+		return out;
+	}
+}
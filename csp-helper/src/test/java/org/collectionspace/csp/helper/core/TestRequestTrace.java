@@ -0,0 +1,86 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.csp.helper.core;
+
+import static org.junit.Assert.*;
+
+import org.collectionspace.csp.api.core.CSPRequestCache;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestRequestTrace {
+	@Test public void testNesting() throws Exception {
+		RequestTrace trace=new RequestTrace("READ","/cataloging/abc");
+		RequestTrace.Span read=trace.start("services","GET collectionobjects/{csid}");
+		RequestTrace.Span convert=trace.start("xmljson","collectionobjects_common");
+		convert.end();
+		read.end();
+		RequestTrace.Span list=trace.start("services","GET relations");
+		RequestTrace.Span inner=trace.start("services","GET collectionobjects");
+		inner.end();
+		list.set("status",200);
+		list.end();
+		trace.finish();
+
+		JSONArray spans=trace.toJSON().getJSONObject("spans").getJSONArray("children");
+		assertEquals(2,spans.length());
+		JSONObject first=spans.getJSONObject(0);
+		assertEquals("GET collectionobjects/{csid}",first.getString("detail"));
+		assertEquals("xmljson",first.getJSONArray("children").getJSONObject(0).getString("name"));
+		JSONObject second=spans.getJSONObject(1);
+		assertEquals(200,second.getJSONObject("attributes").getInt("status"));
+		assertEquals("GET collectionobjects",second.getJSONArray("children").getJSONObject(0).getString("detail"));
+	}
+
+	@Test public void testServerTiming() throws Exception {
+		RequestTrace trace=new RequestTrace("READ","/cataloging/abc");
+		RequestTrace.Span outer=trace.start("services","GET relations");
+		// a services call within a services call is only counted once
+		trace.start("services","GET collectionobjects").end();
+		trace.start("xmljson","relations_common").end();
+		outer.end();
+		trace.start("services","GET intakes").end();
+		trace.count("glean-hit");
+		trace.count("glean-hit");
+		trace.count("glean-miss");
+		trace.finish();
+		String timing=trace.getServerTiming();
+		assertTrue(timing,timing.matches("total;dur=\\d+, services;dur=\\d+;desc=\"2\", xmljson;dur=\\d+;desc=\"1\", glean-hit;desc=\"2\", glean-miss;desc=\"1\""));
+	}
+
+	@Test public void testBinding() throws Exception {
+		// no trace: nothing happens, and nothing fails
+		assertSame(RequestTrace.NONE,RequestTrace.startSpan("services","GET x"));
+		RequestTrace.NONE.set("status",200).end();
+		RequestTrace.count((CSPRequestCache)null,"glean-hit");
+
+		CSPRequestCache cache=new RequestCache();
+		RequestTrace carried=new RequestTrace("READ","/a");
+		RequestTrace.set(cache,carried);
+		RequestTrace bound=new RequestTrace("READ","/b");
+		RequestTrace previous=RequestTrace.bind(bound);
+		try {
+			assertSame(bound,RequestTrace.current());
+			// the cache's trace wins over the thread's
+			RequestTrace.startSpan(cache,"services","GET a").end();
+			RequestTrace.startSpan(new RequestCache(),"services","GET b").end();
+		} finally {
+			RequestTrace.unbind(previous);
+		}
+		assertNull(RequestTrace.current());
+		assertEquals("GET a",carried.toJSON().getJSONObject("spans").getJSONArray("children").getJSONObject(0).getString("detail"));
+		assertEquals("GET b",bound.toJSON().getJSONObject("spans").getJSONArray("children").getJSONObject(0).getString("detail"));
+	}
+
+	@Test public void testTemplate() {
+		assertEquals("collectionobjects/{csid}",RequestTrace.template("collectionobjects/1a2b3c4d-5e6f-7a8b-9c0d?wf_deleted=false"));
+		assertEquals("/personauthorities/{csid}/items",RequestTrace.template("/personauthorities/0a1b2c3d4e5f6a7b/items"));
+		assertEquals("relations",RequestTrace.template("relations"));
+		assertEquals("",RequestTrace.template(null));
+	}
+}
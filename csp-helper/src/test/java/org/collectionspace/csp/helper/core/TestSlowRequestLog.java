@@ -0,0 +1,53 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.csp.helper.core;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestSlowRequestLog {
+	private static RequestTrace finished(String path) {
+		RequestTrace out=new RequestTrace("READ",path);
+		out.finish();
+		return out;
+	}
+
+	@Test public void testBounded() throws Exception {
+		SlowRequestLog log=new SlowRequestLog(3,0);
+		for(int i=0;i<5;i++)
+			assertTrue(log.record(finished("/"+i)));
+		RequestTrace[] slow=log.getSlowRequests();
+		// only the newest three, newest first
+		assertEquals(3,slow.length);
+		assertEquals("/4",slow[0].getPath());
+		assertEquals("/3",slow[1].getPath());
+		assertEquals("/2",slow[2].getPath());
+
+		JSONObject out=log.toJSON();
+		assertEquals(5,out.getLong("seen"));
+		assertEquals(5,out.getLong("slow"));
+		assertEquals(3,out.getInt("capacity"));
+		assertEquals(3,out.getJSONArray("requests").length());
+
+		log.clear();
+		assertEquals(0,log.getSlowRequests().length);
+		log.record(finished("/5"));
+		assertEquals("/5",log.getSlowRequests()[0].getPath());
+	}
+
+	@Test public void testThreshold() throws Exception {
+		SlowRequestLog log=new SlowRequestLog(10,60000);
+		assertFalse(log.record(finished("/quick")));
+		assertEquals(0,log.getSlowRequests().length);
+		JSONObject out=log.toJSON();
+		assertEquals(1,out.getLong("seen"));
+		assertEquals(0,out.getLong("slow"));
+		assertEquals(60000,out.getLong("thresholdMs"));
+	}
+}
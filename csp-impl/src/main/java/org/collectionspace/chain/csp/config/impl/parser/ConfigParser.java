@@ -31,6 +31,7 @@ public class ConfigParser {
 	private SAXParserFactory factory;
 	private RuleSetImpl rules;
 	private EntityResolver er;
+	private ConfigSnapshot snapshots=null;
 	
 	private class Resolver implements EntityResolver {
 		@Override public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
@@ -53,13 +54,32 @@ public class ConfigParser {
 		this.er=er;
 	}
 	
+	/* Where to keep snapshots of assembled configs, or null not to */
+	public void setSnapshots(ConfigSnapshot snapshots) { this.snapshots=snapshots; }
+
 	public void parse(InputSource src) throws ConfigException {
 		ConfigErrorHandler errors=new ConfigErrorHandler(messages);
 		try {
 			ParseRun handler=new ParseRun();
-			ContentHandler content_handler=new MainConfigHandler(handler);
-			AssemblingParser p=new AssemblingParser(new Resolver(),src);
-			p.parse(new SAXResult(content_handler));
+			EntityResolver resolver=new Resolver();
+			ConfigSnapshot.Source main=(snapshots==null)?null:ConfigSnapshot.read(src);
+			ConfigSnapshot.Recorder recorder=null;
+			if(main!=null) {
+				src=main.open();
+				if(!snapshots.load(main,resolver,handler)) {
+					recorder=snapshots.record(main,handler,resolver);
+				}
+			}
+			if(main==null || recorder!=null) {
+				EventConsumer events=handler;
+				if(recorder!=null) {
+					events=recorder;
+					resolver=recorder;
+				}
+				ContentHandler content_handler=new MainConfigHandler(events);
+				AssemblingParser p=new AssemblingParser(resolver,src);
+				p.parse(new SAXResult(content_handler));
+			}
 			TreeNode tree=handler.getTree(); //at this point, we have pieced together the set of config/settings files for "target" building -i.e., creates our internal data model of the App configuration
 			TreeNode tree_root=TreeNode.create_tag("ROOT");
 			tree_root.addChild(tree);
@@ -69,6 +89,8 @@ public class ConfigParser {
 			tree_root.dump();
 			ms_root.buildTargets(null);
 			ms_root.dump();
+			if(recorder!=null)
+				recorder.save();
 		} catch(Throwable t) {
 			errors.any_error(t);
 			errors.fail_if_necessary();
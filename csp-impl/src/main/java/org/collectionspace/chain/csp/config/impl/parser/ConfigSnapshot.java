@@ -0,0 +1,422 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.config.impl.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/* Assembling a tenant's config (includes, XMLMerge, XSLT) is most of the cost of configuring it, and its
+ * result only depends on the files read on the way. So we keep the events it fed to the parser in a
+ * snapshot file, along with a hash of every file it read (or found missing), and the next time the same
+ * main config is loaded, replay them instead of assembling it again if none of those files has changed.
+ *
+ * A snapshot is: MAGIC, FORMAT, then a body of hashes and deflated events, then the CRC32 of the body.
+ * Anything not quite right about one just means a full parse, which writes a new one.
+ */
+public class ConfigSnapshot {
+	private static final Logger log=LoggerFactory.getLogger(ConfigSnapshot.class);
+
+	private static final int MAGIC=0x43534346; // "CSCF"
+	/* bump when assembly or this format changes what a snapshot means */
+	static final int FORMAT=1;
+	private static final String MISSING="-";
+	private static final byte START='S',END='E',TEXT='T',DONE='.';
+
+	private File dir;
+
+	public ConfigSnapshot(File dir) {
+		this.dir=dir;
+	}
+
+	/* A main config, read so we can both hash it and parse it */
+	public static class Source {
+		private InputSource src;
+		private byte[] data;
+		private String hash;
+
+		private Source(InputSource src,byte[] data) throws IOException {
+			this.src=src;
+			this.data=data;
+			this.hash=hash(data);
+		}
+
+		public InputSource open() {
+			InputSource out=new InputSource(new ByteArrayInputStream(data));
+			out.setPublicId(src.getPublicId());
+			out.setSystemId(src.getSystemId());
+			out.setEncoding(src.getEncoding());
+			return out;
+		}
+
+		String getHash() { return hash; }
+	}
+
+	/**
+	 * Read a main config, or return null if it isn't a stream we can read (and so can't be snapshotted)
+	 * @param src
+	 * @return
+	 * @throws IOException
+	 */
+	public static Source read(InputSource src) throws IOException {
+		if(src.getByteStream()!=null)
+			return new Source(src,IOUtils.toByteArray(src.getByteStream()));
+		if(src.getCharacterStream()!=null) {
+			Reader in=src.getCharacterStream();
+			InputSource utf8=new InputSource();
+			utf8.setPublicId(src.getPublicId());
+			utf8.setSystemId(src.getSystemId());
+			utf8.setEncoding("UTF-8");
+			return new Source(utf8,IOUtils.toString(in).getBytes("UTF-8"));
+		}
+		return null;
+	}
+
+	static String hash(byte[] data) throws IOException {
+		try {
+			StringBuffer out=new StringBuffer();
+			for(byte b : MessageDigest.getInstance("SHA-1").digest(data))
+				out.append(String.format("%02x",b&0xff));
+			return out.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("Cannot hash config",e);
+		}
+	}
+
+	/* The root of every assembly comes from our jar rather than the resolver */
+	private static String rootHash() throws IOException {
+		String path=ConfigSnapshot.class.getPackage().getName().replaceAll("\\.","/")+"/root.xml";
+		InputStream in=Thread.currentThread().getContextClassLoader().getResourceAsStream(path);
+		if(in==null)
+			return MISSING;
+		try {
+			return hash(IOUtils.toByteArray(in));
+		} finally {
+			in.close();
+		}
+	}
+
+	private File file(Source main) {
+		return new File(dir,"config-"+main.getHash()+".snapshot");
+	}
+
+	/**
+	 * Replay a snapshot of this main config, if there's a current one
+	 * @param main
+	 * @param er the resolver assembly would use, to check the files it read are unchanged
+	 * @param out only sent events once the snapshot is known to be good
+	 * @return false if there wasn't a current snapshot, and so nothing was sent
+	 */
+	public boolean load(Source main,EntityResolver er,EventConsumer out) {
+		File file=file(main);
+		if(!file.exists())
+			return false;
+		long start=System.currentTimeMillis();
+		try {
+			byte[] events=check(FileUtils.readFileToByteArray(file),main,er);
+			if(events==null)
+				return false;
+			DataInputStream in=new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(events)));
+			List<String> strings=new ArrayList<String>();
+			ByteArrayOutputStream ops=new ByteArrayOutputStream();
+			List<String> args=new ArrayList<String>();
+			// Decode everything before sending any of it, so a bad snapshot sends nothing
+			while(true) {
+				byte op=in.readByte();
+				if(op==DONE)
+					break;
+				if(op!=START && op!=END && op!=TEXT)
+					throw new IOException("Bad event "+op);
+				ops.write(op);
+				if(op!=END)
+					args.add(readString(in,strings));
+			}
+			int arg=0;
+			for(byte op : ops.toByteArray()) {
+				if(op==START)
+					out.start(args.get(arg++));
+				else if(op==TEXT)
+					out.text(args.get(arg++));
+				else
+					out.end();
+			}
+			log.info("Config loaded from snapshot "+file.getName()+" in "+(System.currentTimeMillis()-start)+"ms");
+			return true;
+		} catch(IOException e) {
+			log.warn("Ignoring config snapshot "+file.getName()+": "+e.getMessage());
+			return false;
+		}
+	}
+
+	/* The deflated events, if the snapshot is sound and everything it was made from is unchanged */
+	private byte[] check(byte[] data,Source main,EntityResolver er) throws IOException {
+		if(data.length<16)
+			return null;
+		DataInputStream in=new DataInputStream(new ByteArrayInputStream(data));
+		if(in.readInt()!=MAGIC || in.readInt()!=FORMAT)
+			return null;
+		CRC32 crc=new CRC32();
+		crc.update(data,8,data.length-16);
+		if(new DataInputStream(new ByteArrayInputStream(data,data.length-8,8)).readLong()!=crc.getValue()) {
+			log.warn("Config snapshot is corrupt");
+			return null;
+		}
+		if(!in.readUTF().equals(rootHash()) || !in.readUTF().equals(main.getHash()))
+			return null;
+		int n=in.readInt();
+		for(int i=0;i<n;i++) {
+			String publicId=in.readBoolean()?in.readUTF():null;
+			String systemId=in.readUTF();
+			if(!in.readUTF().equals(hash(er,publicId,systemId))) {
+				log.info("Config snapshot out of date: "+systemId+" has changed");
+				return null;
+			}
+		}
+		byte[] events=new byte[in.readInt()];
+		in.readFully(events);
+		return events;
+	}
+
+	/* Hash of what the resolver gives for a file, now */
+	static String hash(EntityResolver er,String publicId,String systemId) throws IOException {
+		try {
+			InputSource src=er.resolveEntity(publicId,systemId);
+			if(src==null)
+				return MISSING;
+			byte[] data=bytes(src);
+			// Only a reference: never matches, as a recording would have refused it
+			return (data==null)?"":hash(data);
+		} catch(SAXException e) {
+			return MISSING;
+		}
+	}
+
+	private static byte[] bytes(InputSource src) throws IOException {
+		if(src.getByteStream()!=null) {
+			try {
+				return IOUtils.toByteArray(src.getByteStream());
+			} finally {
+				IOUtils.closeQuietly(src.getByteStream());
+			}
+		}
+		if(src.getCharacterStream()!=null) {
+			try {
+				return IOUtils.toString(src.getCharacterStream()).getBytes("UTF-8");
+			} finally {
+				IOUtils.closeQuietly(src.getCharacterStream());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Record a full parse of this main config, to be saved as its snapshot
+	 * @param main
+	 * @param target where the events go
+	 * @param er the resolver; assembly should resolve through the recorder instead, so it sees what is read
+	 * @return
+	 */
+	public Recorder record(Source main,EventConsumer target,EntityResolver er) {
+		return new Recorder(main,target,er);
+	}
+
+	public class Recorder implements EventConsumer, EntityResolver {
+		private Source main;
+		private EventConsumer target;
+		private EntityResolver er;
+		private Map<String,String[]> deps=new LinkedHashMap<String,String[]>();
+		private Map<String,Integer> strings=new HashMap<String,Integer>();
+		private ByteArrayOutputStream buffer=new ByteArrayOutputStream();
+		private DataOutputStream events=new DataOutputStream(new DeflaterOutputStream(buffer));
+		private IOException failed=null;
+
+		private Recorder(Source main,EventConsumer target,EntityResolver er) {
+			this.main=main;
+			this.target=target;
+			this.er=er;
+		}
+
+		@Override public InputSource resolveEntity(String publicId,String systemId) throws SAXException, IOException {
+			String key=publicId+"\n"+systemId;
+			InputSource src;
+			try {
+				src=er.resolveEntity(publicId,systemId);
+			} catch(SAXException e) {
+				remember(key,publicId,systemId,MISSING);
+				throw e;
+			}
+			if(src==null) {
+				remember(key,publicId,systemId,MISSING);
+				return null;
+			}
+			byte[] data=bytes(src);
+			if(data==null) {
+				// Only a reference: we can't tell if it changes
+				fail(new IOException("Cannot snapshot "+systemId));
+				return src;
+			}
+			remember(key,publicId,systemId,ConfigSnapshot.hash(data));
+			InputSource out=new InputSource(new ByteArrayInputStream(data));
+			out.setPublicId(src.getPublicId());
+			out.setSystemId(src.getSystemId());
+			out.setEncoding(src.getCharacterStream()!=null?"UTF-8":src.getEncoding());
+			return out;
+		}
+
+		private void remember(String key,String publicId,String systemId,String hash) {
+			if(!deps.containsKey(key))
+				deps.put(key,new String[]{publicId,systemId,hash});
+		}
+
+		private void fail(IOException e) {
+			if(failed==null)
+				failed=e;
+		}
+
+		@Override public void start(String tag) {
+			target.start(tag);
+			try {
+				events.writeByte(START);
+				writeString(events,strings,tag);
+			} catch(IOException e) {
+				fail(e);
+			}
+		}
+
+		@Override public void end() {
+			target.end();
+			try {
+				events.writeByte(END);
+			} catch(IOException e) {
+				fail(e);
+			}
+		}
+
+		@Override public void text(String text) {
+			target.text(text);
+			try {
+				events.writeByte(TEXT);
+				writeString(events,strings,text);
+			} catch(IOException e) {
+				fail(e);
+			}
+		}
+
+		/**
+		 * Write the snapshot, once the parse has succeeded. Failing to doesn't stop us.
+		 */
+		public void save() {
+			File file=file(main);
+			File tmp=null;
+			try {
+				if(failed!=null)
+					throw failed;
+				events.writeByte(DONE);
+				events.close();
+				ByteArrayOutputStream body=new ByteArrayOutputStream();
+				DataOutputStream out=new DataOutputStream(body);
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT);
+				out.writeUTF(rootHash());
+				out.writeUTF(main.getHash());
+				out.writeInt(deps.size());
+				for(String[] dep : deps.values()) {
+					out.writeBoolean(dep[0]!=null);
+					if(dep[0]!=null)
+						out.writeUTF(dep[0]);
+					out.writeUTF(dep[1]);
+					out.writeUTF(dep[2]);
+				}
+				byte[] data=buffer.toByteArray();
+				out.writeInt(data.length);
+				out.write(data);
+				out.flush();
+				byte[] all=body.toByteArray();
+				CRC32 crc=new CRC32();
+				crc.update(all,8,all.length-8);
+				out.writeLong(crc.getValue());
+				out.flush();
+				if(!dir.isDirectory() && !dir.mkdirs())
+					throw new IOException("Cannot create "+dir);
+				// Written to the side and moved into place, so a reader never sees half of one
+				tmp=File.createTempFile("config-",".tmp",dir);
+				OutputStream fos=new FileOutputStream(tmp);
+				try {
+					body.writeTo(fos);
+				} finally {
+					fos.close();
+				}
+				if(!tmp.renameTo(file)) {
+					file.delete();
+					if(!tmp.renameTo(file))
+						throw new IOException("Cannot move into place");
+				}
+				tmp=null;
+				log.info("Config snapshot written to "+file.getAbsolutePath());
+			} catch(IOException e) {
+				log.warn("Could not write config snapshot "+file.getName()+": "+e.getMessage());
+			} finally {
+				if(tmp!=null)
+					tmp.delete();
+			}
+		}
+	}
+
+	/* Strings are written once and referred to by number after that: tag names repeat a lot */
+	private static void writeString(DataOutputStream out,Map<String,Integer> strings,String s) throws IOException {
+		Integer code=strings.get(s);
+		if(code!=null) {
+			out.writeInt(code);
+			return;
+		}
+		strings.put(s,strings.size());
+		out.writeInt(-1);
+		byte[] data=s.getBytes("UTF-8");
+		out.writeInt(data.length);
+		out.write(data);
+	}
+
+	private static String readString(DataInputStream in,List<String> strings) throws IOException {
+		int code=in.readInt();
+		if(code>=0) {
+			if(code>=strings.size())
+				throw new EOFException("Bad string reference");
+			return strings.get(code);
+		}
+		byte[] data=new byte[in.readInt()];
+		in.readFully(data);
+		String out=new String(data,"UTF-8");
+		strings.add(out);
+		return out;
+	}
+}
@@ -17,6 +17,7 @@ import org.collectionspace.chain.csp.config.ConfigRoot;
 import org.collectionspace.chain.csp.config.Configurable;
 import org.collectionspace.chain.csp.config.impl.main.RuleSetImpl;
 import org.collectionspace.chain.csp.config.impl.parser.ConfigParser;
+import org.collectionspace.chain.csp.config.impl.parser.ConfigSnapshot;
 import org.collectionspace.csp.api.container.CSPManager;
 import org.collectionspace.csp.api.core.CSP;
 import org.collectionspace.csp.api.core.CSPDependencyException;
@@ -36,6 +37,7 @@ public class CSPManagerImpl implements CSPManager {
 	private Map<String,UI> ui=new HashMap<String,UI>();
 	private ConfigRoot config_root;
 	private File configBase;
+	private File snapshotDir;
 	
 	public CSPManagerImpl() {
 		log.trace("Created another instance of CSPManagerImpl class.");
@@ -75,6 +77,9 @@ public class CSPManagerImpl implements CSPManager {
 		}
 		try {
 			ConfigParser parser = new ConfigParser(rules,er);
+			if (snapshotDir != null) {
+				parser.setSnapshots(new ConfigSnapshot(snapshotDir));
+			}
 			parser.parse(in);
 			// Finish up all the config-related tasks
 			for(Configurable config : config_csps) {
@@ -89,6 +94,15 @@ public class CSPManagerImpl implements CSPManager {
 		}
 	}
 	
+	/**
+	 * Keep snapshots of the assembled config in this directory, so that it needn't be assembled again
+	 * while none of its files change. Null (the default) not to.
+	 * @param dir
+	 */
+	public void setConfigSnapshots(File dir) {
+		snapshotDir = dir;
+	}
+
 	@Override
 	public void setConfigBase(File file) {
 		configBase = file;
@@ -0,0 +1,118 @@
+package org.collectionspace.chain.csp.config.impl.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+public class TestConfigSnapshot {
+	private File dir;
+	private Map<String,String> files=new HashMap<String,String>();
+
+	private EntityResolver resolver=new EntityResolver() {
+		@Override public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+			String data=files.get(systemId);
+			if(data==null)
+				throw new SAXException("No such file "+systemId);
+			return new InputSource(new ByteArrayInputStream(data.getBytes("UTF-8")));
+		}
+	};
+
+	private static class Events implements EventConsumer {
+		private List<String> events=new ArrayList<String>();
+		@Override public void start(String tag) { events.add("<"+tag); }
+		@Override public void end() { events.add(">"); }
+		@Override public void text(String text) { events.add(text); }
+	}
+
+	@Before public void setUp() throws Exception {
+		dir=File.createTempFile("snapshots",null);
+		dir.delete();
+		files.put("included.xml","<included/>");
+	}
+
+	@After public void tearDown() throws Exception {
+		FileUtils.deleteQuietly(dir);
+	}
+
+	private ConfigSnapshot.Source main() throws Exception {
+		return ConfigSnapshot.read(new InputSource(new ByteArrayInputStream("<cspace-config tenantname='test'/>".getBytes("UTF-8"))));
+	}
+
+	/* What assembly would do: read some files and send some events */
+	private Events record(ConfigSnapshot snapshots) throws Exception {
+		Events out=new Events();
+		ConfigSnapshot.Recorder recorder=snapshots.record(main(),out,resolver);
+		assertNotNull(recorder.resolveEntity(null,"included.xml"));
+		try {
+			recorder.resolveEntity(null,"tenants/test/included.xml");
+			fail("should be missing");
+		} catch(SAXException e) {}
+		recorder.start("cspace-config");
+		recorder.start("@tenantname");
+		recorder.text("test");
+		recorder.end();
+		for(int i=0;i<3;i++) {
+			recorder.start("record");
+			recorder.text("r"+i);
+			recorder.end();
+		}
+		recorder.end();
+		recorder.save();
+		return out;
+	}
+
+	@Test public void testReplay() throws Exception {
+		ConfigSnapshot snapshots=new ConfigSnapshot(dir);
+		Events recorded=record(snapshots);
+		Events replayed=new Events();
+		assertTrue(snapshots.load(main(),resolver,replayed));
+		assertEquals(recorded.events,replayed.events);
+	}
+
+	@Test public void testChangedFile() throws Exception {
+		ConfigSnapshot snapshots=new ConfigSnapshot(dir);
+		record(snapshots);
+		files.put("included.xml","<included changed='yes'/>");
+		Events replayed=new Events();
+		assertFalse(snapshots.load(main(),resolver,replayed));
+		assertTrue(replayed.events.isEmpty());
+	}
+
+	@Test public void testFileAppears() throws Exception {
+		ConfigSnapshot snapshots=new ConfigSnapshot(dir);
+		record(snapshots);
+		files.put("tenants/test/included.xml","<override/>");
+		assertFalse(snapshots.load(main(),resolver,new Events()));
+	}
+
+	@Test public void testCorrupt() throws Exception {
+		ConfigSnapshot snapshots=new ConfigSnapshot(dir);
+		record(snapshots);
+		File[] written=dir.listFiles();
+		assertEquals(1,written.length);
+		RandomAccessFile f=new RandomAccessFile(written[0],"rw");
+		f.seek(f.length()/2);
+		int b=f.read();
+		f.seek(f.length()/2);
+		f.write(b^0xff);
+		f.close();
+		Events replayed=new Events();
+		assertFalse(snapshots.load(main(),resolver,replayed));
+		assertTrue(replayed.events.isEmpty());
+	}
+}
@@ -23,7 +23,21 @@ import org.json.JSONObject;
 public class AdminData {
 	String username, password, tenant, tenantname;
 	Integer lifeInMinsOfCookie;
+	int sessionMaxAge = 0;
+	int sessionMaxCount = 0;
+	int compositeThreads = 0;
+	int compositeTimeout = 0;
+	int vocabInitThreads = 4;
+	int relationCacheAge = 30;
+	int relatedThreads = 4;
+	int searchTraverserMax = 20;
 	int termListCacheAge = 0;
+	int sharedTermListCacheAge = 300;
+	int sharedTermListCacheSize = 1000;
+	boolean termListWarmup = true;
+	boolean autocompleteIndex = false;
+	int autocompleteIndexAge = 3600;
+	int autocompleteIndexMaxTerms = 100000;
 	int autocompleteListCacheAge = 0;
 	int reportListCacheAge = 0;
 	int uploadedMediaCacheAge = 0;
@@ -44,12 +58,82 @@ public class AdminData {
 			stringMinutes = "30";
 		}
 		lifeInMinsOfCookie = Integer.parseInt(stringMinutes);
+
+		stringMinutes = (String) section.getValue("/session-max-age");
+		if (!StringUtils.isEmpty(stringMinutes)) {
+			sessionMaxAge = Integer.parseInt(stringMinutes);
+		}
+
+		String stringCount = (String) section.getValue("/session-max-count");
+		if (!StringUtils.isEmpty(stringCount)) {
+			sessionMaxCount = Integer.parseInt(stringCount);
+		}
+
+		stringCount = (String) section.getValue("/composite-threads");
+		if (!StringUtils.isEmpty(stringCount)) {
+			compositeThreads = Integer.parseInt(stringCount);
+		}
+
+		String stringMillis = (String) section.getValue("/composite-timeout");
+		if (!StringUtils.isEmpty(stringMillis)) {
+			compositeTimeout = Integer.parseInt(stringMillis);
+		}
+
+		stringCount = (String) section.getValue("/vocab-init-threads");
+		if (!StringUtils.isEmpty(stringCount)) {
+			vocabInitThreads = Integer.parseInt(stringCount);
+		}
+
+		stringCount = (String) section.getValue("/related-threads");
+		if (!StringUtils.isEmpty(stringCount)) {
+			relatedThreads = Integer.parseInt(stringCount);
+		}
+
+		String relationSeconds = (String) section.getValue("/relation-cache-timeout");
+		if (!StringUtils.isEmpty(relationSeconds)) {
+			relationCacheAge = Integer.parseInt(relationSeconds);
+		}
 		
 		stringMinutes = (String) section.getValue("/termlist-cache-timeout");
 		if (!StringUtils.isEmpty(stringMinutes)) {
 			termListCacheAge = Integer.parseInt(stringMinutes);
 		}
 
+		stringCount = (String) section.getValue("/search-traverser-max");
+		if (!StringUtils.isEmpty(stringCount)) {
+			searchTraverserMax = Integer.parseInt(stringCount);
+		}
+
+		String stringSeconds = (String) section.getValue("/termlist-shared-cache-timeout");
+		if (!StringUtils.isEmpty(stringSeconds)) {
+			sharedTermListCacheAge = Integer.parseInt(stringSeconds);
+		}
+
+		stringCount = (String) section.getValue("/termlist-shared-cache-size");
+		if (!StringUtils.isEmpty(stringCount)) {
+			sharedTermListCacheSize = Integer.parseInt(stringCount);
+		}
+
+		String warmup = (String) section.getValue("/termlist-warmup");
+		if (!StringUtils.isEmpty(warmup)) {
+			termListWarmup = Boolean.parseBoolean(warmup.trim());
+		}
+
+		String index = (String) section.getValue("/autocomplete-index");
+		if (!StringUtils.isEmpty(index)) {
+			autocompleteIndex = Boolean.parseBoolean(index.trim());
+		}
+
+		stringSeconds = (String) section.getValue("/autocomplete-index-timeout");
+		if (!StringUtils.isEmpty(stringSeconds)) {
+			autocompleteIndexAge = Integer.parseInt(stringSeconds);
+		}
+
+		stringCount = (String) section.getValue("/autocomplete-index-max-terms");
+		if (!StringUtils.isEmpty(stringCount)) {
+			autocompleteIndexMaxTerms = Integer.parseInt(stringCount);
+		}
+
 		stringMinutes = (String) section.getValue("/autocompletelist-cache-timeout");
 		if (!StringUtils.isEmpty(stringMinutes)) {
 			autocompleteListCacheAge = Integer.parseInt(stringMinutes);
@@ -119,10 +203,108 @@ public class AdminData {
 		return lifeInMinsOfCookie;
 	}
 
+	/*
+	 * Absolute session lifetime in minutes, however active; 0 for the default
+	 */
+	public int getSessionMaxAge() {
+		return sessionMaxAge;
+	}
+
+	/*
+	 * Most sessions held per tenant before the least recently used are evicted; 0 for the default
+	 */
+	public int getSessionMaxCount() {
+		return sessionMaxCount;
+	}
+
+	/*
+	 * Threads for running the parts of a composite request in parallel; 0 or 1 to run them in turn
+	 */
+	public int getCompositeThreads() {
+		return compositeThreads;
+	}
+
+	/*
+	 * Deadline in ms for a composite request run in parallel; 0 for the default
+	 */
+	public int getCompositeTimeout() {
+		return compositeTimeout;
+	}
+
+	/*
+	 * Requests sent to the services at once when initialising authorities and term lists; 1 to send them in turn
+	 */
+	public int getVocabInitThreads() {
+		return vocabInitThreads;
+	}
+
+	/*
+	 * Records fetched at once to show what another record is related to; 1 to fetch them in turn
+	 */
+	public int getRelatedThreads() {
+		return relatedThreads;
+	}
+
+	/*
+	 * How long in seconds relations listed from the services are kept; 0 to list them afresh each time
+	 */
+	public int getRelationCacheAge() {
+		return relationCacheAge;
+	}
+
+	/*
+	 * Most searches a session keeps for next/previous record navigation, the least recently used dropped first
+	 */
+	public int getSearchTraverserMax() {
+		return searchTraverserMax;
+	}
+
 	public int getTermListCacheAge() {
 		return termListCacheAge;
 	}
 
+	/*
+	 * How long in seconds termlists are shared between requests; 0 to fetch them afresh for each request
+	 */
+	public int getSharedTermListCacheAge() {
+		return sharedTermListCacheAge;
+	}
+
+	/*
+	 * Most termlists held for the tenant before the least recently used are dropped
+	 */
+	public int getSharedTermListCacheSize() {
+		return sharedTermListCacheSize;
+	}
+
+	/*
+	 * Whether to fetch the termlists in the background when the tenant starts
+	 */
+	public boolean isTermListWarmup() {
+		return termListWarmup;
+	}
+
+	/*
+	 * Whether authority autocomplete is answered from an index held in memory rather than by the services
+	 */
+	public boolean isAutocompleteIndex() {
+		return autocompleteIndex;
+	}
+
+	/*
+	 * How long in seconds before an authority's autocomplete index is reloaded, to pick up changes made elsewhere
+	 */
+	public int getAutocompleteIndexAge() {
+		return autocompleteIndexAge;
+	}
+
+	/*
+	 * Authorities with more terms than this are left to the services
+	 */
+	public int getAutocompleteIndexMaxTerms() {
+		return autocompleteIndexMaxTerms;
+	}
+
 	public int getAutocompleteListCacheAge() {
 		return autocompleteListCacheAge;
 	}
@@ -1,6 +1,7 @@
 package org.collectionspace.chain.csp.persistence.services;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
@@ -18,6 +19,7 @@ import org.collectionspace.chain.csp.persistence.services.connection.ServicesCon
 import org.collectionspace.chain.csp.schema.Record;
 import org.collectionspace.csp.api.core.CSPRequestCache;
 import org.collectionspace.csp.api.core.CSPRequestCredentials;
+import org.collectionspace.csp.api.persistence.BlobSink;
 import org.collectionspace.csp.api.persistence.ExistException;
 import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
 import org.collectionspace.csp.api.persistence.UnimplementedException;
@@ -82,17 +84,18 @@ public class BlobStorage extends GenericStorage {
 	 * @param url
 	 * @param creds
 	 * @param cache
+	 * @param sink - where to stream the content to, or null to return it in the result
 	 * @return
 	 * @throws ConnectionException 
 	 */
-	private ReturnUnknown viewRetrieveImg(String view, String url, CSPRequestCredentials creds, CSPRequestCache cache) throws ConnectionException {
+	private ReturnUnknown viewRetrieveImg(String view, String url, CSPRequestCredentials creds, CSPRequestCache cache, BlobSink sink) throws ConnectionException {
 		ReturnUnknown result = null;
 		int attempts = 0;
 		long timeOutValue = System.currentTimeMillis() + DERIVATIVE_TIMEOUT;
 		
 		while (result == null && System.currentTimeMillis() < timeOutValue) {
-			result = conn.getUnknownDocument(RequestMethod.GET, url, null, creds, cache);
-			if (result.getStatus() < 200 || result.getStatus() >= 300) {
+			result = conn.getUnknownDocument(RequestMethod.GET, url, null, creds, cache, sink);
+			if (!result.isStreamed() && (result.getStatus() < 200 || result.getStatus() >= 300)) {
 				sleep(500); // Go to sleep for 1/2 second while derivative gets created.
 				result = null;
 			}
@@ -137,12 +140,18 @@ public class BlobStorage extends GenericStorage {
 			}
 			
 			//ReturnUnknown doc = conn.getUnknownDocument(RequestMethod.GET, servicesurl+softpath, null, creds, cache);
-			ReturnUnknown doc = viewRetrieveImg(view, servicesurl+softpath, creds, cache);
-			if (doc.getStatus() < 200 || doc.getStatus() >= 300) {
+			ReturnUnknown doc = viewRetrieveImg(view, servicesurl+softpath, creds, cache, getBlobSink(restrictions));
+			if (doc == null) {
+				throw new UnderlyingStorageException("Does not exist ", 404, softpath);
+			}
+			if (doc.isStreamed()) {
+				// Already sent on to the caller's sink
+				out.put("streamed", true);
+			} else if (doc.getStatus() < 200 || doc.getStatus() >= 300) {
 				throw new UnderlyingStorageException("Does not exist ", doc.getStatus(), softpath);
+			} else {
+				out.put("getByteBody", doc.getBytes());
 			}
-			
-			out.put("getByteBody", doc.getBytes()); // REM: We're returning an array of bytes here and we probably should be using a stream of bytes
 			out.put("contenttype", doc.getContentType());
 			out.put("contentdisposition", doc.getContentDisposition());
 
@@ -153,6 +162,13 @@ public class BlobStorage extends GenericStorage {
 		return out;
 	}	
 	
+	private BlobSink getBlobSink(JSONObject restrictions) {
+		if (restrictions == null)
+			return null;
+		Object sink = restrictions.opt(BlobSink.RESTRICTION_KEY);
+		return (sink instanceof BlobSink) ? (BlobSink) sink : null;
+	}
+
 	public JSONObject retrieveJSON(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache,String filePath, JSONObject restrictions) throws ExistException,
 	UnimplementedException, UnderlyingStorageException {
 		JSONObject result = null;
@@ -243,12 +259,19 @@ public class BlobStorage extends GenericStorage {
 
 		ReturnedURL url = null;
 		try {
-			byte[] bitten = (byte[]) jsonObject.get("getbyteBody");
 			String uploadname = jsonObject.getString("fileName");
-			String type = jsonObject.getString("contentType");
+			String type = jsonObject.optString("contentType", null);
 			String path = r.getServicesURL();
-			url = conn.getStringURL(RequestMethod.POST, path, bitten,
-					uploadname, type, creds, cache);
+			Object stream = jsonObject.opt("getbyteStream");
+			if (stream instanceof InputStream) {
+				// Pass the upload straight through rather than holding it in memory
+				url = conn.getStreamURL(RequestMethod.POST, path, (InputStream) stream,
+						uploadname, type, creds, cache);
+			} else {
+				byte[] bitten = (byte[]) jsonObject.get("getbyteBody");
+				url = conn.getStringURL(RequestMethod.POST, path, bitten,
+						uploadname, type, creds, cache);
+			}
 		} catch (ConnectionException e) {
 			throw new UnderlyingStorageException(e.getMessage(), e.getStatus(),
 					e.getUrl(), e);
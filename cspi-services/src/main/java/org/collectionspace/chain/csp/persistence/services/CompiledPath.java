@@ -0,0 +1,209 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.InvalidXPathException;
+import org.dom4j.XPath;
+
+/**
+ * A services tag from the config (an XPath, usually just a child element name or a few of them separated
+ * by slashes, or a ;context;condition;value;extract spec) compiled once, rather than reparsed for every
+ * field of every record read.
+ *
+ * Paths of plain element names are followed by looking at children directly. Within a conversion, each
+ * element's children are sorted by name the first time they're looked at, so reading a record with many
+ * fields walks each element once. Anything else is compiled with dom4j, except for expressions with
+ * prefixes, whose meaning depends on the document, which are evaluated as before.
+ *
+ */
+class CompiledPath {
+	private static final int MAX_PATHS=10000;
+	private static final ConcurrentMap<String,CompiledPath> paths=new ConcurrentHashMap<String,CompiledPath>();
+
+	/* Children of each element seen so far in the current conversion, by name */
+	static class Index {
+		private final Map<Element,Map<String,List<Element>>> children=new IdentityHashMap<Element,Map<String,List<Element>>>();
+
+		List<Element> children(Element parent,String name) {
+			Map<String,List<Element>> named=children.get(parent);
+			if(named==null) {
+				named=new HashMap<String,List<Element>>();
+				for(Object o : parent.elements()) {
+					Element child=(Element)o;
+					// Unprefixed names in XPath only match elements in no namespace
+					if(!"".equals(child.getNamespaceURI()))
+						continue;
+					List<Element> same=named.get(child.getName());
+					if(same==null) {
+						same=new ArrayList<Element>(1);
+						named.put(child.getName(),same);
+					}
+					same.add(child);
+				}
+				children.put(parent,named);
+			}
+			List<Element> out=named.get(name);
+			return out==null?Collections.<Element>emptyList():out;
+		}
+	}
+
+	private static final ThreadLocal<Index> current=new ThreadLocal<Index>();
+
+	/* Used for the duration of a conversion; returns what to restore afterwards */
+	static Index bind() {
+		Index previous=current.get();
+		current.set(new Index());
+		return previous;
+	}
+
+	static void unbind(Index previous) {
+		if(previous==null)
+			current.remove();
+		else
+			current.set(previous);
+	}
+
+	private final String spec;
+	private final String[] steps; // Element names, or null if not that simple
+	private final XPath xpath; // Compiled, if not that simple
+	private final CompiledPath context,condition,extract; // For ;context;condition;value;extract
+	private final String value;
+
+	private CompiledPath(String spec) {
+		this.spec=spec;
+		String[] steps=null;
+		XPath xpath=null;
+		CompiledPath context=null,condition=null,extract=null;
+		String value=null;
+		if(spec!=null && spec.length()>0 && spec.charAt(0)==';') {
+			String[] parts=spec.split(";");
+			context=get(parts[1]);
+			condition=get(parts[2]);
+			value=parts[3];
+			extract=get(parts[4]);
+		} else if(spec!=null) {
+			steps=spec.split("/",-1);
+			for(String step : steps) {
+				if(!isName(step)) {
+					steps=null;
+					break;
+				}
+			}
+			if(steps==null && spec.indexOf(':')==-1) {
+				try {
+					xpath=DocumentHelper.createXPath(spec);
+				} catch(InvalidXPathException e) {
+					// Leave it to fail as it always has, when used
+				}
+			}
+		}
+		this.steps=steps;
+		this.xpath=xpath;
+		this.context=context;
+		this.condition=condition;
+		this.value=value;
+		this.extract=extract;
+	}
+
+	private static boolean isName(String step) {
+		if(step.length()==0)
+			return false;
+		char first=step.charAt(0);
+		if(!Character.isLetter(first) && first!='_')
+			return false;
+		for(int i=1;i<step.length();i++) {
+			char c=step.charAt(i);
+			if(!Character.isLetterOrDigit(c) && c!='_' && c!='-' && c!='.')
+				return false;
+		}
+		return true;
+	}
+
+	static CompiledPath get(String spec) {
+		if(spec==null)
+			return new CompiledPath(null);
+		CompiledPath out=paths.get(spec);
+		if(out==null) {
+			out=new CompiledPath(spec);
+			if(paths.size()<MAX_PATHS)
+				paths.put(spec,out);
+		}
+		return out;
+	}
+
+	/**
+	 * What root.selectNodes(spec) would give
+	 */
+	List<?> select(Element root) {
+		if(context!=null)
+			return selectComplex(root);
+		if(steps!=null)
+			return selectSteps(root);
+		if(xpath!=null)
+			return xpath.selectNodes(root);
+		return root.selectNodes(spec);
+	}
+
+	private List<Element> children(Element parent,String name) {
+		Index index=current.get();
+		if(index!=null)
+			return index.children(parent,name);
+		List<Element> out=new ArrayList<Element>();
+		for(Object o : parent.elements()) {
+			Element child=(Element)o;
+			if(name.equals(child.getName()) && "".equals(child.getNamespaceURI()))
+				out.add(child);
+		}
+		return out;
+	}
+
+	private List<Element> selectSteps(Element root) {
+		List<Element> found=children(root,steps[0]);
+		for(int i=1;i<steps.length && !found.isEmpty();i++) {
+			List<Element> next=new ArrayList<Element>();
+			for(Element el : found)
+				next.addAll(children(el,steps[i]));
+			found=next;
+		}
+		return found;
+	}
+
+	private List<Object> selectComplex(Element root) {
+		List<Object> out=new ArrayList<Object>();
+		for(Object n : context.select(root)) {
+			if(!(n instanceof Element))
+				continue;
+			Element candidate=(Element)n;
+			boolean match=false;
+			for(Object n2 : condition.select(candidate)) {
+				if(!(n2 instanceof Element))
+					continue;
+				if(value.equals(((Element)n2).getText()))
+					match=true;
+			}
+			if(!match)
+				continue;
+			for(Object n3 : extract.select(candidate)) {
+				if(!(n3 instanceof Element))
+					continue;
+				out.add(n3);
+			}
+		}
+		return out;
+	}
+}
@@ -0,0 +1,72 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services;
+
+import org.collectionspace.chain.csp.persistence.services.connection.ServicesConnection;
+import org.collectionspace.csp.api.core.CSPRequestCache;
+import org.collectionspace.csp.api.core.CSPRequestCredentials;
+import org.collectionspace.csp.api.persistence.ExistException;
+import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
+import org.collectionspace.csp.api.persistence.UnimplementedException;
+import org.collectionspace.csp.helper.persistence.ContextualisedStorage;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Read only view of the services connection pool statistics, at connectionpool/
+ *
+ */
+public class ConnectionPoolStorage implements ContextualisedStorage {
+	private ServicesConnection conn;
+
+	ConnectionPoolStorage(ServicesConnection conn) { this.conn=conn; }
+
+	public JSONObject retrieveJSON(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache, String path, JSONObject restrictions)
+		throws ExistException, UnimplementedException, UnderlyingStorageException {
+		try {
+			return conn.getPoolStats();
+		} catch (JSONException e) {
+			throw new UnderlyingStorageException("Could not build connection pool statistics",e);
+		}
+	}
+
+	@Override
+	public String autocreateJSON(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache, String filePath, JSONObject jsonObject, JSONObject restrictions)
+			throws ExistException, UnimplementedException, UnderlyingStorageException {
+		throw new UnimplementedException("connectionpool uses get only");
+	}
+
+	public void createJSON(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache,String filePath,JSONObject jsonObject)
+		throws ExistException, UnimplementedException, UnderlyingStorageException {
+		throw new UnimplementedException("connectionpool uses get only");
+	}
+
+	public void deleteJSON(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache,String filePath)
+		throws ExistException, UnimplementedException, UnderlyingStorageException {
+		throw new UnimplementedException("connectionpool uses get only");
+	}
+
+	public JSONObject getPathsJSON(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache,String rootPath, JSONObject restrictions)
+		throws ExistException, UnimplementedException, UnderlyingStorageException {
+		throw new UnimplementedException("connectionpool uses get only");
+	}
+
+	public String[] getPaths(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache,String rootPath, JSONObject restrictions)
+		throws ExistException, UnimplementedException, UnderlyingStorageException {
+		throw new UnimplementedException("connectionpool uses get only");
+	}
+
+	public void updateJSON(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache,String filePath, JSONObject jsonObject, JSONObject restrictions)
+		throws ExistException, UnimplementedException, UnderlyingStorageException {
+		throw new UnimplementedException("connectionpool uses get only");
+	}
+
+	public void transitionWorkflowJSON(ContextualisedStorage root, CSPRequestCredentials creds, CSPRequestCache cache,
+			String filePath, String workflowTransition) throws ExistException, UnimplementedException, UnderlyingStorageException {
+		throw new UnimplementedException("connectionpool uses get only");
+	}
+}
@@ -14,9 +14,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.StringUtils;
 import org.collectionspace.chain.csp.config.ConfigException;
@@ -39,8 +42,9 @@ import org.collectionspace.csp.api.core.CSPRequestCredentials;
 import org.collectionspace.csp.api.persistence.ExistException;
 import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
 import org.collectionspace.csp.api.persistence.UnimplementedException;
+import org.collectionspace.csp.helper.core.RequestCache;
+import org.collectionspace.csp.helper.core.RequestTrace;
 import org.collectionspace.csp.helper.persistence.ContextualisedStorage;
-import org.collectionspace.services.common.api.RefName;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.DocumentFactory;
@@ -66,6 +70,7 @@ public class GenericStorage  implements ContextualisedStorage {
 	public final static String SEARCH_ALL_GROUP = "searchAllGroup";
 
 	private static final Logger log=LoggerFactory.getLogger(GenericStorage.class);
+	private static final long FANOUT_TIMEOUT_SECONDS=60;
 	
 	protected ServicesConnection conn;
 	protected Record r;
@@ -261,6 +266,27 @@ public class GenericStorage  implements ContextualisedStorage {
 			path = "/"+path;
 		}
 		cache.setCached(getClass(),new String[]{"glean",path,key},value);
+		if(shareGleanedValues())
+			GleanCache.setGleanedValue(getTenant(),path,key,value,getGleanStart(cache));
+	}
+
+	/**
+	 * Note the shared glean cache's generation before asking the services for a list whose values
+	 * will be gleaned. Only the first mark in a request counts, so anything this request gleans is
+	 * dropped from the shared cache if a record was written since it began asking (see GleanCache).
+	 * @param cache
+	 */
+	protected void markGleanStart(CSPRequestCache cache) {
+		getGleanStart(cache);
+	}
+
+	private long getGleanStart(CSPRequestCache cache) {
+		Long out=(Long)cache.getCached(GleanCache.class,new String[]{"generation"});
+		if(out==null) {
+			out=GleanCache.getGeneration(getTenant());
+			cache.setCached(GleanCache.class,new String[]{"generation"},out);
+		}
+		return out;
 	}
 
 	/**
@@ -274,7 +300,49 @@ public class GenericStorage  implements ContextualisedStorage {
 		if(!path.startsWith("/")){
 			path = "/"+path;
 		}
-		return (String)cache.getCached(getClass(),new String[]{"glean",path,key});
+		String value=(String)cache.getCached(getClass(),new String[]{"glean",path,key});
+		if(value!=null) {
+			RequestTrace.count(cache,"glean-hit");
+			return value;
+		}
+		if(shareGleanedValues()) {
+			// Fall back to what earlier requests gleaned
+			value=GleanCache.getGleanedValue(getTenant(),path,key);
+			if(value!=null) {
+				RequestTrace.count(cache,"glean-shared-hit");
+				cache.setCached(getClass(),new String[]{"glean",path,key},value);
+				return value;
+			}
+		}
+		RequestTrace.count(cache,"glean-miss");
+		return value;
+	}
+
+	/**
+	 * Forget gleaned values for a record which has been written, both in this request
+	 * and in the store shared between requests
+	 * @param cache
+	 * @param path The path to the object on the service layer
+	 */
+	protected void invalidateGleanedValues(CSPRequestCache cache,String path) {
+		if(!path.startsWith("/")){
+			path = "/"+path;
+		}
+		cache.removeCached(getClass(),new String[]{"fanout",path});
+		GleanCache.invalidate(getTenant(),path);
+	}
+
+	/**
+	 * Whether gleaned values may be shared with later requests. Storage whose list
+	 * data is account-specific should say no.
+	 * @return
+	 */
+	protected boolean shareGleanedValues() {
+		return true;
+	}
+
+	protected String getTenant() {
+		return r.getSpec().getTenantID();
 	}
 
 	/**
@@ -379,6 +447,100 @@ public class GenericStorage  implements ContextualisedStorage {
 		if(!extra.equals("")){
 			summarylistname = extra+"_";
 		}
+		Set<String> to_get=gleanMiniView(cache, cachelistitem, summarylistname, out, summarylist,
+				view_good, xxx_view_deurn, view_search_optional, view_merge, view_useCsid);
+		
+		// Do a full request only if values in list of fields returned != list from cspace-config
+		if(to_get.size()>0) {
+			if(log.isInfoEnabled()) {
+				StringBuilder sb = new StringBuilder();
+				sb.append("Fanning out on cachelistitem: [");
+				sb.append(cachelistitem);
+				sb.append("] Fields: [");
+				for(String fieldname : to_get) {
+					sb.append(fieldname);
+					sb.append(" ");
+				}
+				sb.append("]");
+				log.info(sb.toString());
+			}
+			JSONObject data=fanOutRetrieveJSON(cache, creds, cachelistitem, summarylistname, thisr,
+					view_good, xxx_view_deurn, view_search_optional, view_merge, view_useCsid);
+			for(String fieldname : to_get) {
+				String good = view_good.get(fieldname);
+				String value = null;
+				if(view_merge.containsKey(fieldname)){
+					List<String> mergeids = view_merge.get(fieldname);
+					for(String id : mergeids){
+						if(id == null)
+							continue;
+						value = JSONUtils.checkKey(data, id);
+						//iterate for merged ids
+						if(value!=null && value !=""){
+							//if find value stop
+							break;
+						}
+					}
+				} else if(view_useCsid.containsKey(fieldname)){
+					List<String> useStrings = view_useCsid.get(fieldname);
+					String useField = useStrings.get(0);
+					String useCsidPattern = useStrings.get(1);
+					String useCsid = JSONUtils.checkKey(data, useField);
+					if(useCsid!=null) {
+						value = XmlJsonConversion.csid_value(useCsid,useCsidPattern,conn.getIMSBase());
+					}
+				} else {
+					value = JSONUtils.checkKey(data, good);
+				}
+				//this might work with repeat objects
+				if(value != null){
+					String vkey=fieldname;
+					if(xxx_view_deurn.contains(good))
+						value=xxx_deurn(value);
+				
+					if(vkey.startsWith(summarylistname)){
+						String name = vkey.substring(summarylistname.length());
+						summarylist.put(name, value);
+					}
+					else{
+						out.put(vkey,value);
+					}
+				}
+				else{
+					String vkey=fieldname;
+					if(vkey.startsWith(summarylistname)){
+						String name = vkey.substring(summarylistname.length());
+						summarylist.put(name, "");
+					}
+					else{
+						out.put(vkey,"");						
+					}
+				}
+			}
+		}
+
+		if(summarylist.length()>0){
+			out.put("summarylist", summarylist);
+		}
+		return out;
+	}
+	
+	/**
+	 * Fill as much of a mini view as possible from gleaned values
+	 * @param cache
+	 * @param cachelistitem
+	 * @param summarylistname
+	 * @param out - receives the top level values
+	 * @param summarylist - receives the summarylist values
+	 * @return the fields that could not be gleaned and so need a full request
+	 * @throws UnderlyingStorageException
+	 * @throws JSONException
+	 */
+	private Set<String> gleanMiniView(CSPRequestCache cache, String cachelistitem, String summarylistname,
+			JSONObject out, JSONObject summarylist,
+			Map<String, String> view_good, Set<String> xxx_view_deurn, Set<String> view_search_optional,
+			Map<String, List<String>> view_merge, Map<String, List<String>> view_useCsid) 
+					throws UnderlyingStorageException, JSONException {
 		Set<String> to_get=new HashSet<String>(view_good.keySet());
 		// Try to fullfil from gleaned info
 		//gleaned is info that everytime we read a record we cache certain parts of it
@@ -466,79 +628,126 @@ public class GenericStorage  implements ContextualisedStorage {
 				to_get.remove("number");
 			}
 		}
+		return to_get;
+	}
+
+	/**
+	 * Get the full record behind a mini view that could not be filled from gleaned values.
+	 * The first item of a list response to need this also fetches, in parallel, every other
+	 * item of the same record type in that list which is going to need it, so a page of
+	 * search results costs one round of services calls rather than one call per row.
+	 * @param cache
+	 * @param creds
+	 * @param cachelistitem
+	 * @param summarylistname
+	 * @param thisr
+	 * @return
+	 * @throws ExistException
+	 * @throws UnimplementedException
+	 * @throws UnderlyingStorageException
+	 * @throws JSONException
+	 */
+	protected JSONObject fanOutRetrieveJSON(CSPRequestCache cache, CSPRequestCredentials creds, String cachelistitem, String summarylistname, Record thisr,
+			Map<String, String> view_good, Set<String> xxx_view_deurn, Set<String> view_search_optional,
+			Map<String, List<String>> view_merge, Map<String, List<String>> view_useCsid) 
+					throws ExistException, UnimplementedException, UnderlyingStorageException, JSONException {
+		JSONObject data=(JSONObject)cache.removeCached(getClass(),new String[]{"fanout",cachelistitem});
+		if(data!=null) {
+			RequestTrace.count(cache,"fanout-hit");
+			return data;
+		}
 		
-		// Do a full request only if values in list of fields returned != list from cspace-config
-		if(to_get.size()>0) {
-			if(log.isInfoEnabled()) {
-				StringBuilder sb = new StringBuilder();
-				sb.append("Fanning out on cachelistitem: [");
-				sb.append(cachelistitem);
-				sb.append("] Fields: [");
-				for(String fieldname : to_get) {
-					sb.append(fieldname);
-					sb.append(" ");
-				}
-				sb.append("]");
-				log.info(sb.toString());
+		Map<String,Future<JSONObject>> pending=new LinkedHashMap<String,Future<JSONObject>>();
+		@SuppressWarnings("unchecked")
+		List<String> batch=(List<String>)cache.getCached(getClass(),new String[]{"fanoutbatch",cachelistitem});
+		if(batch!=null) {
+			String prefix="/"+thisr.getServicesURL()+"/";
+			List<String> attempted=new ArrayList<String>();
+			for(String sibling : batch) {
+				// Other record types (eg in refObjs) use other glean maps: they batch on their own turn
+				if(!sibling.startsWith(prefix))
+					continue;
+				attempted.add(sibling);
+				if(sibling.equals(cachelistitem))
+					continue;
+				Set<String> missing=gleanMiniView(cache, sibling, summarylistname, new JSONObject(), new JSONObject(),
+						view_good, xxx_view_deurn, view_search_optional, view_merge, view_useCsid);
+				if(missing.size()>0)
+					pending.put(sibling,conn.getFanOutExecutor().submit(new FanOutRetrieve(creds,sibling,thisr,RequestTrace.get(cache))));
 			}
-			JSONObject data=simpleRetrieveJSON(creds,cache,null,cachelistitem,thisr);
-			for(String fieldname : to_get) {
-				String good = view_good.get(fieldname);
-				String value = null;
-				if(view_merge.containsKey(fieldname)){
-					List<String> mergeids = view_merge.get(fieldname);
-					for(String id : mergeids){
-						if(id == null)
-							continue;
-						value = JSONUtils.checkKey(data, id);
-						//iterate for merged ids
-						if(value!=null && value !=""){
-							//if find value stop
-							break;
-						}
-					}
-				} else if(view_useCsid.containsKey(fieldname)){
-					List<String> useStrings = view_useCsid.get(fieldname);
-					String useField = useStrings.get(0);
-					String useCsidPattern = useStrings.get(1);
-					String useCsid = JSONUtils.checkKey(data, useField);
-					if(useCsid!=null) {
-						value = XmlJsonConversion.csid_value(useCsid,useCsidPattern,conn.getIMSBase());
-					}
-				} else {
-					value = JSONUtils.checkKey(data, good);
-				}
-				//this might work with repeat objects
-				if(value != null){
-					String vkey=fieldname;
-					if(xxx_view_deurn.contains(good))
-						value=xxx_deurn(value);
-				
-					if(vkey.startsWith(summarylistname)){
-						String name = vkey.substring(summarylistname.length());
-						summarylist.put(name, value);
-					}
-					else{
-						out.put(vkey,value);
-					}
-				}
-				else{
-					String vkey=fieldname;
-					if(vkey.startsWith(summarylistname)){
-						String name = vkey.substring(summarylistname.length());
-						summarylist.put(name, "");
-					}
-					else{
-						out.put(vkey,"");						
-					}
-				}
+			batch.removeAll(attempted);
+			if(pending.size()>0 && log.isInfoEnabled())
+				log.info("Fanning out on "+pending.size()+" more items alongside cachelistitem: ["+cachelistitem+"]");
+		}
+		boolean fetched=false;
+		try {
+			// Fetch our own item on this thread so any error is reported exactly as before
+			JSONObject out=simpleRetrieveJSON(creds,cache,null,cachelistitem,thisr);
+			fetched=true;
+			return out;
+		} finally {
+			if(fetched) {
+				for(Map.Entry<String,JSONObject> e : ServicesConnection.awaitFanOut(pending,FANOUT_TIMEOUT_SECONDS*1000).entrySet())
+					cache.setCached(getClass(),new String[]{"fanout",e.getKey()},e.getValue());
+			} else {
+				// This request is failing anyway, so don't hold it up for the others
+				ServicesConnection.cancelFanOut(pending);
 			}
 		}
+	}
 
-		if(summarylist.length()>0){
-			out.put("summarylist", summarylist);
+	/**
+	 * Remember the members of a list response so a fan-out on any one of them can be batched
+	 * with the others (see fanOutRetrieveJSON)
+	 * @param cache
+	 * @param gleannames
+	 */
+	protected void setFanOutBatch(CSPRequestCache cache, List<String> gleannames) {
+		List<String> batch=new ArrayList<String>();
+		for(String path : gleannames) {
+			if(path==null)
+				continue;
+			if(!path.startsWith("/")){
+				path = "/"+path;
+			}
+			batch.add(path);
+		}
+		for(String path : batch) {
+			cache.setCached(getClass(),new String[]{"fanoutbatch",path},batch);
+		}
+	}
+
+	/**
+	 * A simpleRetrieveJSON run on the fan-out pool. The request cache is not thread-safe
+	 * so each one gets its own, sharing only the request's trace.
+	 */
+	private class FanOutRetrieve implements Callable<JSONObject> {
+		private CSPRequestCredentials creds;
+		private String path;
+		private Record thisr;
+		private RequestTrace trace;
+
+		FanOutRetrieve(CSPRequestCredentials creds,String path,Record thisr,RequestTrace trace) {
+			this.creds=creds;
+			this.path=path;
+			this.thisr=thisr;
+			this.trace=trace;
+		}
+
+		public JSONObject call() throws Exception {
+			CSPRequestCache cache=new RequestCache();
+			if(trace==null)
+				return simpleRetrieveJSON(creds,cache,null,path,thisr);
+			RequestTrace.set(cache,trace);
+			RequestTrace previous=RequestTrace.bind(trace);
+			RequestTrace.Span span=trace.start("fanout",path);
+			try {
+				return simpleRetrieveJSON(creds,cache,null,path,thisr);
+			} finally {
+				span.end();
+				RequestTrace.unbind(previous);
+			}
 		}
-		return out;
 	}
 	
 	public JSONObject miniViewRetrieveJSON(CSPRequestCache cache, CSPRequestCredentials creds,String filePath,String extra, String cachelistitem, Record thisr) 
@@ -1129,6 +1338,7 @@ public class GenericStorage  implements ContextualisedStorage {
 				ReturnedDocument docm = conn.getXMLDocument(RequestMethod.PUT, serviceurl+filePath, doc, creds, cache);
 				status = docm.getStatus();
 			}
+			invalidateGleanedValues(cache,serviceurl+filePath);
 			
 			//XXX Completely untested subrecord update
 			for(FieldSet fs : thisr.getAllSubRecords("PUT")){
@@ -1621,6 +1831,7 @@ public class GenericStorage  implements ContextualisedStorage {
 	UnimplementedException, UnderlyingStorageException {
 		try {
 			int status=conn.getNone(RequestMethod.DELETE,serviceurl+filePath,null,creds,cache);
+			invalidateGleanedValues(cache,serviceurl+filePath);
 			if(status>299 || status<200) // XXX CSPACE-73, should be 404
 				throw new UnderlyingStorageException("Service layer exception",status,serviceurl+filePath);
 		} catch (ConnectionException e) {
@@ -1634,6 +1845,7 @@ public class GenericStorage  implements ContextualisedStorage {
 		try {
 			String url = serviceurl+filePath+WORKFLOW_SUBRESOURCE+"/"+workflowTransition;
 			int status = conn.getNone(RequestMethod.PUT, url, null, creds, cache);
+			invalidateGleanedValues(cache,serviceurl+filePath);
 			if(status>299 || status<200)
 				throw new UnderlyingStorageException("Bad response ",status,serviceurl+filePath);
 		}
@@ -2011,6 +2223,7 @@ public class GenericStorage  implements ContextualisedStorage {
 	 */
 	// CSPACE-5988: Allow view_map to be passed as a parameter, instead of using the instance variable.
 	protected JSONObject getRepeatableHardListView(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache,String path, String listItemPath, String csidfield, Boolean fullcsid, Map<String, String> view_map) throws ConnectionException, JSONException {
+		markGleanStart(cache);
 		String[] listItemPathElements = listItemPath.split("/");
 		
 		if (listItemPathElements.length != 2) {
@@ -2052,6 +2265,7 @@ public class GenericStorage  implements ContextualisedStorage {
 		else{
 			String[] allfields = null;
 			String fieldsReturnedName = r.getServicesFieldsPath();
+			List<String> gleannames=new ArrayList<String>();
 			for(Node node : nodes) {
 				if(listItemNodeName.equals(node.getName())){
 					List<Node> fields=node.selectNodes("*");
@@ -2093,6 +2307,7 @@ public class GenericStorage  implements ContextualisedStorage {
 						}
 					}
 					listitems.add(test);
+					gleannames.add(csidfield.equals("uri")?csid:urlPlusCSID);
 					if(allfields==null || allfields.length==0) {
 						if(log.isWarnEnabled()) {
 							log.warn("getRepeatableHardListView(): Missing fieldsReturned value - may cause fan-out!\nRecord:"
@@ -2119,6 +2334,7 @@ public class GenericStorage  implements ContextualisedStorage {
 					pagination.put(node.getName(), node.getText());
 				}
 			}
+			setFanOutBatch(cache,gleannames);
 		}
 		out.put("pagination", pagination);
 		out.put("listItems", listitems);
@@ -2144,6 +2360,7 @@ public class GenericStorage  implements ContextualisedStorage {
 	 * @throws JSONException
 	 */
 	protected JSONObject getHardListView(CSPRequestCredentials creds,CSPRequestCache cache,String path, String listItemPath, String csidfield, Boolean fullcsid) throws ConnectionException, JSONException {
+		markGleanStart(cache);
 		String[] listItemPathElements = listItemPath.split("/");
 		
 		if (listItemPathElements.length != 2) {
@@ -2183,6 +2400,7 @@ public class GenericStorage  implements ContextualisedStorage {
 		else{
 			String[] allfields = null;
 			String fieldsReturnedName = r.getServicesFieldsPath();
+			List<String> gleannames=new ArrayList<String>();
 			for(Node node : nodes) {
 				if(listItemNodeName.equals(node.getName())){
 					List<Node> fields=node.selectNodes("*");
@@ -2220,6 +2438,7 @@ public class GenericStorage  implements ContextualisedStorage {
 							}
 						}
 					}
+					gleannames.add(urlPlusCSID);
 					if(allfields==null || allfields.length==0) {
 						if(log.isWarnEnabled()) {
 							log.warn("getHardListView(): Missing fieldsReturned value - may cause fan-out!\nRecord:"
@@ -2241,6 +2460,7 @@ public class GenericStorage  implements ContextualisedStorage {
 					pagination.put(node.getName(), node.getText());
 				}
 			}
+			setFanOutBatch(cache,gleannames);
 		}
 		out.put("pagination", pagination);
 		out.put("listItems", listitems.toArray(new String[0]));
@@ -0,0 +1,141 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in 
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+import org.collectionspace.csp.helper.core.ResponseCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cross-request store for gleaned values. The per-request CSPRequestCache still comes first;
+ * this sits behind it so that a later request can reuse values an earlier one gleaned.
+ * 
+ * One ehcache element per tenant and services path, holding all the gleaned fields for
+ * that record, so a write can evict the whole record at once. Size and TTL are set in
+ * ehcache.xml.
+ * 
+ * Each tenant has a generation, bumped by every invalidation. Values are stored along with the
+ * generation seen before the services were asked for them, and are dropped if it has moved on
+ * since, so a list fetched before a write can't put back what the write invalidated.
+ * 
+ * Authority items are listed both under their vocabulary and across all vocabularies (_ALL_), and
+ * written under urn:cspace:name() paths, so their keys leave out the vocabulary: the item's csid is
+ * enough.
+ * 
+ */
+public class GleanCache {
+	private static final Logger log=LoggerFactory.getLogger(GleanCache.class);
+	private static final String ITEMS="/items/";
+	private static final ConcurrentMap<String,AtomicLong> generations=new ConcurrentHashMap<String,AtomicLong>();
+
+	private static Ehcache getCache() {
+		try {
+			return ResponseCache.getCache(ResponseCache.GLEANED_CACHE);
+		} catch (IllegalStateException ise) {
+			log.warn("GleanCache - '"+ResponseCache.GLEANED_CACHE+"' cache not active: "+ise.getLocalizedMessage());
+		} catch (CacheException ce) {
+			log.warn("GleanCache - '"+ResponseCache.GLEANED_CACHE+"' cache exception: "+ce.getLocalizedMessage());
+		}
+		return null;
+	}
+
+	static String key(String tenant,String path) {
+		if(!path.startsWith("/"))
+			path="/"+path;
+		int qp=path.indexOf('?');
+		if(qp!=-1)
+			path=path.substring(0,qp);
+		// /personauthorities/{vocab}/items/{csid} -> /personauthorities/*/items/{csid}
+		int items=path.indexOf(ITEMS);
+		int vocab=path.indexOf('/',1);
+		if(items!=-1 && vocab!=-1 && vocab<items && path.indexOf('/',items+ITEMS.length())==-1)
+			path=path.substring(0,vocab)+"/*"+path.substring(items);
+		return tenant+":"+path;
+	}
+
+	private static AtomicLong generation(String tenant) {
+		AtomicLong out=generations.get(tenant);
+		if(out==null) {
+			AtomicLong created=new AtomicLong();
+			out=generations.putIfAbsent(tenant,created);
+			if(out==null)
+				out=created;
+		}
+		return out;
+	}
+
+	/**
+	 * The tenant's generation, to be noted before asking the services for anything to be gleaned
+	 * @param tenant
+	 * @return
+	 */
+	public static long getGeneration(String tenant) {
+		return generation(tenant).get();
+	}
+
+	/**
+	 * @param tenant
+	 * @param path
+	 * @param key
+	 * @param value
+	 * @param since the generation noted before the services were asked for value
+	 */
+	@SuppressWarnings("unchecked")
+	public static void setGleanedValue(String tenant,String path,String key,String value,long since) {
+		Ehcache cache=getCache();
+		if(cache==null || value==null)
+			return;
+		AtomicLong generation=generation(tenant);
+		if(generation.get()!=since)
+			return;
+		String k=key(tenant,path);
+		Element el=cache.get(k);
+		if(el==null) {
+			el=new Element(k,new ConcurrentHashMap<String,String>());
+			Element existing=cache.putIfAbsent(el);
+			if(existing!=null)
+				el=existing;
+		}
+		((Map<String,String>)el.getObjectValue()).put(key,value);
+		// An invalidation may have come between the check and the put
+		if(generation.get()!=since)
+			cache.remove(k);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static String getGleanedValue(String tenant,String path,String key) {
+		Ehcache cache=getCache();
+		if(cache==null)
+			return null;
+		Element el=cache.get(key(tenant,path));
+		if(el==null)
+			return null;
+		return ((Map<String,String>)el.getObjectValue()).get(key);
+	}
+
+	/**
+	 * Drop everything gleaned for a record, eg because it has just been written.
+	 * @param tenant
+	 * @param path - services path of the record, query string is ignored
+	 */
+	public static void invalidate(String tenant,String path) {
+		Ehcache cache=getCache();
+		if(cache==null || path==null)
+			return;
+		generation(tenant).incrementAndGet();
+		cache.remove(key(tenant,path));
+	}
+}
@@ -51,6 +51,7 @@ public class RecordStorage extends GenericStorage {
 	@SuppressWarnings("unchecked")
 	public String[] getPaths(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache,String rootPath,JSONObject restrictions) throws ExistException, UnimplementedException, UnderlyingStorageException {
 		try {
+			markGleanStart(cache);
 			Document list=null;
 			List<String> out=new ArrayList<String>();
 
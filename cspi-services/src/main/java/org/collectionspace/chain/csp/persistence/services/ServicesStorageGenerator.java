@@ -14,6 +14,7 @@ import org.collectionspace.chain.csp.config.RuleSet;
 import org.collectionspace.chain.csp.config.RuleTarget;
 import org.collectionspace.chain.csp.inner.CoreConfig;
 import org.collectionspace.chain.csp.persistence.services.authorization.AuthorizationStorage;
+import org.collectionspace.chain.csp.persistence.services.connection.ConnectionPoolConfig;
 import org.collectionspace.chain.csp.persistence.services.connection.ServicesConnection;
 import org.collectionspace.chain.csp.persistence.services.relation.ServicesRelationStorage;
 import org.collectionspace.chain.csp.persistence.services.user.UserStorage;
@@ -21,6 +22,7 @@ import org.collectionspace.chain.csp.persistence.services.vocab.ConfiguredVocabS
 import org.collectionspace.chain.csp.schema.AdminData;
 import org.collectionspace.chain.csp.schema.Record;
 import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.chain.csp.webui.authorities.TermLoader;
 import org.collectionspace.chain.csp.webui.main.WebUI;
 import org.collectionspace.chain.csp.webui.misc.WebReset;
 import org.collectionspace.csp.api.container.CSPManager;
@@ -44,9 +46,12 @@ public class ServicesStorageGenerator extends SplittingStorage implements Contex
 	public static String SECTIONED="org.collectionspace.app.config.spec";
 	public static String SECTION_PREFIX="org.collectionspace.app.config.persistence.service.";
 	public static String SERVICE_ROOT=SECTION_PREFIX+"service";
+	// Overrides the services url in the config, eg to point tests at a stand-in
+	public static final String URL_PROPERTY="cspace.services.url";
 	private String base_url,ims_url;
 	private CSPContext ctx;
 	private TenantSpec tenantSpec;
+	private ConnectionPoolConfig poolConfig;
 	
 	@Override
 	public Storage getStorage(CSPRequestCredentials credentials,CSPRequestCache cache) {
@@ -65,14 +70,21 @@ public class ServicesStorageGenerator extends SplittingStorage implements Contex
 		String adminPass = ad.getAuthPass();
 		//request.getSession().setValue(UISession.USERID,ad.getAuthUser());
 		//request.getSession().setValue(UISession.PASSWORD,ad.getAuthPass());
-		CSPRequestCredentials creds = this.createCredentials();
+		final CSPRequestCredentials creds = this.createCredentials();
 		creds.setCredential(CRED_USERID,spec.getAdminData().getAuthUser());
 		creds.setCredential(CRED_PASSWORD,spec.getAdminData().getAuthPass());
+		// Terms are sent several at a time, each thread with a cache of its own
+		TermLoader.StorageSource workers = new TermLoader.StorageSource() {
+			@Override
+			public Storage getStorage() {
+				return ServicesStorageGenerator.this.getStorage(creds, new RequestCache());
+			}
+		};
 
 		WebReset webReset = new WebReset(false, false);
 		webReset.configure((WebUI) cspManager.getUI(""), spec);
 		try {
-			webReset.run(getStorage(creds, new RequestCache()), null, new String[0], false);
+			webReset.run(getStorage(creds, new RequestCache()), workers, null, new String[0], false);
 		} catch (UIException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -81,7 +93,7 @@ public class ServicesStorageGenerator extends SplittingStorage implements Contex
 	
 	private void real_init(CSPManager cspManager, Spec spec, boolean forXsdGeneration) throws CSPDependencyException {
 		try {
-			ServicesConnection conn=new ServicesConnection(base_url,ims_url);
+			ServicesConnection conn=new ServicesConnection(base_url,ims_url,poolConfig!=null?poolConfig:new ConnectionPoolConfig());
 			for(Record r : spec.getAllRecords()) {
 				if(r.isType("blob") || r.isType("report"))
 					addChild(r.getID(),new BlobStorage(spec.getRecord(r.getID()),conn));
@@ -97,6 +109,7 @@ public class ServicesStorageGenerator extends SplittingStorage implements Contex
 			addChild("direct",new DirectRedirector(spec));
 			addChild("id",new ServicesIDGenerator(conn,spec));
 			addChild("relations",new ServicesRelationStorage(conn,spec));
+			addChild("connectionpool",new ConnectionPoolStorage(conn));
 			
 			//
 			// If the tenant ID is null, it means we're probably just generating Services schemas and other config
@@ -125,10 +138,11 @@ public class ServicesStorageGenerator extends SplittingStorage implements Contex
 			@Override
 			public Object populate(Object parent, ReadOnlySection milestone) {
 				((ConfigRoot)parent).setRoot(SERVICE_ROOT,ServicesStorageGenerator.this);
-				base_url=(String)milestone.getValue("/url");
+				base_url=System.getProperty(URL_PROPERTY,(String)milestone.getValue("/url"));
 				((ConfigRoot)parent).setRoot(CSPContext.XXX_SERVICE_NAME,"service");  // XXX should be path-selectable
 				ims_url=(String)milestone.getValue("/ims-url");
 				tenantSpec = new TenantSpec(milestone);
+				poolConfig = new ConnectionPoolConfig(milestone);
 				return ServicesStorageGenerator.this;
 			}
 		});
@@ -7,11 +7,14 @@
 package org.collectionspace.chain.csp.persistence.services;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.collectionspace.chain.csp.schema.Field;
@@ -22,7 +25,7 @@ import org.collectionspace.chain.csp.schema.Instance;
 import org.collectionspace.chain.csp.schema.Record;
 import org.collectionspace.chain.csp.schema.Repeat;
 import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
-import org.collectionspace.services.common.api.RefName;
+import org.collectionspace.csp.helper.core.RequestTrace;
 import org.dom4j.Document;
 import org.dom4j.DocumentFactory;
 import org.dom4j.Element;
@@ -36,6 +39,35 @@ import org.slf4j.LoggerFactory;
 
 public class XmlJsonConversion {
 	private static final Logger log=LoggerFactory.getLogger(XmlJsonConversion.class);
+
+	/* What the config says about a repeat or group, worked out once rather than for every record */
+	private static final class ConfigKey {
+		private final FieldSet fs;
+		private final String operation;
+
+		ConfigKey(FieldSet fs,String operation) {
+			this.fs=fs;
+			this.operation=operation;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof ConfigKey))
+				return false;
+			ConfigKey other=(ConfigKey)o;
+			return fs==other.fs && (operation==null?other.operation==null:operation.equals(other.operation));
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(fs)*31+(operation==null?0:operation.hashCode());
+		}
+	}
+	// Specs are replaced when config is reloaded: don't hang on to old ones forever
+	private static final int MAX_CONFIG_KEYS=20000;
+	private static final ConcurrentMap<ConfigKey,List<FieldSet>> group_children=new ConcurrentHashMap<ConfigKey,List<FieldSet>>();
+	private static final ConcurrentMap<ConfigKey,Map<String,Integer>> field_indexes=new ConcurrentHashMap<ConfigKey,Map<String,Integer>>();
+
 	private static void addFieldToXml(Element root,Field field,JSONObject in, String permlevel) throws JSONException, UnderlyingStorageException {
 		if (field.isServicesReadOnly()) {
 			// Omit fields that are read-only in the services layer.
@@ -302,6 +334,15 @@ public class XmlJsonConversion {
 	//section should be an array
 	//
 	public static Document convertToXml(Record r,JSONObject in,String section, String operation) throws JSONException, UnderlyingStorageException {
+		RequestTrace.Span span=RequestTrace.startSpan("xmljson","toXml "+r.getID()+" "+section);
+		try {
+			return buildXml(r,in,section,operation);
+		} finally {
+			span.end();
+		}
+	}
+
+	private static Document buildXml(Record r,JSONObject in,String section, String operation) throws JSONException, UnderlyingStorageException {
 		Document doc=DocumentFactory.getInstance().createDocument();
                 try {
                     String path = r.getServicesRecordPath(section);
@@ -333,36 +374,8 @@ public class XmlJsonConversion {
 		return "";
 	}
 	
-	private static List<Object> getComplexNodes(Element root,String context,String condition,String value,String extract) {
-		List<Object> out=new ArrayList<Object>();
-		for(Object n : root.selectNodes(context)) {
-			if(!(n instanceof Element))
-				continue;
-			Element candidate=(Element)n;
-			boolean match = false;
-			for(Object n2 : candidate.selectNodes(condition)) {
-				if(!(n2 instanceof Element))
-					continue;
-				if(value.equals(((Element)n2).getText()))
-					match=true;
-			}
-			if(!match)
-				continue;
-			for(Object n3 : candidate.selectNodes(extract)) {
-				if(!(n3 instanceof Element))
-					continue;
-				out.add(n3);
-			}
-		}		
-		return out;
-	}
-	
 	private static List<?> getNodes(Element root,String spec) {
-		if(spec!=null && spec.length()>0 && spec.charAt(0)==';') {
-			String[] parts=spec.split(";");
-			return getComplexNodes(root,parts[1],parts[2],parts[3],parts[4]);
-		} else
-			return root.selectNodes(spec);
+		return CompiledPath.get(spec).select(root);
 	}
 	
 	private static Element getFieldNodeEl(Element root,Field f){
@@ -498,7 +511,7 @@ public class XmlJsonConversion {
 		// Iterate through
 		Map<String, List <Element> > member=null;
 		int prev=Integer.MAX_VALUE;
-		for(Object node : container.selectNodes("*")) {
+		for(Object node : container.elements()) {
 
 			if(!(node instanceof Element))
 				continue;
@@ -576,22 +589,33 @@ public class XmlJsonConversion {
 		return children;
 	}
 	
+	private static Map<String,Integer> getFieldIndex(FieldSet f, String operation) {
+		ConfigKey key=new ConfigKey(f,operation);
+		Map<String,Integer> out=field_indexes.get(key);
+		if(out==null) {
+			List<String> fields = FieldListFROMConfig(f,operation);
+			out=new HashMap<String,Integer>();
+			for(int i=0;i<fields.size();i++){
+				out.put(fields.get(i),i);
+			}
+			out=Collections.unmodifiableMap(out);
+			if(field_indexes.size()>=MAX_CONFIG_KEYS)
+				field_indexes.clear();
+			field_indexes.putIfAbsent(key,out);
+		}
+		return out;
+	}
+	
 	/* Repeat syntax is challenging for dom4j */
 	private static JSONArray extractRepeatData(Element container,FieldSet f, String permlevel) throws JSONException {
 		JSONArray newout = new JSONArray();
-		// Build index so that we can see when we return to the start
-		List<String> fields = FieldListFROMConfig(f,permlevel);
-		
-		Map<String,Integer> field_index=new HashMap<String,Integer>();
-		
-		for(int i=0;i<fields.size();i++){
-			field_index.put(fields.get(i),i);
-		}
+		// Index so that we can see when we return to the start
+		Map<String,Integer> field_index=getFieldIndex(f,permlevel);
 		JSONObject test = new JSONObject();
 		JSONArray testarray = new JSONArray();
 		// Iterate through
 		Integer prev=Integer.MAX_VALUE;
-		for(Object node : container.selectNodes("*")) {
+		for(Object node : container.elements()) {
 			if(!(node instanceof Element))
 				continue;
 			Integer next=field_index.get(((Element)node).getName());
@@ -621,8 +645,20 @@ public class XmlJsonConversion {
 		}
 		return temp;
 	}
-	//merges in the pseudo sub records 'groupfields' with the normal fields unless they need to be nested
 	private static List<FieldSet> getChildrenWithGroupFields(Repeat parent, String operation){
+		ConfigKey key=new ConfigKey(parent,operation);
+		List<FieldSet> out=group_children.get(key);
+		if(out==null) {
+			out=Collections.unmodifiableList(buildChildrenWithGroupFields(parent,operation));
+			if(group_children.size()>=MAX_CONFIG_KEYS)
+				group_children.clear();
+			group_children.putIfAbsent(key,out);
+		}
+		return out;
+	}
+
+	//merges in the pseudo sub records 'groupfields' with the normal fields unless they need to be nested
+	private static List<FieldSet> buildChildrenWithGroupFields(Repeat parent, String operation){
 		List<FieldSet> children = new ArrayList<FieldSet>();
 
 		if(parent.getUIType().startsWith("groupfield")){
@@ -813,7 +849,7 @@ public class XmlJsonConversion {
 			}
 		}
 		else{
-			List<?> nodes=root.selectNodes(nodeName);
+			List<?> nodes=getNodes(root,nodeName);
 			if(nodes.size()==0)
 				return;
 			
@@ -848,7 +884,7 @@ public class XmlJsonConversion {
 				nodeName = f.getID();
 			}
 		}
-		List<?> nodes=root.selectNodes(nodeName);
+		List<?> nodes=getNodes(root,nodeName);
 		if(nodes.size()==0){// add in empty primary tags and arrays etc to help UI
 			if(f.asSibling()){
 				JSONObject repeated = new JSONObject();
@@ -907,6 +943,17 @@ public class XmlJsonConversion {
 	}
 	
 	public static void convertToJson(JSONObject out,Record r,Document doc, String operation, String section,String csid,String ims_url) throws JSONException {
+		RequestTrace.Span span=RequestTrace.startSpan("xmljson","toJson "+r.getID()+" "+section);
+		CompiledPath.Index previous=CompiledPath.bind();
+		try {
+			addJson(out,r,doc,operation,section,csid,ims_url);
+		} finally {
+			CompiledPath.unbind(previous);
+			span.end();
+		}
+	}
+
+	private static void addJson(JSONObject out,Record r,Document doc, String operation, String section,String csid,String ims_url) throws JSONException {
 		Element root=doc.getRootElement();
 		JSONObject tempSon = new JSONObject();
 		for(FieldSet f : r.getAllServiceFieldTopLevel(operation,section)) {
@@ -52,6 +52,15 @@ public class AuthorizationStorage extends GenericStorage {
 		Record permissionRecord = r.getSpec().getRecord("permission");
 	}
 
+	/**
+	 * Roles, permissions and their lists change underneath us and vary by account, so
+	 * keep gleaned values to the current request.
+	 */
+	@Override
+	protected boolean shareGleanedValues() {
+		return false;
+	}
+
 
 
 	/**
@@ -112,6 +121,7 @@ public class AuthorizationStorage extends GenericStorage {
 	@SuppressWarnings("unchecked")
 	public String[] getPaths(ContextualisedStorage root, CSPRequestCredentials creds, CSPRequestCache cache, String rootPath, JSONObject restrictions) throws ExistException, UnimplementedException, UnderlyingStorageException {
 		try {
+			markGleanStart(cache);
 			Document list=null;
 			List<String> out=new ArrayList<String>();
 			String path = getRestrictedPath(r.getServicesURL(), restrictions, "res", "", false, "");
@@ -147,6 +157,7 @@ public class AuthorizationStorage extends GenericStorage {
 	public JSONObject getPathsJSON(ContextualisedStorage root, CSPRequestCredentials creds, CSPRequestCache cache, String rootPath, JSONObject restrictions) 
 	throws ExistException, UnimplementedException, UnderlyingStorageException {
 		try {
+			markGleanStart(cache);
 			JSONObject out = new JSONObject();
 
 			// PLS: why on earth would reports be routed through AuthStorage?!?!
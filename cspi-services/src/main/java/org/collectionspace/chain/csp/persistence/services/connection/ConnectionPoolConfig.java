@@ -0,0 +1,76 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.connection;
+
+import org.collectionspace.chain.csp.config.ReadOnlySection;
+import org.collectionspace.chain.csp.schema.Util;
+
+/**
+ * Settings for the pool of connections to the services, from the service section of cspace-config.
+ * All times are in milliseconds, and 0 means no timeout.
+ *
+    <persistence>
+        <service>
+            <connection-pool>
+                <max-connections>20</max-connections>
+                <max-connections-per-host>20</max-connections-per-host>
+                <connect-timeout>30000</connect-timeout>
+                <socket-timeout>0</socket-timeout>
+                <acquire-timeout>0</acquire-timeout>
+                <idle-timeout>60000</idle-timeout>
+                <keep-alive>true</keep-alive>
+            </connection-pool>
+        </service>
+    </persistence>
+ *
+ */
+public class ConnectionPoolConfig {
+	public static final int DEFAULT_MAX_CONNECTIONS = ServicesConnection.MAX_SERVICES_CONNECTIONS;
+	public static final int DEFAULT_CONNECT_TIMEOUT = 30*1000;
+	public static final int DEFAULT_IDLE_TIMEOUT = 60*1000;
+
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	// We're only connecting to one host, so by default the per host limit is the total
+	private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS;
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private int socketTimeout = 0;
+	private long acquireTimeout = 0;
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private boolean keepAlive = true;
+
+	public ConnectionPoolConfig() {}
+
+	public ConnectionPoolConfig(ReadOnlySection section) {
+		maxConnections = getInt(section, "/connection-pool/max-connections", DEFAULT_MAX_CONNECTIONS);
+		maxConnectionsPerHost = getInt(section, "/connection-pool/max-connections-per-host", maxConnections);
+		connectTimeout = getInt(section, "/connection-pool/connect-timeout", DEFAULT_CONNECT_TIMEOUT);
+		socketTimeout = getInt(section, "/connection-pool/socket-timeout", 0);
+		acquireTimeout = getInt(section, "/connection-pool/acquire-timeout", 0);
+		idleTimeout = getInt(section, "/connection-pool/idle-timeout", DEFAULT_IDLE_TIMEOUT);
+		keepAlive = Util.getBooleanOrDefault(section, "/connection-pool/keep-alive", true);
+	}
+
+	private static int getInt(ReadOnlySection section, String path, int dfault) {
+		String value = Util.getStringOrDefault(section, path, "");
+		if (value.trim().equals(""))
+			return dfault;
+		return Integer.parseInt(value.trim());
+	}
+
+	public int getMaxConnections() { return maxConnections; }
+	public int getMaxConnectionsPerHost() { return maxConnectionsPerHost; }
+	public int getConnectTimeout() { return connectTimeout; }
+	public int getSocketTimeout() { return socketTimeout; }
+	public long getAcquireTimeout() { return acquireTimeout; }
+	public long getIdleTimeout() { return idleTimeout; }
+	public boolean isKeepAlive() { return keepAlive; }
+
+	/* Fanning out, leave half the pool for the request threads themselves */
+	public int getFanOutThreads() { return Math.max(1, maxConnections/2); }
+	/* Fan-out work waiting for a thread; beyond this the requesting thread makes the call itself */
+	public int getFanOutQueue() { return getFanOutThreads()*4; }
+}
@@ -0,0 +1,111 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.connection;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Connection manager which records how long requests wait to get a connection from the pool,
+ * how many are waiting, and how often they give up. It also counts the connections it has lent
+ * out: the pool itself only knows how many it holds altogether (getConnectionsInUse() is a
+ * deprecated alias for getConnectionsInPool()), not how many of those are idle.
+ *
+ */
+public class InstrumentedConnectionManager extends MultiThreadedHttpConnectionManager {
+	/* Upper bounds (ms) of the wait time histogram buckets; the last bucket is everything longer */
+	static final long[] WAIT_BUCKETS={1,5,10,50,100,500,1000,5000};
+
+	private final AtomicInteger pending=new AtomicInteger();
+	private final AtomicInteger leased=new AtomicInteger();
+	private final AtomicLong acquired=new AtomicLong();
+	private final AtomicLong timeouts=new AtomicLong();
+	private final AtomicLong total_wait=new AtomicLong();
+	private final AtomicLong max_wait=new AtomicLong();
+	private final AtomicLongArray wait_histogram=new AtomicLongArray(WAIT_BUCKETS.length+1);
+
+	@Override
+	public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout) throws ConnectionPoolTimeoutException {
+		long start=System.currentTimeMillis();
+		pending.incrementAndGet();
+		try {
+			HttpConnection out=super.getConnectionWithTimeout(hostConfiguration,timeout);
+			leased.incrementAndGet();
+			recordWait(System.currentTimeMillis()-start);
+			return out;
+		} catch(ConnectionPoolTimeoutException e) {
+			timeouts.incrementAndGet();
+			throw e;
+		} finally {
+			pending.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void releaseConnection(HttpConnection conn) {
+		leased.decrementAndGet();
+		super.releaseConnection(conn);
+	}
+
+	private void recordWait(long wait) {
+		acquired.incrementAndGet();
+		total_wait.addAndGet(wait);
+		long max=max_wait.get();
+		while(wait>max && !max_wait.compareAndSet(max,wait))
+			max=max_wait.get();
+		int bucket=0;
+		while(bucket<WAIT_BUCKETS.length && wait>WAIT_BUCKETS[bucket])
+			bucket++;
+		wait_histogram.incrementAndGet(bucket);
+	}
+
+	/** Requests currently waiting for a connection */
+	public int getPending() { return pending.get(); }
+	/** Connections currently lent out */
+	public int getLeased() { return leased.get(); }
+	public long getTimeouts() { return timeouts.get(); }
+
+	/**
+	 * Snapshot of the pool: configured limits, connections leased and idle, waiters, and the wait
+	 * time histogram keyed by bucket upper bound in ms.
+	 * @return
+	 * @throws JSONException
+	 */
+	public JSONObject getStats() throws JSONException {
+		JSONObject out=new JSONObject();
+		int in_pool=getConnectionsInPool();
+		int lent=leased.get();
+		out.put("max",getParams().getMaxTotalConnections());
+		out.put("maxPerHost",getParams().getDefaultMaxConnectionsPerHost());
+		out.put("leased",lent);
+		out.put("available",Math.max(0,in_pool-lent));
+		out.put("pending",pending.get());
+		out.put("acquired",acquired.get());
+		out.put("timeouts",timeouts.get());
+		long count=acquired.get();
+		out.put("meanWaitMs",count>0?total_wait.get()/count:0);
+		out.put("maxWaitMs",max_wait.get());
+		JSONArray histogram=new JSONArray();
+		for(int i=0;i<=WAIT_BUCKETS.length;i++) {
+			JSONObject bucket=new JSONObject();
+			bucket.put("le",i<WAIT_BUCKETS.length?Long.toString(WAIT_BUCKETS[i]):"inf");
+			bucket.put("count",wait_histogram.get(i));
+			histogram.put(bucket);
+		}
+		out.put("waitHistogram",histogram);
+		return out;
+	}
+}
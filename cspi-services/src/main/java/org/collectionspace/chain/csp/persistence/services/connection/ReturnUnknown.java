@@ -1,13 +1,13 @@
 package org.collectionspace.chain.csp.persistence.services.connection;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.TeeInputStream;
+import org.collectionspace.csp.api.persistence.BlobSink;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.io.SAXReader;
@@ -22,36 +22,72 @@ public class ReturnUnknown  implements Returned {
 	private byte[] bytebody;
 	private String contentType;
 	private String contentDisposition;
+	private BlobSink sink;
+	private boolean streamed=false;
 	
 	ReturnUnknown() {}
 
+	/**
+	 * Stream successful (and range not satisfiable) responses to the sink rather than buffering them
+	 * @param sink
+	 */
+	ReturnUnknown(BlobSink sink) { this.sink=sink; }
+
 	public Document getDocument() { return doc; }
 	public  byte[] getBytes() { return bytebody; }
 	public String getContentType() { return contentType; }
 	public String getContentDisposition() { return contentDisposition; }
+	/** True if the body went to the sink, in which case getBytes is null */
+	public boolean isStreamed() { return streamed; }
 	@Override public int getStatus() { return status; }
 
 	public void setResponse(HttpMethod method, int status) throws IOException, DocumentException {
 		this.status=status;
 		InputStream stream = method.getResponseBodyAsStream();
-		if (status >= 400 || stream == null) {
-			log.error("Error get content with HTTP Status code:" + Integer.toString(status) + "Got error: " + stream != null ? IOUtils.toString(stream) : "<emtpy content>");
+		if (stream == null || (status >= 400 && !(sink != null && isStreamable(status)))) {
+			log.error("Error get content with HTTP Status code:" + Integer.toString(status) + "Got error: " + (stream != null ? IOUtils.toString(stream) : "<emtpy content>"));
 		}
 		
 		// TODO errorhandling
 		Header content_disp=method.getResponseHeader("Content-Disposition");
 		contentDisposition = content_disp==null?"":content_disp.getValue();
 		Header content_type=method.getResponseHeader("Content-Type");
-		contentType = content_type.getValue();
-		if (content_type != null) {
-	        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-	        IOUtils.copy(stream, byteOut);
-	        new TeeInputStream(stream, byteOut); // REM - Is this needed?  Is there some necessary side-effect going on here by creating this TeeInputStream instance?
-	        bytebody = byteOut.toByteArray();
+		if (content_type != null && stream != null) {
+			contentType = content_type.getValue();
+			if (sink != null && isStreamable(status)) {
+				OutputStream out = sink.open(status, contentType, content_disp == null ? null : contentDisposition,
+						getContentLength(method), getHeader(method, "Content-Range"));
+				IOUtils.copyLarge(stream, out);
+				out.flush();
+				streamed = true;
+			} else {
+				bytebody = IOUtils.toByteArray(stream);
+			}
 		} else {
 			log.error("Encountered a document with unknown content type.  Returning no content.");
 		}
 		
-		stream.close();
+		if (stream != null)
+			stream.close();
+	}
+
+	private boolean isStreamable(int status) {
+		return status == 200 || status == 206 || status == 416;
+	}
+
+	private String getHeader(HttpMethod method, String name) {
+		Header header = method.getResponseHeader(name);
+		return header == null ? null : header.getValue();
+	}
+
+	private long getContentLength(HttpMethod method) {
+		String length = getHeader(method, "Content-Length");
+		if (length == null)
+			return -1;
+		try {
+			return Long.parseLong(length.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
 	}
 }
@@ -8,8 +8,10 @@ package org.collectionspace.chain.csp.persistence.services.connection;
 
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 
@@ -75,13 +77,18 @@ public class ReturnedMultipartDocument implements Returned {
 			} else {
 				doc=reader.read(stream,"UTF-8"); 
 			}
-			//split up document
+			//split up document: each part is moved into its own document rather than reserialized and parsed again
 			Element root=doc.getRootElement();
-			// iterate through child elements of root
-	        for ( Iterator i = root.elementIterator(); i.hasNext(); ) {
-	            Element element = (Element) i.next();
-				addDocument(element.getName(),DocumentHelper.parseText( element.asXML() ));
-	        }
+			List<Element> parts=new ArrayList<Element>();
+			for ( Iterator i = root.elementIterator(); i.hasNext(); ) {
+				parts.add((Element) i.next());
+			}
+			for(Element element : parts) {
+				// Each name carries its own namespace, so a prefix declared on the envelope is still
+				// written out, where it's used, just as it was when each part was reparsed from asXML()
+				element.detach();
+				addDocument(element.getName(),DocumentHelper.createDocument(element));
+			}
 		}
 		stream.close();
 	}
@@ -9,7 +9,22 @@ package org.collectionspace.chain.csp.persistence.services.connection;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
@@ -17,6 +32,7 @@ import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
@@ -26,8 +42,12 @@ import org.apache.commons.io.input.TeeInputStream;
 import org.collectionspace.chain.csp.persistence.services.ServicesStorageGenerator;
 import org.collectionspace.csp.api.core.CSPRequestCache;
 import org.collectionspace.csp.api.core.CSPRequestCredentials;
+import org.collectionspace.csp.api.persistence.BlobSink;
 import org.collectionspace.csp.api.persistence.ExistException;
+import org.collectionspace.csp.helper.core.RequestTrace;
 import org.dom4j.Document;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,30 +59,128 @@ import org.slf4j.LoggerFactory;
 // XXX Add useful info to ConnectionException on way out
 
 public class ServicesConnection {
+	// Default pool size, see ConnectionPoolConfig for the per tenant settings
 	public static final int MAX_SERVICES_CONNECTIONS = 20;
 
 	private static final Logger log=LoggerFactory.getLogger(ServicesConnection.class);
-	private static final Logger perflog=LoggerFactory.getLogger("org.collectionspace.perflog");
 	private String base_url,ims_url;
-	private MultiThreadedHttpConnectionManager manager;
+	private ConnectionPoolConfig pool_config;
+	private InstrumentedConnectionManager manager;
+	private ExecutorService fanout_executor;
+	private static ScheduledExecutorService idle_evictor;
 	
 	private void initClient() {
-		if(manager!=null)
-			return;
-		synchronized(getClass()) {
-			if(manager!=null)
-				return;
-
-			// We're only connecting to one host, so set the max connections per host to be
-			// the same as the max total connections.
-
-			HttpConnectionManagerParams params = new HttpConnectionManagerParams();
-			params.setMaxTotalConnections(MAX_SERVICES_CONNECTIONS);
-			params.setDefaultMaxConnectionsPerHost(MAX_SERVICES_CONNECTIONS);
-			
-			manager=new MultiThreadedHttpConnectionManager();
-			manager.setParams(params);
+		HttpConnectionManagerParams params = new HttpConnectionManagerParams();
+		params.setMaxTotalConnections(pool_config.getMaxConnections());
+		params.setDefaultMaxConnectionsPerHost(pool_config.getMaxConnectionsPerHost());
+		params.setConnectionTimeout(pool_config.getConnectTimeout());
+		params.setSoTimeout(pool_config.getSocketTimeout());
+
+		manager=new InstrumentedConnectionManager();
+		manager.setParams(params);
+		if(pool_config.getIdleTimeout()>0)
+			scheduleIdleEviction(manager,pool_config.getIdleTimeout());
+	}
+
+	/**
+	 * Close connections which have sat unused in the pool for longer than idle. Only holds the manager
+	 * weakly, and stops once it has gone (eg when a tenant is reinitialised).
+	 */
+	private static synchronized void scheduleIdleEviction(MultiThreadedHttpConnectionManager manager,final long idle) {
+		if(idle_evictor==null) {
+			idle_evictor=Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t=new Thread(r,"services-idle-evictor");
+					t.setDaemon(true);
+					return t;
+				}
+			});
 		}
+		final WeakReference<MultiThreadedHttpConnectionManager> ref=new WeakReference<MultiThreadedHttpConnectionManager>(manager);
+		final ScheduledFuture<?>[] self=new ScheduledFuture<?>[1];
+		long interval=Math.max(1000,idle/2);
+		self[0]=idle_evictor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				MultiThreadedHttpConnectionManager m=ref.get();
+				if(m==null) {
+					if(self[0]!=null)
+						self[0].cancel(false);
+					return;
+				}
+				m.closeIdleConnections(idle);
+				m.deleteClosedConnections();
+			}
+		},interval,interval,TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Bounded pool for issuing independent services calls in parallel (eg fanning out over the
+	 * items of a list), one per connection and so per tenant, sized from its ConnectionPoolConfig.
+	 * When its threads and queue are full the submitting thread runs the call itself, so a busy
+	 * pool slows that request down rather than making others queue behind it. Threads are daemons
+	 * so they never hold up container shutdown, and time out when idle, so the pool of a connection
+	 * which has been replaced (eg when a tenant is reinitialised) goes with it.
+	 * @return
+	 */
+	public synchronized ExecutorService getFanOutExecutor() {
+		if(fanout_executor==null) {
+			int threads=pool_config.getFanOutThreads();
+			ThreadPoolExecutor executor=new ThreadPoolExecutor(threads,threads,60,TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(pool_config.getFanOutQueue()),new ThreadFactory() {
+				private final AtomicInteger count=new AtomicInteger();
+				public Thread newThread(Runnable r) {
+					Thread t=new Thread(r,"services-fanout-"+count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			},new ThreadPoolExecutor.CallerRunsPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			fanout_executor=executor;
+		}
+		return fanout_executor;
+	}
+
+	/**
+	 * Wait for fanned-out calls, for no more than timeout ms for all of them together. Any not
+	 * done by then are cancelled, and any which failed are left out.
+	 * @param pending
+	 * @param timeout
+	 * @return the results of those which finished, by key
+	 */
+	public static <K,V> Map<K,V> awaitFanOut(Map<K,Future<V>> pending,long timeout) {
+		Map<K,V> out=new LinkedHashMap<K,V>();
+		long deadline=System.currentTimeMillis()+timeout;
+		for(Map.Entry<K,Future<V>> e : pending.entrySet()) {
+			long remaining=deadline-System.currentTimeMillis();
+			try {
+				if(remaining<=0 && !e.getValue().isDone()) {
+					e.getValue().cancel(true);
+					log.warn("Fan out timed out for "+e.getKey());
+					continue;
+				}
+				out.put(e.getKey(),e.getValue().get(Math.max(0,remaining),TimeUnit.MILLISECONDS));
+			} catch (InterruptedException ie) {
+				cancelFanOut(pending);
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException ee) {
+				// Not fatal: the item retries on its own turn and reports the error then
+				log.debug("Fan out failed for "+e.getKey(),ee.getCause());
+			} catch (TimeoutException te) {
+				e.getValue().cancel(true);
+				log.warn("Fan out timed out for "+e.getKey());
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Cancel fanned-out calls whose results are no longer wanted, without waiting for them
+	 * @param pending
+	 */
+	public static void cancelFanOut(Map<?,? extends Future<?>> pending) {
+		for(Future<?> f : pending.values())
+			f.cancel(true);
 	}
 
 	public HttpClient makeClient(CSPRequestCredentials creds,CSPRequestCache cache) {
@@ -71,6 +189,7 @@ public class ServicesConnection {
 		if(client!=null)
 			return client;
 		client=new HttpClient(manager);
+		client.getParams().setConnectionManagerTimeout(pool_config.getAcquireTimeout());
 		client.getState().setCredentials(
 				new AuthScope(AuthScope.ANY_HOST,AuthScope.ANY_PORT,AuthScope.ANY_REALM),
 				new UsernamePasswordCredentials((String)creds.getCredential(ServicesStorageGenerator.CRED_USERID),
@@ -81,13 +200,34 @@ public class ServicesConnection {
 	}
 	
 	public ServicesConnection(String base_url,String ims_url) {
+		this(base_url,ims_url,new ConnectionPoolConfig());
+	}
+
+	public ServicesConnection(String base_url,String ims_url,ConnectionPoolConfig pool_config) {
 		if(base_url.endsWith("/"))
 			base_url=base_url.substring(0,base_url.length()-1);
 		this.base_url=base_url;
 		this.ims_url=ims_url;
+		this.pool_config=pool_config;
 		initClient();
 	}
 
+	/**
+	 * Live statistics for this connection's pool
+	 * @return
+	 * @throws JSONException
+	 */
+	public JSONObject getPoolStats() throws JSONException {
+		JSONObject out=manager.getStats();
+		out.put("connectTimeout",pool_config.getConnectTimeout());
+		out.put("socketTimeout",pool_config.getSocketTimeout());
+		out.put("acquireTimeout",pool_config.getAcquireTimeout());
+		out.put("idleTimeout",pool_config.getIdleTimeout());
+		out.put("keepAlive",pool_config.isKeepAlive());
+		out.put("fanOutThreads",pool_config.getFanOutThreads());
+		return out;
+	}
+
 	public String getBase(){
 		return base_url;
 	}
@@ -102,7 +242,7 @@ public class ServicesConnection {
 		return base_url+uri;
 	}
 
-	private HttpMethod createMethod(RequestMethod method,String uri,InputStream data) throws ConnectionException {
+	private HttpMethod createMethod(RequestMethod method,String uri,InputStream data,String type) throws ConnectionException {
 		uri=prepend_base(uri);
 		if(uri==null)
 			throw new ConnectionException("URI must not be null");		
@@ -113,18 +253,19 @@ public class ServicesConnection {
 			qps=uri.substring(qp_start+1);
 			uri=uri.substring(0,qp_start);
 		}
+		// Bodies go out chunked, as they're read, rather than being buffered first to count their length
 		HttpMethod out=null;
 		switch(method) {
 		case POST: {
 			out=new PostMethod(uri);
 			if(data!=null)
-				((PostMethod)out).setRequestEntity(new InputStreamRequestEntity(data));
+				((PostMethod)out).setRequestEntity(new InputStreamRequestEntity(data,EntityEnclosingMethod.CONTENT_LENGTH_CHUNKED,type));
 			break;
 		}
 		case PUT: {
 			out=new PutMethod(uri);
 			if(data!=null)
-				((PutMethod)out).setRequestEntity(new InputStreamRequestEntity(data));
+				((PutMethod)out).setRequestEntity(new InputStreamRequestEntity(data,EntityEnclosingMethod.CONTENT_LENGTH_CHUNKED,type));
 			break;
 		}
 		case GET:
@@ -138,6 +279,8 @@ public class ServicesConnection {
 		}
 		if(qps!=null)
 			out.setQueryString(qps);
+		if(!pool_config.isKeepAlive())
+			out.setRequestHeader("Connection","close");
 		out.setDoAuthentication(true);
 		return out;
 	}
@@ -152,14 +295,24 @@ public class ServicesConnection {
 			}		
 	}
 
-	// XXX eugh! error case control-flow nightmare
 	private void doRequest(Returned out, RequestMethod method_type, String uri, RequestDataSource src, CSPRequestCredentials creds, CSPRequestCache cache) throws ConnectionException {
+		doRequest(out, method_type, uri, src, null, creds, cache);
+	}
+
+	// XXX eugh! error case control-flow nightmare
+	private void doRequest(Returned out, RequestMethod method_type, String uri, RequestDataSource src, Map<String,String> headers, CSPRequestCredentials creds, CSPRequestCache cache) throws ConnectionException {
 		InputStream body_data = null;
 		if (src != null) {
 			body_data = src.getStream();
 		}
+		RequestTrace.Span span = RequestTrace.startSpan(cache, "services", method_type.name() + " " + RequestTrace.template(uri));
 		try {
-			HttpMethod method = createMethod(method_type, uri, body_data);
+			HttpMethod method = createMethod(method_type, uri, body_data, src == null ? null : src.getMIMEType());
+			if (headers != null) {
+				for (Map.Entry<String,String> header : headers.entrySet()) {
+					method.setRequestHeader(header.getKey(), header.getValue());
+				}
+			}
 			if (body_data != null) {
 				method.setRequestHeader("Content-Type", src.getMIMEType());
 				// XXX Not sure if or when this ever actually writes to stderr?
@@ -167,23 +320,8 @@ public class ServicesConnection {
 			}
 			try {
 				HttpClient client = makeClient(creds, cache);
-
-				String requestContext = null;
-				if (perflog.isDebugEnabled()) {
-					// TODO add more context, e.g. session id?
-					requestContext = "HttpClient@" + Integer.toHexString(client.hashCode());
-					requestContext += "/CSPRequestCache@" + Integer.toHexString(cache.hashCode()) + ",";
-					// String queryString = method.getQueryString();
-					perflog.debug(System.currentTimeMillis() + ",\"" + Thread.currentThread().getName() + "\",app,svc," + requestContext + method.getName() + " " + method.getURI()
-					// + (queryString!=null ? queryString : "")
-					);
-				}
-
 				int response = client.executeMethod(method);
-
-				if (perflog.isDebugEnabled()) {
-					perflog.debug(System.currentTimeMillis() + ",\"" + Thread.currentThread().getName() + "\",svc,app," + requestContext + "HttpClient.executeMethod done");
-				}
+				span.set("status", response);
 
 				out.setResponse(method, response);
 			} catch (ConnectionException ce) {
@@ -195,18 +333,13 @@ public class ServicesConnection {
 			} finally {
 				method.releaseConnection();
 
-				if (log.isWarnEnabled()) {
-					if (manager.getConnectionsInPool() >= MAX_SERVICES_CONNECTIONS) {
-						log.warn("reached max services connection limit of " + MAX_SERVICES_CONNECTIONS);
-
-						// Delete closed connections from the pool, so that the
-						// warning will cease
-						// once a connection becomes available.
-						manager.deleteClosedConnections();
-					}
+				if (log.isWarnEnabled() && manager.getPending() > 0) {
+					log.warn("services connection pool exhausted: " + manager.getPending() + " request(s) waiting for one of "
+							+ pool_config.getMaxConnections() + " connections");
 				}
 			}
 		} finally {
+			span.end();
 			closeStream(body_data);
 		}
 	}
@@ -218,6 +351,13 @@ public class ServicesConnection {
 		}
 		return src;
 	}
+	private RequestDataSource makeStreamSource(InputStream body, String type,String uploadname) throws ConnectionException {
+		RequestDataSource src=null;
+		if(body!=null) {
+			src=new StreamRequestDataSource(body, type, uploadname);
+		}
+		return src;
+	}
 	private RequestDataSource makeDocumentSource(Document body) throws ConnectionException {
 		RequestDataSource src=null;
 		if(body!=null) {
@@ -253,6 +393,21 @@ public class ServicesConnection {
 		return out;
 	}
 
+	/**
+	 * As getUnknownDocument, but a successful response body is streamed to the sink rather than
+	 * buffered, and the sink's Range is passed on to the services.
+	 */
+	public ReturnUnknown getUnknownDocument(RequestMethod method_type,String uri,Document body,CSPRequestCredentials creds,CSPRequestCache cache,BlobSink sink) throws ConnectionException {
+		ReturnUnknown out=new ReturnUnknown(sink);
+		Map<String,String> headers=null;
+		if(sink!=null && sink.getRange()!=null) {
+			headers=new HashMap<String,String>();
+			headers.put("Range",sink.getRange());
+		}
+		doRequest(out,method_type,uri,makeUnknownSource(body),headers,creds,cache);
+		return out;
+	}
+
 	public ReturnUnknown getReportDocument(RequestMethod method_type,String uri,Document body,CSPRequestCredentials creds,CSPRequestCache cache) throws ConnectionException {
 		ReturnUnknown out=new ReturnUnknown();
 		doRequest(out,method_type,uri,makeDocumentSource(body),creds,cache);
@@ -285,6 +440,13 @@ public class ServicesConnection {
 		return out;
 	}
 	
+	public ReturnedURL getStreamURL(RequestMethod method_type,String uri,InputStream body,String uploadname,String type,CSPRequestCredentials creds,CSPRequestCache cache) throws ConnectionException {
+		ReturnedURL out=new ReturnedURL();
+		doRequest(out,method_type,uri,makeStreamSource(body,type,uploadname),creds,cache);
+		out.relativize(base_url); // Annoying, but we don't want to have factories etc. or too many args
+		return out;
+	}
+	
 	public ReturnedURL getURL(RequestMethod method_type,String uri,Document body,CSPRequestCredentials creds,CSPRequestCache cache) throws ConnectionException {
 		ReturnedURL out=new ReturnedURL();
 		doRequest(out,method_type,uri,makeDocumentSource(body),creds,cache);
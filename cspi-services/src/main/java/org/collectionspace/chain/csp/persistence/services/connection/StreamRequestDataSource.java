@@ -0,0 +1,51 @@
+package org.collectionspace.chain.csp.persistence.services.connection;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * Same multipart upload as StringRequestDataSource, but the file is read from a stream as the
+ * request is sent, rather than being built up in memory first.
+ */
+public class StreamRequestDataSource implements RequestDataSource {
+	private static final Random rnd=new Random();
+	private static final String DEFAULT_TYPE="application/octet-stream";
+	private InputStream data;
+	private String ctype;
+
+	public StreamRequestDataSource(InputStream body, String type, String uploadName)
+			throws ConnectionException {
+		String boundary="----=_Part_"+Long.toHexString(rnd.nextLong())+"_"+System.currentTimeMillis();
+		String head="--"+boundary+"\r\n"
+				+"Content-Type: "+partType(type)+"\r\n"
+				+"Content-Disposition: form-data; name=\"file\"; filename=\""+uploadName+"\"\r\n"
+				+"\r\n";
+		String tail="\r\n--"+boundary+"--\r\n";
+		try {
+			data=new SequenceInputStream(new ByteArrayInputStream(head.getBytes("UTF-8")),
+					new SequenceInputStream(body,new ByteArrayInputStream(tail.getBytes("UTF-8"))));
+		} catch (UnsupportedEncodingException e) {
+			throw new ConnectionException("Could not connect"
+					+ e.getLocalizedMessage(), e);
+		}
+		ctype="multipart/form-data; boundary=\""+boundary+"\"";
+	}
+
+	/* The uploaded part's own type, unless it came without one (or one that would break the header) */
+	static String partType(String type) {
+		if(type==null || type.trim().length()==0 || type.indexOf('\r')!=-1 || type.indexOf('\n')!=-1)
+			return DEFAULT_TYPE;
+		return type.trim();
+	}
+
+	public String getMIMEType() {
+		return ctype;
+	}
+
+	public InputStream getStream() {
+		return data;
+	}
+}
@@ -27,7 +27,7 @@ public class StringRequestDataSource implements RequestDataSource {
 			if (body != null) {
 				MimeMultipart body_mime = new MimeMultipart();
 				InternetHeaders headers = new InternetHeaders();
-				headers.addHeader("Content-Type", "image/jpeg");
+				headers.addHeader("Content-Type", StreamRequestDataSource.partType(type));
 				headers.addHeader("Content-Disposition",
 						" form-data; name=\"file\"; filename=\"" + uploadName
 								+ "\"");
@@ -0,0 +1,189 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.relation;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Relations a tenant's users have recently listed: the listings themselves, by query, and each relation
+ * found in them (subject, predicate, object), by csid, so that fetching a relation just listed doesn't go
+ * back to the services.
+ *
+ * Entries only live a short while, as relations can change without us. Changes we make ourselves drop
+ * every listing which involves either end of the relation changed, and the relation itself. Entries are
+ * kept per user, so nobody is shown relations they couldn't list. Hierarchical relations are written along
+ * with their records rather than as relations, so ServicesRelationStorage doesn't keep them here.
+ *
+ */
+public class RelationCache {
+	static final int MAX_LISTINGS=2000;
+	static final int MAX_RELATIONS=20000;
+
+	private static class Entry {
+		final long expires;
+		final String[] items;
+		final String data,pagination,moredata;
+		final Set<String> records;
+
+		Entry(long expires,String[] items,String data,String pagination,String moredata,Set<String> records) {
+			this.expires=expires;
+			this.items=items;
+			this.data=data;
+			this.pagination=pagination;
+			this.moredata=moredata;
+			this.records=records;
+		}
+	}
+
+	private final long age;
+	private final ConcurrentMap<String,Entry> listings=new ConcurrentHashMap<String,Entry>();
+	private final ConcurrentMap<String,Entry> relations=new ConcurrentHashMap<String,Entry>();
+	private final AtomicLong generation=new AtomicLong();
+
+	/**
+	 * @param seconds how long entries last; 0 to keep nothing
+	 */
+	public RelationCache(int seconds) {
+		this.age=seconds*1000L;
+	}
+
+	public boolean isEnabled() { return age>0; }
+
+	/* Taken before going to the services, so that what comes back isn't kept if something changed meanwhile */
+	public long getGeneration() { return generation.get(); }
+
+	private static String key(String user,String id) {
+		return user+"|"+id;
+	}
+
+	private Entry get(ConcurrentMap<String,Entry> map,String key) {
+		Entry e=map.get(key);
+		if(e==null)
+			return null;
+		if(e.expires<System.currentTimeMillis()) {
+			map.remove(key,e);
+			return null;
+		}
+		return e;
+	}
+
+	private void put(Map<String,Entry> map,int max,String key,Entry e,long since) {
+		if(since!=generation.get())
+			return;
+		if(map.size()>=max) {
+			long now=System.currentTimeMillis();
+			for(Iterator<Entry> i=map.values().iterator();i.hasNext();)
+				if(i.next().expires<now)
+					i.remove();
+			// Everything's live: start again rather than grow
+			if(map.size()>=max)
+				map.clear();
+		}
+		map.put(key,e);
+	}
+
+	/**
+	 * A copy of a listing, as getPathsJSON returns it, or null
+	 */
+	public JSONObject getListing(String user,String query) throws JSONException {
+		if(!isEnabled())
+			return null;
+		Entry e=get(listings,key(user,query));
+		if(e==null)
+			return null;
+		JSONObject out=new JSONObject();
+		out.put("pagination",new JSONObject(e.pagination));
+		out.put("listItems",e.items.clone());
+		out.put("moredata",new JSONObject(e.moredata));
+		return out;
+	}
+
+	/**
+	 * @param records the csids of every record the listing involves
+	 */
+	public void putListing(String user,String query,JSONObject listing,Collection<String> records,long since) throws JSONException {
+		if(!isEnabled())
+			return;
+		String[] items=((String[])listing.get("listItems")).clone();
+		Entry e=new Entry(System.currentTimeMillis()+age,items,null,listing.getJSONObject("pagination").toString(),
+				listing.getJSONObject("moredata").toString(),Collections.unmodifiableSet(new HashSet<String>(records)));
+		put(listings,MAX_LISTINGS,key(user,query),e,since);
+	}
+
+	/**
+	 * A copy of a relation, as retrieveJSON returns it, or null
+	 */
+	public JSONObject getRelation(String user,String csid) throws JSONException {
+		if(!isEnabled())
+			return null;
+		Entry e=get(relations,key(user,csid));
+		return e==null?null:new JSONObject(e.data);
+	}
+
+	/**
+	 * @param subject csid of the subject
+	 * @param object csid of the object
+	 */
+	public void putRelation(String user,String csid,JSONObject relation,String subject,String object,long since) {
+		if(!isEnabled())
+			return;
+		Entry e=new Entry(System.currentTimeMillis()+age,null,relation.toString(),null,null,
+				Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(subject,object))));
+		put(relations,MAX_RELATIONS,key(user,csid),e,since);
+	}
+
+	/**
+	 * Forget every listing involving any of these records
+	 */
+	public void invalidate(String... records) {
+		Set<String> gone=new HashSet<String>(Arrays.asList(records));
+		gone.remove(null);
+		if(gone.isEmpty())
+			return;
+		generation.incrementAndGet();
+		for(Iterator<Entry> i=listings.values().iterator();i.hasNext();)
+			if(!Collections.disjoint(i.next().records,gone))
+				i.remove();
+	}
+
+	/**
+	 * Forget a relation, and the listings involving the records at either end of it, as far as we know them.
+	 * @return whether the ends were known; if not, the caller can't tell which listings are stale
+	 */
+	public boolean invalidateRelation(String csid) {
+		generation.incrementAndGet();
+		Set<String> ends=new HashSet<String>();
+		String suffix="|"+csid;
+		for(Iterator<Map.Entry<String,Entry>> i=relations.entrySet().iterator();i.hasNext();) {
+			Map.Entry<String,Entry> e=i.next();
+			if(e.getKey().endsWith(suffix)) {
+				ends.addAll(e.getValue().records);
+				i.remove();
+			}
+		}
+		invalidate(ends.toArray(new String[0]));
+		return !ends.isEmpty();
+	}
+
+	public void clear() {
+		generation.incrementAndGet();
+		listings.clear();
+		relations.clear();
+	}
+}
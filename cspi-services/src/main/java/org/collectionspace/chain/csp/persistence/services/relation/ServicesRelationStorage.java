@@ -20,6 +20,7 @@ import org.collectionspace.chain.csp.persistence.services.connection.ReturnedDoc
 import org.collectionspace.chain.csp.persistence.services.connection.ReturnedMultipartDocument;
 import org.collectionspace.chain.csp.persistence.services.connection.ReturnedURL;
 import org.collectionspace.chain.csp.persistence.services.connection.ServicesConnection;
+import org.collectionspace.chain.csp.schema.AdminData;
 import org.collectionspace.chain.csp.schema.Record;
 import org.collectionspace.chain.csp.schema.Relationship;
 import org.collectionspace.chain.csp.schema.Spec;
@@ -27,10 +28,11 @@ import org.collectionspace.chain.util.xtmpl.InvalidXTmplException;
 import org.collectionspace.csp.api.core.CSPRequestCache;
 import org.collectionspace.csp.api.core.CSPRequestCredentials;
 import org.collectionspace.csp.api.persistence.ExistException;
+import org.collectionspace.csp.api.persistence.StorageGenerator;
 import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
 import org.collectionspace.csp.api.persistence.UnimplementedException;
 import org.collectionspace.csp.helper.persistence.ContextualisedStorage;
-import org.collectionspace.services.common.api.RefName;
+import org.collectionspace.chain.csp.persistence.services.RefName;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.Node;
@@ -57,6 +59,7 @@ public class ServicesRelationStorage implements ContextualisedStorage {
 	private RelationFactory factory;
 	private Map<String,String> type_to_surl=new HashMap<String,String>();
 	private Map<String,String> surl_to_type=new HashMap<String,String>();
+	private RelationCache relations;
 
 	private static Map<String,Relationship> types=new HashMap<String,Relationship>();
 	
@@ -78,6 +81,27 @@ public class ServicesRelationStorage implements ContextualisedStorage {
 			surl_to_type.put(r.getServicesURL(), r.getID());
 		}
 		factory=new RelationFactory();
+		AdminData admin=spec.getAdminData();
+		relations=new RelationCache(admin!=null?admin.getRelationCacheAge():0);
+	}
+
+	/* Whose relations: cached ones are only given back to whoever listed them */
+	private static String user(CSPRequestCredentials creds) {
+		if(creds==null)
+			return "";
+		Object out=creds.getCredential(StorageGenerator.CRED_USERID);
+		return out==null?"":out.toString();
+	}
+
+	/* Relations in the cache which one of ours might have made stale */
+	private void invalidate(String id,JSONObject data) throws UnderlyingStorageException, JSONException {
+		if(id!=null && !relations.invalidateRelation(id)) {
+			// We don't know what this relation joined, so can't tell which listings it was in
+			relations.clear();
+			return;
+		}
+		if(data!=null)
+			relations.invalidate(splitTypeFromId(data.getString("src"))[1],splitTypeFromId(data.getString("dst"))[1]);
 	}
 
 	private String[] splitTypeFromId(String path) throws UnderlyingStorageException {
@@ -184,6 +208,7 @@ public class ServicesRelationStorage implements ContextualisedStorage {
 			if(out.getStatus()>299)
 				throw new UnderlyingStorageException("Could not add relation status="+out.getStatus(),
 						out.getStatus(), "/relations/");
+			invalidate(null,data);
 			return out.getURLTail();
 		} catch (ConnectionException e) {
 			throw new UnderlyingStorageException("Could not add relation"+e.getLocalizedMessage(),e.getStatus(),e.getUrl(),e);
@@ -210,8 +235,11 @@ public class ServicesRelationStorage implements ContextualisedStorage {
 			int status=conn.getNone(RequestMethod.DELETE,"/relations/"+parts[0],null,creds,cache);
 			if(status>299)
 				throw new UnderlyingStorageException("Could not delete relation, status="+status,status,"/relations/"+parts[0]);
+			invalidate(parts[0],null);
 		} catch (ConnectionException e) {
 			throw new UnderlyingStorageException("Could not delete relation"+e.getLocalizedMessage(),e.getStatus(),e.getUrl(),e);
+		} catch (JSONException e) {
+			throw new UnderlyingStorageException("Could not delete relation"+e.getLocalizedMessage(),e);
 		}
 	}
 
@@ -299,9 +327,25 @@ public class ServicesRelationStorage implements ContextualisedStorage {
 		}
 		
 		try {
+			String user=user(creds);
+			String search=searchPath(restrictions);
+			String query="main?"+search;
+			// Hierarchies are changed by saving their records, not through here, so can't be kept
+			if(!isHierarchical) {
+				JSONObject cached=relations.getListing(user,query);
+				if(cached!=null)
+					return cached;
+			}
+			long generation=relations.getGeneration();
+			// Every record the listing involves, so that changing a relation of any of them drops it
+			Set<String> records=new HashSet<String>();
+			if(restrictions!=null && restrictions.has("src"))
+				records.add(splitTypeFromId(restrictions.getString("src"))[1]);
+			if(restrictions!=null && restrictions.has("dst"))
+				records.add(splitTypeFromId(restrictions.getString("dst"))[1]);
 			JSONObject moredata = new JSONObject();
 			List<String> list=new ArrayList<String>();
-			ReturnedDocument data=conn.getXMLDocument(RequestMethod.GET,"/relations?"+searchPath(restrictions),null,creds,cache);
+			ReturnedDocument data=conn.getXMLDocument(RequestMethod.GET,"/relations?"+search,null,creds,cache);
 			Document doc=data.getDocument();
 			if(doc==null)
 				throw new UnderlyingStorageException("Could not retrieve relation, missing relations_common");
@@ -312,6 +356,8 @@ public class ServicesRelationStorage implements ContextualisedStorage {
 				if("relation-list-item".equals(node.getName())){
 					//if(post_filter(creds,cache,restrictions,node))
 						list.add(node.selectSingleNode("csid").getText());
+						if(!isHierarchical)
+							remember(cache,user,node,generation,records);
 						if(isHierarchical){
 							JSONObject hdata = new JSONObject();
 							Node subjectNode = node.selectSingleNode("subject");
@@ -336,6 +382,8 @@ public class ServicesRelationStorage implements ContextualisedStorage {
 			out.put("pagination", pagination);
 			out.put("listItems",list.toArray(new String[0]));
 			out.put("moredata",moredata);
+			if(!isHierarchical)
+				relations.putListing(user,query,out,records,generation);
 			return out;
 		} catch (ConnectionException e) {
 			throw new UnderlyingStorageException("Could not retrieve relation"+e.getLocalizedMessage(),e.getStatus(),e.getUrl());
@@ -344,6 +392,33 @@ public class ServicesRelationStorage implements ContextualisedStorage {
 		}
 	}
 	
+	private static String text(Node node,String path) {
+		Node found=node.selectSingleNode(path);
+		if(found==null)
+			return null;
+		String out=found.getText();
+		return (out==null || "".equals(out))?null:out;
+	}
+
+	/* A listed relation says all that retrieveJSON would find out about it, so keep that for when it's asked */
+	private void remember(CSPRequestCache cache,String user,Node item,long generation,Set<String> records) throws JSONException {
+		String csid=text(item,"csid");
+		String src=text(item,"subjectCsid");
+		String dst=text(item,"objectCsid");
+		String type=text(item,"relationshipType");
+		if(type==null)
+			type=text(item,"predicate");
+		String src_type=text(item,"subject/documentType");
+		String dst_type=text(item,"object/documentType");
+		if(src!=null)
+			records.add(src);
+		if(dst!=null)
+			records.add(dst);
+		if(csid==null || src==null || dst==null || type==null || src_type==null || dst_type==null)
+			return;
+		relations.putRelation(user,csid,relationToData(cache,factory.create(csid,src_type,src,type,dst_type,dst)),src,dst,generation);
+	}
+
 	private void findNameUnderNode(JSONObject out, String nameKey, String refNameKey,
 						Node itemNode) throws JSONException {
 		// Look for something to put into the subjectname. Start with refName,
@@ -419,13 +494,22 @@ public class ServicesRelationStorage implements ContextualisedStorage {
 				isHierarchical = true;
 			}
 			
+			String user=user(creds);
+			JSONObject cached=isHierarchical?null:relations.getRelation(user,parts[0]);
+			if(cached!=null)
+				return cached;
+			long generation=relations.getGeneration();
 			ReturnedMultipartDocument out=conn.getMultipartXMLDocument(RequestMethod.GET,"/relations/"+parts[0],null,creds,cache);
 			if(out.getStatus()==404)
 				throw new UnderlyingStorageException("Could not retrieve relation",out.getStatus(),"/relations/"+parts[0]);
 			Document doc=out.getDocument("relations_common");
 			if(doc==null)
 				throw new UnderlyingStorageException("Could not retrieve relation, missing relations_common",out.getStatus(),"/relations/"+parts[0]);
-			return relationToData(cache,factory.load(parts[0],doc));
+			Relation relation=factory.load(parts[0],doc);
+			JSONObject data=relationToData(cache,relation);
+			if(!isHierarchical)
+				relations.putRelation(user,parts[0],data,relation.getSourceId(),relation.getDestinationId(),generation);
+			return data;
 		} catch (ConnectionException e) {
 			throw new UnderlyingStorageException("Could not retrieve relation"+e.getLocalizedMessage(),e.getStatus(),e.getUrl(),e);
 		} catch (JaxenException e) {
@@ -449,6 +533,8 @@ public class ServicesRelationStorage implements ContextualisedStorage {
 				throw new ExistException("Not found");
 			if(out.getStatus()>299)
 				throw new UnderlyingStorageException("Could not update relation",out.getStatus(),"/relations/"+parts[0]);
+			// Whatever it joined before, and what it joins now
+			invalidate(parts[0],data);
 		} catch (ConnectionException e) {
 			throw new UnderlyingStorageException("Could not update relation"+e.getLocalizedMessage(),e.getStatus(),e.getUrl(),e);
 		} catch (JSONException e) {
@@ -64,6 +64,14 @@ public class UserStorage extends GenericStorage {
 		initializeGlean(r);
 	}
 
+	/**
+	 * Account data is not shared between requests.
+	 */
+	@Override
+	protected boolean shareGleanedValues() {
+		return false;
+	}
+
 	private JSONObject correctPassword(JSONObject in) throws JSONException,
 			UnderlyingStorageException {
 		try {
@@ -207,6 +215,7 @@ public class UserStorage extends GenericStorage {
 			String rootPath, JSONObject restrictions) throws ExistException,
 			UnimplementedException, UnderlyingStorageException {
 		try {
+			markGleanStart(cache);
 			List<String> out = new ArrayList<String>();
 			Iterator rit = restrictions.keys();
 			StringBuffer args = new StringBuffer();
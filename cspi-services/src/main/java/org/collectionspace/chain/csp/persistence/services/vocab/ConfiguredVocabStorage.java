@@ -37,7 +37,7 @@ import org.collectionspace.csp.api.persistence.ExistException;
 import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
 import org.collectionspace.csp.api.persistence.UnimplementedException;
 import org.collectionspace.csp.helper.persistence.ContextualisedStorage;
-import org.collectionspace.services.common.api.RefName;
+import org.collectionspace.chain.csp.persistence.services.RefName;
 import org.dom4j.DocumentException;
 import org.dom4j.Document;
 import org.dom4j.DocumentFactory;
@@ -544,6 +544,7 @@ public class ConfiguredVocabStorage extends GenericStorage {
 	public JSONObject getPathsJSON(ContextualisedStorage root,CSPRequestCredentials creds,CSPRequestCache cache,String rootPath,JSONObject restrictions)
 	throws ExistException, UnimplementedException, UnderlyingStorageException {
 		try {
+			markGleanStart(cache);
 			JSONObject out = new JSONObject();
 			List<String> list=new ArrayList<String>();	
 			String url;
@@ -677,6 +678,7 @@ public class ConfiguredVocabStorage extends GenericStorage {
 			}
 			else{
 				int status=conn.getNone(RequestMethod.DELETE,url,null,creds,cache);
+				invalidateGleanedValues(cache,url);
 				if(status>299)
 					throw new UnderlyingStorageException("Could not retrieve vocabulary",status,url);
 			}
@@ -748,6 +750,7 @@ public class ConfiguredVocabStorage extends GenericStorage {
 			handleHierarchyPayloadSend(thisr, body, jsonObject, csid);
 			
 			ReturnedMultipartDocument out=conn.getMultipartXMLDocument(RequestMethod.PUT,savePath,body,creds,cache);
+			invalidateGleanedValues(cache,savePath);
 			if(out.isErrorStatus()){
                             if(out.isTransactionFailedStatus()){
 				throw new UnderlyingStorageException(VOCABULARY_UPDATE_FAILED_MESSAGE + ": " + out.TRANSACTION_FAILED_MESSAGE,out.getStatus(),savePath);
@@ -9,9 +9,12 @@ package org.collectionspace.chain.csp.persistence.services.vocab;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
-import org.collectionspace.chain.csp.persistence.services.GenericStorage;
 import org.collectionspace.chain.csp.persistence.services.connection.ConnectionException;
 import org.collectionspace.chain.csp.persistence.services.connection.RequestMethod;
 import org.collectionspace.chain.csp.persistence.services.connection.ReturnedDocument;
@@ -30,24 +33,44 @@ import org.dom4j.Node;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The csids of an authority's vocabularies (instances), by shortIdentifier, creating any which the
+ * services don't have yet. One of these per authority record, so per tenant too.
+ *
+ * Lookups of vocabularies already known don't lock or rebuild anything. A miss lists every vocabulary
+ * (a page at a time), which fills in the rest too; threads missing on the same vocabulary at the same
+ * time share the one listing, and at most one of them creates it.
+ *
+ */
 public class VocabInstanceCache {
 	private static final Logger log=LoggerFactory.getLogger(VocabInstanceCache.class);
-	private Map<String,String> csids=new HashMap<String,String>();
-	private ServicesConnection conn;
-	private Map<String,String> vocabs;
-	private Record r;
+	private static final int PAGE_SIZE=100;
+	private final ConcurrentMap<String,String> csids=new ConcurrentHashMap<String,String>();
+	private final ConcurrentMap<String,FutureTask<String>> loading=new ConcurrentHashMap<String,FutureTask<String>>();
+	private final ConcurrentMap<String,String> vocabs=new ConcurrentHashMap<String,String>();
+	private final ServicesConnection conn;
+	private final Record r;
 	
 	VocabInstanceCache(Record r,ServicesConnection conn,Map<String,String> vocabs) {
 		this.conn=conn;
-		this.vocabs=vocabs;
 		this.r=r;
+		if(vocabs!=null)
+			this.vocabs.putAll(vocabs);
+		addInstances();
+	}
+
+	/* Instances can be added while the system is running, so this is done again on a miss */
+	private void addInstances() {
+		for(Instance n : r.getAllInstances()) {
+			vocabs.put(n.getTitleRef(),n.getTitle());
+		}
 	}
-	
 
 	private String vocabByShortIdentifier(String name) throws ExistException {
-		if(!vocabs.containsKey(name))
+		String out=vocabs.get(name);
+		if(out==null)
 			throw new ExistException("No such vocab "+name);
-		return vocabs.get(name);
+		return out;
 	}
 	
 	private Document createList(String namespace,String tag,String id, String vocab_type) throws ExistException {
@@ -70,7 +93,7 @@ public class VocabInstanceCache {
 	}
 	
 	// Only called if doesn't exist
-	private synchronized void createVocabulary(CSPRequestCredentials creds,CSPRequestCache cache,String id) throws ConnectionException, UnderlyingStorageException, ExistException {
+	private void createVocabulary(CSPRequestCredentials creds,CSPRequestCache cache,String id) throws ConnectionException, UnderlyingStorageException, ExistException {
 		Map<String,Document> body=new HashMap<String,Document>();
 		String[] path_parts=r.getServicesSingleInstancePath().split(":",2);
 		String vocab_type = r.getVocabType();
@@ -84,50 +107,88 @@ public class VocabInstanceCache {
 		csids.put(id,out.getURLTail());
 	}
 	
-	//XXX pagination? argh
 	@SuppressWarnings("unchecked")
 	private void buildVocabularies(CSPRequestCredentials creds,CSPRequestCache cache) throws ConnectionException, UnderlyingStorageException {
-		ReturnedDocument data=conn.getXMLDocument(RequestMethod.GET,"/"+r.getServicesURL()+"/",null,creds,cache);
-		Document doc=data.getDocument();
-		if(doc==null)
-			throw new UnderlyingStorageException("Could not retrieve vocabularies");		
 		String[] path_parts=r.getServicesInstancesPath().split(":",2);
 		String[] tag_parts=path_parts[1].split(",",2);
-		List<Node> objects=doc.getDocument().selectNodes(tag_parts[1]);
-		for(Node object : objects) {
-			String name = "MISSING";
-			if(null !=object.selectSingleNode("displayName") ){
-				name=object.selectSingleNode("displayName").getText();
-			}
-			if(null == object.selectSingleNode("shortIdentifier")){
-				continue;
-			}
-			String base=object.selectSingleNode("shortIdentifier").getText();			
-			if(base==null)
-				continue;
-			if(!vocabs.containsKey(base)){
-				vocabs.put(base, name);
+		for(int pageNum=0;;pageNum++) {
+			String path="/"+r.getServicesURL()+"/?pgSz="+PAGE_SIZE+"&pgNum="+pageNum;
+			ReturnedDocument data=conn.getXMLDocument(RequestMethod.GET,path,null,creds,cache);
+			Document doc=data.getDocument();
+			if(doc==null)
+				throw new UnderlyingStorageException("Could not retrieve vocabularies",data.getStatus(),path);
+			List<Node> objects=doc.getDocument().selectNodes(tag_parts[1]);
+			for(Node object : objects) {
+				String name = "MISSING";
+				if(null !=object.selectSingleNode("displayName") ){
+					name=object.selectSingleNode("displayName").getText();
+				}
+				if(null == object.selectSingleNode("shortIdentifier")){
+					continue;
+				}
+				String base=object.selectSingleNode("shortIdentifier").getText();			
+				if(base==null)
+					continue;
+				vocabs.putIfAbsent(base, name);
+				csids.put(base,object.selectSingleNode("csid").getText());
 			}
-			csids.put(base,object.selectSingleNode("csid").getText());
+			// A short page is the last; so is a long one, from services which ignore paging
+			String total=doc.getRootElement().elementTextTrim("totalItems");
+			if(objects.size()!=PAGE_SIZE || total==null || !total.matches("\\d+") || Integer.parseInt(total)<=PAGE_SIZE*(pageNum+1))
+				break;
 		}
 	}
+
+	private String load(CSPRequestCredentials creds,CSPRequestCache cache,String id) throws ConnectionException, UnderlyingStorageException, ExistException {
+		addInstances();
+		buildVocabularies(creds,cache);
+		String out=csids.get(id);
+		if(out!=null)
+			return out;
+		log.info("Creating vocabulary "+id+" of "+r.getID());
+		createVocabulary(creds,cache,id);
+		out=csids.get(id);
+		if(out!=null)
+			return out;
+		throw new UnderlyingStorageException("Bad vocabulary "+id);
+	}
 	
-	String getVocabularyId(CSPRequestCredentials creds,CSPRequestCache cache,String id) throws ConnectionException, UnderlyingStorageException, ExistException {
-//must allow for the dynamic creation of instances when the system is working
-		vocabs=new ConcurrentHashMap<String,String>();
-		for(Instance n : r.getAllInstances()) {
-			vocabs.put(n.getTitleRef(),n.getTitle());
+	String getVocabularyId(final CSPRequestCredentials creds,final CSPRequestCache cache,final String id) throws ConnectionException, UnderlyingStorageException, ExistException {
+		String out=csids.get(id);
+		if(out!=null)
+			return out;
+		// Whoever misses first loads, anyone else missing on the same id meanwhile waits for them
+		FutureTask<String> task=new FutureTask<String>(new Callable<String>() {
+			public String call() throws Exception {
+				return load(creds,cache,id);
+			}
+		});
+		FutureTask<String> running=loading.putIfAbsent(id,task);
+		if(running==null) {
+			running=task;
+			try {
+				task.run();
+			} finally {
+				// Found ones are in csids now; failures are tried afresh next time
+				loading.remove(id,task);
+			}
 		}
-		if(csids.containsKey(id))
-			return csids.get(id);
-		synchronized(getClass()) {
-			buildVocabularies(creds,cache);
-			if(csids.containsKey(id))
-				return csids.get(id);
-			createVocabulary(creds,cache,id);
-			if(csids.containsKey(id))
-				return csids.get(id);
-			throw new UnderlyingStorageException("Bad vocabulary "+id);
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UnderlyingStorageException("Interrupted waiting for vocabulary "+id,e);
+		} catch (ExecutionException e) {
+			Throwable cause=e.getCause();
+			if(cause instanceof ConnectionException)
+				throw (ConnectionException)cause;
+			if(cause instanceof UnderlyingStorageException)
+				throw (UnderlyingStorageException)cause;
+			if(cause instanceof ExistException)
+				throw (ExistException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new UnderlyingStorageException("Could not find vocabulary "+id,cause);
 		}
 	}
 }
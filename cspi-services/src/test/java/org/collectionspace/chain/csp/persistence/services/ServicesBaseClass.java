@@ -19,6 +19,7 @@ import org.collectionspace.chain.csp.persistence.services.connection.ConnectionE
 import org.collectionspace.chain.csp.persistence.services.connection.RequestMethod;
 import org.collectionspace.chain.csp.persistence.services.connection.ReturnedDocument;
 import org.collectionspace.chain.csp.persistence.services.connection.ServicesConnection;
+import org.collectionspace.chain.csp.persistence.services.fake.FakeServices;
 import org.collectionspace.chain.csp.schema.Record;
 import org.collectionspace.chain.csp.schema.Spec;
 import org.collectionspace.csp.api.container.CSPManager;
@@ -103,6 +104,11 @@ public class ServicesBaseClass {
 		}
 	}
 	private CSPManager getServiceManager() throws CSPDependencyException{
+		try {
+			FakeServices.startIfWanted();
+		} catch (Exception e) {
+			throw new CSPDependencyException("Could not start fake services",e);
+		}
 		CSPManager cspm=new CSPManagerImpl();
 		cspm.register(new CoreConfig());
 		cspm.register(new Spec());
@@ -126,7 +132,7 @@ public class ServicesBaseClass {
 		return baseurl;
 	}
 	
-	private Spec getDefaultSpec() throws CSPDependencyException {
+	protected Spec getDefaultSpec() throws CSPDependencyException {
 		CSPManager cspm=getServiceManager();
 		ConfigRoot root=cspm.getConfigRoot();
 		Spec spec=(Spec)root.getRoot(Spec.SPEC_ROOT);
@@ -0,0 +1,89 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
+import org.junit.Test;
+
+public class TestCompiledPath {
+
+	private Document getDocument(String name) throws Exception {
+		String path=getClass().getPackage().getName().replaceAll("\\.","/")+"/"+name;
+		InputStream in=Thread.currentThread().getContextClassLoader().getResourceAsStream(path);
+		assertNotNull(in);
+		return new SAXReader().read(in);
+	}
+
+	/* Every name and pair of names below the element, and a few that aren't there */
+	private Set<String> paths(Element el) {
+		Set<String> out=new LinkedHashSet<String>();
+		for(Object o : el.elements()) {
+			Element child=(Element)o;
+			out.add(child.getName());
+			for(Object o2 : child.elements())
+				out.add(child.getName()+"/"+((Element)o2).getName());
+		}
+		out.add("missing");
+		out.add("missing/objectNumber");
+		return out;
+	}
+
+	private void assertSame(String spec,Element root) {
+		List<?> expected=root.selectNodes(spec);
+		List<?> compiled=CompiledPath.get(spec).select(root);
+		assertEquals(spec,expected,compiled);
+	}
+
+	private void assertAllSame(Document doc) {
+		Element root=doc.getRootElement();
+		for(String spec : paths(root))
+			assertSame(spec,root);
+		for(Object o : root.elements()) {
+			for(String spec : paths((Element)o))
+				assertSame(spec,(Element)o);
+		}
+	}
+
+	@Test public void testSameAsXPath() throws Exception {
+		for(String name : new String[]{"objectsXMLJSON.xml","acquisitionXMLJSON.xml","intake.xml","media.xml","role.xml"}) {
+			Document doc=getDocument(name);
+			assertAllSame(doc);
+			// And with the children indexed, as in a conversion
+			CompiledPath.Index previous=CompiledPath.bind();
+			try {
+				assertAllSame(doc);
+			} finally {
+				CompiledPath.unbind(previous);
+			}
+		}
+	}
+
+	@Test public void testExpressions() throws Exception {
+		Document doc=DocumentHelper.parseText("<a xmlns:x=\"urn:x\"><b>1</b><x:b>2</x:b><c><b>3</b><d>y</d></c><c><b>4</b><d>z</d></c></a>");
+		Element root=doc.getRootElement();
+		// Only the b in no namespace
+		assertEquals(1,CompiledPath.get("b").select(root).size());
+		assertSame("b",root);
+		assertSame("c/b",root);
+		assertSame("*",root);
+		assertSame("c[2]/b",root);
+		assertSame("c/b/text()",root);
+		List<?> complex=CompiledPath.get(";c;d;z;b").select(root);
+		assertEquals(1,complex.size());
+		assertEquals("4",((Element)complex.get(0)).getText());
+	}
+}
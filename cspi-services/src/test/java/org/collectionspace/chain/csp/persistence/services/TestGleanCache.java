@@ -0,0 +1,59 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestGleanCache {
+	private static void set(String tenant,String path,String key,String value) {
+		GleanCache.setGleanedValue(tenant,path,key,value,GleanCache.getGeneration(tenant));
+	}
+
+	@Test public void testInvalidate() {
+		set("t1","/collectionobjects/abc","objectNumber","2014.1");
+		set("t1","collectionobjects/abc","title","A vase");
+		set("t1","/collectionobjects/def","objectNumber","2014.2");
+		assertEquals("2014.1",GleanCache.getGleanedValue("t1","/collectionobjects/abc","objectNumber"));
+		assertEquals("A vase",GleanCache.getGleanedValue("t1","/collectionobjects/abc","title"));
+		// other tenants have their own
+		assertNull(GleanCache.getGleanedValue("t2","/collectionobjects/abc","objectNumber"));
+
+		GleanCache.invalidate("t1","/collectionobjects/abc?wf_deleted=false");
+		assertNull(GleanCache.getGleanedValue("t1","/collectionobjects/abc","objectNumber"));
+		assertNull(GleanCache.getGleanedValue("t1","/collectionobjects/abc","title"));
+		assertEquals("2014.2",GleanCache.getGleanedValue("t1","/collectionobjects/def","objectNumber"));
+	}
+
+	@Test public void testStalePut() {
+		// a list is asked for, then the record is written before the list's values are gleaned
+		long since=GleanCache.getGeneration("t3");
+		GleanCache.invalidate("t3","/collectionobjects/abc");
+		GleanCache.setGleanedValue("t3","/collectionobjects/abc","objectNumber","old",since);
+		assertNull(GleanCache.getGleanedValue("t3","/collectionobjects/abc","objectNumber"));
+
+		// asked for after the write, so fine
+		since=GleanCache.getGeneration("t3");
+		GleanCache.setGleanedValue("t3","/collectionobjects/abc","objectNumber","new",since);
+		assertEquals("new",GleanCache.getGleanedValue("t3","/collectionobjects/abc","objectNumber"));
+	}
+
+	@Test public void testAuthorityItems() {
+		set("t4","/personauthorities/_ALL_/items/abc","displayName","Jane Doe");
+		assertEquals("Jane Doe",GleanCache.getGleanedValue("t4","/personauthorities/urn:cspace:name(person)/items/abc","displayName"));
+		assertEquals("Jane Doe",GleanCache.getGleanedValue("t4","/personauthorities/0a1b2c3d-4e5f/items/abc","displayName"));
+
+		GleanCache.invalidate("t4","/personauthorities/urn:cspace:name(person)/items/abc");
+		assertNull(GleanCache.getGleanedValue("t4","/personauthorities/_ALL_/items/abc","displayName"));
+
+		assertEquals("t4:/personauthorities/*/items/abc",GleanCache.key("t4","personauthorities/_ALL_/items/abc?pt=x"));
+		// only an item itself, not what's under it
+		assertEquals("t4:/personauthorities/p/items/abc/refObjs",GleanCache.key("t4","/personauthorities/p/items/abc/refObjs"));
+		assertEquals("t4:/collectionobjects/abc",GleanCache.key("t4","/collectionobjects/abc"));
+	}
+}
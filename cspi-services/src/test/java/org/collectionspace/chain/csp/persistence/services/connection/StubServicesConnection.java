@@ -0,0 +1,72 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.connection;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.dom4j.Document;
+
+/**
+ * A ServicesConnection for tests to answer themselves, by overriding the requests they expect. Nothing
+ * is sent anywhere.
+ */
+public class StubServicesConnection extends ServicesConnection {
+	public StubServicesConnection() {
+		super("http://stub.invalid/cspace-services","http://stub.invalid/ims");
+	}
+
+	/* What the services would have sent back */
+	private static GetMethod response(final String body,final String location,final boolean xml) {
+		return new GetMethod() {
+			@Override public InputStream getResponseBodyAsStream() throws IOException {
+				return new ByteArrayInputStream(body.getBytes("UTF-8"));
+			}
+
+			@Override public String getResponseBodyAsString() {
+				return body;
+			}
+
+			@Override public Header getResponseHeader(String name) {
+				if(xml && "Content-Type".equals(name))
+					return new Header(name,"application/xml");
+				if(location!=null && "Location".equals(name))
+					return new Header(name,location);
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * @param status
+	 * @param doc null for a response without a document
+	 */
+	protected static ReturnedDocument returnedDocument(int status,Document doc) throws ConnectionException {
+		ReturnedDocument out=new ReturnedDocument();
+		try {
+			out.setResponse(response(doc==null?"":doc.asXML(),null,doc!=null),status);
+		} catch (Exception e) {
+			throw new ConnectionException("Bad stub document",e);
+		}
+		return out;
+	}
+
+	protected static ReturnedURL returnedURL(int status,String url) throws ConnectionException {
+		ReturnedURL out=new ReturnedURL();
+		try {
+			out.setResponse(response("",url,false),status);
+		} catch (ConnectionException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ConnectionException("Bad stub URL",e);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,125 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestFanOut {
+	private static Future<String> done(String value) {
+		FutureTask<String> out=new FutureTask<String>(new Runnable() { public void run() {} },value);
+		out.run();
+		return out;
+	}
+
+	private static Future<String> failed() {
+		FutureTask<String> out=new FutureTask<String>(new Callable<String>() {
+			public String call() throws Exception { throw new Exception("services said no"); }
+		});
+		out.run();
+		return out;
+	}
+
+	/* Never finishes of its own accord */
+	private static Future<String> hung() {
+		return new FutureTask<String>(new Callable<String>() {
+			public String call() { return "late"; }
+		});
+	}
+
+	@Test public void testAwaitCollectsWhatFinished() {
+		Map<String,Future<String>> pending=new LinkedHashMap<String,Future<String>>();
+		pending.put("/a",done("A"));
+		pending.put("/b",failed());
+		pending.put("/c",done("C"));
+		Map<String,String> out=ServicesConnection.awaitFanOut(pending,1000);
+		assertEquals(2,out.size());
+		assertEquals("A",out.get("/a"));
+		assertEquals("C",out.get("/c"));
+		assertFalse(out.containsKey("/b"));
+	}
+
+	@Test public void testAwaitHasOneDeadline() {
+		Map<String,Future<String>> pending=new LinkedHashMap<String,Future<String>>();
+		for(int i=0;i<5;i++)
+			pending.put("/hung"+i,hung());
+		pending.put("/ok",done("OK"));
+		long start=System.currentTimeMillis();
+		Map<String,String> out=ServicesConnection.awaitFanOut(pending,200);
+		long took=System.currentTimeMillis()-start;
+		// one timeout for all of them, not one each
+		assertTrue("took "+took,took<600);
+		assertEquals(1,out.size());
+		assertEquals("OK",out.get("/ok"));
+		for(int i=0;i<5;i++)
+			assertTrue(pending.get("/hung"+i).isCancelled());
+	}
+
+	@Test public void testCancelDoesNotWait() {
+		Map<String,Future<String>> pending=new LinkedHashMap<String,Future<String>>();
+		for(int i=0;i<3;i++)
+			pending.put("/hung"+i,hung());
+		long start=System.currentTimeMillis();
+		ServicesConnection.cancelFanOut(pending);
+		assertTrue(System.currentTimeMillis()-start<100);
+		for(Future<String> f : pending.values())
+			assertTrue(f.isCancelled());
+	}
+
+	@Test public void testExecutorPerConnection() throws Exception {
+		ConnectionPoolConfig config=new ConnectionPoolConfig();
+		ServicesConnection a=new ServicesConnection("http://stub.invalid/cspace-services",null,config);
+		ServicesConnection b=new ServicesConnection("http://stub.invalid/cspace-services",null,config);
+		assertSame(a.getFanOutExecutor(),a.getFanOutExecutor());
+		assertNotSame(a.getFanOutExecutor(),b.getFanOutExecutor());
+		assertEquals(config.getFanOutThreads(),((ThreadPoolExecutor)a.getFanOutExecutor()).getMaximumPoolSize());
+		assertEquals(ConnectionPoolConfig.DEFAULT_MAX_CONNECTIONS/2,config.getFanOutThreads());
+	}
+
+	@Test public void testExecutorRunsOnCallerWhenFull() throws Exception {
+		ConnectionPoolConfig config=new ConnectionPoolConfig();
+		ExecutorService executor=new ServicesConnection("http://stub.invalid/cspace-services",null,config).getFanOutExecutor();
+		final CountDownLatch release=new CountDownLatch(1);
+		List<Future<String>> blockers=new ArrayList<Future<String>>();
+		try {
+			// fill every thread and the whole queue
+			for(int i=0;i<config.getFanOutThreads()+config.getFanOutQueue();i++) {
+				blockers.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						release.await(10,TimeUnit.SECONDS);
+						return Thread.currentThread().getName();
+					}
+				}));
+			}
+			// this one has nowhere to go, so runs here rather than waiting behind the others
+			Future<String> mine=executor.submit(new Callable<String>() {
+				public String call() {
+					return Thread.currentThread().getName();
+				}
+			});
+			assertTrue(mine.isDone());
+			assertEquals(Thread.currentThread().getName(),mine.get());
+		} finally {
+			release.countDown();
+		}
+		for(Future<String> f : blockers)
+			assertTrue(f.get(10,TimeUnit.SECONDS).startsWith("services-fanout-"));
+	}
+}
@@ -0,0 +1,40 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.connection;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestInstrumentedConnectionManager {
+
+	@Test public void testLeasedAndAvailable() throws Exception {
+		InstrumentedConnectionManager manager=new InstrumentedConnectionManager();
+		HostConfiguration host=new HostConfiguration();
+		host.setHost("stub.invalid",80);
+		// connections aren't opened until used, so none of this goes near the network
+		HttpConnection a=manager.getConnectionWithTimeout(host,1000);
+		HttpConnection b=manager.getConnectionWithTimeout(host,1000);
+		JSONObject stats=manager.getStats();
+		assertEquals(2,stats.getInt("leased"));
+		assertEquals(0,stats.getInt("available"));
+		a.releaseConnection();
+		stats=manager.getStats();
+		assertEquals(1,stats.getInt("leased"));
+		assertEquals(1,stats.getInt("available"));
+		// released twice is still only released once
+		a.releaseConnection();
+		b.releaseConnection();
+		stats=manager.getStats();
+		assertEquals(0,stats.getInt("leased"));
+		assertEquals(2,stats.getInt("available"));
+		assertEquals(2,stats.getInt("acquired"));
+	}
+}
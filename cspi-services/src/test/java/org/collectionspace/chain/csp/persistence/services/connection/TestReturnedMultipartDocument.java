@@ -0,0 +1,101 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.connection;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.io.IOUtils;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
+import org.junit.Test;
+
+public class TestReturnedMultipartDocument {
+
+	private static byte[] sample() throws IOException {
+		InputStream in=TestReturnedMultipartDocument.class.getResourceAsStream("multipart-response.xml");
+		assertNotNull(in);
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/* As setResponse used to split the payload: each part serialized and parsed again on its own */
+	private static Map<String,Document> reparsed(byte[] body) throws Exception {
+		Map<String,Document> out=new HashMap<String,Document>();
+		Document doc=new SAXReader().read(new ByteArrayInputStream(body),"UTF-8");
+		for(Iterator<?> i=doc.getRootElement().elementIterator();i.hasNext();) {
+			Element part=(Element)i.next();
+			out.put(part.getName(),DocumentHelper.parseText(part.asXML()));
+		}
+		return out;
+	}
+
+	private static ReturnedMultipartDocument returned(final byte[] body) throws Exception {
+		ReturnedMultipartDocument out=new ReturnedMultipartDocument();
+		out.setResponse(new GetMethod() {
+			@Override public InputStream getResponseBodyAsStream() {
+				return new ByteArrayInputStream(body);
+			}
+
+			@Override public Header getResponseHeader(String name) {
+				return "Content-Type".equals(name)?new Header(name,"application/xml"):null;
+			}
+		},200);
+		return out;
+	}
+
+	@Test public void testPartsAsBefore() throws Exception {
+		byte[] body=sample();
+		Map<String,Document> expected=reparsed(body);
+		ReturnedMultipartDocument got=returned(body);
+		String[] names=got.listDocuments();
+		Arrays.sort(names);
+		String[] want=expected.keySet().toArray(new String[0]);
+		Arrays.sort(want);
+		assertArrayEquals(want,names);
+		for(String name : names) {
+			assertEquals(name,expected.get(name).asXML(),got.getDocument(name).asXML());
+			// and it reads back the same
+			assertEquals(name,expected.get(name).asXML(),DocumentHelper.parseText(got.getDocument(name).asXML()).asXML());
+		}
+	}
+
+	@Test public void testPrefixesResolve() throws Exception {
+		ReturnedMultipartDocument got=returned(sample());
+		Document common=got.getDocument("collectionobjects_common");
+		Element root=common.getRootElement();
+		assertEquals("http://collectionspace.org/services/collectionobject",root.getNamespaceURI());
+		assertEquals("2010.1.1",root.elementText("objectNumber"));
+		assertEquals("A & B's <title>",common.selectSingleNode("//titleGroup/title").getText());
+		assertEquals("true",root.element("owner").attributeValue(DocumentHelper.createQName("nil",
+				DocumentHelper.createNamespace("xsi","http://www.w3.org/2001/XMLSchema-instance"))));
+		// a prefix only the envelope declared
+		Element extra=got.getDocument("collectionobjects_extra").getRootElement();
+		assertEquals("http://collectionspace.org/services/collectionobject/local/extra",extra.getNamespaceURI());
+		assertEquals("declared on the envelope",extra.elementText("note"));
+		// the same prefix for another namespace in another part
+		assertEquals("http://collectionspace.org/collectionspace_core/",got.getDocument("collectionspace_core").getRootElement().getNamespaceURI());
+		assertEquals("CRUDL",got.getDocument("account_permission").getRootElement().element("permission").elementText("actionGroup"));
+		// each part is its own document
+		assertNull(root.getParent());
+		assertSame(common,root.getDocument());
+	}
+}
@@ -0,0 +1,120 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.fake;
+
+import org.collectionspace.chain.csp.persistence.services.ServicesStorageGenerator;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.jetty.servlet.Context;
+import org.mortbay.jetty.servlet.ServletHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-process stand-in for the CollectionSpace services, for running the services and webapp tests
+ * without a services server. It serves the services' REST interface over HTTP on a local port from
+ * records kept in memory (see FakeServicesServlet for what it understands), optionally taking a while
+ * over each request, to look more like the real thing under load.
+ *
+ * Tests get it with startIfWanted(), which starts one for the whole run when the cspace.services.fake
+ * system property is true (as the fake-services profile sets it), and points the app at it through
+ * ServicesStorageGenerator.URL_PROPERTY.
+ */
+public class FakeServices {
+	private static final Logger log=LoggerFactory.getLogger(FakeServices.class);
+	public static final String FAKE_PROPERTY="cspace.services.fake";
+	public static final String LATENCY_PROPERTY="cspace.services.fake.latency";
+	public static final String JITTER_PROPERTY="cspace.services.fake.jitter";
+	public static final String CONTEXT="/cspace-services";
+
+	private static FakeServices shared;
+
+	private final FakeStore store=new FakeStore();
+	private final FakeServicesServlet servlet=new FakeServicesServlet(store);
+	private Server server;
+	private SelectChannelConnector connector;
+
+	/**
+	 * The fake for this run, started and made the services the app uses, if the fake is wanted. Otherwise
+	 * null, and tests use whatever services the config says.
+	 */
+	public static synchronized FakeServices startIfWanted() throws Exception {
+		if(!Boolean.getBoolean(FAKE_PROPERTY))
+			return null;
+		if(shared==null) {
+			FakeServices fake=new FakeServices();
+			fake.setLatency(Integer.getInteger(LATENCY_PROPERTY,0),Integer.getInteger(JITTER_PROPERTY,0));
+			fake.start();
+			System.setProperty(ServicesStorageGenerator.URL_PROPERTY,fake.getBaseURL());
+			shared=fake;
+		}
+		return shared;
+	}
+
+	public synchronized void start() throws Exception {
+		if(server!=null)
+			return;
+		server=new Server();
+		connector=new SelectChannelConnector();
+		connector.setHost("127.0.0.1");
+		connector.setPort(0);
+		server.addConnector(connector);
+		Context context=new Context(server,CONTEXT,Context.NO_SESSIONS);
+		context.addServlet(new ServletHolder(servlet),"/*");
+		server.start();
+		log.info("Fake services listening at "+getBaseURL());
+	}
+
+	public synchronized void stop() throws Exception {
+		if(server==null)
+			return;
+		server.stop();
+		server=null;
+		connector=null;
+	}
+
+	public synchronized String getBaseURL() {
+		if(connector==null)
+			throw new IllegalStateException("Fake services not started");
+		return "http://127.0.0.1:"+connector.getLocalPort()+CONTEXT;
+	}
+
+	/**
+	 * How long each request takes: latency milliseconds, plus up to jitter more chosen at random.
+	 */
+	public void setLatency(int latency,int jitter) {
+		servlet.setLatency(latency,jitter);
+	}
+
+	/**
+	 * The tenant accountperms says users belong to, and the domain refNames are made in. By default
+	 * tenant 1, core.collectionspace.org, as the default tenant config expects.
+	 */
+	public void setTenant(String tenant,String domain) {
+		store.setTenant(tenant,domain);
+	}
+
+	/** Lists resource in everyone's accountperms, as well as the collections held */
+	public void grant(String resource) {
+		store.grant(resource);
+	}
+
+	/** Forgets every record held */
+	public void clear() {
+		store.clear();
+	}
+
+	/** How many requests have been served, including refused ones */
+	public long getRequestCount() {
+		return servlet.getRequests();
+	}
+
+	/** How many records are held */
+	public int size() {
+		return store.size();
+	}
+}
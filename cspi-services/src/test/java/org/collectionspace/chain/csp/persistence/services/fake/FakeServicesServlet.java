@@ -0,0 +1,294 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.fake;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.binary.Base64;
+import org.collectionspace.chain.csp.persistence.services.fake.FakeStore.Entry;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+import org.dom4j.io.SAXReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The services' REST interface over a FakeStore, as much of it as ServicesConnection's callers use: record
+ * CRUD and lists, workflow transitions, relations, authorities and their items, id generators and
+ * accountperms. A path with an even number of steps is a record, an odd number a collection.
+ */
+class FakeServicesServlet extends HttpServlet {
+	private static final long serialVersionUID=1L;
+	private static final Logger log=LoggerFactory.getLogger(FakeServicesServlet.class);
+	private static final String WORKFLOW="workflow";
+
+	private final FakeStore store;
+	private final Random random=new Random();
+	private final AtomicLong requests=new AtomicLong();
+	private volatile int latency,jitter;
+
+	FakeServicesServlet(FakeStore store) {
+		this.store=store;
+	}
+
+	void setLatency(int latency,int jitter) {
+		this.latency=latency;
+		this.jitter=jitter;
+	}
+
+	long getRequests() {
+		return requests.get();
+	}
+
+	@Override
+	protected void service(HttpServletRequest req,HttpServletResponse resp) throws ServletException, IOException {
+		requests.incrementAndGet();
+		int delay=latency;
+		if(jitter>0) {
+			synchronized(random) {
+				delay+=random.nextInt(jitter+1);
+			}
+		}
+		if(delay>0) {
+			try {
+				Thread.sleep(delay);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(user(req)==null) {
+			resp.setHeader("WWW-Authenticate","Basic realm=\"org.collectionspace.services\"");
+			error(resp,HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+		super.service(req,resp);
+	}
+
+	/* The user, if they have said who they are and are who they say */
+	private String user(HttpServletRequest req) throws IOException {
+		String auth=req.getHeader("Authorization");
+		if(auth==null || !auth.startsWith("Basic "))
+			return null;
+		String[] creds=new String(Base64.decodeBase64(auth.substring(6).trim().getBytes("UTF-8")),"UTF-8").split(":",2);
+		if(creds.length!=2 || !store.authenticate(creds[0],creds[1]))
+			return null;
+		return creds[0];
+	}
+
+	private List<String> steps(HttpServletRequest req) {
+		String path=req.getPathInfo();
+		return FakeStore.steps(path==null?"":path);
+	}
+
+	private static Map<String,String> query(HttpServletRequest req) throws IOException {
+		Map<String,String> out=new HashMap<String,String>();
+		String qs=req.getQueryString();
+		if(qs==null)
+			return out;
+		for(String arg : qs.split("&")) {
+			String[] kv=arg.split("=",2);
+			if(kv.length==2)
+				out.put(URLDecoder.decode(kv[0],"UTF-8"),URLDecoder.decode(kv[1],"UTF-8"));
+		}
+		return out;
+	}
+
+	private static Document body(HttpServletRequest req) throws IOException {
+		try {
+			return new SAXReader().read(req.getInputStream());
+		} catch(DocumentException e) {
+			log.warn("Unparseable request body: "+e.getMessage());
+			return null;
+		}
+	}
+
+	private static void send(HttpServletResponse resp,int status,Document doc) throws IOException {
+		byte[] data=doc.asXML().getBytes("UTF-8");
+		resp.setStatus(status);
+		// exactly this, as Returned* check for it
+		resp.setContentType("application/xml");
+		resp.setContentLength(data.length);
+		OutputStream out=resp.getOutputStream();
+		out.write(data);
+		out.flush();
+	}
+
+	private static void sendText(HttpServletResponse resp,int status,String text) throws IOException {
+		byte[] data=text.getBytes("UTF-8");
+		resp.setStatus(status);
+		resp.setContentType("text/plain");
+		resp.setContentLength(data.length);
+		resp.getOutputStream().write(data);
+	}
+
+	/* Just the status and its reason, rather than the container's error page */
+	private static void error(HttpServletResponse resp,int status) throws IOException {
+		String reason;
+		switch(status) {
+		case HttpServletResponse.SC_UNAUTHORIZED: reason="Unauthorized"; break;
+		case HttpServletResponse.SC_NOT_FOUND: reason="Not found"; break;
+		case HttpServletResponse.SC_METHOD_NOT_ALLOWED: reason="Method not allowed"; break;
+		default: reason="Bad request"; break;
+		}
+		sendText(resp,status,reason);
+	}
+
+	private static Document emptyList(String name) {
+		Document out=DocumentHelper.createDocument();
+		Element root=out.addElement(name);
+		root.addElement("pageNum").setText("0");
+		root.addElement("pageSize").setText("40");
+		root.addElement("itemsInPage").setText("0");
+		root.addElement("totalItems").setText("0");
+		return out;
+	}
+
+	private Document workflow(Entry entry) {
+		Document out=DocumentHelper.createDocument();
+		Element root=out.addElement("document");
+		root.addAttribute("name",WORKFLOW);
+		Element common=root.addElement(new QName("workflows_common",new Namespace("ns2","http://collectionspace.org/services/workflow")));
+		common.addElement("lifeCyclePolicy").setText("default");
+		common.addElement("currentLifeCycleState").setText(entry.workflow);
+		return out;
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest req,HttpServletResponse resp) throws IOException {
+		List<String> steps=store.resolve(steps(req));
+		if(steps==null || steps.isEmpty()) {
+			error(resp,HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		String last=steps.get(steps.size()-1);
+		if(steps.size()==3 && FakeStore.ACCOUNTS.equals(steps.get(0)) && "accountperms".equals(last)) {
+			send(resp,200,store.accountPermissions(user(req)));
+			return;
+		}
+		if(steps.size()%2==1 && steps.size()>1) {
+			// sub-resources of a record
+			Entry entry=store.get(FakeStore.join(steps,0,steps.size()-2),steps.get(steps.size()-2));
+			if("authorityrefs".equals(last)) {
+				send(resp,200,emptyList("authority-ref-list"));
+				return;
+			}
+			if("refObjs".equals(last)) {
+				send(resp,200,emptyList("authority-ref-doc-list"));
+				return;
+			}
+			if(WORKFLOW.equals(last) && entry!=null) {
+				send(resp,200,workflow(entry));
+				return;
+			}
+		}
+		if(steps.size()%2==0) {
+			Entry entry=store.get(FakeStore.join(steps,0,steps.size()-1),last);
+			if(entry==null) {
+				error(resp,HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			send(resp,200,store.toDocument(entry));
+			return;
+		}
+		send(resp,200,store.list(steps,query(req)));
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest req,HttpServletResponse resp) throws IOException {
+		List<String> steps=store.resolve(steps(req));
+		if(steps==null || steps.isEmpty()) {
+			error(resp,HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		if(steps.size()==3 && "idgenerators".equals(steps.get(0)) && "ids".equals(steps.get(2))) {
+			sendText(resp,201,store.nextId(steps.get(1)));
+			return;
+		}
+		if(steps.size()%2==0) {
+			error(resp,HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+			return;
+		}
+		Document body=body(req);
+		if(body==null) {
+			error(resp,HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		Entry entry=store.create(FakeStore.join(steps,0,steps.size()),body,user(req));
+		resp.setHeader("Location",base(req)+entry.getURI());
+		resp.setStatus(HttpServletResponse.SC_CREATED);
+	}
+
+	@Override
+	protected void doPut(HttpServletRequest req,HttpServletResponse resp) throws IOException {
+		List<String> steps=store.resolve(steps(req));
+		if(steps==null || steps.isEmpty()) {
+			error(resp,HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		int n=steps.size();
+		if(n>=4 && n%2==0 && WORKFLOW.equals(steps.get(n-2))) {
+			Entry entry=store.get(FakeStore.join(steps,0,n-3),steps.get(n-3));
+			if(entry==null) {
+				error(resp,HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			store.transition(entry,steps.get(n-1));
+			send(resp,200,workflow(entry));
+			return;
+		}
+		if(n%2==1) {
+			error(resp,HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+			return;
+		}
+		Entry entry=store.get(FakeStore.join(steps,0,n-1),steps.get(n-1));
+		if(entry==null) {
+			error(resp,HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		Document body=body(req);
+		if(body==null) {
+			error(resp,HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		send(resp,200,store.toDocument(store.update(entry,body,user(req))));
+	}
+
+	@Override
+	protected void doDelete(HttpServletRequest req,HttpServletResponse resp) throws IOException {
+		List<String> steps=store.resolve(steps(req));
+		if(steps==null || steps.size()%2==1) {
+			error(resp,HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		int n=steps.size();
+		if(!store.delete(FakeStore.join(steps,0,n-1),steps.get(n-1))) {
+			error(resp,HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		resp.setStatus(HttpServletResponse.SC_OK);
+	}
+
+	private static String base(HttpServletRequest req) {
+		return req.getScheme()+"://"+req.getServerName()+":"+req.getServerPort()+req.getContextPath()+req.getServletPath();
+	}
+}
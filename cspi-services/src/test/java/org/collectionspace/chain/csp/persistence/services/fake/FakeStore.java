@@ -0,0 +1,608 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.fake;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import org.apache.commons.codec.binary.Base64;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+
+/**
+ * What the fake services hold: records by collection, where a collection is the path they are posted to
+ * (eg "collectionobjects", or "personauthorities/{csid}/items"), each record being its parts as they were
+ * sent. Records get the csid, uri, refName and timestamps the services would give them, and lists are
+ * made from the leaf elements of a record's common part, which is what the services' list results hold.
+ *
+ * Everything is synchronized on the store: it is only meant to be as fast as it needs to be for tests.
+ */
+class FakeStore {
+	static final String CORE_PART="collectionspace_core";
+	static final String CORE_NAMESPACE="http://collectionspace.org/collectionspace_core/";
+	static final String RELATIONS="relations";
+	static final String ACCOUNTS="accounts";
+
+	private static final String NAME_PREFIX="urn:cspace:name(";
+	private static final String ALL="_ALL_";
+
+	/* list and item element names, where a service doesn't use abstract-common-list */
+	private static final Map<String,String[]> LISTS=new HashMap<String,String[]>();
+	/* filter parameter -> the field it looks at, null for any field */
+	private static final Map<String,String> FILTERS=new HashMap<String,String>();
+	/* id generator csid -> the pattern the services' default generator makes, {y} the year and {n} the number */
+	private static final Map<String,String> ID_PATTERNS=new HashMap<String,String>();
+
+	static {
+		LISTS.put(ACCOUNTS,new String[]{"accounts-common-list","account-list-item"});
+		LISTS.put("authorization/roles",new String[]{"roles_list","role"});
+		LISTS.put("authorization/permissions",new String[]{"permissions_list","permission"});
+		LISTS.put(RELATIONS,new String[]{"relations-common-list","relation-list-item"});
+
+		FILTERS.put("kw",null);
+		FILTERS.put("pt",null);
+		FILTERS.put("uid","userId");
+		FILTERS.put("sn","screenName");
+		FILTERS.put("email","email");
+		FILTERS.put("res","resourceName");
+		FILTERS.put("r","roleName");
+		FILTERS.put("actGrp","actionGroup");
+
+		ID_PATTERNS.put("9dd92952-c384-44dc-a736-95e435c1759c","{y}.1.{n}");
+		ID_PATTERNS.put("70586d30-9dca-4a07-a3a2-1976fe898028","AR{y}.{n}");
+		ID_PATTERNS.put("d2d80822-25c7-4c7c-a105-fc40cdb0c50f","EV{y}.{n}");
+		ID_PATTERNS.put("8088cfa5-c743-4824-bb4d-fb11b12847f7","IN{y}.{n}");
+		ID_PATTERNS.put("6d472be6-2534-47f3-a3f1-3f160e7a9303","INV{y}.{n}");
+		ID_PATTERNS.put("80fedaf6-1647-4f30-9f53-a75a3cac2ffd","LIB{y}.{n}");
+		ID_PATTERNS.put("ed87e7c6-0678-4f42-9d33-f671835586ef","LI{y}.{n}");
+		ID_PATTERNS.put("4b984865-f93d-4481-b874-3dba863ec589","LO{y}.{n}");
+		ID_PATTERNS.put("1fc5e383-0786-4126-9a3c-ec7df4517ee3","LOC{y}.{n}");
+		ID_PATTERNS.put("0518132e-dd8c-4773-8fa9-07c9af4444ee","ST{y}.{n}");
+		ID_PATTERNS.put("49ca9d8d-7136-47ff-a70e-4a47b9038b70","MV{y}.{n}");
+		ID_PATTERNS.put("d4eea707-d473-4367-853a-728fbcd9be17","EX{y}.{n}");
+		ID_PATTERNS.put("eafbc0cd-70fe-4802-8476-b931b1b0e381","VC{y}.{n}");
+		ID_PATTERNS.put("cd91d8b8-f346-4925-a425-93e02bd1c5c9","MR{y}.{n}");
+		ID_PATTERNS.put("29ff8c5e-597a-41c6-a481-6e92dfe0a59f","EXH{y}.{n}");
+		ID_PATTERNS.put("585af100-1a35-11e2-892e-0800200c9a66","CC{y}.{n}");
+		ID_PATTERNS.put("aad54202-404d-4f19-ada9-8b1e378ad1b2","CT{y}.{n}");
+		ID_PATTERNS.put("1a67470b-19b1-4ae3-88d4-2a0aa936270e","{y}.1.{n}");
+		ID_PATTERNS.put("a91db555-5c53-4996-9918-6712351397a0","{y}.1.{n}");
+	}
+
+	static class Entry {
+		final String collection,csid;
+		final boolean multipart;
+		final Map<String,Element> parts=new LinkedHashMap<String,Element>();
+		String workflow="project",refName,created,updated,createdBy,updatedBy;
+
+		Entry(String collection,String csid,boolean multipart) {
+			this.collection=collection;
+			this.csid=csid;
+			this.multipart=multipart;
+		}
+
+		String getURI() { return "/"+collection+"/"+csid; }
+
+		/* the part the services would list from: the _common one, or else the first */
+		Element getCommon() {
+			for(Map.Entry<String,Element> e : parts.entrySet())
+				if(e.getKey().endsWith("_common"))
+					return e.getValue();
+			Iterator<Element> it=parts.values().iterator();
+			return it.hasNext()?it.next():null;
+		}
+
+		String text(String name) {
+			Element common=getCommon();
+			if(common==null)
+				return null;
+			Map<String,String> leaves=leaves(common);
+			return leaves.get(name);
+		}
+	}
+
+	private final Map<String,Map<String,Entry>> collections=new HashMap<String,Map<String,Entry>>();
+	private final Map<String,Entry> by_csid=new HashMap<String,Entry>();
+	private final Map<String,Integer> ids=new HashMap<String,Integer>();
+	private final Set<String> granted=new LinkedHashSet<String>();
+	private String domain="core.collectionspace.org",tenant="1";
+
+	synchronized void setTenant(String tenant,String domain) {
+		this.tenant=tenant;
+		this.domain=domain;
+	}
+
+	synchronized String getTenant() { return tenant; }
+
+	synchronized void grant(String resource) { granted.add(resource); }
+
+	synchronized void clear() {
+		collections.clear();
+		by_csid.clear();
+		ids.clear();
+	}
+
+	synchronized int size() { return by_csid.size(); }
+
+	/* The parts of a request body: the children of a multipart <document>, or else the body itself */
+	static Map<String,Element> parts(Document body) {
+		Map<String,Element> out=new LinkedHashMap<String,Element>();
+		Element root=body.getRootElement();
+		if(!"document".equals(root.getName())) {
+			out.put(root.getName(),root.createCopy());
+			return out;
+		}
+		for(Object o : root.elements()) {
+			Element part=((Element)o).createCopy();
+			// keep namespaces the part relied on the <document> to declare
+			for(Object n : root.declaredNamespaces()) {
+				Namespace ns=(Namespace)n;
+				if(part.getNamespaceForPrefix(ns.getPrefix())==null)
+					part.add(ns);
+			}
+			out.put(part.getName(),part);
+		}
+		return out;
+	}
+
+	/* Each leaf's text by name, first one found winning, in document order */
+	static Map<String,String> leaves(Element in) {
+		Map<String,String> out=new LinkedHashMap<String,String>();
+		addLeaves(in,out);
+		return out;
+	}
+
+	private static void addLeaves(Element in,Map<String,String> out) {
+		for(Object o : in.elements()) {
+			Element e=(Element)o;
+			if(e.elements().isEmpty()) {
+				if(!out.containsKey(e.getName()))
+					out.put(e.getName(),e.getText());
+			} else
+				addLeaves(e,out);
+		}
+	}
+
+	private static String now() {
+		SimpleDateFormat format=new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.format(new Date());
+	}
+
+	/* services paths have the authorization services one level down, so treat "authorization/x" as one step */
+	static List<String> steps(String path) {
+		List<String> out=new ArrayList<String>();
+		for(String s : path.split("/")) {
+			if("".equals(s))
+				continue;
+			if(out.size()==1 && "authorization".equals(out.get(0)))
+				out.set(0,"authorization/"+s);
+			else
+				out.add(s);
+		}
+		return out;
+	}
+
+	static String join(List<String> steps,int from,int to) {
+		StringBuilder out=new StringBuilder();
+		for(int i=from;i<to;i++) {
+			if(i>from)
+				out.append('/');
+			out.append(steps.get(i));
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Replaces urn:cspace:name(x) steps with the csid of the record with that shortIdentifier, in the
+	 * collection before it. Returns null if one doesn't match anything.
+	 */
+	synchronized List<String> resolve(List<String> steps) {
+		List<String> out=new ArrayList<String>(steps);
+		for(int i=0;i<out.size();i++) {
+			String step=out.get(i);
+			if(!step.startsWith(NAME_PREFIX) || !step.endsWith(")"))
+				continue;
+			String name=step.substring(NAME_PREFIX.length(),step.length()-1);
+			Entry found=null;
+			Map<String,Entry> in=collections.get(join(out,0,i));
+			if(in!=null) {
+				for(Entry e : in.values()) {
+					if(name.equals(e.text("shortIdentifier"))) {
+						found=e;
+						break;
+					}
+				}
+			}
+			if(found==null)
+				return null;
+			out.set(i,found.csid);
+		}
+		return out;
+	}
+
+	synchronized Entry get(String collection,String csid) {
+		Map<String,Entry> in=collections.get(collection);
+		return in==null?null:in.get(csid);
+	}
+
+	synchronized Entry get(String csid) { return by_csid.get(csid); }
+
+	synchronized Entry create(String collection,Document body,String user) {
+		Entry out=new Entry(collection,UUID.randomUUID().toString(),"document".equals(body.getRootElement().getName()));
+		out.parts.putAll(parts(body));
+		out.created=out.updated=now();
+		out.createdBy=out.updatedBy=user;
+		name(out);
+		Map<String,Entry> in=collections.get(collection);
+		if(in==null) {
+			in=new LinkedHashMap<String,Entry>();
+			collections.put(collection,in);
+		}
+		in.put(out.csid,out);
+		by_csid.put(out.csid,out);
+		return out;
+	}
+
+	/* Parts sent replace those of the same name, the rest are kept */
+	synchronized Entry update(Entry entry,Document body,String user) {
+		entry.parts.putAll(parts(body));
+		entry.updated=now();
+		entry.updatedBy=user;
+		name(entry);
+		return entry;
+	}
+
+	synchronized boolean delete(String collection,String csid) {
+		Map<String,Entry> in=collections.get(collection);
+		if(in==null || in.remove(csid)==null)
+			return false;
+		by_csid.remove(csid);
+		return true;
+	}
+
+	synchronized void transition(Entry entry,String transition) {
+		if("delete".equals(transition))
+			entry.workflow="deleted";
+		else if("lock".equals(transition))
+			entry.workflow="locked";
+		else
+			entry.workflow="project";
+		entry.updated=now();
+	}
+
+	synchronized String nextId(String generator) {
+		Integer last=ids.get(generator);
+		int next=last==null?1:last+1;
+		ids.put(generator,next);
+		String pattern=ID_PATTERNS.get(generator);
+		if(pattern==null)
+			pattern="{y}.{n}";
+		String year=Integer.toString(Calendar.getInstance().get(Calendar.YEAR));
+		return pattern.replace("{y}",year).replace("{n}",Integer.toString(next));
+	}
+
+	/**
+	 * Whether the user may in. An account's password is checked if there's one for the user, anyone else
+	 * is let in as long as they say who they are.
+	 */
+	synchronized boolean authenticate(String user,String password) {
+		if(user==null || "".equals(user))
+			return false;
+		Entry account=getAccount(user);
+		if(account==null)
+			return true;
+		String stored=account.text("password");
+		if(stored==null || "".equals(stored))
+			return true;
+		try {
+			return new String(Base64.decodeBase64(stored.getBytes("UTF-8")),"UTF-8").equals(password);
+		} catch(java.io.UnsupportedEncodingException e) {
+			return false;
+		}
+	}
+
+	private Entry getAccount(String user) {
+		Map<String,Entry> accounts=collections.get(ACCOUNTS);
+		if(accounts==null)
+			return null;
+		for(Entry e : accounts.values())
+			if(user.equals(e.text("userId")))
+				return e;
+		return null;
+	}
+
+	/* Shortidentifiers and refNames, as the services give authorities and their items */
+	private void name(Entry entry) {
+		Element common=entry.getCommon();
+		String display=display(entry);
+		List<String> steps=steps(entry.collection);
+		if(common!=null && steps.size()==1 && entry.text("shortIdentifier")!=null) {
+			entry.refName="urn:cspace:"+domain+":"+entry.collection+":name("+entry.text("shortIdentifier")+")'"+display+"'";
+			set(common,"refName",entry.refName);
+		} else if(common!=null && steps.size()==3 && "items".equals(steps.get(2)) && by_csid.containsKey(steps.get(1))) {
+			Entry parent=by_csid.get(steps.get(1));
+			String short_id=entry.text("shortIdentifier");
+			if(short_id==null || "".equals(short_id)) {
+				short_id=display.replaceAll("[^A-Za-z0-9]","")+Math.abs(entry.csid.hashCode());
+				set(common,"shortIdentifier",short_id);
+			}
+			entry.refName="urn:cspace:"+domain+":"+steps.get(0)+":name("+parent.text("shortIdentifier")+"):item:name("+short_id+")'"+display+"'";
+			set(common,"refName",entry.refName);
+			set(common,"inAuthority",parent.csid);
+		} else
+			entry.refName="urn:cspace:"+domain+":"+steps.get(0)+":id("+entry.csid+")'"+display+"'";
+	}
+
+	private static void set(Element parent,String name,String value) {
+		Element e=parent.element(name);
+		if(e==null)
+			e=parent.addElement(name);
+		e.setText(value);
+	}
+
+	/* What a record is called, for its refName and relations */
+	static String display(Entry entry) {
+		for(String name : new String[]{"displayName","termDisplayName","title","objectNumber"}) {
+			String value=entry.text(name);
+			if(value!=null && !"".equals(value))
+				return value;
+		}
+		return "";
+	}
+
+	private static String number(Entry entry) {
+		Element common=entry.getCommon();
+		if(common==null)
+			return null;
+		for(Map.Entry<String,String> e : leaves(common).entrySet())
+			if(e.getKey().endsWith("Number") && !"".equals(e.getValue()))
+				return e.getValue();
+		return null;
+	}
+
+	/* A record as the services send it: its parts and a core part, or just the one part if that was all it had */
+	synchronized Document toDocument(Entry entry) {
+		if(!entry.multipart) {
+			Element part=entry.parts.values().iterator().next().createCopy();
+			if(part.attribute("csid")==null)
+				part.addAttribute("csid",entry.csid);
+			return DocumentHelper.createDocument(part);
+		}
+		Document out=DocumentHelper.createDocument();
+		Element root=out.addElement("document");
+		root.addAttribute("name",steps(entry.collection).get(0));
+		for(Element part : entry.parts.values())
+			root.add(part.createCopy());
+		Element core=root.addElement(new QName(CORE_PART,new Namespace("ns2",CORE_NAMESPACE)));
+		core.addElement("tenantId").setText(tenant);
+		core.addElement("uri").setText(entry.getURI());
+		core.addElement("refName").setText(entry.refName);
+		core.addElement("createdAt").setText(entry.created);
+		core.addElement("updatedAt").setText(entry.updated);
+		core.addElement("createdBy").setText(entry.createdBy==null?"":entry.createdBy);
+		core.addElement("updatedBy").setText(entry.updatedBy==null?"":entry.updatedBy);
+		core.addElement("workflowState").setText(entry.workflow);
+		return out;
+	}
+
+	/**
+	 * A page of a collection, filtered by the query parameters the services understand: keywords,
+	 * the account and authorization filters, soft deletion and relatedness. Advanced search and sorting
+	 * are ignored. A "_ALL_" step lists the items of every authority, and servicegroups every record.
+	 */
+	synchronized Document list(List<String> steps,Map<String,String> query) {
+		String collection=join(steps,0,steps.size());
+		List<Entry> all=new ArrayList<Entry>();
+		if(steps.size()==3 && ALL.equals(steps.get(1))) {
+			for(Map.Entry<String,Map<String,Entry>> c : collections.entrySet()) {
+				List<String> s=steps(c.getKey());
+				if(s.size()==3 && s.get(0).equals(steps.get(0)) && s.get(2).equals(steps.get(2)))
+					all.addAll(c.getValue().values());
+			}
+		} else if(steps.size()==3 && "servicegroups".equals(steps.get(0))) {
+			for(Map.Entry<String,Map<String,Entry>> c : collections.entrySet()) {
+				if(steps(c.getKey()).size()==1 && !RELATIONS.equals(c.getKey()))
+					for(Entry e : c.getValue().values())
+						if(e.multipart)
+							all.add(e);
+			}
+		} else if(collections.containsKey(collection))
+			all.addAll(collections.get(collection).values());
+		List<Entry> matched=new ArrayList<Entry>();
+		for(Entry e : all)
+			if(matches(e,query))
+				matched.add(e);
+		int size=number(query.get("pgSz"),40);
+		int page=number(query.get("pgNum"),0);
+		int from=size>0?Math.min(matched.size(),page*size):0;
+		int to=size>0?Math.min(matched.size(),from+size):matched.size();
+
+		String[] names=LISTS.get(RELATIONS.equals(collection)?RELATIONS:steps.get(0));
+		if(names==null)
+			names=new String[]{"abstract-common-list","list-item"};
+		Document out=DocumentHelper.createDocument();
+		Element root=out.addElement(names[0]);
+		root.addElement("pageNum").setText(Integer.toString(page));
+		root.addElement("pageSize").setText(Integer.toString(size));
+		root.addElement("itemsInPage").setText(Integer.toString(to-from));
+		root.addElement("totalItems").setText(Integer.toString(matched.size()));
+		Set<String> fields=new LinkedHashSet<String>();
+		Element returned=root.addElement("fieldsReturned");
+		for(Entry e : matched.subList(from,to)) {
+			Element item=root.addElement(names[1]);
+			if(RELATIONS.equals(collection))
+				relationItem(item,e);
+			else
+				listItem(item,e,"roles_list".equals(names[0]) || "permissions_list".equals(names[0]));
+			for(Object o : item.elements())
+				fields.add(((Element)o).getName());
+		}
+		StringBuilder list=new StringBuilder();
+		for(String f : fields) {
+			if(list.length()>0)
+				list.append('|');
+			list.append(f);
+		}
+		returned.setText(list.toString());
+		return out;
+	}
+
+	private static int number(String in,int otherwise) {
+		if(in==null || "".equals(in))
+			return otherwise;
+		try {
+			return Integer.parseInt(in);
+		} catch(NumberFormatException e) {
+			return otherwise;
+		}
+	}
+
+	private boolean matches(Entry e,Map<String,String> query) {
+		if("false".equals(query.get("wf_deleted")) && "deleted".equals(e.workflow))
+			return false;
+		if(RELATIONS.equals(e.collection)) {
+			if(!same(query.get("sbj"),e.text("subjectCsid")) || !same(query.get("obj"),e.text("objectCsid"))
+					|| !same(query.get("prd"),e.text("relationshipType")))
+				return false;
+			if(!sameIgnoringCase(query.get("srcType"),e.text("subjectDocumentType"))
+					|| !sameIgnoringCase(query.get("objType"),e.text("objectDocumentType")))
+				return false;
+		}
+		String related=query.get("rtSbj");
+		if(related!=null && !"".equals(related) && !isRelated(related,e.csid))
+			return false;
+		Element common=e.getCommon();
+		Map<String,String> leaves=common==null?new HashMap<String,String>():leaves(common);
+		for(Map.Entry<String,String> filter : FILTERS.entrySet()) {
+			String want=query.get(filter.getKey());
+			if(want==null || "".equals(want))
+				continue;
+			want=want.replace("*","").replace("%","").toLowerCase();
+			boolean found=false;
+			if(filter.getValue()==null) {
+				for(String value : leaves.values())
+					if(value.toLowerCase().contains(want))
+						found=true;
+			} else {
+				String value=leaves.get(filter.getValue());
+				found=value!=null && value.toLowerCase().contains(want);
+			}
+			if(!found)
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean same(String want,String value) {
+		return want==null || "".equals(want) || want.equals(value);
+	}
+
+	private static boolean sameIgnoringCase(String want,String value) {
+		return want==null || "".equals(want) || want.equalsIgnoreCase(value);
+	}
+
+	private boolean isRelated(String a,String b) {
+		Map<String,Entry> relations=collections.get(RELATIONS);
+		if(relations==null)
+			return false;
+		for(Entry r : relations.values()) {
+			String s=r.text("subjectCsid"),o=r.text("objectCsid");
+			if((a.equals(s) && b.equals(o)) || (a.equals(o) && b.equals(s)))
+				return true;
+		}
+		return false;
+	}
+
+	private void listItem(Element item,Entry e,boolean csid_attribute) {
+		if(csid_attribute)
+			item.addAttribute("csid",e.csid);
+		item.addElement("csid").setText(e.csid);
+		item.addElement("uri").setText(e.getURI());
+		item.addElement("refName").setText(e.refName);
+		item.addElement("updatedAt").setText(e.updated);
+		item.addElement("workflowState").setText(e.workflow);
+		Element common=e.getCommon();
+		if(common==null)
+			return;
+		for(Map.Entry<String,String> leaf : leaves(common).entrySet()) {
+			if(item.element(leaf.getKey())==null && !"password".equals(leaf.getKey()))
+				item.addElement(leaf.getKey()).setText(leaf.getValue());
+		}
+	}
+
+	private void relationItem(Element item,Entry e) {
+		item.addElement("csid").setText(e.csid);
+		item.addElement("uri").setText(e.getURI());
+		item.addElement("subjectCsid").setText(nonNull(e.text("subjectCsid")));
+		item.addElement("relationshipType").setText(nonNull(e.text("relationshipType")));
+		item.addElement("predicate").setText(nonNull(e.text("relationshipType")));
+		item.addElement("relationshipMetaType").setText(nonNull(e.text("relationshipMetaType")));
+		item.addElement("objectCsid").setText(nonNull(e.text("objectCsid")));
+		end(item.addElement("subject"),e.text("subjectCsid"),e.text("subjectDocumentType"));
+		end(item.addElement("object"),e.text("objectCsid"),e.text("objectDocumentType"));
+	}
+
+	/* One end of a relation, described from the record it points at */
+	private void end(Element out,String csid,String type) {
+		Entry target=csid==null?null:by_csid.get(csid);
+		out.addElement("csid").setText(nonNull(csid));
+		out.addElement("documentType").setText(nonNull(type));
+		out.addElement("uri").setText(target==null?"":target.getURI());
+		if(target==null)
+			return;
+		out.addElement("refName").setText(target.refName);
+		out.addElement("name").setText(display(target));
+		String number=number(target);
+		if(number!=null)
+			out.addElement("number").setText(number);
+	}
+
+	private static String nonNull(String in) {
+		return in==null?"":in;
+	}
+
+	/**
+	 * What the services say a user may do: everything, to every collection held and every resource
+	 * granted.
+	 */
+	synchronized Document accountPermissions(String user) {
+		Document out=DocumentHelper.createDocument();
+		Element root=out.addElement(new QName("account_permission",new Namespace("ns2","http://collectionspace.org/services/authorization")));
+		Entry account=getAccount(user);
+		Element acc=root.addElement("account");
+		acc.addElement("accountId").setText(account==null?"0":account.csid);
+		acc.addElement("screenName").setText(account==null || account.text("screenName")==null?user:account.text("screenName"));
+		acc.addElement("userId").setText(user);
+		acc.addElement("tenantId").setText(tenant);
+		Set<String> resources=new LinkedHashSet<String>(granted);
+		for(String c : collections.keySet())
+			resources.add(steps(c).get(0));
+		int n=0;
+		for(String resource : resources) {
+			Element perm=root.addElement("permission");
+			perm.addElement("permissionId").setText("fake-"+(n++));
+			perm.addElement("resourceName").setText(resource);
+			perm.addElement("actionGroup").setText("CRUDL");
+		}
+		return out;
+	}
+}
@@ -0,0 +1,182 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.fake;
+
+import static org.junit.Assert.*;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.collectionspace.chain.csp.persistence.services.ServicesRequestCredentials;
+import org.collectionspace.chain.csp.persistence.services.ServicesStorageGenerator;
+import org.collectionspace.chain.csp.persistence.services.connection.RequestMethod;
+import org.collectionspace.chain.csp.persistence.services.connection.ReturnedDocument;
+import org.collectionspace.chain.csp.persistence.services.connection.ReturnedMultipartDocument;
+import org.collectionspace.chain.csp.persistence.services.connection.ReturnedURL;
+import org.collectionspace.chain.csp.persistence.services.connection.ServicesConnection;
+import org.collectionspace.csp.api.core.CSPRequestCredentials;
+import org.collectionspace.csp.helper.core.RequestCache;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFakeServices {
+	private FakeServices fake;
+	private ServicesConnection conn;
+	private CSPRequestCredentials creds;
+
+	@Before public void start() throws Exception {
+		fake=new FakeServices();
+		fake.start();
+		conn=new ServicesConnection(fake.getBaseURL(),null);
+		creds=credentials("admin@core.collectionspace.org","Administrator");
+	}
+
+	@After public void stop() throws Exception {
+		fake.stop();
+	}
+
+	private static CSPRequestCredentials credentials(String user,String password) {
+		CSPRequestCredentials out=new ServicesRequestCredentials();
+		out.setCredential(ServicesStorageGenerator.CRED_USERID,user);
+		out.setCredential(ServicesStorageGenerator.CRED_PASSWORD,password);
+		return out;
+	}
+
+	private static Document part(String name,String ns,String... fields) {
+		Document out=DocumentHelper.createDocument();
+		Element root=out.addElement("ns2:"+name,ns);
+		for(int i=0;i<fields.length;i+=2)
+			root.addElement(fields[i]).setText(fields[i+1]);
+		return out;
+	}
+
+	private String create(String url,String part,Document doc) throws Exception {
+		Map<String,Document> body=new HashMap<String,Document>();
+		body.put(part,doc);
+		ReturnedURL out=conn.getMultipartURL(RequestMethod.POST,url,body,creds,new RequestCache());
+		assertEquals(201,out.getStatus());
+		return out.getURLTail();
+	}
+
+	private String object(String number,String title) throws Exception {
+		return create("collectionobjects/","collectionobjects_common",
+			part("collectionobjects_common","http://collectionspace.org/services/collectionobject","objectNumber",number,"title",title));
+	}
+
+	private List<Node> list(String url,String item) throws Exception {
+		ReturnedDocument out=conn.getXMLDocument(RequestMethod.GET,url,null,creds,new RequestCache());
+		assertEquals(200,out.getStatus());
+		return out.getDocument().selectNodes(item);
+	}
+
+	@Test public void testCRUD() throws Exception {
+		String csid=object("2014.1","A vase");
+		ReturnedMultipartDocument got=conn.getMultipartXMLDocument(RequestMethod.GET,"collectionobjects/"+csid,null,creds,new RequestCache());
+		assertEquals(200,got.getStatus());
+		assertEquals("2014.1",got.getDocument("collectionobjects_common").selectSingleNode("collectionobjects_common/objectNumber").getText());
+		Document core=got.getDocument(FakeStore.CORE_PART);
+		assertEquals("/collectionobjects/"+csid,core.selectSingleNode("collectionspace_core/uri").getText());
+		assertEquals("project",core.selectSingleNode("collectionspace_core/workflowState").getText());
+
+		Map<String,Document> body=new HashMap<String,Document>();
+		body.put("collectionobjects_common",part("collectionobjects_common","http://collectionspace.org/services/collectionobject","objectNumber","2014.2"));
+		got=conn.getMultipartXMLDocument(RequestMethod.PUT,"collectionobjects/"+csid,body,creds,new RequestCache());
+		assertEquals(200,got.getStatus());
+		assertEquals("2014.2",got.getDocument("collectionobjects_common").selectSingleNode("collectionobjects_common/objectNumber").getText());
+
+		assertEquals(200,conn.getNone(RequestMethod.DELETE,"collectionobjects/"+csid,null,creds,new RequestCache()));
+		assertEquals(404,conn.getMultipartXMLDocument(RequestMethod.GET,"collectionobjects/"+csid,null,creds,new RequestCache()).getStatus());
+		assertEquals(404,conn.getNone(RequestMethod.DELETE,"collectionobjects/"+csid,null,creds,new RequestCache()));
+	}
+
+	@Test public void testLists() throws Exception {
+		for(int i=0;i<5;i++)
+			object("2014."+i,i%2==0?"Even vase":"Odd jug");
+		List<Node> all=list("collectionobjects","/abstract-common-list/list-item");
+		assertEquals(5,all.size());
+		assertEquals("2014.0",all.get(0).selectSingleNode("objectNumber").getText());
+		assertEquals(1,list("collectionobjects?pgSz=2&pgNum=2","/abstract-common-list/list-item").size());
+		assertEquals(2,list("collectionobjects?kw=jug","/abstract-common-list/list-item").size());
+		assertEquals("5",list("collectionobjects?pgSz=2","/abstract-common-list/totalItems").get(0).getText());
+
+		String csid=all.get(0).selectSingleNode("csid").getText();
+		assertEquals(200,conn.getNone(RequestMethod.PUT,"collectionobjects/"+csid+"/workflow/delete",null,creds,new RequestCache()));
+		assertEquals(4,list("collectionobjects?wf_deleted=false","/abstract-common-list/list-item").size());
+		assertEquals(5,list("collectionobjects","/abstract-common-list/list-item").size());
+	}
+
+	@Test public void testAuthorities() throws Exception {
+		String auth=create("personauthorities/","personauthorities_common",
+			part("personauthorities_common","http://collectionspace.org/services/person","displayName","Local Persons","shortIdentifier","person"));
+		String item=create("personauthorities/urn:cspace:name(person)/items","persons_common",
+			part("persons_common","http://collectionspace.org/services/person","shortIdentifier","jdoe","displayName","John Doe"));
+		ReturnedMultipartDocument got=conn.getMultipartXMLDocument(RequestMethod.GET,"personauthorities/"+auth+"/items/"+item,null,creds,new RequestCache());
+		assertEquals(200,got.getStatus());
+		assertEquals("urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(jdoe)'John Doe'",
+			got.getDocument("persons_common").selectSingleNode("persons_common/refName").getText());
+		assertEquals(auth,got.getDocument("persons_common").selectSingleNode("persons_common/inAuthority").getText());
+		assertEquals(200,conn.getMultipartXMLDocument(RequestMethod.GET,"personauthorities/urn:cspace:name(person)",null,creds,new RequestCache()).getStatus());
+		assertEquals(404,conn.getMultipartXMLDocument(RequestMethod.GET,"personauthorities/urn:cspace:name(nobody)",null,creds,new RequestCache()).getStatus());
+		assertEquals(1,list("personauthorities/_ALL_/items?pt=doe","/abstract-common-list/list-item").size());
+		assertEquals(0,list("personauthorities/_ALL_/items?pt=smith","/abstract-common-list/list-item").size());
+	}
+
+	@Test public void testRelations() throws Exception {
+		String a=object("1","One"),b=object("2","Two"),c=object("3","Three");
+		for(String dst : new String[]{b,c}) {
+			create("relations/","relations_common",part("relations_common","http://collectionspace.org/services/relation",
+				"subjectDocumentType","CollectionObject","objectDocumentType","CollectionObject",
+				"relationshipType","affects","subjectCsid",a,"objectCsid",dst));
+		}
+		List<Node> from=list("relations?sbj="+a,"/relations-common-list/relation-list-item");
+		assertEquals(2,from.size());
+		assertEquals("/collectionobjects/"+b,from.get(0).selectSingleNode("object/uri").getText());
+		assertEquals("2",from.get(0).selectSingleNode("object/number").getText());
+		assertEquals("affects",from.get(0).selectSingleNode("predicate").getText());
+		assertEquals(1,list("relations?sbj="+a+"&obj="+c,"/relations-common-list/relation-list-item").size());
+		assertEquals(0,list("relations?sbj="+b,"/relations-common-list/relation-list-item").size());
+		assertEquals(2,list("collectionobjects?rtSbj="+a,"/abstract-common-list/list-item").size());
+	}
+
+	@Test public void testIdsAndAccounts() throws Exception {
+		String year=Integer.toString(Calendar.getInstance().get(Calendar.YEAR));
+		String id=conn.getTextDocument(RequestMethod.POST,"idgenerators/8088cfa5-c743-4824-bb4d-fb11b12847f7/ids",null,creds,new RequestCache());
+		assertEquals("IN"+year+".1",id);
+		id=conn.getTextDocument(RequestMethod.POST,"idgenerators/8088cfa5-c743-4824-bb4d-fb11b12847f7/ids",null,creds,new RequestCache());
+		assertEquals("IN"+year+".2",id);
+
+		fake.grant("collectionobjects");
+		Document perms=conn.getXMLDocument(RequestMethod.GET,"accounts/0/accountperms",null,creds,new RequestCache()).getDocument();
+		assertEquals("1",perms.selectSingleNode("/*/account/tenantId").getText());
+		assertEquals("collectionobjects",perms.selectSingleNode("/*/permission/resourceName").getText());
+
+		// Accounts aren't multipart
+		Document account=part("accounts_common","http://collectionspace.org/services/account",
+			"screenName","Test","userId","test@collectionspace.org","password","dGVzdHRlc3Q=");
+		ReturnedURL made=conn.getURL(RequestMethod.POST,"accounts",account,creds,new RequestCache());
+		assertEquals(201,made.getStatus());
+		assertEquals(1,list("accounts?uid=test@","/accounts-common-list/account-list-item").size());
+		assertEquals(200,conn.getXMLDocument(RequestMethod.GET,"accounts/0/accountperms",null,credentials("test@collectionspace.org","testtest"),new RequestCache()).getStatus());
+		assertEquals(401,conn.getXMLDocument(RequestMethod.GET,"accounts/0/accountperms",null,credentials("test@collectionspace.org","wrong"),new RequestCache()).getStatus());
+	}
+
+	@Test public void testLatency() throws Exception {
+		fake.setLatency(100,0);
+		long before=fake.getRequestCount();
+		long start=System.currentTimeMillis();
+		list("collectionobjects","/abstract-common-list/list-item");
+		assertTrue(System.currentTimeMillis()-start>=100);
+		assertEquals(before+1,fake.getRequestCount());
+	}
+}
@@ -0,0 +1,78 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.relation;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestRelationCache {
+
+	private JSONObject listing(String... csids) throws Exception {
+		JSONObject out=new JSONObject();
+		out.put("listItems",csids);
+		out.put("pagination",new JSONObject("{\"totalItems\":\""+csids.length+"\"}"));
+		out.put("moredata",new JSONObject());
+		return out;
+	}
+
+	private JSONObject relation(String src,String dst) throws Exception {
+		JSONObject out=new JSONObject();
+		out.put("src","collectionobjects/"+src);
+		out.put("dst","intakes/"+dst);
+		out.put("type","affects");
+		return out;
+	}
+
+	@Test public void testListing() throws Exception {
+		RelationCache cache=new RelationCache(30);
+		long since=cache.getGeneration();
+		cache.putListing("a","q",listing("r1","r2"),Arrays.asList("obj","in"),since);
+		JSONObject got=cache.getListing("a","q");
+		assertArrayEquals(new String[]{"r1","r2"},(String[])got.get("listItems"));
+		assertEquals("2",got.getJSONObject("pagination").getString("totalItems"));
+		// A copy each time
+		((String[])got.get("listItems"))[0]="changed";
+		assertEquals("r1",((String[])cache.getListing("a","q").get("listItems"))[0]);
+		// Per user
+		assertNull(cache.getListing("b","q"));
+	}
+
+	@Test public void testStaleGeneration() throws Exception {
+		RelationCache cache=new RelationCache(30);
+		long since=cache.getGeneration();
+		cache.invalidate("obj");
+		cache.putListing("a","q",listing("r1"),Arrays.asList("obj"),since);
+		assertNull(cache.getListing("a","q"));
+	}
+
+	@Test public void testInvalidation() throws Exception {
+		RelationCache cache=new RelationCache(30);
+		long since=cache.getGeneration();
+		cache.putListing("a","q1",listing("r1"),Arrays.asList("obj","in"),since);
+		cache.putListing("a","q2",listing("r2"),Arrays.asList("other"),since);
+		cache.putRelation("a","r1",relation("obj","in"),"obj","in",since);
+		cache.putRelation("b","r1",relation("obj","in"),"obj","in",since);
+		assertEquals("affects",cache.getRelation("b","r1").getString("type"));
+		assertTrue(cache.invalidateRelation("r1"));
+		assertNull(cache.getRelation("a","r1"));
+		assertNull(cache.getRelation("b","r1"));
+		assertNull(cache.getListing("a","q1"));
+		assertNotNull(cache.getListing("a","q2"));
+		// Nothing known about this one
+		assertFalse(cache.invalidateRelation("r9"));
+	}
+
+	@Test public void testDisabled() throws Exception {
+		RelationCache cache=new RelationCache(0);
+		cache.putListing("a","q",listing("r1"),Arrays.asList("obj"),cache.getGeneration());
+		assertNull(cache.getListing("a","q"));
+	}
+}
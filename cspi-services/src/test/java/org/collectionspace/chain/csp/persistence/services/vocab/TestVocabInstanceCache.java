@@ -0,0 +1,177 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services.vocab;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.collectionspace.chain.csp.persistence.services.ServicesBaseClass;
+import org.collectionspace.chain.csp.persistence.services.connection.ConnectionException;
+import org.collectionspace.chain.csp.persistence.services.connection.RequestMethod;
+import org.collectionspace.chain.csp.persistence.services.connection.ReturnedDocument;
+import org.collectionspace.chain.csp.persistence.services.connection.ReturnedURL;
+import org.collectionspace.chain.csp.persistence.services.connection.StubServicesConnection;
+import org.collectionspace.chain.csp.schema.Record;
+import org.collectionspace.csp.api.core.CSPRequestCache;
+import org.collectionspace.csp.api.core.CSPRequestCredentials;
+import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
+import org.dom4j.Document;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestVocabInstanceCache extends ServicesBaseClass {
+	private static final int THREADS=8;
+	private static final Pattern PAGE=Pattern.compile("pgSz=(\\d+)&pgNum=(\\d+)");
+
+	private Record person;
+
+	/* Vocabularies as the services have them, listed a page at a time */
+	private static class Vocabularies extends StubServicesConnection {
+		final Map<String,String> csids=Collections.synchronizedMap(new LinkedHashMap<String,String>());
+		final AtomicInteger listings=new AtomicInteger(0);
+		final AtomicInteger pages=new AtomicInteger(0);
+		final AtomicInteger creates=new AtomicInteger(0);
+		final AtomicInteger failures=new AtomicInteger(0);
+		/* held until it's counted down to zero, if set */
+		volatile CountDownLatch gate=null;
+
+		@Override
+		public ReturnedDocument getXMLDocument(RequestMethod method_type,String uri,Document body,CSPRequestCredentials creds,CSPRequestCache cache) throws ConnectionException {
+			Matcher m=PAGE.matcher(uri);
+			assertTrue(uri,m.find());
+			int size=Integer.parseInt(m.group(1));
+			int num=Integer.parseInt(m.group(2));
+			pages.incrementAndGet();
+			if(num==0) {
+				listings.incrementAndGet();
+				if(gate!=null) {
+					try {
+						gate.await(10,TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+			if(failures.getAndDecrement()>0)
+				return returnedDocument(500,null);
+			List<Map.Entry<String,String>> all;
+			synchronized(csids) {
+				all=new ArrayList<Map.Entry<String,String>>(csids.entrySet());
+			}
+			Document out=DocumentFactory.getInstance().createDocument();
+			Element root=out.addElement("abstract-common-list");
+			root.addElement("totalItems").addText(Integer.toString(all.size()));
+			for(int i=num*size;i<all.size() && i<(num+1)*size;i++) {
+				Element item=root.addElement("list-item");
+				item.addElement("displayName").addText("Vocabulary "+all.get(i).getKey());
+				item.addElement("shortIdentifier").addText(all.get(i).getKey());
+				item.addElement("csid").addText(all.get(i).getValue());
+			}
+			return returnedDocument(200,out);
+		}
+
+		@Override
+		public ReturnedURL getMultipartURL(RequestMethod method_type,String uri,Map<String,Document> body,CSPRequestCredentials creds,CSPRequestCache cache) throws ConnectionException {
+			assertEquals(RequestMethod.POST,method_type);
+			String sid=body.values().iterator().next().getRootElement().elementText("shortIdentifier");
+			String csid="created-"+creates.incrementAndGet();
+			csids.put(sid,csid);
+			return returnedURL(201,"http://stub.invalid/cspace-services/personauthorities/"+csid);
+		}
+	}
+
+	@Before public void getRecord() throws Exception {
+		person=getDefaultSpec().getRecord("person");
+		assertNotNull(person);
+	}
+
+	private static Map<String,String> named(String... sids) {
+		Map<String,String> out=new LinkedHashMap<String,String>();
+		for(String sid : sids)
+			out.put(sid,"Vocabulary "+sid);
+		return out;
+	}
+
+	@Test public void testConcurrentMisses() throws Exception {
+		final Vocabularies conn=new Vocabularies();
+		conn.csids.put("existing","csid-existing");
+		final VocabInstanceCache cache=new VocabInstanceCache(person,conn,named("missing"));
+		final CountDownLatch arrived=new CountDownLatch(THREADS);
+		// the listing waits until every thread has asked
+		conn.gate=arrived;
+		ExecutorService pool=Executors.newFixedThreadPool(THREADS);
+		List<Future<String>> results=new ArrayList<Future<String>>();
+		for(int t=0;t<THREADS;t++) {
+			results.add(pool.submit(new Callable<String>() {
+				public String call() throws Exception {
+					arrived.countDown();
+					return cache.getVocabularyId(null,null,"missing");
+				}
+			}));
+		}
+		try {
+			for(Future<String> f : results)
+				assertEquals("created-1",f.get(30,TimeUnit.SECONDS));
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(1,conn.listings.get());
+		assertEquals(1,conn.creates.get());
+		// the listing found the others too
+		assertEquals("csid-existing",cache.getVocabularyId(null,null,"existing"));
+		assertEquals(1,conn.listings.get());
+	}
+
+	@Test public void testFailureNotCached() throws Exception {
+		Vocabularies conn=new Vocabularies();
+		conn.csids.put("existing","csid-existing");
+		conn.failures.set(1);
+		VocabInstanceCache cache=new VocabInstanceCache(person,conn,null);
+		try {
+			cache.getVocabularyId(null,null,"existing");
+			fail("listing failed, so should the lookup");
+		} catch (UnderlyingStorageException x) {
+			assertEquals(500,(int)x.getStatus());
+		}
+		// asked afresh
+		assertEquals("csid-existing",cache.getVocabularyId(null,null,"existing"));
+		assertEquals(2,conn.listings.get());
+		assertEquals(0,conn.creates.get());
+	}
+
+	@Test public void testPagedListing() throws Exception {
+		Vocabularies conn=new Vocabularies();
+		for(int i=0;i<250;i++)
+			conn.csids.put("vocab"+i,"csid"+i);
+		VocabInstanceCache cache=new VocabInstanceCache(person,conn,null);
+		// on the last page
+		assertEquals("csid249",cache.getVocabularyId(null,null,"vocab249"));
+		assertEquals(1,conn.listings.get());
+		assertEquals(3,conn.pages.get());
+		assertEquals(0,conn.creates.get());
+		// and the earlier pages were kept
+		assertEquals("csid0",cache.getVocabularyId(null,null,"vocab0"));
+		assertEquals("csid150",cache.getVocabularyId(null,null,"vocab150"));
+		assertEquals(3,conn.pages.get());
+	}
+}
@@ -10,20 +10,22 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.httpclient.HttpStatus;
-import org.collectionspace.chain.csp.schema.Field;
 import org.collectionspace.chain.csp.schema.Instance;
 import org.collectionspace.chain.csp.schema.Option;
 import org.collectionspace.chain.csp.schema.Record;
 import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.chain.csp.webui.authorities.TermLoader.StorageSource;
 import org.collectionspace.chain.csp.webui.main.Request;
 import org.collectionspace.chain.csp.webui.main.WebMethod;
 import org.collectionspace.chain.csp.webui.main.WebUI;
+import org.collectionspace.chain.csp.webui.misc.AutocompleteIndex;
+import org.collectionspace.chain.csp.webui.nuispec.CacheTermList;
 import org.collectionspace.csp.api.persistence.ExistException;
 import org.collectionspace.csp.api.persistence.Storage;
 import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
@@ -52,7 +54,6 @@ public class AuthoritiesVocabulariesInitialize implements WebMethod  {
 	private Record r;
 	private Spec spec;
 	private boolean modifyResponse = true;
-	private int failedPosts = 0; // If this value is > 0 after the init is complete than the default authorities and term lists have not been properly initialized.
 	
 	public AuthoritiesVocabulariesInitialize(Instance n, Boolean append, boolean modifyResponse) {
 		this.append = append;
@@ -67,59 +68,6 @@ public class AuthoritiesVocabulariesInitialize implements WebMethod  {
 		this.n = null;
 	}
 	
-	public boolean success() {
-		return failedPosts == 0;
-	}
-	
-	private JSONObject getTermData(Storage storage,String auth_type,String inst_type,String csid) throws ExistException, UnimplementedException, UnderlyingStorageException, JSONException {
-		//should be using cached data (hopefully) from previous getPathsJson call
-		JSONObject out=storage.retrieveJSON(auth_type+"/"+inst_type+"/"+csid+"/view", new JSONObject());
-		return out;
-	}
-
-	private JSONObject list_vocab(JSONObject shortIdentifiers,Instance n,Storage storage,String param, Integer pageSize, Integer pageNum, Record thisr) throws ExistException, UnimplementedException, UnderlyingStorageException, JSONException {
-		JSONObject restriction=new JSONObject();
-		if(param!=null){
-			restriction.put(n.getRecord().getDisplayNameField().getID(),param);
-		}
-		if(pageNum!=null){
-			restriction.put("pageNum",pageNum);
-		}
-		if(pageSize!=null){
-			restriction.put("pageSize",pageSize);
-		}
-		// CSPACE-6371: When fetching existing vocabulary terms, include soft-deleted ones, so that terms
-		// deleted through the UI are not re-added.
-		restriction.put("deleted", true);
-		String url = thisr.getID()+"/"+n.getTitleRef();
-		JSONObject data = null;
-		try {
-			data = storage.getPathsJSON(url,restriction);
-		} catch (UnderlyingStorageException x) {
-			JSONObject fields=new JSONObject("{'displayName':'"+n.getTitle()+"','shortIdentifier':'"+n.getWebURL()+"'}");
-			if(thisr.getFieldFullList("termStatus") instanceof Field){
-				fields.put("termStatus", ((Field)thisr.getFieldFullList("termStatus")).getOptionDefault());
-			}
-			String base=thisr.getID();
-			storage.autocreateJSON(base,fields, null);
-			data = storage.getPathsJSON(url,restriction);
-		}
-		
-		String[] results = (String[]) data.get("listItems");
-		/* Get a view of each */
-		for (String result : results) {
-			//change csid into shortIdentifier
-			JSONObject termData = getTermData(storage,thisr.getID(),n.getTitleRef(),result);
-			shortIdentifiers.put(termData.getString("shortIdentifier"),result);
-		}
-		
-		JSONObject alldata = new JSONObject();
-		alldata.put("shortIdentifiers", shortIdentifiers);
-		alldata.put("pagination",  data.getJSONObject("pagination"));
-		
-		return alldata;
-	}
-	
 	public int createIfMissingAuthority(Storage storage, StringBuffer tty, Record record, Instance instance)
 			throws ExistException, UnimplementedException, UIException, JSONException, UnderlyingStorageException {
 		int result = HttpStatus.SC_OK;
@@ -133,15 +81,13 @@ public class AuthoritiesVocabulariesInitialize implements WebMethod  {
 			}
 		} catch (UnderlyingStorageException e) {
 			if (e.getStatus() == HttpStatus.SC_NOT_FOUND) {
-				failedPosts++; // assume we're going to fail
-				log.info("need to create instance " + n.getID());
+				log.info("need to create instance " + instance.getID());
 				if (tty != null) {
-					tty.append("need to create instance " + n.getID() + '\n');
+					tty.append("need to create instance " + instance.getID() + '\n');
 				}
 				JSONObject fields = new JSONObject("{'displayName':'" + instance.getTitle() + "', 'shortIdentifier':'" + instance.getWebURL() + "'}");
 				String base = record.getID();
 				storage.autocreateJSON(base, fields, null);
-				failedPosts--; // We succeeded, so subtract our assumed failure
 				log.info("Instance " + instance.getID() + " created.");
 				if (tty != null) {
 					tty.append("Instance " + instance.getID() + " created.\n");
@@ -156,7 +102,7 @@ public class AuthoritiesVocabulariesInitialize implements WebMethod  {
 		return result;
 	}
 	
-	private void initializeVocab(Storage storage, UIRequest request, String path) throws UIException {
+	private void initializeVocab(Storage storage, StorageSource workers, UIRequest request, String path) throws UIException {
 		try {
 			if (n == null) {
 				// For now simply loop thr all the instances one after the other.
@@ -167,11 +113,11 @@ public class AuthoritiesVocabulariesInitialize implements WebMethod  {
 						log.warn(String.format("The currently authenticated user does not have sufficient permission to determine if the '%s' authority/term-list is properly initialized.",
 								instance.getID()));
 					}
-					resetvocabdata(storage, request, instance);
+					resetvocabdata(storage, workers, request, instance);
 				}
 			} else {
 				log.info(n.getID());
-				resetvocabdata(storage, request, this.n);
+				resetvocabdata(storage, workers, request, this.n);
 			}
 		} catch (JSONException e) {
 			throw new UIException("Cannot generate JSON",e);
@@ -229,10 +175,11 @@ public class AuthoritiesVocabulariesInitialize implements WebMethod  {
 		fillVocab(storage, ins.getRecord(), ins, null, allOpts, false);
 	}
 	
-	private void resetvocabdata(Storage storage,UIRequest request, Instance instance) throws UIException, ExistException, UnimplementedException, UnderlyingStorageException, JSONException {
-		StringBuffer tty = new StringBuffer();
+	private void resetvocabdata(Storage storage, StorageSource workers, UIRequest request, Instance instance) throws UIException, ExistException, UnimplementedException, UnderlyingStorageException, JSONException {
+		// Progress goes out as it happens, rather than all at the end
+		TTYOutputter tty = this.modifyResponse ? request.getTTYOutputter() : null;
 
-		tty.append("Initializing Vocab " + instance.getID() + '\n');
+		line(tty, "Initializing Vocab " + instance.getID());
 		//Where do we get the list from?
 		//from Spec
 		Option[] allOpts = instance.getAllOptions();
@@ -240,10 +187,10 @@ public class AuthoritiesVocabulariesInitialize implements WebMethod  {
 		//but first check: do we have a path?
 		Set<String> args = request.getAllRequestArgument();
 		if (args.contains("datapath")) {
-			tty.append("Using Datapath \n");
+			line(tty, "Using Datapath ");
 			//remove all opts from instance as we have a path
 			if (allOpts != null && allOpts.length > 0) {
-				tty.append("Removing all opts from instance as we have a path\n");
+				line(tty, "Removing all opts from instance as we have a path");
 				for (Option opt : allOpts) {
 					String name = opt.getName();
 					String shortIdentifier = opt.getID();
@@ -257,7 +204,7 @@ public class AuthoritiesVocabulariesInitialize implements WebMethod  {
 			String value = request.getRequestArgument("datapath");
 			//log.info("getting data from path: "+value);
 			try {
-				tty.append("Getting data from path: " + value + '\n');
+				line(tty, "Getting data from path: " + value);
 				String names = getResource(value);
 				for (String line : names.split("\n")) {
 					line = line.trim();
@@ -274,113 +221,87 @@ public class AuthoritiesVocabulariesInitialize implements WebMethod  {
 			allOpts = instance.getAllOptions();
 		}
 
-		fillVocab(storage, r, instance, tty, allOpts, this.append);
-		
-		if (this.modifyResponse == true) {
-			TTYOutputter ttyOut = request.getTTYOutputter();
-			ttyOut.line(tty.toString());
+		TermLoader.Report report = fillVocab(storage, workers, r, instance, tty, allOpts, this.append);
+		if (!report.success()) {
+			// The terms which made it are kept, so asking again only retries these
+			line(tty, report.getErrors().size() + " terms of " + instance.getID() + " could not be initialized:");
+			for (Map.Entry<String,String> e : report.getErrors().entrySet()) {
+				line(tty, "\t" + e.getKey() + ": " + e.getValue());
+			}
+			log.warn(report.getErrors().size() + " terms of " + instance.getID() + " could not be initialized");
+		}
+		if (tty != null) {
+			tty.flush();
+		}
+	}
+
+	private static void line(TTYOutputter tty, String text) throws UIException {
+		if (tty != null) {
+			tty.line(text);
 		}
+	}
 
+	/* Collects progress into a buffer, for callers which report it all at the end */
+	private static TTYOutputter buffer(final StringBuffer tty) {
+		if (tty == null) {
+			return null;
+		}
+		return new TTYOutputter() {
+			public void line(String text) {
+				tty.append(text).append('\n');
+			}
+
+			public void flush() {}
+		};
 	}
-	
+
+	/**
+	 * Fill the instance with the terms in allOpts, in turn on the storage given, throwing the first failure
+	 * once every term has been tried.
+	 */
 	public void fillVocab(Storage storage,
 			Record thisr,
 			Instance instance, 
 			StringBuffer tty, 
 			Option[] allOpts, 
 			Boolean appendit) throws UIException, ExistException, UnimplementedException, UnderlyingStorageException, JSONException {
-		//
-		// step away if we have nothing to add
-		//
-		if (allOpts != null && allOpts.length > 0) {
-			// get list from Service layer
-			JSONObject results = new JSONObject();
-			Integer pageNum = 0;
-			Integer pageSize = 100;
-			JSONObject fulldata = list_vocab(results, instance, storage, null, pageSize, pageNum, thisr);
-
-			while (!fulldata.isNull("pagination")) {
-				Integer total = fulldata.getJSONObject("pagination").getInt("totalItems");
-				pageSize = fulldata.getJSONObject("pagination").getInt("pageSize");
-				Integer itemsInPage = fulldata.getJSONObject("pagination").getInt("itemsInPage");
-				pageNum = fulldata.getJSONObject("pagination").getInt("pageNum");
-				results = fulldata.getJSONObject("shortIdentifiers");
-
-				pageNum++;
-				// are there more results
-				if (total > (pageSize * (pageNum))) {
-					fulldata = list_vocab(results, instance, storage, null, pageSize, pageNum, thisr);
-				} else {
-					break;
-				}
-			}
-
-			// compare
-			results = fulldata.getJSONObject("shortIdentifiers");
-
-			for (Option opt : allOpts) {
-				String name = opt.getName();
-				String shortIdentifier = opt.getID();
-
-				if (shortIdentifier == null || shortIdentifier.equals("")) {
-					shortIdentifier = name.replaceAll("\\W", "").toLowerCase();
-				}
-
-				if (!results.has(shortIdentifier)) {
-					if (tty != null) {
-						tty.append("adding term " + name + '\n');
-						log.info("adding term " + name);
-					}
-
-					// create it if term is not already present
-					JSONObject data = new JSONObject();
-					data.put("displayName", name);
-					data.put("description", opt.getDesc());
-					data.put("shortIdentifier", shortIdentifier);
-					if (thisr.getFieldFullList("termStatus") instanceof Field) {
-						data.put("termStatus", ((Field) thisr.getFieldFullList("termStatus")).getOptionDefault());
-					}
-					String url = thisr.getID() + "/" + instance.getTitleRef();
-
-					failedPosts++; // assume we're going to fail and an exception will be thrown
-					storage.autocreateJSON(url, data, null);
-					failedPosts--; // we succeeded so we can remove our assumed failure
-					
-					results.remove(shortIdentifier);
-				} else {
-					// remove from results so can delete everything else if
-					// necessary in next stage
-					// though has issues with duplicates
-					results.remove(shortIdentifier);
-				}
-			}
+		fillVocab(storage, null, thisr, instance, buffer(tty), allOpts, appendit).rethrow();
+	}
 
-			if (!appendit) {
-				// delete everything that is not in options
-				Iterator<String> rit = results.keys();
-				while (rit.hasNext()) {
-					String key = rit.next();
-					String csid = results.getString(key);
-					
-					failedPosts++; // assume we're going to fail and an exception will be thrown
-					storage.deleteJSON(thisr.getID() + "/" + instance.getTitleRef() + "/" + csid);
-					failedPosts--; // we succeeded so remove our assumed failure
-					
-					if (tty != null) {
-						log.info("deleting term " + key);
-						tty.append("deleting term " + key + '\n');
-					}
-				}
-			}
+	/**
+	 * Fill the instance with the terms in allOpts, several at a time if there are workers, reporting on
+	 * each term which could not be created or deleted rather than stopping at it.
+	 */
+	public TermLoader.Report fillVocab(Storage storage,
+			StorageSource workers,
+			Record thisr,
+			Instance instance, 
+			TTYOutputter tty, 
+			Option[] allOpts, 
+			boolean appendit) throws UIException, ExistException, UnimplementedException, UnderlyingStorageException, JSONException {
+		TermLoader loader = new TermLoader(thisr.getSpec().getAdminData().getVocabInitThreads());
+		TermLoader.Report report;
+		try {
+			report = loader.load(storage, workers, thisr, instance, allOpts, appendit, tty);
+		} finally {
+			// Even a partial fill has changed the terms
+			CacheTermList.invalidateShared(thisr, instance.getTitleRef());
+			AutocompleteIndex.forTenant(thisr.getSpec().getAdminData()).invalidate(instance);
 		}
+		return report;
 	}
-	
+
 	public void configure(WebUI ui, Spec spec) {
 		this.spec = spec;
 	}
 
 	public void run(Object in, String[] tail) throws UIException {
-		Request q=(Request)in;
-		initializeVocab(q.getStorage(), q.getUIRequest(), StringUtils.join(tail,"/"));
+		final Request q=(Request)in;
+		StorageSource workers = new StorageSource() {
+			public Storage getStorage() throws UIException {
+				return q.createStorage();
+			}
+		};
+		initializeVocab(q.getStorage(), workers, q.getUIRequest(), StringUtils.join(tail,"/"));
 	}
 }
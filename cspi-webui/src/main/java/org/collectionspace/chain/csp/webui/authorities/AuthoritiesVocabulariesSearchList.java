@@ -206,7 +206,7 @@ public class AuthoritiesVocabulariesSearchList implements WebMethod {
 			//cache for record traverser
 			if(results.has("pagination") && results.getJSONObject("pagination").has("separatelists")){
 				String nid = (this.n == null)?"":this.n.getID();
-				GenericSearch.createTraverser(ui, this.r.getID(), nid, results, restriction, resultstring, Integer.valueOf(results.getJSONObject("pagination").getString("numInstances")));
+				GenericSearch.createTraverser(ui, this.r, nid, results, restriction, resultstring, Integer.valueOf(results.getJSONObject("pagination").getString("numInstances")));
 			}
 			ui.sendJSONResponse(results);
 	}
@@ -0,0 +1,357 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.authorities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.collectionspace.chain.csp.schema.Field;
+import org.collectionspace.chain.csp.schema.Instance;
+import org.collectionspace.chain.csp.schema.Option;
+import org.collectionspace.chain.csp.schema.Record;
+import org.collectionspace.csp.api.persistence.ExistException;
+import org.collectionspace.csp.api.persistence.Storage;
+import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
+import org.collectionspace.csp.api.persistence.UnimplementedException;
+import org.collectionspace.csp.api.ui.TTYOutputter;
+import org.collectionspace.csp.api.ui.UIException;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings the terms of an authority or term list instance into line with the list of terms it should have.
+ *
+ * The terms already there are found in one pass over the listing (soft-deleted ones included, so that
+ * terms deleted through the UI are not put back), and only the differences are sent to the services.
+ * The services have no batch endpoint for vocabulary items, so each create or delete is still a request
+ * of its own, but given a StorageSource several are sent at once, each thread with its own storage.
+ *
+ * A term which fails doesn't stop the others: it goes in the report. As terms already there are left
+ * alone, running the load again after a partial failure only sends what is still missing.
+ *
+ */
+public class TermLoader {
+	private static final Logger log=LoggerFactory.getLogger(TermLoader.class);
+	private static final int PAGE_SIZE=100;
+	private static final int FLUSH_EVERY=20;
+
+	/**
+	 * Storage for the threads sending terms. Each call must return a storage not used by any other thread.
+	 */
+	public interface StorageSource {
+		public Storage getStorage() throws UIException;
+	}
+
+	/**
+	 * What a load did, with the error for each term which failed
+	 */
+	public static class Report {
+		private final String instance;
+		private int existing=0,created=0,deleted=0;
+		private final Map<String,String> errors=new LinkedHashMap<String,String>();
+		private Exception failure=null;
+
+		Report(String instance) {
+			this.instance=instance;
+		}
+
+		public String getInstance() { return instance; }
+		public int getExisting() { return existing; }
+		public int getCreated() { return created; }
+		public int getDeleted() { return deleted; }
+		public boolean success() { return errors.isEmpty(); }
+
+		/* shortIdentifier to error, in the order the terms failed */
+		public Map<String,String> getErrors() { return Collections.unmodifiableMap(errors); }
+
+		void failed(String term,Exception e) {
+			errors.put(term,e.getMessage()==null?e.toString():e.getMessage());
+			if(failure==null)
+				failure=e;
+		}
+
+		/**
+		 * Throw the first failure, for callers which stop at an exception
+		 */
+		public void rethrow() throws ExistException, UnimplementedException, UnderlyingStorageException, UIException, JSONException {
+			if(failure==null)
+				return;
+			if(failure instanceof UnderlyingStorageException)
+				throw (UnderlyingStorageException)failure;
+			if(failure instanceof ExistException)
+				throw (ExistException)failure;
+			if(failure instanceof UnimplementedException)
+				throw (UnimplementedException)failure;
+			if(failure instanceof UIException)
+				throw (UIException)failure;
+			if(failure instanceof JSONException)
+				throw (JSONException)failure;
+			if(failure instanceof RuntimeException)
+				throw (RuntimeException)failure;
+			throw new UIException("Could not initialise "+instance,failure);
+		}
+
+		public JSONObject toJSON() throws JSONException {
+			JSONObject out=new JSONObject();
+			out.put("instance",instance);
+			out.put("existing",existing);
+			out.put("created",created);
+			out.put("deleted",deleted);
+			out.put("errors",new JSONObject(errors));
+			return out;
+		}
+	}
+
+	/* One create or delete */
+	private static abstract class Change {
+		final String term,name;
+		Exception error=null;
+
+		Change(String term,String name) {
+			this.term=term;
+			this.name=name;
+		}
+
+		abstract void apply(Storage storage) throws Exception;
+		abstract void done(Report report,TTYOutputter tty) throws UIException;
+	}
+
+	private final int threads;
+
+	public TermLoader(int threads) {
+		this.threads=threads;
+	}
+
+	/**
+	 * Make the terms of the instance those in opts, leaving any others there if append is set.
+	 * @param storage for the listing, and for the changes if there is no source
+	 * @param source where the threads sending changes get their storage, or null to send them in turn
+	 * @param r
+	 * @param n
+	 * @param opts
+	 * @param append
+	 * @param tty progress, or null
+	 * @return
+	 */
+	public Report load(Storage storage,StorageSource source,Record r,Instance n,Option[] opts,boolean append,TTYOutputter tty)
+			throws ExistException, UnimplementedException, UnderlyingStorageException, JSONException, UIException {
+		Report report=new Report(n.getID());
+		if(opts==null || opts.length==0)
+			return report;
+		String url=r.getID()+"/"+n.getTitleRef();
+		Map<String,String> existing=existing(storage,r,n);
+		List<Change> changes=new ArrayList<Change>();
+		for(Map.Entry<String,JSONObject> e : wanted(r,opts).entrySet()) {
+			if(existing.remove(e.getKey())!=null)
+				report.existing++;
+			else
+				changes.add(create(url,e.getKey(),e.getValue()));
+		}
+		if(!append) {
+			for(Map.Entry<String,String> e : existing.entrySet())
+				changes.add(delete(url+"/"+e.getValue(),e.getKey()));
+		}
+		if(changes.isEmpty())
+			return report;
+		long start=System.currentTimeMillis();
+		if(source==null || threads<=1 || changes.size()==1)
+			inTurn(storage,changes,report,tty);
+		else
+			together(source,n,changes,report,tty);
+		log.info("Initialised "+n.getID()+": "+report.existing+" existing, "+report.created+" created, "+report.deleted+" deleted, "+
+				report.errors.size()+" failed in "+(System.currentTimeMillis()-start)+"ms");
+		return report;
+	}
+
+	/* The terms we should have, by shortIdentifier, first come first served */
+	private Map<String,JSONObject> wanted(Record r,Option[] opts) throws JSONException {
+		Map<String,JSONObject> out=new LinkedHashMap<String,JSONObject>();
+		String status=null;
+		if(r.getFieldFullList("termStatus") instanceof Field)
+			status=((Field)r.getFieldFullList("termStatus")).getOptionDefault();
+		for(Option opt : opts) {
+			String name=opt.getName();
+			String shortIdentifier=opt.getID();
+			if(shortIdentifier==null || shortIdentifier.equals(""))
+				shortIdentifier=name.replaceAll("\\W","").toLowerCase();
+			if(out.containsKey(shortIdentifier))
+				continue;
+			JSONObject data=new JSONObject();
+			data.put("displayName",name);
+			data.put("description",opt.getDesc());
+			data.put("shortIdentifier",shortIdentifier);
+			if(status!=null)
+				data.put("termStatus",status);
+			out.put(shortIdentifier,data);
+		}
+		return out;
+	}
+
+	/* The terms there now, shortIdentifier to csid. Creates the instance itself if it's missing. */
+	private Map<String,String> existing(Storage storage,Record r,Instance n) throws ExistException, UnimplementedException, UnderlyingStorageException, JSONException {
+		Map<String,String> out=new LinkedHashMap<String,String>();
+		String url=r.getID()+"/"+n.getTitleRef();
+		for(int pageNum=0;;pageNum++) {
+			JSONObject restriction=new JSONObject();
+			restriction.put("pageNum",pageNum);
+			restriction.put("pageSize",PAGE_SIZE);
+			// CSPACE-6371: When fetching existing vocabulary terms, include soft-deleted ones, so that terms
+			// deleted through the UI are not re-added.
+			restriction.put("deleted",true);
+			JSONObject data;
+			try {
+				data=storage.getPathsJSON(url,restriction);
+			} catch (UnderlyingStorageException x) {
+				if(pageNum>0)
+					throw x;
+				JSONObject fields=new JSONObject();
+				fields.put("displayName",n.getTitle());
+				fields.put("shortIdentifier",n.getWebURL());
+				if(r.getFieldFullList("termStatus") instanceof Field)
+					fields.put("termStatus",((Field)r.getFieldFullList("termStatus")).getOptionDefault());
+				storage.autocreateJSON(r.getID(),fields,null);
+				data=storage.getPathsJSON(url,restriction);
+			}
+			String[] csids=(String[])data.get("listItems");
+			for(String csid : csids) {
+				// The listing has gleaned the shortIdentifier, so this shouldn't go to the services
+				JSONObject term=storage.retrieveJSON(url+"/"+csid+"/view",new JSONObject());
+				out.put(term.getString("shortIdentifier"),csid);
+			}
+			if(data.isNull("pagination") || csids.length==0)
+				break;
+			JSONObject pagination=data.getJSONObject("pagination");
+			int total=pagination.getInt("totalItems");
+			int pageSize=pagination.optInt("pageSize",PAGE_SIZE);
+			if(total<=pageSize*(pageNum+1))
+				break;
+		}
+		return out;
+	}
+
+	private Change create(final String url,String term,final JSONObject data) throws JSONException {
+		return new Change(term,data.getString("displayName")) {
+			void apply(Storage storage) throws Exception {
+				storage.autocreateJSON(url,data,null);
+			}
+
+			void done(Report report,TTYOutputter tty) throws UIException {
+				if(error==null) {
+					report.created++;
+					line(tty,"added term "+name);
+				} else {
+					report.failed(term,error);
+					line(tty,"failed to add term "+name+" ("+term+"): "+report.errors.get(term));
+				}
+			}
+		};
+	}
+
+	private Change delete(final String path,String term) {
+		return new Change(term,term) {
+			void apply(Storage storage) throws Exception {
+				storage.deleteJSON(path);
+			}
+
+			void done(Report report,TTYOutputter tty) throws UIException {
+				if(error==null) {
+					report.deleted++;
+					line(tty,"deleted term "+term);
+				} else {
+					report.failed(term,error);
+					line(tty,"failed to delete term "+term+": "+report.errors.get(term));
+				}
+			}
+		};
+	}
+
+	private static void line(TTYOutputter tty,String text) throws UIException {
+		log.info(text);
+		if(tty!=null)
+			tty.line(text);
+	}
+
+	private static void flush(TTYOutputter tty,int count) throws UIException {
+		if(tty!=null && count%FLUSH_EVERY==0)
+			tty.flush();
+	}
+
+	private void inTurn(Storage storage,List<Change> changes,Report report,TTYOutputter tty) throws UIException {
+		int count=0;
+		for(Change change : changes) {
+			try {
+				change.apply(storage);
+			} catch (Exception e) {
+				change.error=e;
+			}
+			change.done(report,tty);
+			flush(tty,++count);
+		}
+		if(tty!=null)
+			tty.flush();
+	}
+
+	/* Changes go to a pool; the calling thread alone writes the report and the progress, as they finish */
+	private void together(final StorageSource source,final Instance n,List<Change> changes,Report report,TTYOutputter tty) throws UIException {
+		ExecutorService pool=Executors.newFixedThreadPool(Math.min(threads,changes.size()),new ThreadFactory() {
+			private final AtomicInteger count=new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t=new Thread(r,"term-loader-"+n.getID()+"-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		final ThreadLocal<Storage> storages=new ThreadLocal<Storage>();
+		CompletionService<Change> finished=new ExecutorCompletionService<Change>(pool);
+		try {
+			for(final Change change : changes) {
+				finished.submit(new Callable<Change>() {
+					public Change call() {
+						try {
+							Storage storage=storages.get();
+							if(storage==null) {
+								storage=source.getStorage();
+								storages.set(storage);
+							}
+							change.apply(storage);
+						} catch (Exception e) {
+							change.error=e;
+						}
+						return change;
+					}
+				});
+			}
+			for(int count=1;count<=changes.size();count++) {
+				finished.take().get().done(report,tty);
+				flush(tty,count);
+			}
+			if(tty!=null)
+				tty.flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UIException("Interrupted initialising "+n.getID(),e);
+		} catch (ExecutionException e) {
+			// Changes catch their own exceptions, so only an Error gets here
+			throw new UIException("Could not initialise "+n.getID(),e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
@@ -14,6 +14,8 @@ import org.collectionspace.chain.csp.schema.Spec;
 import org.collectionspace.chain.csp.webui.main.Request;
 import org.collectionspace.chain.csp.webui.main.WebMethod;
 import org.collectionspace.chain.csp.webui.main.WebUI;
+import org.collectionspace.chain.csp.webui.misc.AutocompleteIndex;
+import org.collectionspace.chain.csp.webui.nuispec.CacheTermList;
 import org.collectionspace.csp.api.persistence.ExistException;
 import org.collectionspace.csp.api.persistence.Storage;
 import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
@@ -128,6 +130,8 @@ public class VocabulariesCreateUpdate implements WebMethod {
 					}
 				}
 				path = createItem(storage,request,path,data);
+				CacheTermList.invalidateShared(n.getRecord(),n.getTitleRef());
+				AutocompleteIndex.forTenant(n.getRecord().getSpec().getAdminData()).update(storage,n,path);
 				data=reader.getJSON(storage,path);
 				String refid = data.getJSONObject("fields").getString("refid");
 				data.put("urn", refid);
@@ -12,6 +12,8 @@ import org.collectionspace.chain.csp.schema.Spec;
 import org.collectionspace.chain.csp.webui.main.Request;
 import org.collectionspace.chain.csp.webui.main.WebMethod;
 import org.collectionspace.chain.csp.webui.main.WebUI;
+import org.collectionspace.chain.csp.webui.misc.AutocompleteIndex;
+import org.collectionspace.chain.csp.webui.nuispec.CacheTermList;
 import org.collectionspace.csp.api.persistence.ExistException;
 import org.collectionspace.csp.api.persistence.Storage;
 import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
@@ -43,6 +45,8 @@ public class VocabulariesDelete implements WebMethod {
 				return;
 			}
 			storage.deleteJSON(url);
+			CacheTermList.invalidateShared(n.getRecord(),n.getTitleRef());
+			AutocompleteIndex.forTenant(n.getRecord().getSpec().getAdminData()).remove(n,path);
 		} catch (ExistException e) {
 			throw new UIException("JSON Not found "+e,e);
 		} catch (JSONException e) {
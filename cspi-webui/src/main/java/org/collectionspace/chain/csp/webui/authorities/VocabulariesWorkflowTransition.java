@@ -12,12 +12,15 @@ import org.collectionspace.chain.csp.schema.Spec;
 import org.collectionspace.chain.csp.webui.main.Request;
 import org.collectionspace.chain.csp.webui.main.WebMethod;
 import org.collectionspace.chain.csp.webui.main.WebUI;
+import org.collectionspace.chain.csp.webui.misc.AutocompleteIndex;
+import org.collectionspace.chain.csp.webui.nuispec.CacheTermList;
 import org.collectionspace.csp.api.persistence.ExistException;
 import org.collectionspace.csp.api.persistence.Storage;
 import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
 import org.collectionspace.csp.api.persistence.UnimplementedException;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
+import org.collectionspace.csp.helper.persistence.ContextualisedStorage;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -37,6 +40,12 @@ public class VocabulariesWorkflowTransition implements WebMethod {
 		try {
 			String url = n.getRecord().getID()+"/"+n.getTitleRef()+"/"+path;
 			storage.transitionWorkflowJSON(url, transition);
+			CacheTermList.invalidateShared(n.getRecord(),n.getTitleRef());
+			AutocompleteIndex index=AutocompleteIndex.forTenant(n.getRecord().getSpec().getAdminData());
+			if(ContextualisedStorage.WORKFLOW_TRANSITION_DELETE.equals(transition))
+				index.remove(n,path);
+			else
+				index.update(storage,n,path);
 		} catch (ExistException e) {
 			throw new UIException("JSON Not found "+e,e);
 		} catch (UnimplementedException e) {
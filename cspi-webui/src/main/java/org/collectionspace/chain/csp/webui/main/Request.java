@@ -13,8 +13,10 @@ import org.collectionspace.csp.api.persistence.StorageGenerator;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
 import org.collectionspace.csp.api.ui.UISession;
+import org.collectionspace.csp.helper.core.RequestCache;
 
 public class Request {
+	private static final ThreadLocal<Request> current=new ThreadLocal<Request>();
 	private CSPRequestCache cache;
 	private StorageGenerator storage_generator;
 	private Storage storage=null;
@@ -52,7 +54,36 @@ public class Request {
 		}
 		return storage;
 	}
+
+	/**
+	 * A storage of its own, with the same credentials but a separate cache, for work done on other threads
+	 */
+	public Storage createStorage() throws UIException {
+		return storage_generator.getStorage(generateCredentials(uir.getSession()),new RequestCache());
+	}
+
 	public UIRequest getUIRequest() { return uir; }
+
+	/** The request being served on this thread, or null */
+	public static Request current() { return current.get(); }
+
+	/**
+	 * Bind to the current thread until unbind.
+	 * @param request
+	 * @return the request previously bound, to pass back to unbind
+	 */
+	static Request bind(Request request) {
+		Request previous=current.get();
+		current.set(request);
+		return previous;
+	}
+
+	static void unbind(Request previous) {
+		if(previous==null)
+			current.remove();
+		else
+			current.set(previous);
+	}
 	
 	public void reset() {
 		storage=null;
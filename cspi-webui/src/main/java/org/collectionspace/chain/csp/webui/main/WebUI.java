@@ -33,18 +33,23 @@ import org.collectionspace.chain.csp.webui.external.UIMapping;
 import org.collectionspace.chain.csp.webui.external.UIMeta;
 import org.collectionspace.chain.csp.webui.mediablob.BlobCreateUpdate;
 import org.collectionspace.chain.csp.webui.mediablob.BlobRead;
+import org.collectionspace.chain.csp.webui.misc.AutocompleteIndex;
 import org.collectionspace.chain.csp.webui.misc.RecordTraverser;
 import org.collectionspace.chain.csp.webui.misc.VocabRedirector;
 import org.collectionspace.chain.csp.webui.misc.WebAuto;
 import org.collectionspace.chain.csp.webui.misc.WebAutoComplete;
+import org.collectionspace.chain.csp.webui.misc.WebConnectionPool;
 import org.collectionspace.chain.csp.webui.misc.WebTermList;
 import org.collectionspace.chain.csp.webui.misc.WebLogin;
 import org.collectionspace.chain.csp.webui.misc.WebLoginStatus;
 import org.collectionspace.chain.csp.webui.misc.WebLogout;
 import org.collectionspace.chain.csp.webui.misc.WebReset;
+import org.collectionspace.chain.csp.webui.misc.WebSessions;
+import org.collectionspace.chain.csp.webui.misc.WebSlowRequests;
 import org.collectionspace.chain.csp.webui.nuispec.CacheTermList;
 import org.collectionspace.chain.csp.webui.nuispec.DataGenerator;
 import org.collectionspace.chain.csp.webui.nuispec.ServicesXsd;
+import org.collectionspace.chain.csp.webui.nuispec.TermListWarmer;
 import org.collectionspace.chain.csp.webui.nuispec.UISchema;
 import org.collectionspace.chain.csp.webui.nuispec.UISpec;
 import org.collectionspace.chain.csp.webui.userdetails.UserDetailsCreateUpdate;
@@ -77,6 +82,10 @@ import org.collectionspace.csp.api.ui.UI;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
 import org.collectionspace.csp.helper.core.RequestCache;
+import org.collectionspace.csp.helper.core.RequestTrace;
+import org.collectionspace.csp.helper.core.SlowRequestLog;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -97,6 +106,16 @@ public class WebUI implements CSP, UI, Configurable {
 	public CacheTermList xxx_ctl;
 	private String uispec_path;
 	private String login_dest, login_failed_dest, front_page, find_page;
+	private SlowRequestLog slow_requests = new SlowRequestLog();
+	private volatile SessionStatistics session_statistics;
+
+	/**
+	 * Counts of the tenant's sessions, for /admin/sessions. Sessions are kept by the container, which
+	 * hands them over with setSessionStatistics.
+	 */
+	public interface SessionStatistics {
+		public JSONObject getStatistics() throws JSONException;
+	}
 
 	@Override
 	public String getName() {
@@ -119,6 +138,18 @@ public class WebUI implements CSP, UI, Configurable {
 		return front_page;
 	}
 
+	public SlowRequestLog getSlowRequestLog() {
+		return slow_requests;
+	}
+
+	public SessionStatistics getSessionStatistics() {
+		return session_statistics;
+	}
+
+	public void setSessionStatistics(SessionStatistics statistics) {
+		session_statistics = statistics;
+	}
+
 	/**
 	 * Explicitly add in urls that the app layer will respond to
 	 * e.g. addMethod(Operation.READ,new String[]{"logout"},0,new WebLogout());
@@ -174,6 +205,9 @@ public class WebUI implements CSP, UI, Configurable {
 				login_failed_dest = (String) section.getValue("/login-failed-dest");
 				front_page = (String) section.getValue("/front-page");
 				find_page = (String) section.getValue("/find-page");
+				String threshold = (String) section.getValue("/slow-request-threshold");
+				if (threshold != null && !"".equals(threshold.trim()))
+					slow_requests = new SlowRequestLog(SlowRequestLog.DEFAULT_CAPACITY, Long.parseLong(threshold.trim()));
 
 				return WebUI.this;
 			}
@@ -232,6 +266,9 @@ public class WebUI implements CSP, UI, Configurable {
 		addMethod(Operation.READ, new String[] { "authorities", "initialise" }, 0, new WebReset(false, false));
 		addMethod(Operation.READ, new String[] { "reset" }, 0, new WebReset(false, true));
 		addMethod(Operation.READ, new String[] { "quick-reset" }, 0, new WebReset(true, true));
+		addMethod(Operation.READ, new String[] { "admin", "connectionpool" }, 0, new WebConnectionPool());
+		addMethod(Operation.READ, new String[] { "admin", "slowrequests" }, 0, new WebSlowRequests());
+		addMethod(Operation.READ, new String[] { "admin", "sessions" }, 0, new WebSessions());
 		// addMethod(Operation.READ,new String[]{find_page,"uispec"},0,new
 		// FindEditUISpec(spec.getAllRecords()));//removed as I don't think
 		// anyone uses it
@@ -385,6 +422,10 @@ public class WebUI implements CSP, UI, Configurable {
 			m.configure(this, spec);
 		String name = (String) ctx.getConfigRoot().getRoot(CSPContext.XXX_SERVICE_NAME);
 		xxx_storage = ctx.getStorage(name);
+		if (!forXsdGeneration) {
+			TermListWarmer.start(xxx_storage, spec);
+			AutocompleteIndex.start(xxx_storage, spec);
+		}
 	}
 
 	@Override
@@ -396,6 +437,10 @@ public class WebUI implements CSP, UI, Configurable {
 		String test = ui.getRequestedOperation().toString();
 		log.debug("ServiceRequest path: " + StringUtils.join(path, "/"));
 		log.debug(test);
+		RequestTrace trace = new RequestTrace(test, "/" + StringUtils.join(path, "/"));
+		RequestTrace.set(cache, trace);
+		RequestTrace previous = RequestTrace.bind(trace);
+		Request previousRequest = Request.bind(r);
 		try {
 			if (tries.get(ui.getRequestedOperation()).call(path, r))
 				return;
@@ -407,6 +452,13 @@ public class WebUI implements CSP, UI, Configurable {
 			log.error("Error in WebUI.serviceRequest", e);
 			log.error(String.format("Request body= %s", ui.getBody()));
 			throw new UIException("Error in read", e);
+		} finally {
+			trace.finish();
+			RequestTrace.unbind(previous);
+			Request.unbind(previousRequest);
+			ui.setResponseHeader("Server-Timing", trace.getServerTiming());
+			if (slow_requests.record(trace))
+				log.info("Slow request " + trace.getMethod() + " " + trace.getPath() + " " + trace.getDuration() + "ms");
 		}
 		throw new UIException("path not used");
 	}
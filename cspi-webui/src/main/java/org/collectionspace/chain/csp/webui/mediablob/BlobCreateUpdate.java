@@ -1,5 +1,7 @@
 package org.collectionspace.chain.csp.webui.mediablob;
 
+import java.io.InputStream;
+
 import org.apache.commons.lang.StringUtils;
 import org.collectionspace.chain.csp.config.ConfigException;
 import org.collectionspace.chain.csp.schema.Record;
@@ -38,8 +40,13 @@ public class BlobCreateUpdate   extends RecordCreateUpdate  {
 			JSONObject data2=new JSONObject();
 			JSONObject data3=new JSONObject();
 			data2.put("fileName", request.getFileName());
-			data2.put("getbyteBody", request.getbyteBody());
-			data2.put("contentType", "multipart/form-data");
+			InputStream upload=request.getbyteBodyStream();
+			if(upload!=null)
+				data2.put("getbyteStream", upload);
+			else
+				data2.put("getbyteBody", request.getbyteBody());
+			// the type of the uploaded file itself, if it came with one
+			data2.put("contentType", request.getContentType());
 			data.put("fields", data2);
 			if(create) {
 				path=sendJSON(storage,null,data,null);
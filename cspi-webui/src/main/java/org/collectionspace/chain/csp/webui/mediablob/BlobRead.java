@@ -5,6 +5,7 @@ import org.collectionspace.chain.csp.schema.Spec;
 import org.collectionspace.chain.csp.webui.main.Request;
 import org.collectionspace.chain.csp.webui.main.WebMethod;
 import org.collectionspace.chain.csp.webui.main.WebUI;
+import org.collectionspace.csp.api.persistence.BlobSink;
 import org.collectionspace.csp.api.persistence.ExistException;
 import org.collectionspace.csp.api.persistence.Storage;
 import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
@@ -20,14 +21,24 @@ public class BlobRead implements WebMethod {
 
 	private void get_blob(Storage s,UIRequest q,String csid,String derivative) throws UIException {
 		try {
-			JSONObject out = s.retrieveJSON("/blobs/"+csid+"/"+derivative,null);
-			byte[] data_array = (byte[])out.get("getByteBody");
-			String contentDisp = out.has("contentdisposition")?out.getString("contentdisposition"):null;
-			q.sendUnknown(data_array,out.getString("contenttype"), contentDisp);
+			// Cache headers go out as soon as a streamed blob starts, so set them first
 			int cacheMaxAgeSeconds = adminData.getUploadedMediaCacheAge();
 			if(cacheMaxAgeSeconds > 0) {
 				q.setCacheMaxAgeSeconds(cacheMaxAgeSeconds);
 			}
+			JSONObject restrictions = null;
+			BlobSink sink = q.getBlobSink();
+			if(sink != null) {
+				restrictions = new JSONObject();
+				restrictions.put(BlobSink.RESTRICTION_KEY, sink);
+			}
+			JSONObject out = s.retrieveJSON("/blobs/"+csid+"/"+derivative,restrictions);
+			if(out.optBoolean("streamed")) {
+				return;
+			}
+			byte[] data_array = (byte[])out.get("getByteBody");
+			String contentDisp = out.has("contentdisposition")?out.getString("contentdisposition"):null;
+			q.sendUnknown(data_array,out.getString("contenttype"), contentDisp);
 		} catch (ExistException e) {
 			throw new UIException("Existence exception",e);
 		} catch (UnimplementedException e) {
@@ -0,0 +1,71 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.misc;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.lang.StringUtils;
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.chain.csp.webui.main.Request;
+import org.collectionspace.csp.api.persistence.ExistException;
+import org.collectionspace.csp.api.persistence.UnauthorizedException;
+import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
+import org.collectionspace.csp.api.persistence.UnimplementedException;
+import org.collectionspace.csp.api.ui.UIException;
+import org.collectionspace.csp.api.ui.UISession;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Who may see the /admin pages: users who are logged in and whose roles let them change roles, ie
+ * tenant administrators. Their permissions are asked of the services each time, with the session's
+ * credentials, so a session whose password has since changed is refused too.
+ *
+ */
+public class AdminAccess {
+	/* the UI resource an administrator can update */
+	static final String ADMIN_RESOURCE="role";
+
+	private final Spec spec;
+	private final PermissionMatrix matrix;
+
+	public AdminAccess(Spec spec) {
+		this.spec=spec;
+		this.matrix=new PermissionMatrix(spec);
+	}
+
+	/**
+	 * Refuse the request unless it comes from an administrator
+	 * @param q
+	 * @throws UnauthorizedException with SC_UNAUTHORIZED if not logged in, SC_FORBIDDEN if not an administrator
+	 * @throws UIException
+	 */
+	public void check(Request q) throws UIException, UnauthorizedException {
+		String path="/"+StringUtils.join(q.getUIRequest().getPrincipalPath(),"/");
+		UISession session=q.getUIRequest().getSession();
+		Object user=session==null?null:session.getValue(UISession.USERID);
+		if(user==null || "".equals(user))
+			throw new UnauthorizedException("User must be authenticated to access this resource.",HttpStatus.SC_UNAUTHORIZED,path);
+		PermissionMatrix.Grant grant;
+		try {
+			String base=spec.getRecordByWebUrl("userperm").getID();
+			grant=matrix.compile(q.getStorage().retrieveJSON(base+"/0/",new JSONObject()));
+		} catch (UnderlyingStorageException x) {
+			Integer status=x.getStatus();
+			if(status!=null && (status==HttpStatus.SC_UNAUTHORIZED || status==HttpStatus.SC_FORBIDDEN))
+				throw new UnauthorizedException("User must be authenticated to access this resource.",HttpStatus.SC_UNAUTHORIZED,path,x);
+			throw new UIException("Could not check permissions: "+x.getMessage(),x);
+		} catch (ExistException x) {
+			throw new UIException("Could not check permissions: "+x.getMessage(),x);
+		} catch (UnimplementedException x) {
+			throw new UIException("Could not check permissions: "+x.getMessage(),x);
+		} catch (JSONException x) {
+			throw new UIException("Could not check permissions: "+x.getMessage(),x);
+		}
+		if(grant==null || (matrix.get(grant,ADMIN_RESOURCE)&PermissionMatrix.UPDATE)==0)
+			throw new UnauthorizedException("Only administrators may access this resource.",HttpStatus.SC_FORBIDDEN,path);
+	}
+}
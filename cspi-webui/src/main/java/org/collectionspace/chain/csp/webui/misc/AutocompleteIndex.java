@@ -0,0 +1,404 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.misc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.collectionspace.chain.csp.schema.AdminData;
+import org.collectionspace.chain.csp.schema.FieldSet;
+import org.collectionspace.chain.csp.schema.Instance;
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.chain.util.json.JSONUtils;
+import org.collectionspace.csp.api.core.CSPRequestCredentials;
+import org.collectionspace.csp.api.persistence.ExistException;
+import org.collectionspace.csp.api.persistence.Storage;
+import org.collectionspace.csp.api.persistence.StorageGenerator;
+import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
+import org.collectionspace.csp.api.persistence.UnimplementedException;
+import org.collectionspace.csp.api.ui.UISession;
+import org.collectionspace.csp.helper.core.RequestCache;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Terms of each authority instance held in memory, so that autocomplete can be answered without going
+ * to the services for every keystroke.
+ *
+ * An instance is loaded in the background, as the admin user, the first time it is asked for, and again
+ * once it is older than the tenant's autocomplete-index-timeout; until then autocomplete goes to the
+ * services as before. Writes through the app layer keep it up to date in between.
+ *
+ * The services still decide who may see what: a session is only answered from the index for an
+ * instance once the services have answered it an autocomplete for that instance.
+ *
+ * A query matches as the services' partial term search does: anywhere in any of a term's display names,
+ * ignoring case. Matches come in order of display name.
+ *
+ */
+public class AutocompleteIndex {
+	private static final Logger log=LoggerFactory.getLogger(AutocompleteIndex.class);
+	private static final ConcurrentMap<String,AutocompleteIndex> tenants=new ConcurrentHashMap<String,AutocompleteIndex>();
+	private static final String SESSION_KEY="session.cache.autocomplete";
+	private static final int LOAD_PAGE_SIZE=200;
+
+	private final String tenant;
+	private final ConcurrentMap<String,Terms> instances=new ConcurrentHashMap<String,Terms>();
+	private final Set<String> loading=Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+	/* when each instance was last written through us, so a load which raced with a write isn't used */
+	private final ConcurrentMap<String,Long> changed=new ConcurrentHashMap<String,Long>();
+	private volatile StorageGenerator generator;
+	private volatile Spec spec;
+	private ExecutorService loader;
+
+	AutocompleteIndex(String tenant) {
+		this.tenant=tenant;
+	}
+
+	public static AutocompleteIndex forTenant(AdminData admin) {
+		String tenant=admin.getTenant();
+		AutocompleteIndex out=tenants.get(tenant);
+		if(out==null) {
+			AutocompleteIndex created=new AutocompleteIndex(tenant);
+			out=tenants.putIfAbsent(tenant,created);
+			if(out==null)
+				return created;
+		}
+		return out;
+	}
+
+	/**
+	 * (Re)start the tenant's index, forgetting anything loaded under the previous config
+	 * @param generator
+	 * @param spec
+	 */
+	public static void start(StorageGenerator generator,Spec spec) {
+		AutocompleteIndex index=forTenant(spec.getAdminData());
+		synchronized(index) {
+			index.instances.clear();
+			index.generator=generator;
+			index.spec=spec;
+			if(index.loader!=null) {
+				index.loader.shutdownNow();
+				index.loader=null;
+			}
+			index.loading.clear();
+		}
+	}
+
+	public boolean isEnabled() {
+		Spec s=spec;
+		return s!=null && generator!=null && s.getAdminData().isAutocompleteIndex();
+	}
+
+	/**
+	 * The terms of an instance, if we have them and the session may see them. Otherwise null, and a
+	 * load is started if need be.
+	 * @param session
+	 * @param n
+	 * @return
+	 */
+	public Terms get(UISession session,Instance n) {
+		if(!isEnabled())
+			return null;
+		Terms out=instances.get(n.getID());
+		long age=spec.getAdminData().getAutocompleteIndexAge()*1000L;
+		if(out==null || (age>0 && out.getLoaded()+age<System.currentTimeMillis()))
+			load(n);
+		if(out==null || out.isOversize() || !isPermitted(session,n))
+			return null;
+		return out;
+	}
+
+	/**
+	 * Note that the services have let this session autocomplete against this instance
+	 * @param session
+	 * @param n
+	 */
+	@SuppressWarnings("unchecked")
+	public void permit(UISession session,Instance n) {
+		if(session==null || !isEnabled())
+			return;
+		Set<String> permitted=(Set<String>)session.getValue(SESSION_KEY);
+		if(permitted==null) {
+			permitted=Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+			session.setValue(SESSION_KEY,permitted);
+		}
+		permitted.add(tenant+":"+n.getID());
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean isPermitted(UISession session,Instance n) {
+		if(session==null)
+			return false;
+		Set<String> permitted=(Set<String>)session.getValue(SESSION_KEY);
+		return permitted!=null && permitted.contains(tenant+":"+n.getID());
+	}
+
+	/**
+	 * A term was created or updated: fetch its view and put it in the index
+	 * @param storage
+	 * @param n
+	 * @param csid
+	 */
+	public void update(Storage storage,Instance n,String csid) {
+		changed.put(n.getID(),System.currentTimeMillis());
+		Terms terms=instances.get(n.getID());
+		if(terms==null)
+			return;
+		try {
+			terms.put(Terms.fromView(n,storage.retrieveJSON(path(n)+"/"+csid+"/view",new JSONObject())));
+		} catch (Exception e) {
+			// Can't tell what it looks like now, so stop trusting what we have
+			log.debug("Dropping autocomplete index for "+n.getID()+": "+e.getMessage());
+			invalidate(n);
+		}
+	}
+
+	/**
+	 * A term was deleted, or moved to a workflow state in which it isn't offered
+	 * @param n
+	 * @param csid
+	 */
+	public void remove(Instance n,String csid) {
+		changed.put(n.getID(),System.currentTimeMillis());
+		Terms terms=instances.get(n.getID());
+		if(terms!=null)
+			terms.remove(csid);
+	}
+
+	/**
+	 * Forget an instance, for when it has changed in ways we can't follow (eg bulk initialisation)
+	 * @param n
+	 */
+	public void invalidate(Instance n) {
+		changed.put(n.getID(),System.currentTimeMillis());
+		instances.remove(n.getID());
+	}
+
+	private static String path(Instance n) {
+		return n.getRecord().getID()+"/"+n.getTitleRef();
+	}
+
+	private synchronized void load(final Instance n) {
+		if(!loading.add(n.getID()))
+			return;
+		if(loader==null) {
+			loader=Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t=new Thread(r,"autocomplete-index-"+tenant);
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+		}
+		final StorageGenerator gen=generator;
+		final Spec s=spec;
+		try {
+			loader.execute(new Runnable() {
+				public void run() {
+					try {
+						long start=System.currentTimeMillis();
+						Terms terms=fetch(gen,s,n);
+						Long written=changed.get(n.getID());
+						if(written!=null && written>=start) {
+							log.debug("Autocomplete index for "+n.getID()+" changed while loading, will try again");
+							return;
+						}
+						synchronized(AutocompleteIndex.this) {
+							if(spec==s)
+								instances.put(n.getID(),terms);
+						}
+						log.info("Indexed "+terms.size()+" terms of "+n.getID()+" for autocomplete in "+(System.currentTimeMillis()-start)+"ms");
+					} catch (Exception e) {
+						// Most likely the services aren't up: we'll try again on the next autocomplete
+						log.warn("Could not index "+n.getID()+" for autocomplete: "+e.getMessage());
+					} finally {
+						loading.remove(n.getID());
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			loading.remove(n.getID());
+		}
+	}
+
+	/* Page through every term of the instance. The views are gleaned from the lists, so cost no more calls */
+	private static Terms fetch(StorageGenerator gen,Spec s,Instance n) throws JSONException, ExistException, UnimplementedException, UnderlyingStorageException {
+		AdminData admin=s.getAdminData();
+		CSPRequestCredentials creds=gen.createCredentials();
+		if(creds!=null) {
+			creds.setCredential(StorageGenerator.CRED_USERID,admin.getAuthUser());
+			creds.setCredential(StorageGenerator.CRED_PASSWORD,admin.getAuthPass());
+		}
+		Terms out=new Terms();
+		int max=admin.getAutocompleteIndexMaxTerms();
+		for(int page=0;;page++) {
+			RequestCache cache=new RequestCache();
+			Storage storage=gen.getStorage(creds,cache);
+			JSONObject restriction=new JSONObject();
+			restriction.put("pageSize",Integer.toString(LOAD_PAGE_SIZE));
+			restriction.put("pageNum",Integer.toString(page));
+			JSONObject results=storage.getPathsJSON(path(n),restriction);
+			String[] csids=(String[])results.get("listItems");
+			for(String csid : csids) {
+				if(out.size()>=max) {
+					log.info(n.getID()+" has more than "+max+" terms, so autocomplete is left to the services");
+					return Terms.oversize();
+				}
+				out.put(Terms.fromView(n,storage.retrieveJSON(path(n)+"/"+csid+"/view",new JSONObject())));
+			}
+			JSONObject pagination=results.optJSONObject("pagination");
+			if(csids.length==0 || pagination==null || pagination.getInt("totalItems")<=(page+1)*LOAD_PAGE_SIZE)
+				break;
+		}
+		return out;
+	}
+
+	/**
+	 * The terms of one instance, kept in order of their normalised primary display name.
+	 */
+	public static class Terms {
+		private static final char SEPARATOR='\u0000';
+
+		private final ConcurrentNavigableMap<String,Term> by_name=new ConcurrentSkipListMap<String,Term>();
+		private final ConcurrentMap<String,Term> by_csid=new ConcurrentHashMap<String,Term>();
+		private final long loaded=System.currentTimeMillis();
+		private boolean oversize=false;
+
+		static Terms oversize() {
+			Terms out=new Terms();
+			out.oversize=true;
+			return out;
+		}
+
+		static Term fromView(Instance n,JSONObject view) throws JSONException {
+			FieldSet dn=n.getRecord().getDisplayNameField();
+			String names=view.getString(dn==null?"displayName":dn.getID());
+			JSONArray display=JSONUtils.createJSONArrayFromSeparatedString(names);
+			String[] all=new String[display.length()];
+			for(int i=0;i<all.length;i++)
+				all[i]=display.getString(i);
+			return new Term(view.getString("csid"),view.getString("refid"),all,
+					view.optString("namespace",null),view.optString("workflow",null),n.getRecord().getWebURL());
+		}
+
+		/* The services' partial term match is a case-insensitive LIKE, so this is all we do too */
+		public static String normalise(String in) {
+			return in.toLowerCase(Locale.ROOT);
+		}
+
+		private static String key(Term t) {
+			return (t.normalised.length>0?t.normalised[0]:"")+SEPARATOR+t.csid;
+		}
+
+		public synchronized void put(Term t) {
+			remove(t.csid);
+			by_csid.put(t.csid,t);
+			by_name.put(key(t),t);
+		}
+
+		public synchronized void remove(String csid) {
+			Term old=by_csid.remove(csid);
+			if(old!=null)
+				by_name.remove(key(old));
+		}
+
+		/**
+		 * Terms with a display name containing the query anywhere, as the services would find them
+		 * @param partial
+		 * @param page_size 0 for all
+		 * @param page_num
+		 * @return
+		 */
+		public List<Term> query(String partial,int page_size,int page_num) {
+			String part=normalise(partial==null?"":partial.trim());
+			List<Term> out=new ArrayList<Term>();
+			int skip=page_size*page_num;
+			for(Term t : by_name.values()) {
+				if(!t.contains(part))
+					continue;
+				if(skip>0) {
+					skip--;
+					continue;
+				}
+				out.add(t);
+				if(page_size>0 && out.size()>=page_size)
+					break;
+			}
+			return out;
+		}
+
+		public int size() { return by_csid.size(); }
+		public long getLoaded() { return loaded; }
+		public boolean isOversize() { return oversize; }
+	}
+
+	/**
+	 * What autocomplete needs to know about a term
+	 */
+	public static class Term {
+		private final String csid,refid,namespace,workflow,type;
+		private final String[] display_names,normalised;
+
+		public Term(String csid,String refid,String[] display_names,String namespace,String workflow,String type) {
+			this.csid=csid;
+			this.refid=refid;
+			this.display_names=display_names;
+			normalised=new String[display_names.length];
+			for(int i=0;i<display_names.length;i++)
+				normalised[i]=Terms.normalise(display_names[i]);
+			this.namespace=namespace;
+			this.workflow=workflow;
+			this.type=type;
+		}
+
+		public String getCsid() { return csid; }
+
+		boolean contains(String part) {
+			for(String name : normalised)
+				if(name.indexOf(part)!=-1)
+					return true;
+			return false;
+		}
+
+		/** In the same form as an autocomplete answered by the services */
+		public JSONObject toJSON() throws JSONException {
+			JSONObject out=new JSONObject();
+			String primary=display_names.length>0?display_names[0]:"";
+			String base=refid;
+			// HACK - transition period with full instead of base URN value
+			if(base.endsWith("'"+primary+"'"))
+				base=base.substring(0,base.length()-(primary.length()+2));
+			out.put("baseUrn",base);
+			out.put("csid",csid);
+			out.put("type",type);
+			JSONArray names=new JSONArray();
+			for(String name : display_names)
+				names.put(name);
+			out.put("displayNames",names);
+			out.put("namespace",namespace);
+			out.put("workflow",workflow);
+			return out;
+		}
+	}
+}
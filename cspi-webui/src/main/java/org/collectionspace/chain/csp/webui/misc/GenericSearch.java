@@ -24,7 +24,6 @@ import org.collectionspace.chain.csp.schema.Record;
 import org.collectionspace.chain.csp.schema.Repeat;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
-import org.collectionspace.csp.api.ui.UISession;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -614,8 +613,9 @@ public class GenericSearch {
 	/**
 	 * Abstract the process for creating the traverser record
 	 * There should be enough information here to repeat the search and get the next/previous set of results.
+	 * Only the page of results we have is kept, and the session only keeps the most recent few searches.
 	 * @param ui
-	 * @param recordID
+	 * @param r
 	 * @param instanceID
 	 * @param results
 	 * @param restriction
@@ -624,25 +624,20 @@ public class GenericSearch {
 	 * @throws JSONException
 	 * @throws UIException
 	 */
-	public static void createTraverser(UIRequest ui, String recordID, String instanceID, JSONObject results,
+	public static void createTraverser(UIRequest ui, Record r, String instanceID, JSONObject results,
 			JSONObject restriction, String key, Integer numInstances) throws 
 			UIException {
 		try{
-			JSONObject traverser = new JSONObject();
-			traverser.put("restriction", restriction);
-			traverser.put("record", recordID);
-			traverser.put("instance", instanceID);//not auth so no instance info
-			traverser.put("total", Integer.valueOf(results.getJSONObject("pagination").getString("totalItems")));
-			traverser.put("pageNum", Integer.valueOf(results.getJSONObject("pagination").getString("pageNum")));
-			traverser.put("pageSize", Integer.valueOf(results.getJSONObject("pagination").getString("pageSize")));
-			traverser.put("itemsInPage", Integer.valueOf(results.getJSONObject("pagination").getString("itemsInPage")));
-			
-			traverser.put("numInstances", numInstances);
-			traverser.put("results", results.getJSONArray(key));
+			JSONObject pagination = results.getJSONObject("pagination");
+			SearchTraverser traverser = new SearchTraverser(r.getID(), instanceID, key, restriction,
+					Integer.valueOf(pagination.getString("totalItems")),
+					Integer.valueOf(pagination.getString("pageSize")),
+					numInstances);
+			traverser.setPage(Integer.valueOf(pagination.getString("pageNum")), results.getJSONArray(key));
 			
-			String vhash = Generic.createHash(results.getJSONObject("pagination").getJSONArray("separatelists").toString() + restriction.toString());
-			ui.getSession().setValue(UISession.SEARCHTRAVERSER+""+vhash,traverser);
-			results.getJSONObject("pagination").put("traverser", vhash);
+			String vhash = Generic.createHash(pagination.getJSONArray("separatelists").toString() + restriction.toString());
+			SearchTraverser.getStore(ui.getSession(), r.getSpec().getAdminData().getSearchTraverserMax()).put(vhash, traverser);
+			pagination.put("traverser", vhash);
 		}
 		catch(JSONException ex){
 			//can't do traversal as something is wrong e..g pagination data missing
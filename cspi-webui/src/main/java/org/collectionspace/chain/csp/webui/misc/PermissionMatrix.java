@@ -0,0 +1,307 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.misc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+
+import org.collectionspace.chain.csp.schema.Instance;
+import org.collectionspace.chain.csp.schema.Record;
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.chain.csp.webui.main.WebMethod;
+import org.collectionspace.csp.helper.core.ResponseCache;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turns the services' accountperms into the permissions the UI wants, per UI resource. Which UI resource
+ * a services resource name means is worked out from the spec once and remembered, and a user's
+ * permissions are kept as a few bits per resource, merged by or-ing them together. The UI's JSON is only
+ * made when it is sent, so the userperms cache holds the bits rather than the JSON.
+ *
+ * A resource's bits are the verbs CRUDLK, plus PRESENT once any permission has named it: a workflow
+ * delete or lock grants everything if it is the first we hear of the resource, but only adds its verb
+ * to what is already there otherwise.
+ *
+ */
+public class PermissionMatrix {
+	private static final Logger log=LoggerFactory.getLogger(PermissionMatrix.class);
+
+	static final int CREATE=1,READ=2,UPDATE=4,DELETE=8,LIST=16,LOCK=32,PRESENT=64;
+	static final int CRUDL=CREATE|READ|UPDATE|DELETE|LIST;
+	/* in the order the UI has always had them */
+	private static final int[] BITS={CREATE,READ,UPDATE,DELETE,LIST,LOCK};
+	private static final String[] VERBS={Generic.CREATE_PERMISSION,Generic.READ_PERMISSION,Generic.UPDATE_PERMISSION,
+		Generic.DELETE_PERMISSION,Generic.LIST_PERMISSION,Generic.LOCK_PERMISSION};
+
+	private static final String WORKFLOW_DELETE_RESOURCE_TAIL=WebMethod.WORKFLOW_SUB_RESOURCE+"delete";
+	private static final String WORKFLOW_LOCK_RESOURCE_TAIL=WebMethod.WORKFLOW_SUB_RESOURCE+"lock";
+	/* services resource names remembered beyond those from the spec; anything past this is worked out each time */
+	static final int MAX_RULES=4096;
+
+	private static final int PLAIN=0,WORKFLOW_DELETE=1,WORKFLOW_LOCK=2,IGNORE=3;
+	private static final AtomicInteger layouts=new AtomicInteger();
+
+	private static class Rule {
+		private final int resource,kind;
+
+		private Rule(int resource,int kind) {
+			this.resource=resource;
+			this.kind=kind;
+		}
+	}
+
+	private final Spec spec;
+	/* grants made by another matrix number their resources differently */
+	private final int layout=layouts.incrementAndGet();
+	private final List<String> resources=new CopyOnWriteArrayList<String>();
+	private final ConcurrentMap<String,Integer> resource_index=new ConcurrentHashMap<String,Integer>();
+	private final ConcurrentMap<String,Rule> rules=new ConcurrentHashMap<String,Rule>();
+	/* {target,source}: authority instances get the permissions of their authority */
+	private final List<int[]> mirrors=new ArrayList<int[]>();
+	/* every record is listed, even with no permissions */
+	private final List<Integer> always=new ArrayList<Integer>();
+
+	public PermissionMatrix(Spec spec) {
+		this.spec=spec;
+		for(Record r : spec.getAllRecords()) {
+			learn(r.getID());
+			learn(r.getServicesURL());
+			learn(r.getAuthorizationType());
+		}
+		// Services do not support permissions for individual namespaces within an authority,
+		// e.g., to "Local Persons" vs. "ULAN Persons", so each namespace (a.k.a. "instance")
+		// gets the permissions of the parent authority.
+		for(Record r : spec.getAllRecords()) {
+			if(!r.isType("authority"))
+				continue;
+			int source=resource(r.getWebURL().equals("vocab")?"vocabularyitems":r.getWebURL());
+			for(Instance ins : r.getAllInstances())
+				mirrors.add(new int[]{resource(ins.getID()),source});
+		}
+		for(Record r : spec.getAllRecords())
+			always.add(resource(r.getWebURL()));
+		log.debug("Permission matrix for "+spec.getAdminData().getTenant()+": "+rules.size()+" services resources onto "+resources.size()+" UI resources");
+	}
+
+	private void learn(String servicename) {
+		if(servicename!=null && !servicename.equals(""))
+			rule(servicename);
+	}
+
+	private int resource(String name) {
+		Integer out=resource_index.get(name);
+		if(out!=null)
+			return out;
+		synchronized(resources) {
+			out=resource_index.get(name);
+			if(out==null) {
+				out=resources.size();
+				resources.add(name);
+				resource_index.put(name,out);
+			}
+			return out;
+		}
+	}
+
+	/* What a services resource name means to us, worked out the way the UI always has */
+	private Rule rule(String resourceName) {
+		Rule out=rules.get(resourceName);
+		if(out!=null)
+			return out;
+		String name=resourceName;
+		int kind=PLAIN;
+		if(name.endsWith(WORKFLOW_DELETE_RESOURCE_TAIL) || name.endsWith(WORKFLOW_LOCK_RESOURCE_TAIL)) {
+			kind=name.endsWith(WORKFLOW_DELETE_RESOURCE_TAIL)?WORKFLOW_DELETE:WORKFLOW_LOCK;
+			if(name.startsWith("/"))
+				name=name.substring(1);
+			// The base resource that the workflow is related to
+			name=name.substring(0,name.length()-(kind==WORKFLOW_DELETE?WORKFLOW_DELETE_RESOURCE_TAIL:WORKFLOW_LOCK_RESOURCE_TAIL).length());
+		} else if(name.endsWith(WebMethod.WORKFLOW_SIMPLE_SUB_RESOURCE) || name.contains(WebMethod.WORKFLOW_SUB_RESOURCE)) {
+			kind=IGNORE;
+		}
+		out=new Rule(kind==IGNORE?-1:resource(Generic.ResourceNameUI(spec,name)),kind);
+		if(rules.size()<MAX_RULES)
+			rules.putIfAbsent(resourceName,out);
+		return out;
+	}
+
+	/* The verbs of a services actionGroup, eg "CRUDL" */
+	static int verbs(String actionGroup) {
+		int out=0;
+		for(int i=0;i<actionGroup.length();i++) {
+			switch(actionGroup.charAt(i)) {
+			case 'C': out|=CREATE; break;
+			case 'R': out|=READ; break;
+			case 'U': out|=UPDATE; break;
+			case 'D': out|=DELETE; break;
+			case 'L': out|=LIST; break;
+			case 'K': out|=LOCK; break;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * A user's permissions from what the services return for accountperms
+	 * @param activePermissions
+	 * @return the grant, or null if the user has no roles in this tenant
+	 * @throws JSONException
+	 */
+	public Grant compile(JSONObject activePermissions) throws JSONException {
+		//we are ignoring pagination so this will return the first 40 permissions only
+		//UI doesn't know what it wants to do about pagination etc
+		if(!activePermissions.has("permission"))
+			return null;
+		String csid=null,userId=null,tenantId=null,screenName=null;
+		if(activePermissions.has("account")) {
+			JSONObject account=activePermissions.getJSONObject("account");
+			csid=account.getString("accountId");
+			userId=account.getString("userId");
+			tenantId=account.getString("tenantId");
+			screenName=account.optString("screenName",userId);
+		}
+		JSONArray active=activePermissions.getJSONArray("permission");
+		Rule[] matched=new Rule[active.length()];
+		int[] granted=new int[active.length()];
+		for(int j=0;j<active.length();j++) {
+			JSONObject perm=active.getJSONObject(j);
+			if(!perm.has("resourceName") || !perm.has("actionGroup"))
+				continue;
+			String resourceName=perm.getString("resourceName");
+			matched[j]=rule(resourceName);
+			granted[j]=verbs(perm.getString("actionGroup"));
+			if(matched[j].kind==IGNORE)
+				log.debug("PermissionMatrix: Ignoring workflow resource "+resourceName);
+		}
+		// Only sized now, as unfamiliar resources may have been added
+		byte[] bits=new byte[resources.size()];
+		for(int j=0;j<matched.length;j++) {
+			Rule rule=matched[j];
+			if(rule==null)
+				continue;
+			int was=bits[rule.resource];
+			switch(rule.kind) {
+			case PLAIN:
+				// TODO - If the associated record is configured with soft-Delete, should we filter 'D' here?
+				bits[rule.resource]=(byte)(was|PRESENT|granted[j]);
+				break;
+			case WORKFLOW_DELETE:
+				// Only consider if we can write the workflow transition: it means we have CRUDL
+				if((granted[j]&UPDATE)!=0)
+					bits[rule.resource]=(byte)(((was&PRESENT)!=0)?(was|DELETE):(PRESENT|CRUDL));
+				break;
+			case WORKFLOW_LOCK:
+				// TODO Should ignore this if record not configured to support locking.
+				if((granted[j]&UPDATE)!=0)
+					bits[rule.resource]=(byte)(((was&PRESENT)!=0)?(was|LOCK):(PRESENT|CRUDL|LOCK));
+				break;
+			}
+		}
+		for(int[] mirror : mirrors)
+			bits[mirror[0]]=(byte)(bits[mirror[1]]|PRESENT);
+		for(int resource : always)
+			bits[resource]|=PRESENT;
+		return new Grant(layout,csid,screenName,userId,tenantId,bits);
+	}
+
+	/** Was this grant made by this matrix, rather than one since replaced? */
+	public boolean owns(Grant grant) {
+		return grant.layout==layout;
+	}
+
+	/**
+	 * The UI's permissions object, eg {loansin: ["create", "read", "update", "delete", "list"], intakes: ["read", "list"], ...}
+	 * @param grant
+	 * @return
+	 * @throws JSONException
+	 */
+	public JSONObject toJSON(Grant grant) throws JSONException {
+		JSONObject out=new JSONObject();
+		int n=Math.min(grant.bits.length,resources.size());
+		for(int i=0;i<n;i++) {
+			int bits=grant.bits[i];
+			if((bits&PRESENT)==0)
+				continue;
+			JSONArray verbs=new JSONArray();
+			for(int v=0;v<BITS.length;v++)
+				if((bits&BITS[v])!=0)
+					verbs.put(VERBS[v]);
+			out.put(resources.get(i),verbs);
+		}
+		return out;
+	}
+
+	/* The verb bits for a UI resource, for tests and the like */
+	int get(Grant grant,String resource) {
+		Integer i=resource_index.get(resource);
+		if(i==null || i>=grant.bits.length)
+			return 0;
+		return grant.bits[i];
+	}
+
+	/**
+	 * A user's permissions in a tenant, as cached in userperms
+	 */
+	public static class Grant implements Serializable {
+		private static final long serialVersionUID=1L;
+
+		private final int layout;
+		private final String csid,screenName,userId,tenant;
+		private final byte[] bits;
+
+		Grant(int layout,String csid,String screenName,String userId,String tenant,byte[] bits) {
+			this.layout=layout;
+			this.csid=csid;
+			this.screenName=screenName;
+			this.userId=userId;
+			this.tenant=tenant;
+			this.bits=bits;
+		}
+
+		public String getCsid() { return csid; }
+		public String getScreenName() { return screenName; }
+		public String getUserId() { return userId; }
+		public String getTenant() { return tenant; }
+	}
+
+	public static String cacheKey(String userId,String tenantId) {
+		return userId+":"+tenantId;
+	}
+
+	/** Forget the cached permissions of a user, eg when their roles change */
+	public static void invalidate(String userId,String tenantId) {
+		try {
+			Ehcache cache=ResponseCache.getCache(ResponseCache.USER_PERMS_CACHE);
+			if(cache!=null)
+				cache.remove(cacheKey(userId,tenantId));
+		} catch (IllegalStateException ise) {
+			log.warn("PermissionMatrix - userperms cache not active: "+ise.getLocalizedMessage());
+		} catch (CacheException ce) {
+			log.warn("PermissionMatrix - userperms cache exception:"+ce.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Forget all cached permissions. A change to a role, or to the permissions in it, can affect anyone,
+	 * and the tenant a session names isn't reliably the one its users are cached under.
+	 */
+	public static void invalidateAll() {
+		ResponseCache.clearCache(ResponseCache.USER_PERMS_CACHE);
+	}
+}
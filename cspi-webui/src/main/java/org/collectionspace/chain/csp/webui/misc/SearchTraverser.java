@@ -0,0 +1,134 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.misc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.collectionspace.csp.api.ui.UISession;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * What RecordTraverser needs to know about a search: enough to run it again for any page, and the
+ * mini-records of only the last couple of pages, which are enough for a previous/current/next window
+ * even where it crosses a page boundary.
+ *
+ */
+public class SearchTraverser {
+	/* pages of mini-records kept */
+	static final int WINDOW=2;
+
+	private final String record,instance,key,restriction;
+	private final int total,page_size,num_instances;
+	private final Map<Integer,JSONArray> window=new LinkedHashMap<Integer,JSONArray>(4,0.75f,true);
+
+	SearchTraverser(String record,String instance,String key,JSONObject restriction,int total,int page_size,int num_instances) {
+		this.record=record;
+		this.instance=instance;
+		this.key=key;
+		this.restriction=restriction.toString();
+		this.total=total;
+		this.page_size=page_size;
+		this.num_instances=num_instances;
+	}
+
+	/**
+	 * The session's traversers, created if need be. Concurrent requests of a session get the same store.
+	 * @param session
+	 * @param max_size most traversers the session keeps
+	 * @return
+	 */
+	public static Store getStore(UISession session,int max_size) {
+		Object out;
+		synchronized(session) {
+			out=session.getValue(UISession.SEARCHTRAVERSER);
+			if(!(out instanceof Store)) {
+				out=new Store(max_size);
+				session.setValue(UISession.SEARCHTRAVERSER,out);
+			}
+		}
+		((Store)out).setMaxSize(max_size);
+		return (Store)out;
+	}
+
+	public String getRecord() { return record; }
+	public String getInstance() { return instance; }
+	public String getKey() { return key; }
+	public int getTotal() { return total; }
+	public int getPageSize() { return page_size; }
+	public int getNumInstances() { return num_instances; }
+
+	/** A copy of the search's restriction, to change the page of */
+	public JSONObject getRestriction() throws JSONException {
+		return new JSONObject(restriction);
+	}
+
+	public int getPage(int index) {
+		return page_size>0?index/page_size:0;
+	}
+
+	/**
+	 * Keep a page of results
+	 * @param page
+	 * @param results mini-records, as returned by the search
+	 */
+	public synchronized void setPage(int page,JSONArray results) {
+		window.put(page,results);
+		Iterator<Integer> it=window.keySet().iterator();
+		while(window.size()>WINDOW && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * The mini-record at this position, or null if its page isn't to hand
+	 * @param index
+	 * @return
+	 * @throws JSONException
+	 */
+	public synchronized JSONObject getItem(int index) throws JSONException {
+		int page=getPage(index);
+		JSONArray results=window.get(page);
+		int offset=index-page*page_size;
+		if(results==null || offset<0 || offset>=results.length())
+			return null;
+		return results.getJSONObject(offset);
+	}
+
+	/**
+	 * The traversers of a session, the least recently used dropped once there are more than the tenant allows
+	 */
+	public static class Store {
+		private final Map<String,SearchTraverser> traversers=new LinkedHashMap<String,SearchTraverser>(16,0.75f,true);
+		private volatile int max_size;
+
+		Store(int max_size) {
+			setMaxSize(max_size);
+		}
+
+		public synchronized SearchTraverser get(String token) {
+			return traversers.get(token);
+		}
+
+		public synchronized void put(String token,SearchTraverser traverser) {
+			traversers.put(token,traverser);
+			Iterator<String> it=traversers.keySet().iterator();
+			while(traversers.size()>max_size && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		}
+
+		public synchronized int size() { return traversers.size(); }
+
+		void setMaxSize(int max_size) { this.max_size=Math.max(1,max_size); }
+	}
+}
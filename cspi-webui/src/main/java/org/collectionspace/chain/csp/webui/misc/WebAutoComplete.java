@@ -31,6 +31,7 @@ import org.collectionspace.csp.api.persistence.UnimplementedException;
 import org.collectionspace.csp.api.ui.TTYOutputter;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
+import org.collectionspace.csp.api.ui.UISession;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -39,11 +40,25 @@ import org.slf4j.LoggerFactory;
 
 public class WebAutoComplete implements WebMethod {
 	private static final Logger log=LoggerFactory.getLogger(WebAutoComplete.class);
+	/* as the services, when the UI doesn't say */
+	private static final int DEFAULT_PAGE_SIZE=40;
 	private Record r;
 	
 	public WebAutoComplete(Record r) { this.r=r; }
+
+	/* A paging argument as given, or null (so the default is used) if it isn't a whole number of at least min */
+	static String page(String value,int min) {
+		if(value==null)
+			return null;
+		try {
+			if(Integer.parseInt(value.trim())>=min)
+				return value.trim();
+		} catch(NumberFormatException e) {}
+		log.debug("WebAutoComplete ignoring paging argument "+value);
+		return null;
+	}
 	
-	private JSONArray doAuthorityAutocomplete(CSPRequestCache cache,Storage storage,String fieldname,
+	private JSONArray doAuthorityAutocomplete(CSPRequestCache cache,Storage storage,UISession session,String fieldname,
 			String start, String vocabConstraint, String pageSize, String pageNum) 
 			throws JSONException, ExistException, UnimplementedException, UnderlyingStorageException, ConfigException {
 		FieldSet fs=r.getFieldFullList(fieldname);
@@ -80,12 +95,20 @@ public class WebAutoComplete implements WebMethod {
 			return out; // Cannot autocomplete
 		}
 		
+		AutocompleteIndex index=AutocompleteIndex.forTenant(r.getSpec().getAdminData());
 		//support multiassign of autocomplete instances
 		for(Instance n : allInstances) {
 			try{
+				AutocompleteIndex.Terms terms=(n==null)?null:index.get(session,n);
 				if(n==null){
 					// Field has no autocomplete
 				}
+				else if(terms!=null){
+					int size=(pageSize!=null)?Integer.parseInt(pageSize):DEFAULT_PAGE_SIZE;
+					int num=(pageNum!=null)?Integer.parseInt(pageNum):0;
+					for(AutocompleteIndex.Term term : terms.query(start,size,num))
+						out.put(term.toJSON());
+				}
 				else{
 					String path=n.getRecord().getID()+"/"+n.getTitleRef();
 					JSONObject restriction=new JSONObject();
@@ -125,6 +148,8 @@ public class WebAutoComplete implements WebMethod {
 						entry.put("workflow", data.getString("workflow"));
 						out.put(entry);
 					}
+					// The services let this session see this instance
+					index.permit(session,n);
 				}
 			}
 			catch(UnderlyingStorageException x){
@@ -223,16 +248,16 @@ public class WebAutoComplete implements WebMethod {
 				}
 			}
 			if(r.isType("authority") || !isHierarchyAutoComplete){
-				out = doAuthorityAutocomplete(cache, storage, fieldName,
+				out = doAuthorityAutocomplete(cache, storage, request.getSession(), fieldName,
 					request.getRequestArgument(AUTO_COMPLETE_QUERY_PARAM), 
 					request.getRequestArgument(CONSTRAIN_VOCAB_PARAM),
-					request.getRequestArgument(PAGE_SIZE_PARAM),
-					request.getRequestArgument(PAGE_NUM_PARAM));
+					page(request.getRequestArgument(PAGE_SIZE_PARAM),1),
+					page(request.getRequestArgument(PAGE_NUM_PARAM),0));
 			} else if(isHierarchyAutoComplete) {
 				out = doRecordAutocomplete(cache, storage, fieldName,
 						request.getRequestArgument(AUTO_COMPLETE_QUERY_PARAM), 
-						request.getRequestArgument(PAGE_SIZE_PARAM),
-						request.getRequestArgument(PAGE_NUM_PARAM));
+						page(request.getRequestArgument(PAGE_SIZE_PARAM),1),
+						page(request.getRequestArgument(PAGE_NUM_PARAM),0));
 			} else {
 				throw new ConfigException("WebAutoComplete called for record that does not support autocomplete!: "+r.getID());
 			}
@@ -0,0 +1,44 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in 
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.misc;
+
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.chain.csp.webui.main.Request;
+import org.collectionspace.chain.csp.webui.main.WebMethod;
+import org.collectionspace.chain.csp.webui.main.WebUI;
+import org.collectionspace.csp.api.persistence.ExistException;
+import org.collectionspace.csp.api.persistence.UnauthorizedException;
+import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
+import org.collectionspace.csp.api.persistence.UnimplementedException;
+import org.collectionspace.csp.api.ui.UIException;
+
+/**
+ * Live statistics of the tenant's services connection pool, at /admin/connectionpool. Administrators
+ * only, see AdminAccess.
+ *
+ */
+public class WebConnectionPool implements WebMethod {
+	private AdminAccess admin;
+
+	public void run(Object in,String[] tail) throws UIException, UnauthorizedException {
+		Request q=(Request)in;
+		admin.check(q);
+		try {
+			q.getUIRequest().sendJSONResponse(q.getStorage().retrieveJSON("/connectionpool/",null));
+		} catch (ExistException e) {
+			throw new UIException("Existence exception",e);
+		} catch (UnimplementedException e) {
+			throw new UIException("Unimplemented",e);
+		} catch (UnderlyingStorageException e) {
+			throw new UIException("Underlying storage problem",e);
+		}
+	}
+
+	public void configure(WebUI ui, Spec spec) {
+		admin=new AdminAccess(spec);
+	}
+}
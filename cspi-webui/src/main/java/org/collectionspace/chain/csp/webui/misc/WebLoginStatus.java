@@ -8,8 +8,6 @@ package org.collectionspace.chain.csp.webui.misc;
 
 import javax.servlet.http.HttpSession;
 
-import org.collectionspace.chain.csp.schema.Instance;
-import org.collectionspace.chain.csp.schema.Record;
 import org.collectionspace.chain.csp.schema.Spec;
 import org.collectionspace.chain.csp.webui.main.Request;
 import org.collectionspace.chain.csp.webui.main.WebMethod;
@@ -23,7 +21,6 @@ import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
 import org.collectionspace.csp.api.ui.UISession;
 import org.collectionspace.csp.helper.core.ResponseCache;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -36,162 +33,40 @@ public class WebLoginStatus  implements WebMethod {
 	private static final Logger log=LoggerFactory.getLogger(WebLoginStatus.class);
 	private Spec spec;
 	private Ehcache userPermsCache = ResponseCache.getCache(ResponseCache.USER_PERMS_CACHE);
+	private volatile PermissionMatrix matrix;
 	
 	public WebLoginStatus(Spec spec) {
 		this.spec = spec;
 	}
 
-	private JSONObject getPermissions(Storage storage) throws JSONException, UIException, ExistException, UnimplementedException, UnderlyingStorageException {
-		final String WORKFLOW_DELETE_RESOURCE_TAIL = WORKFLOW_SUB_RESOURCE+"delete";
-		final String WORKFLOW_LOCK_RESOURCE_TAIL = WORKFLOW_SUB_RESOURCE+"lock";
-		JSONObject data = new JSONObject();
-		JSONObject perms = new JSONObject();
-
-		String permbase = "accountperms";//spec.getRecordByWebUrl("userperm").getID();
-		String base = spec.getRecordByWebUrl("userperm").getID();
-		JSONObject activePermissions = storage.retrieveJSON(base + "/0/", new JSONObject());
-
-		//we are ignoring pagination so this will return the first 40 permissions only
-		//UI doesn't know what it wants to do about pagination etc
-		if(activePermissions.has("account"))
-		{
-			JSONObject account = activePermissions.getJSONObject("account");
-			String csid = account.getString("accountId");
-			String userId = account.getString("userId");
-			String tenantId = account.getString("tenantId");
-			String screenName = userId;
-			if(account.has("screenName")){
-				screenName = account.getString("screenName");
+	/* Built once per tenant, in configure, unless we are used without it */
+	private PermissionMatrix getMatrix() {
+		PermissionMatrix out=matrix;
+		if(out==null) {
+			synchronized(this) {
+				if(matrix==null)
+					matrix=new PermissionMatrix(spec);
+				out=matrix;
 			}
-			data.put("csid",csid);
-			data.put("screenName",screenName);
-			data.put("userId",userId);
-			data.put("tenant",tenantId);
 		}
-		if(activePermissions.has("permission"))
-		{
-			JSONArray active = activePermissions.getJSONArray("permission");
-			for(int j=0;j<active.length();j++){
-				JSONObject perm = active.getJSONObject(j); 
-				if(perm.has("resourceName") && perm.has("actionGroup")){
-					JSONArray newPermissionsList = null;
-					String resourceName = perm.getString("resourceName");
-					String resourceNameUI = null;
-					// Check and filter the workflow resources
-					if(resourceName.endsWith(WORKFLOW_DELETE_RESOURCE_TAIL)) {
-						// Only consider if we can write the workflow transition
-						if(Generic.PermissionIncludesWritable(perm.getString("actionGroup"))) {
-							if(resourceName.startsWith("/")){
-								resourceName = resourceName.substring(1);
-							}
-							// Get the base resource that the workflow is related to
-							String baseResource = resourceName.substring(0,resourceName.length()
-														-WORKFLOW_DELETE_RESOURCE_TAIL.length()); 
-							resourceNameUI = Generic.ResourceNameUI(spec, baseResource);
-							// Workflow delete means we have CRUDL permissions
-							if(!perms.has(resourceNameUI)) {
-								newPermissionsList = Generic.PermissionLevelArray("CRUDL");
-							} else {
-								JSONArray prevPermsList = (JSONArray) perms.get(resourceNameUI);
-								newPermissionsList = Generic.PermissionLevelArrayEnsure(prevPermsList, Generic.DELETE_PERMISSION);
-							}
-						}
-					} else if(resourceName.endsWith(WORKFLOW_LOCK_RESOURCE_TAIL)) {
-						// Only consider if we can write the workflow transition
-						// TODO Should ignore this if record not configred to support locking.
-						if(Generic.PermissionIncludesWritable(perm.getString("actionGroup"))) {
-							if(resourceName.startsWith("/")){
-								resourceName = resourceName.substring(1);
-							}
-							// Get the base resource that the workflow is related to
-							String baseResource = resourceName.substring(0,resourceName.length()
-														-WORKFLOW_LOCK_RESOURCE_TAIL.length()); 
-							resourceNameUI = Generic.ResourceNameUI(spec, baseResource);
-							// Workflow lock means we have CRUDL permissions too
-							if(!perms.has(resourceNameUI)) {
-								newPermissionsList = Generic.PermissionLevelArray("CRUDLK");
-							} else {
-								JSONArray prevPermsList = (JSONArray) perms.get(resourceNameUI);
-								newPermissionsList = Generic.PermissionLevelArrayEnsure(prevPermsList, Generic.LOCK_PERMISSION);
-							}
-						}
-					} else if(resourceName.endsWith(WORKFLOW_SIMPLE_SUB_RESOURCE)) {
-						log.info("WebLoginStatus.getPerms: Ignoring resource for simple workflow subresource");
-					} else if(resourceName.contains(WORKFLOW_SUB_RESOURCE)) {
-						log.debug("WebLoginStatus.getPerms: Ignoring resource for unrecognized workflow transition: "
-								+ resourceName);
-					} else {
-						// TODO - If the associated record is configured with soft-Delete, should we
-						// filter 'D' from the actionGroup here?
-						resourceNameUI = Generic.ResourceNameUI(spec, resourceName);
-						newPermissionsList = Generic.PermissionLevelArray(perm.getString("actionGroup")); // Converts the "actionGroup" from the Services into a list of permission verbs
-						if (perms.has(resourceNameUI) == true) {
-							// Merge the existing permissions list with another.
-							JSONArray prevPermsList = (JSONArray) perms.get(resourceNameUI);
-							newPermissionsList = Generic.PermissionLevelArrayEnsure(prevPermsList, newPermissionsList);							
-						}
-					}
-					
-					if (newPermissionsList!=null) {
-						perms.put(resourceNameUI, newPermissionsList);
-					}
-				}
-			}
-			// Services do not support permissions for individual namespaces within an authority,
-			// e.g., to "Local Persons" vs. "ULAN Persons". 
-			// This sets up permissions to each namespace (a.k.a. "instance" in this code) 
-			// to match that of the parent authority.
-			for (Record r: spec.getAllRecords()){
-				if(r.isType("authority")){
-					for(Instance ins: r.getAllInstances()){
-						JSONArray permsdata = new JSONArray();
-						if(r.getWebURL().equals("vocab")){
-							if(perms.has("vocabularyitems")){
-								permsdata = perms.getJSONArray("vocabularyitems");
-							}
-						}
-						else{
-							if(perms.has(r.getWebURL())){
-								permsdata = perms.getJSONArray(r.getWebURL());
-							}
-						}
-						perms.put(ins.getID(), permsdata);
-					}
-				}
-			}
-		}
-		else{
-			//no permissions = no roles for this tenant
-			return new JSONObject();
-			
-		}
-//		put resources with none permissions in
-
-		for(Record r : spec.getAllRecords()) {
-			if(!perms.has(r.getWebURL())){
-				perms.put(r.getWebURL(), new JSONArray());
-			}
-		}
-		
-		//make termlist permissions match vocabularyItems permissions
-		//perms.put("termlist", perms.get("vocab"));
-		
-		data.put("permissions",perms);
-		return data;
+		return out;
 	}
-	
 
-	private String buildUserPermsCacheKey(String userId, String tenantId) {
-		return userId+":"+tenantId;
+	private PermissionMatrix.Grant getPermissions(Storage storage) throws JSONException, UIException, ExistException, UnimplementedException, UnderlyingStorageException {
+		String base = spec.getRecordByWebUrl("userperm").getID();
+		JSONObject activePermissions = storage.retrieveJSON(base + "/0/", new JSONObject());
+		return getMatrix().compile(activePermissions);
 	}
-	
-	private JSONObject findPermsInCache(String userId, String tenantId) {
-		JSONObject perms = null;
+
+	private PermissionMatrix.Grant findPermsInCache(String userId, String tenantId) {
+		PermissionMatrix.Grant perms = null;
 		// See if there is a cache of the permissions for this user and tenant.
 		try {
-			Element cacheHit = userPermsCache.get(buildUserPermsCacheKey(userId, tenantId));
-			if(cacheHit != null) {
-				perms = (JSONObject) cacheHit.getObjectValue();
+			Element cacheHit = userPermsCache.get(PermissionMatrix.cacheKey(userId, tenantId));
+			if(cacheHit != null && cacheHit.getObjectValue() instanceof PermissionMatrix.Grant) {
+				perms = (PermissionMatrix.Grant) cacheHit.getObjectValue();
+				if(!getMatrix().owns(perms))
+					perms = null;
 			}
 		} catch (IllegalStateException ise) {
 			log.warn("WebLoginStatus - userperms cache not active: "+ise.getLocalizedMessage());
@@ -201,10 +76,10 @@ public class WebLoginStatus  implements WebMethod {
 		return perms;
 	}
 	
-	private void addPermsToCache(String userId, String tenantId, JSONObject perms) {
+	private void addPermsToCache(String userId, String tenantId, PermissionMatrix.Grant perms) {
 		// Update cache with the permissions for this user and tenant.
 		try {
-			userPermsCache.put(new Element(buildUserPermsCacheKey(userId, tenantId), perms));
+			userPermsCache.put(new Element(PermissionMatrix.cacheKey(userId, tenantId), perms));
 		} catch (IllegalStateException ise) {
 			log.warn("WebLoginStatus - userperms cache not active: "+ise.getLocalizedMessage());
 		} catch (CacheException ce) {
@@ -226,7 +101,7 @@ public class WebLoginStatus  implements WebMethod {
 					output.put("login", false);
 				}				
 				else{
-					JSONObject perms = null;
+					PermissionMatrix.Grant perms = null;
 					// See if there is a cache of the permissions for this user and tenant.
 					String userId = (String) uiSession.getValue(UISession.USERID);
 					String tenantId = (String) uiSession.getValue(UISession.TENANT);
@@ -239,16 +114,16 @@ public class WebLoginStatus  implements WebMethod {
 						perms = getPermissions(storage);
 					}
 					
-					if(perms.has("permissions")){
+					if(perms != null){
 						// Set the cache if did not find it there, and if it has perms
 						// Will only slow down edge case of user with no roles.
 						if(!fFoundInCache) {
 							addPermsToCache(userId, tenantId, perms);
 						}
-						output.put("permissions",perms.getJSONObject("permissions"));
-						output.put("csid",perms.getString("csid"));
-						output.put("screenName",perms.getString("screenName"));
-						output.put("userId",perms.getString("userId"));
+						output.put("permissions",getMatrix().toJSON(perms));
+						output.put("csid",perms.getCsid());
+						output.put("screenName",perms.getScreenName());
+						output.put("userId",perms.getUserId());
 						output.put("login", true);
 						int maxInterval = 0;
 						UIRequest uir = in.getUIRequest();
@@ -296,6 +171,6 @@ public class WebLoginStatus  implements WebMethod {
 	}
 
 	public void configure(WebUI ui, Spec spec) {
-		
+		matrix = new PermissionMatrix(spec);
 	}
 }
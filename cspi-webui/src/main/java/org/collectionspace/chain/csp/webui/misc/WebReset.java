@@ -20,6 +20,7 @@ import org.collectionspace.chain.csp.schema.Option;
 import org.collectionspace.chain.csp.schema.Record;
 import org.collectionspace.chain.csp.schema.Spec;
 import org.collectionspace.chain.csp.webui.authorities.AuthoritiesVocabulariesInitialize;
+import org.collectionspace.chain.csp.webui.authorities.TermLoader;
 import org.collectionspace.chain.csp.webui.main.Request;
 import org.collectionspace.chain.csp.webui.main.WebMethod;
 import org.collectionspace.chain.csp.webui.main.WebUI;
@@ -41,7 +42,6 @@ public class WebReset implements WebMethod {
 	private boolean quick;
 	private boolean populate;
 	private Spec spec;
-	private  AuthoritiesVocabulariesInitialize avi;
 	
 	// HACK! This should not build services logic in this way!!!
 	private static final String PERSON_TERMLIST_ELEMENT = "personTermGroup";
@@ -78,10 +78,29 @@ public class WebReset implements WebMethod {
 		logInitMessage(responseMessage, "\nDetailed error message:\n\t" + e.getMessage(), modifyResponse);		
 	}
 
-	private boolean initialiseAll(Storage storage, UIRequest request, String path, boolean modifyResponse) throws UIException {
+	/* Collects progress into the response message, sending what there is so far on each flush if we're streaming */
+	private static TTYOutputter progress(final StringBuffer responseMessage, final UIRequest request, final boolean stream) {
+		return new TTYOutputter() {
+			public void line(String text) {
+				responseMessage.append(text).append('\n');
+			}
+
+			public void flush() throws UIException {
+				if (stream && responseMessage.length() > 0) {
+					TTYOutputter tty = request.getTTYOutputter();
+					tty.line(responseMessage.toString());
+					tty.flush();
+					responseMessage.setLength(0);
+				}
+			}
+		};
+	}
+
+	private boolean initialiseAll(Storage storage, TermLoader.StorageSource workers, UIRequest request, String path, boolean modifyResponse) throws UIException {
 		StringBuffer responseMessage = new StringBuffer();
 		boolean initializationFailed = false;
 		boolean initializationUnknown = false;
+		TTYOutputter progress = progress(responseMessage, request, modifyResponse && request != null);
 		
 		try {
 			logInitMessage(responseMessage, "Initialise vocab/auth entries\n", modifyResponse);
@@ -98,7 +117,7 @@ public class WebReset implements WebMethod {
 							logInitMessage(responseMessage, "testing authority " + dir + "\n", modifyResponse);
 							for (Instance instance : record.getAllInstances()) {
 								if (instance.getCreateUnreferenced() || isInstanceReferenced(instance)) {
-									avi = new AuthoritiesVocabulariesInitialize(instance, populate, modifyResponse);
+									AuthoritiesVocabulariesInitialize avi = new AuthoritiesVocabulariesInitialize(instance, populate, modifyResponse);
 									Option[] allOpts = instance.getAllOptions();
 									try {
 										if (avi.createIfMissingAuthority(storage, responseMessage, record, instance) == -1) {
@@ -109,12 +128,14 @@ public class WebReset implements WebMethod {
 											//
 											// Create the missing items.
 											//
-											avi.fillVocab(storage, record, instance, responseMessage, allOpts, true);
+											TermLoader.Report report = avi.fillVocab(storage, workers, record, instance, progress, allOpts, true);
+											progress.flush();
+											// Every term has been tried: stop at the first failure as before
+											report.rethrow();
 										}
 									} catch (Exception e) {
-										if (avi.success() == false) {
-											initializationFailed = true;
-										}
+										// the instance or one of its terms could not be created
+										initializationFailed = true;
 										throw e;
 									}
 								}
@@ -491,11 +512,24 @@ public class WebReset implements WebMethod {
 	 * @throws UIException
 	 */
 	public void run(Storage storage, UIRequest uiRequest, String[] tail, boolean modifyResponse) throws UIException {
+		run(storage, null, uiRequest, tail, modifyResponse);
+	}
+
+	/**
+	 * 
+	 * @param storage
+	 * @param workers where to get storage for initialising terms several at a time, or null to do them in turn
+	 * @param uiRequest
+	 * @param tail
+	 * @param modifyResponse
+	 * @throws UIException
+	 */
+	public void run(Storage storage, TermLoader.StorageSource workers, UIRequest uiRequest, String[] tail, boolean modifyResponse) throws UIException {
 		//
 		// Synchronize this code (on the class) so we don't accidentally start more than one thread that is trying to initialize things.
 		//
     	synchronized(this.getClass()) {
-    		initialiseAll(storage, uiRequest, StringUtils.join(tail,"/"), modifyResponse);	
+    		initialiseAll(storage, workers, uiRequest, StringUtils.join(tail,"/"), modifyResponse);	
     		if (this.populate) {
     			reset(storage, uiRequest, StringUtils.join(tail,"/"));
     		}
@@ -512,8 +546,13 @@ public class WebReset implements WebMethod {
 	 * @throws UIException
 	 */
 	private void run(Object in, String[] tail, boolean modifyResponse) throws UIException {
-		Request request = (Request)in;
-   		run(request.getStorage(), request.getUIRequest(), tail, modifyResponse);	
+		final Request request = (Request)in;
+		TermLoader.StorageSource workers = new TermLoader.StorageSource() {
+			public Storage getStorage() throws UIException {
+				return request.createStorage();
+			}
+		};
+   		run(request.getStorage(), workers, request.getUIRequest(), tail, modifyResponse);	
 	}
 	
 	@Override
@@ -0,0 +1,43 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in 
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.misc;
+
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.chain.csp.webui.main.Request;
+import org.collectionspace.chain.csp.webui.main.WebMethod;
+import org.collectionspace.chain.csp.webui.main.WebUI;
+import org.collectionspace.csp.api.persistence.UnauthorizedException;
+import org.collectionspace.csp.api.ui.UIException;
+import org.json.JSONException;
+
+/**
+ * Counts of the tenant's sessions: how many are held, and how many have been created, expired and
+ * evicted, at /admin/sessions. Administrators only, see AdminAccess.
+ *
+ */
+public class WebSessions implements WebMethod {
+	private WebUI ui;
+	private AdminAccess admin;
+
+	public void run(Object in,String[] tail) throws UIException, UnauthorizedException {
+		Request q=(Request)in;
+		admin.check(q);
+		WebUI.SessionStatistics statistics=ui.getSessionStatistics();
+		if(statistics==null)
+			throw new UIException("No sessions are kept for this tenant");
+		try {
+			q.getUIRequest().sendJSONResponse(statistics.getStatistics());
+		} catch (JSONException e) {
+			throw new UIException("Could not build session statistics",e);
+		}
+	}
+
+	public void configure(WebUI ui, Spec spec) {
+		this.ui=ui;
+		admin=new AdminAccess(spec);
+	}
+}
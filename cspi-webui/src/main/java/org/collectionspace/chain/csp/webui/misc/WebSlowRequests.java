@@ -0,0 +1,40 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in 
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.misc;
+
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.chain.csp.webui.main.Request;
+import org.collectionspace.chain.csp.webui.main.WebMethod;
+import org.collectionspace.chain.csp.webui.main.WebUI;
+import org.collectionspace.csp.api.persistence.UnauthorizedException;
+import org.collectionspace.csp.api.ui.UIException;
+import org.json.JSONException;
+
+/**
+ * Traces of the most recent slow requests, newest first, at /admin/slowrequests. Administrators only,
+ * see AdminAccess.
+ *
+ */
+public class WebSlowRequests implements WebMethod {
+	private WebUI ui;
+	private AdminAccess admin;
+
+	public void run(Object in,String[] tail) throws UIException, UnauthorizedException {
+		Request q=(Request)in;
+		admin.check(q);
+		try {
+			q.getUIRequest().sendJSONResponse(ui.getSlowRequestLog().toJSON());
+		} catch (JSONException e) {
+			throw new UIException("Could not build slow request list",e);
+		}
+	}
+
+	public void configure(WebUI ui, Spec spec) {
+		this.ui=ui;
+		admin=new AdminAccess(spec);
+	}
+}
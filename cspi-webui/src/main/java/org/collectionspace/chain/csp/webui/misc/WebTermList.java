@@ -25,7 +25,6 @@ public class WebTermList implements WebMethod {
 	private static final Logger log=LoggerFactory.getLogger(WebTermList.class);
 	private Spec spec;
 	private Record r;
-	protected CacheTermList ctl;
 
 	public WebTermList(Record r) { this.r=r; }
 	
@@ -64,7 +63,7 @@ public class WebTermList implements WebMethod {
 			}
 			JSONArray result = new JSONArray();
 			for(Instance ins : f.getAllAutocompleteInstances()){
-				JSONArray getallnames = ctl.get(storage, ins.getTitleRef(), vb);
+				JSONArray getallnames = new CacheTermList(cache).get(storage, ins.getTitleRef(), vb);
 				for (int i = 0; i < getallnames.length(); i++) {
 			        result.put(getallnames.get(i));
 			    }
@@ -141,7 +140,6 @@ public class WebTermList implements WebMethod {
 	public void run(Object in, String[] tail) throws UIException {
 
 		Request q=(Request)in;
-		ctl = new CacheTermList(q.getCache());
 		termlist(q.getCache(),q.getStorage(),q.getUIRequest(),StringUtils.join(tail,"/"));
 		
 	}
@@ -21,6 +21,9 @@ import org.slf4j.LoggerFactory;
  * We can't use the vocab cache as we have modelled termlists more like records and procedures.
  * And VocabInstanceCache doesn't cache all the vocab items as authorities are too large for that to be a sensible approach
  * 
+ * Termlists are held for the request and also shared between requests for the tenant in TermListCache.
+ * Anything which changes a vocabulary's terms should call invalidate.
+ * 
  * @author csm22
  *
  */
@@ -37,11 +40,39 @@ public class CacheTermList {
 		if(data !=null){
 			return data;
 		}
+		TermListCache shared = TermListCache.forTenant(r.getSpec().getAdminData());
+		String key = r.getID()+"/"+name+":LIMIT"+limit;
+		data = shared.get(key);
+		if(data != null){
+			setCached(cache,name+":LIMIT"+limit,data);
+			return data;
+		}
+		long generation = shared.getGeneration();
 		JSONArray getallnames = controlledLists(storage, name,r, limit);
 		
+		shared.put(key,getallnames,generation);
 		setCached(cache,name+":LIMIT"+limit,getallnames);
 		return getallnames;
 	}
+
+	/**
+	 * Forget a vocabulary's termlists, in this request and in those shared with later ones
+	 * @param r the vocabulary's record
+	 * @param name the vocabulary's title-ref
+	 */
+	public void invalidate(Record r, String name){
+		invalidateShared(r, name);
+		removeCached(cache, name+":LIMIT0");
+	}
+
+	/**
+	 * Forget a vocabulary's termlists shared between requests
+	 * @param r the vocabulary's record
+	 * @param name the vocabulary's title-ref
+	 */
+	public static void invalidateShared(Record r, String name){
+		TermListCache.forTenant(r.getSpec().getAdminData()).invalidate(r.getID()+"/"+name);
+	}
 	public JSONArray get(Storage storage, String name, Record r) throws JSONException{
 		return get(storage, name, r, 0);
 	}
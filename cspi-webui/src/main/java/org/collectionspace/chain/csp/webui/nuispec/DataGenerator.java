@@ -637,8 +637,9 @@ public class DataGenerator extends SchemaStructure implements WebMethod {
 		
 	}
 
+	/* The generator keeps its workings in fields, so only runs one request at a time */
 	@Override
-	public void run(Object in, String[] tail) throws UIException {
+	public synchronized void run(Object in, String[] tail) throws UIException {
 		initvariables();
 		Request q=(Request)in;
 		ctl = new CacheTermList(q.getCache());
@@ -0,0 +1,78 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.nuispec;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.collectionspace.csp.api.ui.UIException;
+import org.collectionspace.csp.api.ui.UIRequest;
+import org.json.JSONObject;
+
+/**
+ * A JSON response which only depends on config, serialized once and served from then on as bytes,
+ * with a strong ETag so clients can revalidate it rather than download it again.
+ *
+ */
+public class JSONArtifact {
+	static final String CONTENT_TYPE="text/json;charset=UTF-8";
+
+	private final byte[] data;
+	private final String etag;
+
+	public JSONArtifact(JSONObject in) throws UIException {
+		try {
+			data=in.toString().getBytes("UTF-8");
+			StringBuffer tag=new StringBuffer("\"");
+			for(byte b : MessageDigest.getInstance("MD5").digest(data))
+				tag.append(String.format("%02x",b&0xff));
+			etag=tag.append('"').toString();
+		} catch (UnsupportedEncodingException e) {
+			throw new UIException("Cannot serialize JSON",e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new UIException("Cannot compute ETag",e);
+		}
+	}
+
+	public String getETag() { return etag; }
+	public int getLength() { return data.length; }
+
+	/**
+	 * Does an If-None-Match header name this version? Weak validators match too, as the comparison
+	 * for If-None-Match is the weak one.
+	 * @param if_none_match header value, or null
+	 * @return
+	 */
+	public boolean matches(String if_none_match) {
+		if(if_none_match==null)
+			return false;
+		for(String tag : if_none_match.split(",")) {
+			tag=tag.trim();
+			if(tag.equals("*"))
+				return true;
+			if(tag.startsWith("W/"))
+				tag=tag.substring(2);
+			if(tag.equals(etag))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Send as the response, or just 304 if the client already has this version
+	 * @param uir
+	 * @throws UIException
+	 */
+	public void send(UIRequest uir) throws UIException {
+		uir.setResponseHeader("ETag",etag);
+		if(matches(uir.getRequestHeader("If-None-Match")))
+			uir.sendNotModified();
+		else
+			uir.sendUnknown(data,CONTENT_TYPE,null);
+	}
+}
@@ -181,6 +181,7 @@ public class ServicesXsd implements WebMethod {
 	}
 
 	private String serviceschema(Storage s, String path) throws UIException {
+		String section = this.section;
 		if(path != null){
 			section = path;
 		}
@@ -0,0 +1,148 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.nuispec;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.collectionspace.chain.csp.schema.AdminData;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * Termlists shared between all the requests for a tenant, so that a UISpec doesn't page through every
+ * vocabulary it uses each time it is asked for. Entries expire after a while in case the vocabulary
+ * is changed other than through us, and the least recently used are dropped when the cache is full.
+ *
+ * Keys are "{record}/{vocabulary}:LIMIT{n}". Writes to a vocabulary invalidate every limit for it.
+ *
+ */
+public class TermListCache {
+	private static final ConcurrentMap<String,TermListCache> tenants=new ConcurrentHashMap<String,TermListCache>();
+
+	private static class Entry {
+		private JSONArray data;
+		private long expires;
+	}
+
+	private final Map<String,Entry> entries=new LinkedHashMap<String,Entry>(16,0.75f,true);
+	private volatile long ttl;
+	private volatile int max_size;
+	private long hits=0,misses=0;
+	/* bumped by every invalidation, so a load which raced with one isn't stored */
+	private long generation=0;
+
+	TermListCache(long ttl,int max_size) {
+		this.ttl=ttl;
+		this.max_size=max_size;
+	}
+
+	/**
+	 * The cache for a tenant, created if need be, with the tenant's current settings
+	 * @param admin
+	 * @return
+	 */
+	public static TermListCache forTenant(AdminData admin) {
+		String tenant=admin.getTenant();
+		TermListCache out=tenants.get(tenant);
+		if(out==null) {
+			TermListCache created=new TermListCache(admin.getSharedTermListCacheAge()*1000L,admin.getSharedTermListCacheSize());
+			out=tenants.putIfAbsent(tenant,created);
+			if(out==null)
+				return created;
+		}
+		out.ttl=admin.getSharedTermListCacheAge()*1000L;
+		out.max_size=admin.getSharedTermListCacheSize();
+		return out;
+	}
+
+	public boolean isEnabled() { return ttl>0 && max_size>0; }
+
+	/**
+	 * A copy of the cached termlist, or null if we don't have a current one
+	 * @param key
+	 * @return
+	 * @throws JSONException
+	 */
+	public JSONArray get(String key) throws JSONException {
+		JSONArray data;
+		synchronized(this) {
+			Entry e=entries.get(key);
+			if(e!=null && e.expires<=System.currentTimeMillis()) {
+				entries.remove(key);
+				e=null;
+			}
+			if(e==null) {
+				misses++;
+				return null;
+			}
+			hits++;
+			data=e.data;
+		}
+		return copy(data);
+	}
+
+	public synchronized long getGeneration() { return generation; }
+
+	/**
+	 * Store a termlist loaded since getGeneration returned the given value
+	 * @param key
+	 * @param data
+	 * @param generation
+	 * @throws JSONException
+	 */
+	public void put(String key,JSONArray data,long generation) throws JSONException {
+		if(!isEnabled())
+			return;
+		Entry e=new Entry();
+		e.data=copy(data);
+		e.expires=System.currentTimeMillis()+ttl;
+		synchronized(this) {
+			if(generation!=this.generation)
+				return;
+			entries.put(key,e);
+			Iterator<String> it=entries.keySet().iterator();
+			while(entries.size()>max_size && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Forget every limit of a vocabulary
+	 * @param vocab "{record}/{vocabulary}"
+	 */
+	public synchronized void invalidate(String vocab) {
+		generation++;
+		String prefix=vocab+":";
+		Iterator<String> it=entries.keySet().iterator();
+		while(it.hasNext())
+			if(it.next().startsWith(prefix))
+				it.remove();
+	}
+
+	public synchronized void invalidateAll() {
+		generation++;
+		entries.clear();
+	}
+
+	public synchronized int size() { return entries.size(); }
+	public synchronized long getHits() { return hits; }
+	public synchronized long getMisses() { return misses; }
+
+	/* Arrays are handed out to callers, so nobody gets to hold ours */
+	private static JSONArray copy(JSONArray in) throws JSONException {
+		JSONArray out=new JSONArray();
+		for(int i=0;i<in.length();i++)
+			out.put(in.get(i));
+		return out;
+	}
+}
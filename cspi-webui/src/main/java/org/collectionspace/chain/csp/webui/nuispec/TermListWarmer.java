@@ -0,0 +1,79 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.nuispec;
+
+import org.collectionspace.chain.csp.schema.AdminData;
+import org.collectionspace.chain.csp.schema.Instance;
+import org.collectionspace.chain.csp.schema.Record;
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.csp.api.core.CSPRequestCredentials;
+import org.collectionspace.csp.api.persistence.StorageGenerator;
+import org.collectionspace.csp.helper.core.RequestCache;
+import org.json.JSONException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fills the tenant's shared termlist cache in the background, as the admin user, so the first
+ * UISpecs after startup don't have to.
+ *
+ */
+public class TermListWarmer implements Runnable {
+	private static final Logger log=LoggerFactory.getLogger(TermListWarmer.class);
+	private StorageGenerator generator;
+	private Spec spec;
+
+	public TermListWarmer(StorageGenerator generator,Spec spec) {
+		this.generator=generator;
+		this.spec=spec;
+	}
+
+	/**
+	 * Start warming on a background thread, if the tenant wants it
+	 * @param generator
+	 * @param spec
+	 */
+	public static void start(StorageGenerator generator,Spec spec) {
+		AdminData admin=spec.getAdminData();
+		TermListCache shared=TermListCache.forTenant(admin);
+		// The config may have changed under what we have
+		shared.invalidateAll();
+		if(!admin.isTermListWarmup() || !shared.isEnabled() || !spec.hasRecord("vocab") || generator==null)
+			return;
+		Thread t=new Thread(new TermListWarmer(generator,spec),"termlist-warmup-"+admin.getTenantName());
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		t.start();
+	}
+
+	public void run() {
+		AdminData admin=spec.getAdminData();
+		CSPRequestCredentials creds=generator.createCredentials();
+		if(creds!=null) {
+			creds.setCredential(StorageGenerator.CRED_USERID,admin.getAuthUser());
+			creds.setCredential(StorageGenerator.CRED_PASSWORD,admin.getAuthPass());
+		}
+		Record vr=spec.getRecord("vocab");
+		long start=System.currentTimeMillis();
+		int done=0;
+		for(Instance n : vr.getAllInstances()) {
+			RequestCache cache=new RequestCache();
+			try {
+				new CacheTermList(cache).get(generator.getStorage(creds,cache),n.getTitleRef(),vr);
+				done++;
+			} catch (JSONException e) {
+				// Most likely the services aren't up yet: the first real request will fetch them
+				log.warn("Stopped warming termlists for "+admin.getTenantName()+" at "+n.getTitleRef()+": "+e.getMessage());
+				return;
+			} catch (RuntimeException e) {
+				log.warn("Stopped warming termlists for "+admin.getTenantName()+" at "+n.getTitleRef(),e);
+				return;
+			}
+		}
+		log.info("Warmed "+done+" termlists for "+admin.getTenantName()+" in "+(System.currentTimeMillis()-start)+"ms");
+	}
+}
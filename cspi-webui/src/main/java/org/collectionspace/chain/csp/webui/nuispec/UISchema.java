@@ -6,6 +6,7 @@
  */
 package org.collectionspace.chain.csp.webui.nuispec;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -40,11 +41,11 @@ import org.slf4j.LoggerFactory;
 
 public class UISchema extends SchemaStructure implements WebMethod {
 	private static final Logger log = LoggerFactory.getLogger(UISchema.class);
-	protected CacheTermList ctl;
 	protected Record record;
-	protected Storage storage;
 	private Schemas schema;
-	private Map<String, String> workflowStateCache = new HashMap<String, String>();
+	private Map<String, String> workflowStateCache = Collections.synchronizedMap(new HashMap<String, String>());
+	/* record and search schemas only depend on config, so are built once */
+	private JSONArtifact artifact;
 
 	public UISchema(Record r, String sview) {
 		super(r, sview);
@@ -63,26 +64,39 @@ public class UISchema extends SchemaStructure implements WebMethod {
 	
 	@Override
 	public void configure(WebUI ui, Spec spec) {
-		// TODO Auto-generated method stub
+		if (this.record == null) {
+			return;
+		}
+		try {
+			getArtifact();
+		} catch (UIException e) {
+			// Try again when it's asked for, where the error can be reported
+			log.warn("Could not prebuild uischema for " + record.getID() + "/" + spectype, e);
+		}
+	}
+
+	private synchronized JSONArtifact getArtifact() throws UIException {
+		if (artifact == null) {
+			if (this.spectype.equals("search")) {
+				artifact = new JSONArtifact(uisearchschema(this.record));
+			} else {
+				artifact = new JSONArtifact(uirecordschema(this.record));
+			}
+		}
+		return artifact;
 	}
 
 	@Override
 	public void run(Object in, String[] tail) throws UIException, UnauthorizedException {
 		Request q = (Request) in;
-		JSONObject out;
+		UIRequest uir = q.getUIRequest();
 		if (this.record != null) {
-			if (this.spectype.equals("search")) {
-				out = uisearchschema(q.getStorage(), this.record);
-			} else {
-				out = uirecordschema(q.getStorage(), this.record);
-			}
+			getArtifact().send(uir);
 		} else {
-			UISession session = q.getUIRequest().getSession();
-			out = uiotherschema(session, q.getStorage(), StringUtils.join(tail, "/"));
+			// Depends on who is asking and on the state of the vocabularies
+			UISession session = uir.getSession();
+			uir.sendJSONResponse(uiotherschema(session, q.getStorage(), StringUtils.join(tail, "/")));
 		}
-		
-		UIRequest uir = q.getUIRequest();
-		uir.sendJSONResponse(out);
 		int cacheMaxAgeSeconds = spec.getAdminData().getUiSpecSchemaCacheAge();
 		if (cacheMaxAgeSeconds > 0) {
 			uir.setCacheMaxAgeSeconds(cacheMaxAgeSeconds);
@@ -764,16 +778,12 @@ public class UISchema extends SchemaStructure implements WebMethod {
 	
 	/**
 	 * Create the search uischemas
-	 * @param storage
 	 * @param record
 	 * @return
 	 * @throws UIException
 	 */
-	private JSONObject uisearchschema(Storage storage, Record record) throws UIException {
+	private JSONObject uisearchschema(Record record) throws UIException {
 		UISpecRunContext context = new UISpecRunContext();
-		this.storage = storage;
-		this.record = record;
-		this.tenantname = this.record.getSpec().getAdminData().getTenantName();
 
 		try {
 			JSONObject out = new JSONObject();
@@ -790,16 +800,12 @@ public class UISchema extends SchemaStructure implements WebMethod {
 	
 	/**
 	 * Create the generic UI record schemas
-	 * @param storage
 	 * @param record
 	 * @return
 	 * @throws UIException
 	 */
-	private JSONObject uirecordschema(Storage storage,Record record) throws UIException {
+	private JSONObject uirecordschema(Record record) throws UIException {
 		UISpecRunContext context = new UISpecRunContext();
-		this.storage = storage;
-		this.record = record;
-		this.tenantname = this.record.getSpec().getAdminData().getTenantName();
 		try {
 			JSONObject out = new JSONObject();
 			JSONObject details = new JSONObject();
@@ -25,7 +25,6 @@ import org.collectionspace.chain.csp.schema.UISpecRunContext;
 import org.collectionspace.chain.csp.webui.main.Request;
 import org.collectionspace.chain.csp.webui.main.WebMethod;
 import org.collectionspace.chain.csp.webui.main.WebUI;
-import org.collectionspace.csp.api.persistence.Storage;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
 import org.json.JSONArray;
@@ -37,9 +36,9 @@ import org.slf4j.LoggerFactory;
 public class UISpec extends SchemaStructure implements WebMethod {
 	
 	private static final Logger log=LoggerFactory.getLogger(UISpec.class);
-	protected CacheTermList ctl;
 	protected Record record;
-	protected Storage storage;
+	/* the uispec only depends on config, so is built once */
+	private JSONArtifact artifact;
 
 	public UISpec(Spec spec, String sview, String stype) {
 		super(spec, sview, stype);
@@ -51,18 +50,27 @@ public class UISpec extends SchemaStructure implements WebMethod {
 
 	@Override
 	public void configure(WebUI ui, Spec spec) {
-		// TODO Auto-generated method stub
-		
+		if(record==null)
+			return;
+		try {
+			getArtifact();
+		} catch (UIException e) {
+			// Try again when it's asked for, where the error can be reported
+			log.warn("Could not prebuild uispec for "+record.getID()+"/"+structureview,e);
+		}
+	}
+
+	private synchronized JSONArtifact getArtifact() throws UIException {
+		if(artifact==null)
+			artifact=new JSONArtifact(uispec());
+		return artifact;
 	}
 
 	@Override
 	public void run(Object in, String[] tail) throws UIException {
 		Request q=(Request)in;
-		ctl = new CacheTermList(q.getCache());
-		JSONObject out=uispec(q.getStorage());
-
 		UIRequest uir = q.getUIRequest();
-		uir.sendJSONResponse(out);
+		getArtifact().send(uir);
 
 		int cacheMaxAgeSeconds = spec.getAdminData().getUiSpecSchemaCacheAge();
 		if(cacheMaxAgeSeconds > 0) {
@@ -72,12 +80,10 @@ public class UISpec extends SchemaStructure implements WebMethod {
 	
 	/**
 	 * create the UISpec and return the JSONObject 
-	 * @param storage
 	 * @return
 	 * @throws UIException
 	 */
-	protected JSONObject uispec(Storage storage) throws UIException {
-		this.storage = storage;
+	protected JSONObject uispec() throws UIException {
 		UISpecRunContext context = new UISpecRunContext();
 		try {
 			JSONObject out=new JSONObject();
@@ -0,0 +1,148 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.record;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.collectionspace.chain.csp.schema.AdminData;
+import org.collectionspace.chain.csp.webui.main.Request;
+import org.collectionspace.csp.api.persistence.Storage;
+import org.collectionspace.csp.api.ui.UIException;
+import org.collectionspace.csp.helper.core.RequestTrace;
+import org.json.JSONException;
+
+/**
+ * Fetches the views of a batch of records, such as everything one record is related to, in one parallel
+ * sweep rather than one after another.
+ *
+ * The batch is split between up to related-threads threads from a pool shared by the tenant, each part
+ * with a storage of its own from the request being served, as storage can't be shared between threads.
+ * The calling thread does the first part with the storage it was given. With one thread, or outside a
+ * request, the views are fetched in turn.
+ *
+ */
+public class MiniViews {
+	private static final ConcurrentMap<String,MiniViews> tenants=new ConcurrentHashMap<String,MiniViews>();
+
+	/**
+	 * Fetching one record's view
+	 */
+	public interface View<T> {
+		public T fetch(Storage storage) throws JSONException;
+	}
+
+	private final int threads;
+	private final ThreadPoolExecutor executor;
+
+	private MiniViews(final String tenant,int threads) {
+		this.threads=threads;
+		if(threads<=1) {
+			executor=null;
+			return;
+		}
+		executor=new ThreadPoolExecutor(threads,threads,60,TimeUnit.SECONDS,new ArrayBlockingQueue<Runnable>(threads*4),
+				new ThreadFactory() {
+					private final AtomicInteger count=new AtomicInteger();
+					public Thread newThread(Runnable r) {
+						Thread t=new Thread(r,"miniviews-"+tenant+"-"+count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				},new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static MiniViews forTenant(AdminData admin) {
+		String tenant=admin.getTenant();
+		int threads=admin.getRelatedThreads();
+		MiniViews out=tenants.get(tenant);
+		if(out!=null && out.threads==threads)
+			return out;
+		// First time, or the config has changed
+		MiniViews created=new MiniViews(tenant,threads);
+		boolean stored=(out==null)?tenants.putIfAbsent(tenant,created)==null:tenants.replace(tenant,out,created);
+		if(stored) {
+			if(out!=null && out.executor!=null)
+				out.executor.shutdown();
+			return created;
+		}
+		if(created.executor!=null)
+			created.executor.shutdown();
+		return tenants.get(tenant);
+	}
+
+	private static <T> List<T> inTurn(Storage storage,List<? extends View<T>> views) throws JSONException {
+		List<T> out=new ArrayList<T>(views.size());
+		for(View<T> view : views)
+			out.add(view.fetch(storage));
+		return out;
+	}
+
+	/**
+	 * Fetch the views, returning what each gave in the same order
+	 * @param storage for the calling thread's share
+	 * @param views
+	 * @return
+	 */
+	public <T> List<T> fetch(Storage storage,List<? extends View<T>> views) throws JSONException, UIException {
+		final Request request=Request.current();
+		int parts=Math.min(threads,views.size());
+		if(executor==null || request==null || parts<=1)
+			return inTurn(storage,views);
+		int size=(views.size()+parts-1)/parts;
+		final RequestTrace trace=RequestTrace.current();
+		List<Future<List<T>>> pending=new ArrayList<Future<List<T>>>();
+		try {
+			for(int start=size;start<views.size();start+=size) {
+				final List<? extends View<T>> part=views.subList(start,Math.min(views.size(),start+size));
+				pending.add(executor.submit(new Callable<List<T>>() {
+					public List<T> call() throws Exception {
+						RequestTrace previous=RequestTrace.bind(trace);
+						try {
+							return inTurn(request.createStorage(),part);
+						} finally {
+							RequestTrace.unbind(previous);
+						}
+					}
+				}));
+			}
+			List<T> out=new ArrayList<T>(views.size());
+			out.addAll(inTurn(storage,views.subList(0,size)));
+			for(Future<List<T>> f : pending)
+				out.addAll(f.get());
+			return out;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UIException("Interrupted fetching records",e);
+		} catch (ExecutionException e) {
+			Throwable cause=e.getCause();
+			if(cause instanceof JSONException)
+				throw (JSONException)cause;
+			if(cause instanceof UIException)
+				throw (UIException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			throw new UIException("Could not fetch records",cause);
+		} finally {
+			// If we're leaving early, don't leave work running for nobody
+			for(Future<List<T>> f : pending)
+				if(!f.isDone())
+					f.cancel(true);
+		}
+	}
+}
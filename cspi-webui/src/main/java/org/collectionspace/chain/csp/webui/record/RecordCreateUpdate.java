@@ -21,6 +21,7 @@ import org.collectionspace.chain.csp.webui.main.WebMethod;
 import org.collectionspace.chain.csp.webui.main.WebMethodWithOps;
 import org.collectionspace.chain.csp.webui.main.WebUI;
 import org.collectionspace.chain.csp.webui.misc.Generic;
+import org.collectionspace.chain.csp.webui.misc.PermissionMatrix;
 import org.collectionspace.chain.csp.webui.nuispec.CacheTermList;
 import org.collectionspace.csp.api.persistence.ExistException;
 import org.collectionspace.csp.api.persistence.Storage;
@@ -29,7 +30,6 @@ import org.collectionspace.csp.api.persistence.UnimplementedException;
 import org.collectionspace.csp.api.ui.Operation;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
-import org.collectionspace.csp.helper.core.ResponseCache;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -45,7 +45,6 @@ public class RecordCreateUpdate implements WebMethodWithOps {
 	protected Spec spec;
 	protected RecordRead reader;
 	protected RecordSearchList searcher;
-	protected CacheTermList ctl;
 	
 	protected static final String BLOBS_SERVICE_URL_PATTERN = "/cspace-services/blobs/";
 	
@@ -284,7 +283,7 @@ public class RecordCreateUpdate implements WebMethodWithOps {
 	}
 	
 
-	private void assignTerms(Storage storage, String path, JSONObject data) throws JSONException, ExistException, UnimplementedException, UnderlyingStorageException, UIException{
+	private void assignTerms(Storage storage, CacheTermList ctl, String path, JSONObject data) throws JSONException, ExistException, UnimplementedException, UnderlyingStorageException, UIException{
 		JSONObject fields=data.optJSONObject("fields");
 		String insId = "";
 		
@@ -304,6 +303,7 @@ public class RecordCreateUpdate implements WebMethodWithOps {
 				Instance ins=new Instance(thisr, options);
 				vr.addInstance(ins);
 			}
+			ctl.invalidate(vr, sid);
 			ctl.get(storage, sid,vr,0);
 		}
 
@@ -412,7 +412,7 @@ public class RecordCreateUpdate implements WebMethodWithOps {
 		return setPayloadField(fieldName, payloadOut, fieldsSrc, dataSrc, null);
 	}
 	
-	private void store_set(Storage storage,UIRequest request,String path) throws UIException {
+	private void store_set(Storage storage,CacheTermList ctl,UIRequest request,String path) throws UIException {
 		try {
 			JSONObject restrictions = new JSONObject();
 			JSONObject data=request.getJSONBody();
@@ -429,7 +429,7 @@ public class RecordCreateUpdate implements WebMethodWithOps {
 				// If we are updating a role, then we need to clear the userperms cache
 				// Note that creating a role does not impact things until we assign it
 				if(!create) {
-					ResponseCache.clearCache(ResponseCache.USER_PERMS_CACHE);
+					PermissionMatrix.invalidateAll();
 				}
 			}
 			
@@ -524,7 +524,7 @@ public class RecordCreateUpdate implements WebMethodWithOps {
 					assignPermissions(storage, path, data);
 				}
 				if (this.base.equals("termlist")) {
-					assignTerms(storage, path, data);
+					assignTerms(storage, ctl, path, data);
 				}
 				
 				data=reader.getJSON(storage,path); // We do a GET now to read back what we created.
@@ -562,8 +562,7 @@ public class RecordCreateUpdate implements WebMethodWithOps {
 	@Override
 	public void run(Object in, String[] tail) throws UIException {
 		Request q=(Request)in;
-		ctl = new CacheTermList(q.getCache());
-		store_set(q.getStorage(),q.getUIRequest(),StringUtils.join(tail,"/"));
+		store_set(q.getStorage(),new CacheTermList(q.getCache()),q.getUIRequest(),StringUtils.join(tail,"/"));
 	}
 
 	public void configure() throws ConfigException {}
@@ -40,7 +40,6 @@ public class RecordRead implements WebMethodWithOps {
 
 	private RecordSearchList searcher;
 	private RecordAuthorities termsused;
-	private RecordSearchList relatedObjSearcher;
 	private Spec spec;
 	private boolean record_type;
 	private boolean showbasicinfoonly;
@@ -83,10 +82,10 @@ public class RecordRead implements WebMethodWithOps {
 			if ((thisr.isType("procedure") && !thisr.isType("vocabulary"))
 					|| "collection-object".equals(thisr.getID()))
 				try {
-					this.relatedObjSearcher = new RecordSearchList(thisr,
+					RecordSearchList relatedObjSearcher = new RecordSearchList(thisr,
 							RecordSearchList.MODE_SEARCH_RELATED);
-					this.relatedObjSearcher.configure(spec);
-					JSONObject temp = this.relatedObjSearcher.getResults(null,
+					relatedObjSearcher.configure(spec);
+					JSONObject temp = relatedObjSearcher.getResults(null,
 							storage, restrictions, "results", csid);
 					JSONArray results = temp.getJSONArray("results");
 					if (results.length() > 0) {
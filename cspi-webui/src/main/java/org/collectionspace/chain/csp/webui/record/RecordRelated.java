@@ -1,6 +1,8 @@
 package org.collectionspace.chain.csp.webui.record;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -84,19 +86,35 @@ public class RecordRelated implements WebMethod {
 		String[] relations = (String[]) data.get("listItems");
 		JSONObject pagination = data.getJSONObject("pagination");
 		JSONObject typelist = new JSONObject(); //get a list of what is paginated
-		for(String r : relations) {
-			try {
-				JSONObject relateitem = generateRelationEntry(storage,r);
-				String type = relateitem.getString("recordtype");
-				typelist.put(type, "1");
-				if(!recordtypes.has(type)){
-					recordtypes.put(type, new JSONArray());
+		List<MiniViews.View<JSONObject>> views=new ArrayList<MiniViews.View<JSONObject>>();
+		for(final String r : relations) {
+			views.add(new MiniViews.View<JSONObject>() {
+				public JSONObject fetch(Storage storage) {
+					try {
+						return generateRelationEntry(storage,r);
+					} catch(Exception e) {
+						// Never mind.
+						//Probably should do something with the errors... could be a permissions issue
+						return null;
+					}
 				}
-				recordtypes.getJSONArray(type).put(relateitem);
-			} catch(Exception e) {
-				// Never mind.
-				//Probably should do something with the errors... could be a permissions issue
+			});
+		}
+		List<JSONObject> items;
+		try {
+			items=MiniViews.forTenant(record.getSpec().getAdminData()).fetch(storage,views);
+		} catch (UIException e) {
+			throw new UnderlyingStorageException("Could not retrieve related records",e);
+		}
+		for(JSONObject relateitem : items) {
+			if(relateitem==null)
+				continue;
+			String type = relateitem.getString("recordtype");
+			typelist.put(type, "1");
+			if(!recordtypes.has(type)){
+				recordtypes.put(type, new JSONArray());
 			}
+			recordtypes.getJSONArray(type).put(relateitem);
 		}
 		pagination.put("recordtypes", typelist.names());
 		if(!pagination.getString("totalItems").equals("0")){
@@ -6,7 +6,9 @@
  */
 package org.collectionspace.chain.csp.webui.record;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 import org.collectionspace.chain.csp.schema.Record;
@@ -22,7 +24,7 @@ import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
 import org.collectionspace.csp.api.persistence.UnimplementedException;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
-import org.collectionspace.services.common.api.RefName;
+import org.collectionspace.chain.csp.persistence.services.RefName;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -206,10 +208,32 @@ public class RecordSearchList implements WebMethod {
     private JSONObject pathsToJSON(Storage storage, String base, String[] paths, String key, JSONObject pagination) throws JSONException, ExistException, UnimplementedException, UnderlyingStorageException {
         JSONObject out = new JSONObject();
         JSONArray members = new JSONArray();
-        for (String p : paths) {
-            JSONObject temp = generateEntry(storage, base, p);
-            if (temp != null) {
-                members.put(temp);
+        if (mode == MODE_SEARCH_RELATED) {
+            // Everything related to one record: fetch them all at once
+            final String type = base;
+            List<MiniViews.View<JSONObject>> views = new ArrayList<MiniViews.View<JSONObject>>();
+            for (final String p : paths) {
+                views.add(new MiniViews.View<JSONObject>() {
+                    public JSONObject fetch(Storage storage) throws JSONException {
+                        return generateMiniRecord(storage, type, p);
+                    }
+                });
+            }
+            try {
+                for (JSONObject temp : MiniViews.forTenant(spec.getAdminData()).fetch(storage, views)) {
+                    if (temp != null) {
+                        members.put(temp);
+                    }
+                }
+            } catch (UIException e) {
+                throw new UnderlyingStorageException("Could not retrieve related records", e);
+            }
+        } else {
+            for (String p : paths) {
+                JSONObject temp = generateEntry(storage, base, p);
+                if (temp != null) {
+                    members.put(temp);
+                }
             }
         }
         out.put(key, members);
@@ -244,7 +268,7 @@ public class RecordSearchList implements WebMethod {
             JSONObject results = getResults(ui, storage, restriction, key, path);
             //cache for record traverser
             if (results.has("pagination") && results.getJSONObject("pagination").has("separatelists")) {
-                GenericSearch.createTraverser(ui, this.r.getID(), "", results, restriction, key, 1);
+                GenericSearch.createTraverser(ui, this.r, "", results, restriction, key, 1);
             }
             ui.sendJSONResponse(results);
         } catch (JSONException e) {
@@ -398,7 +422,7 @@ public class RecordSearchList implements WebMethod {
 
             //cache for record traverser
             if (results.has("pagination") && results.getJSONObject("pagination").has("separatelists")) {
-                GenericSearch.createTraverser(ui, this.r.getID(), "", results, restriction, key, 1);
+                GenericSearch.createTraverser(ui, this.r, "", results, restriction, key, 1);
             }
             ui.sendJSONResponse(results);
         } catch (JSONException e) {
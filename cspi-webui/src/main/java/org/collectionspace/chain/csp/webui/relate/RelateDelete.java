@@ -64,6 +64,7 @@ public class RelateDelete implements WebMethod {
 			String target = request.getRequestArgument(RELATION_TARGET_PARAM);
 			String type = request.getRequestArgument(RELATION_TYPE_PARAM);
 			String oneway = request.getRequestArgument(RELATION_ONE_WAY_PARAM);
+			boolean one_way = this.one_way;
 			if(oneway !=null && oneway !=""){
 				one_way = Boolean.parseBoolean(oneway);
 			}
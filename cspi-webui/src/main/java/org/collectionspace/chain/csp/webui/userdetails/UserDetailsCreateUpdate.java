@@ -22,7 +22,7 @@ import org.collectionspace.csp.api.ui.Operation;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
 import org.collectionspace.csp.api.ui.UISession;
-import org.collectionspace.csp.helper.core.ResponseCache;
+import org.collectionspace.chain.csp.webui.misc.PermissionMatrix;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -78,7 +78,7 @@ public class UserDetailsCreateUpdate implements WebMethod {
 		// If we are updating a role, then we need to clear the userperms cache
 		// Note that creating a role does not impact things until we assign it
 		if(!create) {
-			ResponseCache.clearCache(ResponseCache.USER_PERMS_CACHE);
+			PermissionMatrix.invalidateAll();
 		}
 
 		
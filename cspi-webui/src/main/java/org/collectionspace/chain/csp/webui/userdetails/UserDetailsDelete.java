@@ -18,7 +18,7 @@ import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
 import org.collectionspace.csp.api.persistence.UnimplementedException;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIRequest;
-import org.collectionspace.csp.helper.core.ResponseCache;
+import org.collectionspace.chain.csp.webui.misc.PermissionMatrix;
 
 public class UserDetailsDelete implements WebMethod {
 
@@ -30,7 +30,7 @@ public class UserDetailsDelete implements WebMethod {
 	private void store_delete(Storage storage,UIRequest request,String path) throws UIException {
 		try {
 			// Deleting a user needs to clear the userperms cache for safety.
-			ResponseCache.clearCache(ResponseCache.USER_PERMS_CACHE);
+			PermissionMatrix.invalidateAll();
 			storage.deleteJSON(base+"/"+path);
 		} catch (ExistException e) {
 			throw new UIException("JSON Not found "+e,e);
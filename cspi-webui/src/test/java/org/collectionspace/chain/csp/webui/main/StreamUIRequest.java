@@ -17,6 +17,7 @@ import javax.servlet.http.HttpSession;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
+import org.collectionspace.csp.api.persistence.BlobSink;
 import org.collectionspace.csp.api.ui.Operation;
 import org.collectionspace.csp.api.ui.TTYOutputter;
 import org.collectionspace.csp.api.ui.UIException;
@@ -107,6 +108,12 @@ public class StreamUIRequest implements UIRequest {
 		// and image blobs (perhaps aggressively?).
 	}
 
+	public void setResponseHeader(String name,String value) {}
+
+	public String getRequestHeader(String name) { return null; }
+
+	public void sendNotModified() throws UIException {}
+
 	public void setFailure(boolean isit, Exception why) throws UIException {
 		if(!isit) {
 			/* Not a failure */
@@ -164,6 +171,10 @@ public class StreamUIRequest implements UIRequest {
 	}
 
 	
+	public BlobSink getBlobSink() throws UIException {
+		return null;
+	}
+
 	public void sendJSONResponse(JSONObject data) throws UIException {
 		println(out,data.toString());
 	}
@@ -195,6 +206,9 @@ public class StreamUIRequest implements UIRequest {
 	public byte[] getbyteBody() throws UIException {
 		return null;
 	}
+	public InputStream getbyteBodyStream() throws UIException {
+		return null;
+	}
 	public String getFileName() throws UIException{
 		return "";
 	}
@@ -1,7 +1,7 @@
 package org.collectionspace.chain.csp.persistence.services;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 public class RefName {
@@ -42,33 +42,20 @@ public class RefName {
         public String displayName = "";
 
         public static Authority parse(String urn) {
+            String[] parts = parsed(urn, AUTHORITY);
+            if (parts == null) {
+                return null;
+            }
             Authority info = new Authority();
-            Pattern p = Pattern.compile(AUTHORITY_REGEX);
-            Matcher m = p.matcher(urn);
-            if (m.find()) {
-                if (m.groupCount() < 4) {
-                    return null;
-                }
-                info.tenantName = m.group(1);
-                info.resource = m.group(2);
-                info.shortIdentifier = m.group(3);
-                info.displayName = m.group(4);
-                return info;
+            info.tenantName = parts[0];
+            info.resource = parts[1];
+            if (parts[2] != null) {
+                info.shortIdentifier = parts[2];
             } else {
-                p = Pattern.compile(CSID_REFNAME_REGEX);
-                m = p.matcher(urn);
-                if (m.find()) {
-                    if (m.groupCount() < 4) {
-                        return null;
-                    }
-                    info.tenantName = m.group(1);
-                    info.resource = m.group(2);
-                    info.csid = m.group(3);
-                    info.displayName = m.group(4);
-                    return info;
-                }
+                info.csid = parts[3];
             }
-            return null;
+            info.displayName = parts[4];
+            return info;
         }
         
         public String getShortIdentifier() {
@@ -127,23 +114,19 @@ public class RefName {
         public String displayName = "";
 
         public static AuthorityItem parse(String urn) {
+            String[] parts = parsed(urn, AUTHORITY_ITEM);
+            if (parts == null) {
+                return null;
+            }
             Authority info = new Authority();
             AuthorityItem termInfo = new AuthorityItem();
             termInfo.inAuthority = info;
-            Pattern p = Pattern.compile(AUTHORITY_ITEM_REGEX);
-            Matcher m = p.matcher(urn);
-            if (m.find()) {
-                if (m.groupCount() < 5) {
-                    return null;
-                }
-                termInfo.inAuthority.tenantName = m.group(1);
-                termInfo.inAuthority.resource = m.group(2);
-                termInfo.inAuthority.shortIdentifier = m.group(3);
-                termInfo.shortIdentifier = m.group(4);
-                termInfo.displayName = m.group(5);
-                return termInfo;
-            }
-            return null;
+            termInfo.inAuthority.tenantName = parts[0];
+            termInfo.inAuthority.resource = parts[1];
+            termInfo.inAuthority.shortIdentifier = parts[2];
+            termInfo.shortIdentifier = parts[3];
+            termInfo.displayName = parts[4];
+            return termInfo;
         }
         
         public String getParentShortIdentifier() {
@@ -188,6 +171,161 @@ public class RefName {
         }
     }
 
+    /*
+     * Parsing. This does what matching AUTHORITY_REGEX, CSID_REFNAME_REGEX and AUTHORITY_ITEM_REGEX with find()
+     * does, without compiling them each time and backtracking through the (.*) groups.
+     *
+     * Each (.*) is greedy, so the regex settles on the last place each separator could be, working left to right:
+     * the last ')' on the line, the last separator before that which leaves room for it, and so on, each group
+     * taking everything in between. As '.' doesn't match line terminators, all but the display name are on the
+     * first line after the prefix. The display name is whatever follows, up to a quote.
+     *
+     * Results are parts of the refName: tenant name, resource, shortIdentifier, csid, display name, with
+     * null where the part is missing.
+     */
+    private static final int AUTHORITY = 0;
+    private static final int AUTHORITY_ITEM = 1;
+    private static final String NAME_OPEN = ":name(";
+    private static final String ID_OPEN = ":id(";
+    private static final String ITEM_OPEN = "):item:name(";
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /* The display name, after the ')' at close */
+    private static String displayName(String urn, int close) {
+        int start = close + 1;
+        if (start < urn.length() && urn.charAt(start) == '\'') {
+            start++;
+        }
+        int end = urn.indexOf('\'', start);
+        return urn.substring(start, end == -1 ? urn.length() : end);
+    }
+
+    /* urn:cspace:(.*):(.*):name\((.*)\)... or :id\((.*)\)..., for one place the prefix was found */
+    private static String[] parseAuthority(String urn, int start, int close, boolean byName) {
+        String open = byName ? NAME_OPEN : ID_OPEN;
+        int group3 = urn.lastIndexOf(open, close - open.length());
+        if (group3 < start) {
+            return null;
+        }
+        int group2 = urn.lastIndexOf(':', group3 - 1);
+        if (group2 < start) {
+            return null;
+        }
+        String[] out = new String[5];
+        out[0] = urn.substring(start, group2);
+        out[1] = urn.substring(group2 + 1, group3);
+        out[byName ? 2 : 3] = urn.substring(group3 + open.length(), close);
+        out[4] = displayName(urn, close);
+        return out;
+    }
+
+    /* urn:cspace:(.*):(.*):name\((.*)\):item:name\((.*)\)... likewise */
+    private static String[] parseAuthorityItem(String urn, int start, int close) {
+        int group4 = urn.lastIndexOf(ITEM_OPEN, close - ITEM_OPEN.length());
+        if (group4 < start) {
+            return null;
+        }
+        int group3 = urn.lastIndexOf(NAME_OPEN, group4 - NAME_OPEN.length());
+        if (group3 < start) {
+            return null;
+        }
+        int group2 = urn.lastIndexOf(':', group3 - 1);
+        if (group2 < start) {
+            return null;
+        }
+        String[] out = new String[5];
+        out[0] = urn.substring(start, group2);
+        out[1] = urn.substring(group2 + 1, group3);
+        out[2] = urn.substring(group3 + NAME_OPEN.length(), group4);
+        out[3] = urn.substring(group4 + ITEM_OPEN.length(), close);
+        out[4] = displayName(urn, close);
+        return out;
+    }
+
+    /* Like find(), try each place the prefix occurs */
+    private static String[] find(String urn, int kind, boolean byName) {
+        for (int at = urn.indexOf(URN_PREFIX); at != -1; at = urn.indexOf(URN_PREFIX, at + 1)) {
+            int start = at + URN_PREFIX.length();
+            int end = start;
+            while (end < urn.length() && !isLineTerminator(urn.charAt(end))) {
+                end++;
+            }
+            int close = urn.lastIndexOf(')', end - 1);
+            if (close < start) {
+                continue;
+            }
+            String[] out = (kind == AUTHORITY_ITEM) ? parseAuthorityItem(urn, start, close) : parseAuthority(urn, start, close, byName);
+            if (out != null) {
+                return out;
+            }
+        }
+        return null;
+    }
+
+    private static String[] parse(String urn, int kind) {
+        String[] out = find(urn, kind, true);
+        if (out == null && kind == AUTHORITY) {
+            out = find(urn, kind, false);
+        }
+        return out;
+    }
+
+    /*
+     * The same refNames turn up again and again (every use of a term, every autocomplete), so what they parse to
+     * is kept, per tenant: a burst of refNames from one tenant can't push out another's. Callers can change
+     * what parse() gives them, so each gets its own copy.
+     */
+    static final int MAX_INTERNED_TENANTS = 64;
+    static final int MAX_INTERNED_PER_TENANT = 10000;
+    private static final String[] UNPARSEABLE = new String[0];
+
+    private static class Interned {
+        final ConcurrentMap<String, String[]> authorities = new ConcurrentHashMap<String, String[]>();
+        final ConcurrentMap<String, String[]> items = new ConcurrentHashMap<String, String[]>();
+    }
+    private static final ConcurrentMap<String, Interned> interned = new ConcurrentHashMap<String, Interned>();
+
+    private static String tenantOf(String urn) {
+        int start = urn.indexOf(URN_PREFIX);
+        if (start == -1) {
+            return "";
+        }
+        start += URN_PREFIX.length();
+        int end = urn.indexOf(':', start);
+        return end == -1 ? "" : urn.substring(start, end);
+    }
+
+    private static String[] parsed(String urn, int kind) {
+        String name = tenantOf(urn);
+        Interned tenant = interned.get(name);
+        if (tenant == null) {
+            if (interned.size() >= MAX_INTERNED_TENANTS) {
+                interned.clear();
+            }
+            tenant = new Interned();
+            Interned existing = interned.putIfAbsent(name, tenant);
+            if (existing != null) {
+                tenant = existing;
+            }
+        }
+        ConcurrentMap<String, String[]> cache = (kind == AUTHORITY_ITEM) ? tenant.items : tenant.authorities;
+        String[] out = cache.get(urn);
+        if (out == null) {
+            out = parse(urn, kind);
+            if (out == null) {
+                out = UNPARSEABLE;
+            }
+            if (cache.size() >= MAX_INTERNED_PER_TENANT) {
+                cache.clear();
+            }
+            cache.put(urn, out);
+        }
+        return out == UNPARSEABLE ? null : out;
+    }
+
     /* hack to play local to simplify development */
     public static class Tools {
         /** Handles null strings as empty.  */
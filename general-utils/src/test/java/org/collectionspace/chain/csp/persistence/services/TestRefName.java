@@ -0,0 +1,127 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.persistence.services;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class TestRefName {
+	private static final Pattern AUTHORITY=Pattern.compile(RefName.AUTHORITY_REGEX);
+	private static final Pattern CSID=Pattern.compile(RefName.CSID_REFNAME_REGEX);
+	private static final Pattern ITEM=Pattern.compile(RefName.AUTHORITY_ITEM_REGEX);
+
+	private static final String[] CORPUS={
+		// Well formed
+		"urn:cspace:collectionspace.org:Loansin:name(shortID)'displayName'",
+		"urn:cspace:collectionspace.org:Loansin:name(shortID)",
+		"urn:cspace:collectionspace.org:Loansin:name(shortID):item:name(itemShortID)'itemDisplayName'",
+		"urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(JohnDoe1234)'John Doe'",
+		"urn:cspace:core.collectionspace.org:vocabularies:name(languages):item:name(eng)'English'",
+		"urn:cspace:core.collectionspace.org:orgauthorities:id(8c9d5e2b-40c1-4a4a-bf3a)'Some Org'",
+		"urn:cspace:core.collectionspace.org:placeauthorities:name(place):item:name(london)'London (England)'",
+		"urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(x)'O''Brien'",
+		"urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(x)'Line one\nline two'",
+		"urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(x)noquotes",
+		"urn:cspace:core.collectionspace.org:personauthorities:name(person):item:name(x)'unterminated",
+		"urn:cspace:t:r:name():item:name()''",
+		"urn:cspace:::name()",
+		"urn:cspace:a:b:c:d:name(e(f)g)'h'",
+		"prefix urn:cspace:t:r:name(s)'d' suffix",
+		"urn:cspace:t\nurn:cspace:t:r:name(s)'d'",
+		"urn:cspace:t:r:name(s):item:name(i)'d':item:name(j)'e'",
+		"urn:cspace:t:r:name(s)'d'urn:cspace:u:v:name(w)'x'",
+		"urn:cspace:t:r:name(s) 'd'",
+		// Malformed
+		"",
+		"urn:cspace:",
+		"urn:cspace:t:r:name(s",
+		"urn:cspace:t:name(s)'d'",
+		"urn:cspace:tr:name(s)",
+		"urn:cspace:t:r:nam(s)'d'",
+		"urn:cspace:t:r\n:name(s)'d'",
+		"urn:cspace:t:r:name(s\n)'d'",
+		"urn:cspace:t:r:item:name(i)",
+		"urn:cspace:t:r:name(s):item:name(i",
+		"URN:CSPACE:t:r:name(s)",
+		"urn:cspace::name(s)",
+		"collectionobjects/1234",
+		"not a refname at all",
+	};
+
+	private static List<String> authority(String urn) {
+		Matcher m=AUTHORITY.matcher(urn);
+		if(m.find())
+			return Arrays.asList(m.group(1),m.group(2),m.group(3),"",m.group(4));
+		m=CSID.matcher(urn);
+		if(m.find())
+			return Arrays.asList(m.group(1),m.group(2),"",m.group(3),m.group(4));
+		return null;
+	}
+
+	private static List<String> item(String urn) {
+		Matcher m=ITEM.matcher(urn);
+		if(m.find())
+			return Arrays.asList(m.group(1),m.group(2),m.group(3),m.group(4),m.group(5));
+		return null;
+	}
+
+	private static List<String> parts(RefName.Authority a) {
+		return a==null?null:Arrays.asList(a.tenantName,a.resource,a.shortIdentifier,a.csid,a.displayName);
+	}
+
+	private static List<String> parts(RefName.AuthorityItem i) {
+		return i==null?null:Arrays.asList(i.inAuthority.tenantName,i.inAuthority.resource,i.inAuthority.shortIdentifier,
+				i.shortIdentifier,i.displayName);
+	}
+
+	private static void assertSameAsRegex(String urn) {
+		// Twice, to go through the cache
+		for(int i=0;i<2;i++) {
+			assertEquals(urn,authority(urn),parts(RefName.Authority.parse(urn)));
+			assertEquals(urn,item(urn),parts(RefName.AuthorityItem.parse(urn)));
+		}
+	}
+
+	@Test public void testCorpus() {
+		for(String urn : CORPUS)
+			assertSameAsRegex(urn);
+	}
+
+	@Test public void testRandom() {
+		String[] pieces={"urn:cspace:","t",":","r","name(","id(",")","'","d",":item:name(","(","\n"," ","x"};
+		Random random=new Random(42);
+		List<String> urns=new ArrayList<String>();
+		for(int i=0;i<20000;i++) {
+			StringBuilder urn=new StringBuilder();
+			int length=random.nextInt(12);
+			for(int j=0;j<length;j++)
+				urn.append(pieces[random.nextInt(pieces.length)]);
+			urns.add(urn.toString());
+		}
+		for(String urn : urns)
+			assertSameAsRegex(urn);
+	}
+
+	@Test public void testCopies() {
+		String urn="urn:cspace:core.collectionspace.org:vocabularies:name(languages):item:name(eng)'English'";
+		RefName.AuthorityItem item=RefName.AuthorityItem.parse(urn);
+		item.displayName="changed";
+		item.inAuthority.shortIdentifier="changed";
+		item=RefName.AuthorityItem.parse(urn);
+		assertEquals("English",item.displayName);
+		assertEquals("languages",item.getParentShortIdentifier());
+		assertEquals(urn,item.toString());
+	}
+}
@@ -0,0 +1,181 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in 
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.controller;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.collectionspace.csp.api.persistence.UnauthorizedException;
+import org.collectionspace.csp.api.ui.Operation;
+import org.collectionspace.csp.api.ui.UI;
+import org.collectionspace.csp.api.ui.UIException;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the parts of a composite request for one tenant.
+ * 
+ * With one thread (the default) parts run one after another on the request thread, as they always have.
+ * With more, runs of consecutive reads go to a bounded pool together. Anything which writes waits for the
+ * parts before it and runs on its own, so a composite which creates a record and then reads it still works.
+ * If the pool is full, parts run on the request thread instead.
+ * 
+ * In parallel mode a composite has a deadline: parts which haven't finished by then come back with status
+ * 504, and parts which haven't started are not run.
+ *
+ */
+public class CompositeExecutor {
+	private static final Logger log=LoggerFactory.getLogger(CompositeExecutor.class);
+	public static final int TIMEOUT_STATUS=504;
+	public static final long DEFAULT_TIMEOUT=30*1000;
+
+	private final ThreadPoolExecutor executor;
+	private final long timeout;
+
+	public CompositeExecutor(final String tenant,int threads,long timeout) {
+		this.timeout=timeout>0?timeout:DEFAULT_TIMEOUT;
+		if(threads<=1) {
+			executor=null;
+			return;
+		}
+		executor=new ThreadPoolExecutor(threads,threads,60,TimeUnit.SECONDS,new ArrayBlockingQueue<Runnable>(threads*4),
+				new ThreadFactory() {
+					private final AtomicInteger count=new AtomicInteger();
+					public Thread newThread(Runnable r) {
+						Thread t=new Thread(r,"composite-"+tenant+"-"+count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				},new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public boolean isParallel() { return executor!=null; }
+	public long getTimeout() { return timeout; }
+
+	/**
+	 * Run the parts, returning their results in the same order
+	 * @param ui
+	 * @param parts
+	 * @return
+	 * @throws UIException
+	 * @throws UnauthorizedException
+	 * @throws JSONException
+	 */
+	public Map<String,JSONObject> run(UI ui,Map<String,CompositeWebUIRequestPart> parts) throws UIException, UnauthorizedException, JSONException {
+		Map<String,JSONObject> out=new LinkedHashMap<String,JSONObject>();
+		if(executor==null) {
+			for(Map.Entry<String,CompositeWebUIRequestPart> e : parts.entrySet())
+				out.put(e.getKey(),runPart(ui,e.getValue()));
+			return out;
+		}
+		long deadline=System.currentTimeMillis()+timeout;
+		Map<String,CompositeWebUIRequestPart> reads=new LinkedHashMap<String,CompositeWebUIRequestPart>();
+		for(Map.Entry<String,CompositeWebUIRequestPart> e : parts.entrySet()) {
+			if(e.getValue().getRequestedOperation()==Operation.READ) {
+				reads.put(e.getKey(),e.getValue());
+				continue;
+			}
+			runReads(ui,reads,deadline,out);
+			reads.clear();
+			if(System.currentTimeMillis()>=deadline)
+				out.put(e.getKey(),timedOut());
+			else
+				out.put(e.getKey(),runPart(ui,e.getValue()));
+		}
+		runReads(ui,reads,deadline,out);
+		return out;
+	}
+
+	private void runReads(final UI ui,Map<String,CompositeWebUIRequestPart> reads,long deadline,Map<String,JSONObject> out) throws UIException, UnauthorizedException, JSONException {
+		if(reads.size()==1 && System.currentTimeMillis()<deadline) {
+			Map.Entry<String,CompositeWebUIRequestPart> e=reads.entrySet().iterator().next();
+			out.put(e.getKey(),runPart(ui,e.getValue()));
+			return;
+		}
+		List<String> keys=new ArrayList<String>();
+		List<Future<JSONObject>> pending=new ArrayList<Future<JSONObject>>();
+		for(Map.Entry<String,CompositeWebUIRequestPart> e : reads.entrySet()) {
+			keys.add(e.getKey());
+			if(System.currentTimeMillis()>=deadline) {
+				pending.add(null);
+				continue;
+			}
+			final CompositeWebUIRequestPart part=e.getValue();
+			pending.add(executor.submit(new Callable<JSONObject>() {
+				public JSONObject call() throws Exception {
+					return runPart(ui,part);
+				}
+			}));
+		}
+		try {
+			for(int i=0;i<keys.size();i++) {
+				Future<JSONObject> f=pending.get(i);
+				if(f==null) {
+					out.put(keys.get(i),timedOut());
+					continue;
+				}
+				try {
+					out.put(keys.get(i),f.get(Math.max(0,deadline-System.currentTimeMillis()),TimeUnit.MILLISECONDS));
+				} catch (TimeoutException te) {
+					f.cancel(true);
+					log.warn("Composite part "+keys.get(i)+" did not finish within "+timeout+"ms");
+					out.put(keys.get(i),timedOut());
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new UIException("Interrupted waiting for composite part "+keys.get(i),ie);
+				} catch (ExecutionException ee) {
+					Throwable cause=ee.getCause();
+					if(cause instanceof UIException)
+						throw (UIException)cause;
+					if(cause instanceof UnauthorizedException)
+						throw (UnauthorizedException)cause;
+					if(cause instanceof JSONException)
+						throw (JSONException)cause;
+					throw new UIException("Composite part "+keys.get(i)+" failed",cause);
+				}
+			}
+		} finally {
+			// If we're leaving early, don't leave work running for nobody
+			for(Future<JSONObject> f : pending)
+				if(f!=null && !f.isDone())
+					f.cancel(true);
+		}
+	}
+
+	private JSONObject runPart(UI ui,CompositeWebUIRequestPart part) throws UIException, UnauthorizedException, JSONException {
+		ui.serviceRequest(part);
+		return part.solidify();
+	}
+
+	private JSONObject timedOut() throws JSONException {
+		JSONObject out=new JSONObject();
+		out.put("status",TIMEOUT_STATUS);
+		out.put("body","");
+		out.put("mime","");
+		out.put("exception","Composite request deadline of "+timeout+"ms exceeded");
+		return out;
+	}
+
+	public void shutdown() {
+		if(executor!=null)
+			executor.shutdown();
+	}
+}
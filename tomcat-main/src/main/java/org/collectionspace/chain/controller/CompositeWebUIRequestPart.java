@@ -24,6 +24,7 @@ import javax.servlet.http.HttpSession;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.collectionspace.chain.util.misc.JSON;
+import org.collectionspace.csp.api.persistence.BlobSink;
 import org.collectionspace.csp.api.ui.Operation;
 import org.collectionspace.csp.api.ui.TTYOutputter;
 import org.collectionspace.csp.api.ui.UIException;
@@ -82,6 +83,19 @@ public class CompositeWebUIRequestPart implements UIRequest {
 	public void setCacheMaxAgeSeconds(int cacheMaxAgeSeconds) {
 		// Ignore this for now. Caching composite requests is not really clear.
 	}
+
+	public void setResponseHeader(String name,String value) {
+		// Parts have no headers of their own
+	}
+
+	public String getRequestHeader(String name) {
+		return null;
+	}
+
+	public void sendNotModified() throws UIException {
+		// Never asked: parts have no request headers, so no If-None-Match
+		throw new UIException("Composite request parts are never conditional");
+	}
 	
 	public JSONObject solidify() throws JSONException, UIException {
 		JSONObject out=new JSONObject();
@@ -169,6 +183,9 @@ public class CompositeWebUIRequestPart implements UIRequest {
 	public byte[] getbyteBody() throws UIException {
 		return null;
 	}
+	public InputStream getbyteBodyStream() throws UIException {
+		return null;
+	}
 	public String getFileName() throws UIException{
 		return "";
 	}
@@ -268,6 +285,11 @@ public class CompositeWebUIRequestPart implements UIRequest {
 		}
 	}
 	
+	// Parts are buffered into the composite response, so can't be streamed
+	public BlobSink getBlobSink() throws UIException {
+		return null;
+	}
+
 	@Override
 	public void sendJSONResponse(JSONObject data) throws UIException {
 		mime_type_out="text/json;charset=UTF-8";
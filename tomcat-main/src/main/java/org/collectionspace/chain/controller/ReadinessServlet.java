@@ -0,0 +1,41 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.controller;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONException;
+
+/**
+ * For load balancers: 200 once every tenant is up, 503 until then, with how each tenant is doing
+ *
+ *   {"ready": false, "tenants": {"core": {"state": "ready", "millis": 5230}, "lifesci": {"state": "loading", "millis": 3100}}}
+ *
+ */
+public class ReadinessServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		String out;
+		try {
+			out = TenantBootstrap.toJSON().toString();
+		} catch (JSONException e) {
+			throw new ServletException("Cannot report readiness", e);
+		}
+		response.setStatus(TenantBootstrap.isReady() ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		response.setHeader("Cache-Control", "no-store");
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.getWriter().write(out);
+	}
+}
@@ -1,11 +1,226 @@
 /* Copyright 2010 University of Cambridge
- * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in 
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
  * compliance with this License.
  *
  * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
  */
 package org.collectionspace.chain.controller;
 
-public class SessionStore {
-	
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.collectionspace.chain.csp.webui.main.WebUI;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the sessions of one tenant's umbrella.
+ *
+ * Sessions expire when idle for longer than the idle timeout (normally the tenant's cookie life) or
+ * when older than the absolute timeout, whichever comes first. The store holds at most maxSessions
+ * sessions, evicting the least recently used when full.
+ *
+ * All stores also share an index of session id to tenant so that a session cookie can be resolved to
+ * its tenant without asking every umbrella.
+ *
+ * The counts are shown to administrators at /admin/sessions.
+ *
+ * @author csm22
+ *
+ */
+public class SessionStore implements WebUI.SessionStatistics {
+	private static final Logger log=LoggerFactory.getLogger(SessionStore.class);
+
+	public static final long DEFAULT_IDLE_TIMEOUT=15*60*1000L;
+	public static final long DEFAULT_ABSOLUTE_TIMEOUT=24*60*60*1000L;
+	public static final int DEFAULT_MAX_SESSIONS=10000;
+	/* Don't walk the whole store looking for expired sessions more often than this */
+	private static final long SWEEP_INTERVAL=60*1000L;
+
+	private static final ConcurrentMap<String,String> tenant_index=new ConcurrentHashMap<String,String>();
+
+	private final String tenant;
+	private volatile long idle_timeout=DEFAULT_IDLE_TIMEOUT;
+	private volatile long absolute_timeout=DEFAULT_ABSOLUTE_TIMEOUT;
+	private volatile int max_sessions=DEFAULT_MAX_SESSIONS;
+	private long last_sweep=System.currentTimeMillis();
+
+	/* access ordered, so iteration starts at the least recently used session. Guarded by this. */
+	private final LinkedHashMap<String,WebUISession> sessions=new LinkedHashMap<String,WebUISession>(16,0.75f,true);
+
+	private final AtomicLong created=new AtomicLong();
+	private final AtomicLong expired=new AtomicLong();
+	private final AtomicLong evicted=new AtomicLong();
+
+	public SessionStore(String tenant) {
+		this.tenant=tenant;
+	}
+
+	/**
+	 * Which tenant owns the session with this id, across all stores
+	 * @param id
+	 * @return the tenant id or null if no store holds the session
+	 */
+	public static String getTenantForSession(String id) {
+		if(id==null)
+			return null;
+		return tenant_index.get(id);
+	}
+
+	public String getTenant() { return tenant; }
+
+	/**
+	 * @param idle idle timeout in milliseconds, 0 or less to disable
+	 */
+	public void setIdleTimeout(long idle) { idle_timeout=idle; }
+	public long getIdleTimeout() { return idle_timeout; }
+
+	/**
+	 * @param absolute absolute timeout in milliseconds, 0 or less to disable
+	 */
+	public void setAbsoluteTimeout(long absolute) { absolute_timeout=absolute; }
+	public long getAbsoluteTimeout() { return absolute_timeout; }
+
+	public void setMaxSessions(int max) { max_sessions=max; }
+	public int getMaxSessions() { return max_sessions; }
+
+	/**
+	 * Retrieve a live session and mark it as used
+	 * @param id
+	 * @return the session, or null if unknown or expired
+	 */
+	public WebUISession get(String id) {
+		if(id==null)
+			return null;
+		long now=System.currentTimeMillis();
+		WebUISession out;
+		synchronized(this) {
+			out=sessions.get(id);
+			if(out==null)
+				return null;
+			if(isExpired(out,now)) {
+				sessions.remove(id);
+				out=null;
+			}
+		}
+		if(out==null) {
+			tenant_index.remove(id,tenant);
+			expired.incrementAndGet();
+			return null;
+		}
+		out.touch(now);
+		return out;
+	}
+
+	/**
+	 * Add a newly created session, evicting expired and, if still full, least recently used sessions
+	 * @param session
+	 */
+	public void put(WebUISession session) {
+		long now=System.currentTimeMillis();
+		List<String> gone_expired=new ArrayList<String>();
+		List<String> gone_evicted=new ArrayList<String>();
+		synchronized(this) {
+			if(now-last_sweep>SWEEP_INTERVAL || sessions.size()>=max_sessions) {
+				sweep(now,gone_expired);
+				last_sweep=now;
+			}
+			Iterator<String> lru=sessions.keySet().iterator();
+			while(max_sessions>0 && sessions.size()>=max_sessions && lru.hasNext()) {
+				gone_evicted.add(lru.next());
+				lru.remove();
+			}
+			sessions.put(session.getID(),session);
+		}
+		tenant_index.put(session.getID(),tenant);
+		created.incrementAndGet();
+		unindex(gone_expired);
+		unindex(gone_evicted);
+		expired.addAndGet(gone_expired.size());
+		evicted.addAndGet(gone_evicted.size());
+		if(gone_evicted.size()>0)
+			log.debug("Evicted "+gone_evicted.size()+" sessions for tenant "+tenant+": store is at its limit of "+max_sessions);
+	}
+
+	/**
+	 * Drop a session, eg at logout
+	 * @param id
+	 */
+	public void remove(String id) {
+		WebUISession out;
+		synchronized(this) {
+			out=sessions.remove(id);
+		}
+		if(out!=null)
+			tenant_index.remove(id,tenant);
+	}
+
+	/**
+	 * Drop all expired sessions now, rather than waiting for the next sweep
+	 * @return number of sessions expired
+	 */
+	public int expire() {
+		List<String> gone=new ArrayList<String>();
+		long now=System.currentTimeMillis();
+		synchronized(this) {
+			sweep(now,gone);
+			last_sweep=now;
+		}
+		unindex(gone);
+		expired.addAndGet(gone.size());
+		return gone.size();
+	}
+
+	public synchronized int getActiveSessions() { return sessions.size(); }
+	public long getCreatedSessions() { return created.get(); }
+	public long getExpiredSessions() { return expired.get(); }
+	public long getEvictedSessions() { return evicted.get(); }
+
+	public JSONObject getStatistics() throws JSONException {
+		JSONObject out=new JSONObject();
+		out.put("tenant",tenant);
+		out.put("active",getActiveSessions());
+		out.put("created",getCreatedSessions());
+		out.put("expired",getExpiredSessions());
+		out.put("evicted",getEvictedSessions());
+		out.put("maxSessions",max_sessions);
+		out.put("idleTimeoutMs",idle_timeout);
+		out.put("absoluteTimeoutMs",absolute_timeout);
+		return out;
+	}
+
+	private boolean isExpired(WebUISession session,long now) {
+		long idle=idle_timeout;
+		long absolute=absolute_timeout;
+		if(idle>0 && now-session.getLastAccessed()>idle)
+			return true;
+		if(absolute>0 && now-session.getCreated()>absolute)
+			return true;
+		return false;
+	}
+
+	/* Caller holds lock */
+	private void sweep(long now,List<String> gone) {
+		Iterator<Map.Entry<String,WebUISession>> e=sessions.entrySet().iterator();
+		while(e.hasNext()) {
+			Map.Entry<String,WebUISession> entry=e.next();
+			if(isExpired(entry.getValue(),now)) {
+				gone.add(entry.getKey());
+				e.remove();
+			}
+		}
+	}
+
+	private void unindex(List<String> ids) {
+		for(String id : ids)
+			tenant_index.remove(id,tenant);
+	}
 }
@@ -0,0 +1,210 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.controller;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings tenants up as soon as the webapp starts, several at once, rather than on each tenant's first
+ * request, and keeps track of how each tenant's initialisation went so that a load balancer can be told
+ * when they are all ready.
+ *
+ * Tenants which are initialised on demand are tracked too, so a tenant which failed to come up at
+ * startup shows as ready once a later request manages it. Only tenants we were told of, by having a
+ * config or being bootstrapped, are tracked: a request for a tenant which doesn't exist isn't one of
+ * ours failing.
+ *
+ */
+public class TenantBootstrap {
+	private static final Logger log=LoggerFactory.getLogger(TenantBootstrap.class);
+	public static final String PENDING="pending",LOADING="loading",READY="ready",FAILED="failed";
+
+	private static final ConcurrentMap<String,Status> statuses=new ConcurrentHashMap<String,Status>();
+	private static final Set<String> known=Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+	private static final AtomicBoolean started=new AtomicBoolean(false);
+
+	/**
+	 * How a tenant's initialisation went
+	 */
+	public static class Status {
+		private final String tenant;
+		private String state=PENDING,error=null;
+		private long started=0,finished=0;
+
+		private Status(String tenant) {
+			this.tenant=tenant;
+		}
+
+		public String getTenant() { return tenant; }
+		public synchronized String getState() { return state; }
+		public synchronized boolean isReady() { return READY.equals(state); }
+
+		/* How long initialisation took, or has taken so far */
+		public synchronized long getMillis() {
+			if(started==0)
+				return 0;
+			return (finished==0?System.currentTimeMillis():finished)-started;
+		}
+
+		synchronized void loading() {
+			state=LOADING;
+			error=null;
+			started=System.currentTimeMillis();
+			finished=0;
+		}
+
+		synchronized void done(String error) {
+			this.state=(error==null)?READY:FAILED;
+			this.error=error;
+			finished=System.currentTimeMillis();
+		}
+
+		public synchronized JSONObject toJSON() throws JSONException {
+			JSONObject out=new JSONObject();
+			out.put("state",state);
+			out.put("millis",getMillis());
+			if(error!=null)
+				out.put("error",error);
+			return out;
+		}
+	}
+
+	public static Status getStatus(String tenant) {
+		Status out=statuses.get(tenant);
+		if(out==null) {
+			Status created=new Status(tenant);
+			out=statuses.putIfAbsent(tenant,created);
+			if(out==null)
+				out=created;
+		}
+		return out;
+	}
+
+	/**
+	 * These tenants have configs, so how their initialisation goes is worth tracking
+	 * @param tenants
+	 */
+	static void configured(Collection<String> tenants) {
+		known.addAll(tenants);
+	}
+
+	static boolean isTracked(String tenant) {
+		return known.contains(tenant);
+	}
+
+	static void loading(String tenant) {
+		if(!isTracked(tenant))
+			return;
+		getStatus(tenant).loading();
+	}
+
+	static void ready(String tenant) {
+		if(!isTracked(tenant))
+			return;
+		Status status=getStatus(tenant);
+		status.done(null);
+		log.info("Tenant "+tenant+" initialised in "+status.getMillis()+"ms");
+	}
+
+	static void failed(String tenant,String error) {
+		if(!isTracked(tenant)) {
+			log.warn("Could not initialise unknown tenant "+tenant+": "+error);
+			return;
+		}
+		Status status=getStatus(tenant);
+		status.done(error);
+		log.error("Tenant "+tenant+" failed to initialise after "+status.getMillis()+"ms: "+error);
+	}
+
+	/**
+	 * Are all the tenants we know of up? Before any tenant is known of, that depends on whether
+	 * there is a bootstrap to wait for.
+	 * @return
+	 */
+	public static boolean isReady() {
+		if(statuses.isEmpty())
+			return !started.get();
+		for(Status status : statuses.values())
+			if(!status.isReady())
+				return false;
+		return true;
+	}
+
+	public static JSONObject toJSON() throws JSONException {
+		JSONObject tenants=new JSONObject();
+		Map<String,Status> sorted=new TreeMap<String,Status>(statuses);
+		for(Status status : sorted.values())
+			tenants.put(status.getTenant(),status.toJSON());
+		JSONObject out=new JSONObject();
+		out.put("ready",isReady());
+		out.put("tenants",tenants);
+		return out;
+	}
+
+	/**
+	 * Initialise these tenants in the background, at most threads at a time. Only the first call does
+	 * anything, as every servlet instance shares the tenants. With no tenants there is nothing to wait
+	 * for, so we stay ready and tenants are initialised on their first request.
+	 * @param servlet
+	 * @param tenants
+	 * @param threads
+	 * @return whether this call started the bootstrap
+	 */
+	public static boolean start(final TenantServlet servlet,Collection<String> tenants,int threads) {
+		if(tenants.isEmpty()) {
+			log.warn("No tenants found to initialise at startup: each will be initialised on its first request");
+			return false;
+		}
+		if(!started.compareAndSet(false,true))
+			return false;
+		log.info("Initialising tenants "+tenants+" with "+threads+" threads");
+		// Every tenant is pending before any starts, so nobody sees ready half way through
+		configured(tenants);
+		for(String tenant : tenants)
+			getStatus(tenant);
+		ExecutorService pool=Executors.newFixedThreadPool(Math.max(1,Math.min(threads,tenants.size())),new ThreadFactory() {
+			private final AtomicInteger count=new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread out=new Thread(r,"tenant-bootstrap-"+count.incrementAndGet());
+				out.setDaemon(true);
+				return out;
+			}
+		});
+		for(final String tenant : tenants) {
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						servlet.setup(tenant);
+					} catch(BadRequestException e) {
+						// Already recorded by setup
+					} catch(RuntimeException e) {
+						failed(tenant,e.toString());
+					}
+				}
+			});
+		}
+		// The pool goes away once the tenants are done
+		pool.shutdown();
+		return true;
+	}
+}
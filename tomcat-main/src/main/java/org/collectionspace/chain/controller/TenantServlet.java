@@ -2,6 +2,7 @@ package org.collectionspace.chain.controller;
 
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -11,10 +12,16 @@ import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -85,12 +92,24 @@ public class TenantServlet extends HttpServlet {
 	private static final long serialVersionUID = -4343156244448081917L;
 	private static final String SERVER_HOME_PROPERTY = "catalina.base";
 	private static final String PUBLISHED_DIR = "/cspace/published";
+	private static final String SNAPSHOT_PROPERTY = "cspace.config.snapshots";
+	private static final String SNAPSHOT_DIR = "/cspace/config-snapshots";
+	private static final String BOOTSTRAP_PARAM = "bootstrap";
+	private static final String BOOTSTRAP_TENANTS_PARAM = "bootstrap-tenants";
+	private static final String BOOTSTRAP_THREADS_PARAM = "bootstrap-threads";
+	private static final int DEFAULT_BOOTSTRAP_THREADS = 4;
 	//
-	// Static and shared by all Servlet instances
+	// Static and shared by all Servlet instances.
+	// A tenant only appears in tenantCSPM once it is fully initialised, so the read path needs no lock.
+	// tenantLocks serialise initialisation per tenant: a slow tenant doesn't hold up the others.
 	//
-	protected static Map<String, CSPManagerImpl> tenantCSPM = new HashMap<String, CSPManagerImpl>();
-	protected static Map<String, Boolean> tenantInit = new HashMap<String, Boolean>();
-	protected static Map<String, UIUmbrella> tenantUmbrella = new HashMap<String, UIUmbrella>();
+	protected static ConcurrentMap<String, CSPManagerImpl> tenantCSPM = new ConcurrentHashMap<String, CSPManagerImpl>();
+	protected static ConcurrentMap<String, Object> tenantLocks = new ConcurrentHashMap<String, Object>();
+	protected static ConcurrentMap<String, UIUmbrella> tenantUmbrella = new ConcurrentHashMap<String, UIUmbrella>();
+	protected static ConcurrentMap<String, CompositeExecutor> tenantComposite = new ConcurrentHashMap<String, CompositeExecutor>();
+	// Why a tenant is locked down, for tenants whose config could not be found. Shown on each of the tenant's
+	// requests, as errors during startup tend to get lost; other tenants carry on.
+	protected static ConcurrentMap<String, String> tenantLockdown = new ConcurrentHashMap<String, String>();
 	
 	protected final String MIME_AUDIO = "audio/";
 	protected final String MIME_VIDIO = "vidio/";
@@ -102,21 +121,53 @@ public class TenantServlet extends HttpServlet {
 	protected final String SUFFIX_PROPS = ".properties";
 	protected final String SUFFIX_JSON = ".json";
 
-	protected String locked_down=null;
-	
-	/* Not in the constructor because errors during construction of servlets tend to get lost in a mess of startup.
-	 * Better present it on first request.
+	/**
+	 * Note the tenants we can find a config for, whose readiness is then tracked. If the bootstrap
+	 * init-param is "true", start initialising them (or those listed in bootstrap-tenants) in the
+	 * background, bootstrap-threads at a time. A config given by TEST_CONFIG or the config-* attributes
+	 * names no tenants, so needs bootstrap-tenants.
 	 */
+	@Override
+	public void init() throws ServletException {
+		super.init();
+		ConfigFinder finder = new ConfigFinder(getServletContext());
+		Set<String> configured = finder.findTenants();
+		TenantBootstrap.configured(configured);
+		if (!"true".equals(getInitParameter(BOOTSTRAP_PARAM))) {
+			return;
+		}
+		Collection<String> tenants = new TreeSet<String>();
+		String listed = getInitParameter(BOOTSTRAP_TENANTS_PARAM);
+		if (listed != null && !"".equals(listed.trim())) {
+			for (String tenant : listed.split(",")) {
+				if (!"".equals(tenant.trim())) {
+					tenants.add(tenant.trim());
+				}
+			}
+		} else {
+			tenants.addAll(configured);
+			if (finder.hasSingleConfig()) {
+				log.warn("A single config is given for every tenant, so cannot tell which tenants to initialise at startup: list them in " + BOOTSTRAP_TENANTS_PARAM);
+			}
+		}
+		int threads = Math.min(DEFAULT_BOOTSTRAP_THREADS, Runtime.getRuntime().availableProcessors());
+		String threadsParam = getInitParameter(BOOTSTRAP_THREADS_PARAM);
+		if (threadsParam != null && !"".equals(threadsParam.trim())) {
+			try {
+				threads = Integer.parseInt(threadsParam.trim());
+			} catch (NumberFormatException e) {
+				log.warn("Ignoring bad " + BOOTSTRAP_THREADS_PARAM + ": " + threadsParam);
+			}
+		}
+		TenantBootstrap.start(this, tenants, threads);
+	}
 
-	protected void register_csps(String tenantId) throws IOException, DocumentException {
-		if(!tenantCSPM.containsKey(tenantId)){
-			tenantCSPM.put(tenantId, new CSPManagerImpl());
-		}
-		tenantCSPM.get(tenantId).register(new CoreConfig());
-		tenantCSPM.get(tenantId).register(new FileStorage());
-		tenantCSPM.get(tenantId).register(new ServicesStorageGenerator());
-		tenantCSPM.get(tenantId).register(new WebUI());
-		tenantCSPM.get(tenantId).register(new Spec());
+	protected void register_csps(CSPManagerImpl cspm) throws IOException, DocumentException {
+		cspm.register(new CoreConfig());
+		cspm.register(new FileStorage());
+		cspm.register(new ServicesStorageGenerator());
+		cspm.register(new WebUI());
+		cspm.register(new Spec());
 	}
 	
 	/**
@@ -132,15 +183,16 @@ public class TenantServlet extends HttpServlet {
 			if(!COOKIENAME.equals(cookie.getName()))
 				continue;
 			
-			//loop over all umbrellas and find the one we have the session for
-			for(Map.Entry<String, UIUmbrella> entry: tenantUmbrella.entrySet()){
-				String name = entry.getKey();
-				UIUmbrella umb = entry.getValue();
-
-				WebUISession session=((WebUIUmbrella) umb).getSession(cookie.getValue());
-				if(session!=null)
-					return name;
-			}
+			// sessions are indexed by id across tenants, so just check the owner still has it
+			String name = SessionStore.getTenantForSession(cookie.getValue());
+			if(name==null)
+				continue;
+			UIUmbrella umb = tenantUmbrella.get(name);
+			if(umb==null)
+				continue;
+			WebUISession session=((WebUIUmbrella) umb).getSession(cookie.getValue());
+			if(session!=null)
+				return name;
 		}
 		return "";
 	}
@@ -148,16 +200,18 @@ public class TenantServlet extends HttpServlet {
 	 * retrieve the correct config file based on the tenantId
 	 * @param ctx
 	 * @param tenantId
+	 * @param cspm
 	 * @throws CSPDependencyException
 	 */
-	protected void load_config(ServletContext ctx, String tenantId) throws CSPDependencyException {
+	protected void load_config(ServletContext ctx, String tenantId, CSPManagerImpl cspm) throws CSPDependencyException {
 		try {
 			ConfigFinder cfg=new ConfigFinder(ctx);
 			InputSource cfg_stream = cfg.resolveEntity("-//CSPACE//ROOT","cspace-config-"+tenantId+".xml");
 			if(cfg_stream==null) {
-				locked_down="Cannot find cspace config xml file";
+				tenantLockdown.put(tenantId,"Cannot find cspace config xml file");
 			} else {
-				tenantCSPM.get(tenantId).configure(cfg_stream,cfg,false);
+				tenantLockdown.remove(tenantId);
+				cspm.configure(cfg_stream,cfg,false);
 			}
 		} catch (UnsupportedEncodingException e) {
 			throw new CSPDependencyException("Config has bad character encoding",e);
@@ -170,33 +224,180 @@ public class TenantServlet extends HttpServlet {
 	
 	/**
 	 * setup CSPManagerImpl, load config etc if required.
+	 * Once a tenant is up this is just a map lookup. Otherwise only requests for this
+	 * tenant wait while one of them does the initialisation.
 	 * @param tenantId
+	 * @return the tenant's CSPManagerImpl
 	 * @throws BadRequestException
 	 */
-	protected void setup(String tenantId) throws BadRequestException {
-		
-		synchronized(HttpServlet.class) {
-			if (tenantInit.containsKey(tenantId) && tenantInit.get(tenantId)) {
-				return;
+	protected CSPManagerImpl setup(String tenantId) throws BadRequestException {
+		CSPManagerImpl cspm = tenantCSPM.get(tenantId);
+		if (cspm != null) {
+			return cspm;
+		}
+		synchronized(getTenantLock(tenantId)) {
+			cspm = tenantCSPM.get(tenantId);
+			if (cspm != null) {
+				return cspm;
 			}
-			
-			try {
-				// Register csps
-				register_csps(tenantId);
-				tenantCSPM.get(tenantId).go(); // Start up CSPs
-				load_config(getServletContext(),tenantId);
-			} catch (IOException e) {
-				throw new BadRequestException("Cannot load config "+e,e);
-			} catch (DocumentException e) {
-				throw new BadRequestException("Cannot load backend "+e,e);
-			} catch (CSPDependencyException e) {
-				throw new BadRequestException("Cannot initialise CSPs "+e,e);
+			cspm = tracked(tenantId);
+			tenantCSPM.put(tenantId, cspm);
+			return cspm;
+		}
+	}
+
+	/**
+	 * Reload a tenant's config. The new CSPManagerImpl is built off to the side and swapped in
+	 * once complete, so requests carry on against the old one in the meantime.
+	 * @param tenantId
+	 * @return the new CSPManagerImpl
+	 * @throws BadRequestException
+	 */
+	protected CSPManagerImpl reinitialise(String tenantId) throws BadRequestException {
+		synchronized(getTenantLock(tenantId)) {
+			CSPManagerImpl cspm = tracked(tenantId);
+			tenantCSPM.put(tenantId, cspm);
+			// Settings may have changed: the next composite builds a new one
+			CompositeExecutor composite = tenantComposite.remove(tenantId);
+			if (composite != null) {
+				composite.shutdown();
+			}
+			return cspm;
+		}
+	}
+
+	private Object getTenantLock(String tenantId) {
+		Object lock = tenantLocks.get(tenantId);
+		if (lock == null) {
+			Object created = new Object();
+			lock = tenantLocks.putIfAbsent(tenantId, created);
+			if (lock == null) {
+				lock = created;
+			}
+		}
+		return lock;
+	}
+
+	/**
+	 * Where to keep snapshots of assembled tenant configs: the cspace.config.snapshots system property
+	 * if set ("none" for nowhere), otherwise under the server's base directory.
+	 * @return the directory, or null not to keep them
+	 */
+	protected File getConfigSnapshotDir() {
+		String dir = System.getProperty(SNAPSHOT_PROPERTY);
+		if (dir != null) {
+			return ("".equals(dir) || "none".equals(dir)) ? null : new File(dir);
+		}
+		String serverRootDir = System.getProperty(SERVER_HOME_PROPERTY);
+		if (serverRootDir == null) {
+			return null;
+		}
+		return new File(serverRootDir + SNAPSHOT_DIR);
+	}
+
+	/**
+	 * Initialise a tenant, noting how it went for the readiness check
+	 * @param tenantId
+	 * @return
+	 * @throws BadRequestException
+	 */
+	private CSPManagerImpl tracked(String tenantId) throws BadRequestException {
+		TenantBootstrap.loading(tenantId);
+		try {
+			CSPManagerImpl cspm = initialise(tenantId);
+			String lockdown = tenantLockdown.get(tenantId);
+			if (lockdown != null) {
+				TenantBootstrap.failed(tenantId, lockdown);
+			} else {
+				TenantBootstrap.ready(tenantId);
+			}
+			return cspm;
+		} catch (BadRequestException e) {
+			TenantBootstrap.failed(tenantId, e.getMessage());
+			throw e;
+		} catch (RuntimeException e) {
+			TenantBootstrap.failed(tenantId, e.toString());
+			throw e;
+		}
+	}
+
+	private CSPManagerImpl initialise(String tenantId) throws BadRequestException {
+		CSPManagerImpl cspm = new CSPManagerImpl();
+		cspm.setConfigSnapshots(getConfigSnapshotDir());
+		try {
+			// Register csps
+			register_csps(cspm);
+			cspm.go(); // Start up CSPs
+			load_config(getServletContext(),tenantId,cspm);
+		} catch (IOException e) {
+			throw new BadRequestException("Cannot load config "+e,e);
+		} catch (DocumentException e) {
+			throw new BadRequestException("Cannot load backend "+e,e);
+		} catch (CSPDependencyException e) {
+			throw new BadRequestException("Cannot initialise CSPs "+e,e);
+		}
+		return cspm;
+	}
+
+	/**
+	 * Get (creating if need be) the tenant's umbrella, which holds its sessions
+	 * @param tenantId
+	 * @param cspm
+	 * @return
+	 */
+	protected UIUmbrella getUmbrella(String tenantId, CSPManagerImpl cspm) {
+		UIUmbrella umbrella = tenantUmbrella.get(tenantId);
+		if (umbrella == null) {
+			WebUIUmbrella created = new WebUIUmbrella((WebUI)cspm.getUI("web"),tenantId);
+			configureSessions(created.getSessionStore(),cspm);
+			umbrella = tenantUmbrella.putIfAbsent(tenantId, created);
+			if (umbrella == null) {
+				umbrella = created;
 			}
-			
-			tenantInit.put(tenantId,true);
 		}
+		return umbrella;
 	}
 	
+	/**
+	 * Get (creating if need be) the tenant's runner for composite requests
+	 * @param tenantId
+	 * @param cspm
+	 * @return
+	 */
+	protected CompositeExecutor getCompositeExecutor(String tenantId, CSPManagerImpl cspm) {
+		CompositeExecutor composite = tenantComposite.get(tenantId);
+		if (composite == null) {
+			Spec spec=(Spec)cspm.getConfigRoot().getRoot(Spec.SPEC_ROOT);
+			AdminData admin=spec.getAdminData();
+			CompositeExecutor created = new CompositeExecutor(tenantId,admin.getCompositeThreads(),admin.getCompositeTimeout());
+			composite = tenantComposite.putIfAbsent(tenantId, created);
+			if (composite == null) {
+				composite = created;
+			} else {
+				created.shutdown();
+			}
+		}
+		return composite;
+	}
+
+	/**
+	 * Size the tenant's session store from its admin settings. Sessions idle for longer than the
+	 * cookie life could never be presented again, so that is the idle timeout.
+	 * @param store
+	 * @param cspm
+	 */
+	protected void configureSessions(SessionStore store, CSPManagerImpl cspm) {
+		ConfigRoot root=cspm.getConfigRoot();
+		Spec spec=(Spec)root.getRoot(Spec.SPEC_ROOT);
+		AdminData admin=spec.getAdminData();
+		if(admin.getCookieLife()!=null && admin.getCookieLife()>0)
+			store.setIdleTimeout(admin.getCookieLife()*60*1000L);
+		if(admin.getSessionMaxAge()>0)
+			store.setAbsoluteTimeout(admin.getSessionMaxAge()*60*1000L);
+		if(admin.getSessionMaxCount()>0)
+			store.setMaxSessions(admin.getSessionMaxCount());
+	}
+
 	/**
 	 * If you know the tenant id then
 	 * Check for global issues and if not run set up and then test if this is a init request, a composite request or a single request and 
@@ -213,20 +414,19 @@ public class TenantServlet extends HttpServlet {
 	 */
 	protected void serviceWTenant(String tenantid, List<String> pathparts, String initcheck, HttpServletRequest servlet_request, HttpServletResponse servlet_response) throws ServletException, 
 			IOException, BadRequestException, UnauthorizedException {
-		if (locked_down != null) {
+		String lockdown = tenantLockdown.get(tenantid);
+		if (lockdown != null) {
 			//this ended up with a status 200 hmmmm not great so changed it to return a 400... hopefully that wont break anythign else
 
-			servlet_response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Servlet is locked down in a hard fail because of fatal error: "+locked_down);
-			//servlet_response.getWriter().append("Servlet is locked down in a hard fail because of fatal error: "+locked_down);
+			servlet_response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Servlet is locked down in a hard fail because of fatal error: "+lockdown);
+			//servlet_response.getWriter().append("Servlet is locked down in a hard fail because of fatal error: "+lockdown);
 			return;
 		}
 		
 		//reinit if url = /chain/init
 		
 		if (initcheck.equals("init")) {
-			tenantCSPM.put(tenantid, new CSPManagerImpl());
-			tenantInit.put(tenantid, false);
-			setup(tenantid);
+			reinitialise(tenantid);
 			
 			ConfigFinder cfg=new ConfigFinder(getServletContext());
 			try {
@@ -242,35 +442,28 @@ public class TenantServlet extends HttpServlet {
 			return;
 		}
 		
-		if (!tenantInit.containsKey(tenantid) || !tenantInit.get(tenantid)) {
-			setup(tenantid);
-		}
+		CSPManagerImpl cspm = setup(tenantid);
 		
-		if(locked_down!=null) {
+		lockdown = tenantLockdown.get(tenantid);
+		if(lockdown!=null) {
 			//this ended up with a status 200 hmmmm not great so changed it to return a 400... hopefully that wont break anythign else
 
-			servlet_response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Servlet is locked down in a hard fail because of fatal error: "+locked_down);
-			//servlet_response.getWriter().append("Servlet is locked down in a hard fail because of fatal error: "+locked_down);
+			servlet_response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Servlet is locked down in a hard fail because of fatal error: "+lockdown);
+			//servlet_response.getWriter().append("Servlet is locked down in a hard fail because of fatal error: "+lockdown);
 			return;
 		}
 		if(perhapsServeFixedContent(servlet_request,servlet_response)) {
 			return;
 		}
 		// Setup our request object
-		UI web=tenantCSPM.get(tenantid).getUI("web");
-		if(!tenantUmbrella.containsKey(tenantid)){
-			synchronized(getClass()) {
-				if(!tenantUmbrella.containsKey(tenantid)) {
-					tenantUmbrella.put(tenantid, new WebUIUmbrella((WebUI)web));
-				}
-			}
-		}
+		UI web=cspm.getUI("web");
+		UIUmbrella umbrella=getUmbrella(tenantid,cspm);
 		try {
-			ConfigRoot root=tenantCSPM.get(tenantid).getConfigRoot();
+			ConfigRoot root=cspm.getConfigRoot();
 			Spec spec=(Spec)root.getRoot(Spec.SPEC_ROOT);
-			WebUIRequest req=new WebUIRequest(tenantUmbrella.get(tenantid),servlet_request,servlet_response,spec.getAdminData().getCookieLife(),pathparts);
+			WebUIRequest req=new WebUIRequest(umbrella,servlet_request,servlet_response,spec.getAdminData().getCookieLife(),pathparts);
 			if(is_composite(req)) {
-				serve_composite(web,req);
+				serve_composite(web,req,getCompositeExecutor(tenantid,cspm));
 			} else {
 				web.serviceRequest(req);
 				req.solidify(true);
@@ -328,7 +521,11 @@ public class TenantServlet extends HttpServlet {
 			serviceWTenant(tenant, p, checkinit, servlet_request, servlet_response);
 			
 		} catch (UnauthorizedException x) {
-			servlet_response.sendError(HttpServletResponse.SC_UNAUTHORIZED, getStackTrace(x));
+			// logged in, but not allowed
+			if(x.getStatus()!=null && x.getStatus()==HttpServletResponse.SC_FORBIDDEN)
+				servlet_response.sendError(HttpServletResponse.SC_FORBIDDEN, x.getMessage());
+			else
+				servlet_response.sendError(HttpServletResponse.SC_UNAUTHORIZED, getStackTrace(x));
 		} catch (BadRequestException x) {
 			servlet_response.sendError(HttpServletResponse.SC_BAD_REQUEST, getStackTrace(x));
 		}
@@ -336,19 +533,19 @@ public class TenantServlet extends HttpServlet {
 	
 
 	/**
-	 * Iterate through a composite request sequentially.
-	 * We do all this very sequentially rather than in one big loop to avoid the fear of weird races and to fail early on parse errors
+	 * Iterate through a composite request, in turn or in parallel as the tenant is configured.
+	 * We parse all the parts up front to fail early on parse errors
 	 * @param ui
 	 * @param req
+	 * @param composite
 	 * @throws UIException
-	 * @throws UnauthorizedException 
 	 */
-	protected void serve_composite(UI ui,WebUIRequest req) throws UIException, UnauthorizedException {
+	protected void serve_composite(UI ui,WebUIRequest req,CompositeExecutor composite) throws UIException, UnauthorizedException {
 		try {
 			// Extract JSON request payload
 			JSONObject in=req.getJSONBody();
-			// Build composite object for each subrequest
-			Map <String,CompositeWebUIRequestPart> subrequests=new HashMap<String,CompositeWebUIRequestPart>();
+			// Build composite object for each subrequest, keeping the order they came in
+			Map <String,CompositeWebUIRequestPart> subrequests=new LinkedHashMap<String,CompositeWebUIRequestPart>();
 			Iterator<?> ki=in.keys();
 			while(ki.hasNext()) {
 				String key=(String)ki.next();
@@ -356,14 +553,12 @@ public class TenantServlet extends HttpServlet {
 				CompositeWebUIRequestPart sub=new CompositeWebUIRequestPart(req,value);
 				subrequests.put(key,sub);
 			}
+			// Execute each composite object
+			Map<String,JSONObject> results=composite.run(ui,subrequests);
 			// Build a place for results
 			JSONObject out=new JSONObject();
-			// Execute each composite object
-			for(String key : subrequests.keySet()) {
-				CompositeWebUIRequestPart sub=subrequests.get(key);
-				ui.serviceRequest(sub);
-				JSONObject value=sub.solidify();
-				out.put(key,value);
+			for(Map.Entry<String,JSONObject> e : results.entrySet()) {
+				out.put(e.getKey(),e.getValue());
 			}
 			// Send result
 			req.sendJSONResponse(out);
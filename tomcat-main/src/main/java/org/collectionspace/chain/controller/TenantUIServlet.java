@@ -45,6 +45,8 @@ import org.collectionspace.chain.csp.webui.external.UIMapping;
 import org.collectionspace.chain.csp.webui.main.WebUI;
 import org.collectionspace.csp.api.ui.UI;
 import org.collectionspace.csp.api.ui.UIException;
+import org.collectionspace.csp.api.ui.UIUmbrella;
+import org.collectionspace.csp.container.impl.CSPManagerImpl;
 
 /**
  * TenantUIServlet extends TenantServlet as it just adds the extra functionality specific to rendering the UI pages
@@ -113,9 +115,7 @@ public class TenantUIServlet extends TenantServlet {
 //			tenant = getTenantByCookie(servlet_request);
 		}
 		
-		if (!tenantInit.containsKey(tenant) || !tenantInit.get(tenant)) {
-			setup(tenant);
-		}
+		CSPManagerImpl cspm = setup(tenant);
 		
 		/**
 		 * Support composite requests in ui calls as well as app direct calls
@@ -128,21 +128,14 @@ public class TenantUIServlet extends TenantServlet {
 				p.add(part);
 			}		
 			p.remove(0);
-			ConfigRoot root=tenantCSPM.get(tenant).getConfigRoot();
+			ConfigRoot root=cspm.getConfigRoot();
 			Spec spec=(Spec)root.getRoot(Spec.SPEC_ROOT);
 			WebUIRequest req;
 			
-			UI web=tenantCSPM.get(tenant).getUI("web");
-			if(!tenantUmbrella.containsKey(tenant)){
-				synchronized(getClass()) {
-					if(!tenantUmbrella.containsKey(tenant)) {
-						tenantUmbrella.put(tenant, new WebUIUmbrella((WebUI)web));
-					}
-				}
-			}
+			UIUmbrella umbrella=getUmbrella(tenant,cspm);
 			
 			try {
-				req = new WebUIRequest(tenantUmbrella.get(tenant),servlet_request,servlet_response,spec.getAdminData().getCookieLife(),p);
+				req = new WebUIRequest(umbrella,servlet_request,servlet_response,spec.getAdminData().getCookieLife(),p);
 				serveComposite(tenant, req, sc);
 			} catch (UIException e) {
 				// TODO Auto-generated catch block
@@ -6,7 +6,7 @@
  */
 package org.collectionspace.chain.controller;
 
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -30,7 +30,6 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.TeeInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.fileupload.FileItemHeaders;
@@ -40,6 +39,7 @@ import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.servlet.*;
 import org.collectionspace.chain.csp.persistence.services.RefName.Tools;
 import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.csp.api.persistence.BlobSink;
 import org.collectionspace.csp.api.ui.Operation;
 import org.collectionspace.csp.api.ui.TTYOutputter;
 import org.collectionspace.csp.api.ui.UIException;
@@ -74,6 +74,8 @@ public class WebUIRequest implements UIRequest {
 	private FileItemHeaders contentHeaders; 
 	private String contenttype; 
 	private byte[] bytebody;
+	private InputStream bytebody_stream; // upload not yet read, see getbyteBody
+	private int stream_status=0;
 	private String uploadName;
 	private WebUIUmbrella umbrella;
 	private WebUISession session;
@@ -87,11 +89,13 @@ public class WebUIRequest implements UIRequest {
 			// Create a new file upload handler
 			ServletFileUpload upload = new ServletFileUpload();
 
-			// Parse the request
+			// Parse the request. We stop at the file, leaving it unread in the request stream until
+			// someone asks for it, so that it can be streamed on rather than held in memory. That means
+			// the file must be the last part: see LastPartInputStream.
 			FileItemIterator iter;
 			try {
 				iter = upload.getItemIterator(request);
-				while (iter.hasNext()) {
+				while (bytebody_stream==null && iter.hasNext()) {
 					FileItemStream item = iter.next();
 					String name = item.getFieldName();
 					//InputStream stream = item.openStream();
@@ -104,15 +108,8 @@ public class WebUIRequest implements UIRequest {
 			        // Process the input stream
 						contentHeaders = item.getHeaders();
 						uploadName = item.getName();
-
-			            ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-			            if (item != null) {
-			                InputStream stream = item.openStream();
-				            IOUtils.copy(stream,byteOut);
-				            new TeeInputStream(stream,byteOut);
-			               
-			            }
-			            bytebody = byteOut.toByteArray();
+						contenttype = item.getContentType();
+						bytebody_stream = new LastPartInputStream(item.openStream(),iter);
 					}
 				}
 			} catch (FileUploadException e) {
@@ -131,6 +128,43 @@ public class WebUIRequest implements UIRequest {
 		session=calculateSessionId();
 		
 	}
+	/**
+	 * An upload which fails its last read if any more parts follow it in the request. They can't be
+	 * got at without reading the whole upload first, so would otherwise be silently dropped.
+	 */
+	private static class LastPartInputStream extends FilterInputStream {
+		private FileItemIterator iter;
+
+		LastPartInputStream(InputStream in,FileItemIterator iter) {
+			super(in);
+			this.iter=iter;
+		}
+
+		private int atEnd(int n) throws IOException {
+			if(n==-1 && iter!=null) {
+				FileItemIterator rest=iter;
+				iter=null;
+				try {
+					if(rest.hasNext())
+						throw new IOException("Nothing may follow the file in an upload, but found part \""+rest.next().getFieldName()+"\"");
+				} catch (FileUploadException e) {
+					throw new IOException("Could not read upload",e);
+				}
+			}
+			return n;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return atEnd(super.read());
+		}
+
+		@Override
+		public int read(byte[] b,int off,int len) throws IOException {
+			return atEnd(super.read(b,off,len));
+		}
+	}
+
 	static byte[] streamToBytes(InputStream in) throws IOException{
 		return IOUtils.toByteArray(in);
 	}
@@ -290,6 +324,10 @@ public class WebUIRequest implements UIRequest {
 	}
 
 	private void set_status() {
+		if(stream_status>0) {
+			response.setStatus(stream_status);
+			return;
+		}
 		switch(operation_performed) {
 		case CREATE:
 			response.setStatus(201);
@@ -308,6 +346,21 @@ public class WebUIRequest implements UIRequest {
 		this.cacheMaxAgeSeconds = cacheMaxAgeSeconds;
 	}
 	
+	public void setResponseHeader(String name,String value) {
+		if(!response.isCommitted())
+			response.setHeader(name,value);
+	}
+
+	public String getRequestHeader(String name) {
+		return request.getHeader(name);
+	}
+
+	public void sendNotModified() throws UIException {
+		out_data=null;
+		out_binary_data=null;
+		stream_status=HttpServletResponse.SC_NOT_MODIFIED;
+	}
+
 	private String aWhileAgoAsExpectedByExpiresHeader() {
 		SimpleDateFormat format=new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss zzz");
 		Date a_while_ago=new Date(new Date().getTime()-24*60*60*1000);
@@ -330,7 +383,10 @@ public class WebUIRequest implements UIRequest {
 		try {
 			// Need to handle caching before we deal with the binary output. We have to add headers before
 			// we write all the data. 
-			if(cacheMaxAgeSeconds <= 0) {
+			if(cacheMaxAgeSeconds <= 0 && response.containsHeader("ETag")) {
+				// Versioned: the client may keep it, but must check it's current each time
+				response.addHeader("Cache-Control","no-cache");
+			} else if(cacheMaxAgeSeconds <= 0) {
 				/* By default, we disable caching for now (for IE). We probably want to be cleverer at some point. XXX */
 				response.addHeader("Pragma","no-cache");
 				response.addHeader("Last-Modified",aWhileAgoAsExpectedByExpiresHeader());
@@ -418,6 +474,41 @@ public class WebUIRequest implements UIRequest {
 			response.setHeader("Content-Disposition", contentDisposition);
 		out_binary_data=data;
 	}
+	/**
+	 * Binary content written to the sink goes straight to the servlet output stream. Headers,
+	 * session cookie and status are all committed when the sink is opened.
+	 */
+	@Override
+	public BlobSink getBlobSink() throws UIException {
+		return new BlobSink() {
+			public String getRange() {
+				return request.getHeader("Range");
+			}
+
+			public OutputStream open(int status, String contenttype, String contentDisposition, long length, String contentRange) throws IOException {
+				if(stream_status>0)
+					throw new IOException("Response has already been started");
+				if(contenttype!=null)
+					response.setContentType(contenttype);
+				if(Tools.notEmpty(contentDisposition))
+					response.setHeader("Content-Disposition", contentDisposition);
+				if(length>=0)
+					response.setHeader("Content-Length", Long.toString(length));
+				if(Tools.notEmpty(contentRange))
+					response.setHeader("Content-Range", contentRange);
+				response.setHeader("Accept-Ranges", "bytes");
+				stream_status=status;
+				try {
+					solidify(false);
+				} catch (UIException e) {
+					throw new IOException("Could not start response: "+e.getMessage());
+				}
+				out_stream=response.getOutputStream();
+				return out_stream;
+			}
+		};
+	}
+
 	@Override
 	public void sendJSONResponse(JSONObject data) throws UIException {
 		response.setContentType("text/json;charset=UTF-8");
@@ -435,9 +526,23 @@ public class WebUIRequest implements UIRequest {
 	}
 	@Override
 	public byte[] getbyteBody() throws UIException {
+		if(bytebody==null && bytebody_stream!=null) {
+			try {
+				bytebody=IOUtils.toByteArray(bytebody_stream);
+			} catch (IOException e) {
+				throw new UIException("Could not read upload",e);
+			}
+			bytebody_stream=null;
+		}
 		return bytebody;
 	}
 	@Override
+	public InputStream getbyteBodyStream() throws UIException {
+		InputStream out=bytebody_stream;
+		bytebody_stream=null;
+		return out;
+	}
+	@Override
 	public String getContentType() throws UIException{
 		return contenttype;
 	}
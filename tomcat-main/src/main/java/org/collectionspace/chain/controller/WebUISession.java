@@ -8,9 +8,9 @@ package org.collectionspace.chain.controller;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UISession;
@@ -21,10 +21,13 @@ import org.collectionspace.csp.api.ui.UISession;
  *
  */
 public class WebUISession implements UISession {
-	private boolean old=false;
+	private volatile boolean old=false;
 	private String id;
 	private Random rnd=new Random();
-	private Map<String,Object> data=new HashMap<String,Object>();
+	private final long created=System.currentTimeMillis();
+	private volatile long last_accessed=created;
+	/* Composite requests can touch the same session from several threads */
+	private Map<String,Object> data=new ConcurrentHashMap<String,Object>();
 	
 	private String randomSession() throws UIException {
 		String sessionid=rnd.nextLong()+":"+rnd.nextLong()+":"+System.currentTimeMillis();
@@ -61,6 +64,12 @@ public class WebUISession implements UISession {
 	void setOld() { old=true; }
 	boolean isOld() { return old; }
 	String getID() { return id; }
+	long getCreated() { return created; }
+	long getLastAccessed() { return last_accessed; }
+	void touch(long now) {
+		last_accessed=now;
+		old=true;
+	}
 
 	/**
 	 * remove data from the session HashMap
@@ -80,6 +89,10 @@ public class WebUISession implements UISession {
 	 * Set key value pair in the session HashMap
 	 */
 	public void setValue(String key, Object value) {
+		if(value==null) {
+			data.remove(key);
+			return;
+		}
 		data.put(key,value);
 	}
 }
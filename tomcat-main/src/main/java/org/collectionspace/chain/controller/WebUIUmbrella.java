@@ -6,39 +6,40 @@
  */
 package org.collectionspace.chain.controller;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.collectionspace.chain.csp.webui.main.WebUI;
 import org.collectionspace.csp.api.ui.UIException;
 import org.collectionspace.csp.api.ui.UIUmbrella;
 
 /**
  * Umbrella class for UI App interchange
- * Holds a map of sessions 
- * XXX TODO add in expiry. For now it will take an age for our sessions to impact on memory. - Dan
+ * Holds the tenant's sessions, see SessionStore for expiry and eviction
  * @author csm22
  *
  */
 public class WebUIUmbrella implements UIUmbrella {
-	private Map<String,WebUISession> sessions=new HashMap<String,WebUISession>();
+	private SessionStore sessions;
 	private WebUI ui;
 	
-	public WebUIUmbrella(WebUI ui) { this.ui=ui; }
+	public WebUIUmbrella(WebUI ui) { this(ui,""); }
+
+	public WebUIUmbrella(WebUI ui,String tenant) {
+		this.ui=ui;
+		this.sessions=new SessionStore(tenant);
+		if(ui!=null)
+			ui.setSessionStatistics(sessions);
+	}
 	
 	WebUISession getSession(String in) {
-		WebUISession out=sessions.get(in);
-		if(out==null)
-			return null;
-		out.setOld();
-		return out;
+		return sessions.get(in);
 	}
 	
 	WebUISession createSession() throws UIException {
 		WebUISession out=new WebUISession(this);
-		sessions.put(out.getID(),out);
+		sessions.put(out);
 		return out;
 	}
+
+	public SessionStore getSessionStore() { return sessions; }
 	
 	WebUI getWebUI() { return ui; }
 }
@@ -0,0 +1,128 @@
+package org.collectionspace.chain.controller;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.csp.api.ui.UI;
+import org.collectionspace.csp.api.ui.UIException;
+import org.collectionspace.csp.api.ui.UIRequest;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestCompositeExecutor {
+
+	private static CompositeWebUIRequestPart part(String method,String path) throws Exception {
+		JSONObject query=new JSONObject();
+		query.put("path",path);
+		query.put("method",method);
+		return new CompositeWebUIRequestPart(null,query);
+	}
+
+	/* Echoes the path back, after an optional wait, recording the order parts started in */
+	private static class EchoUI implements UI {
+		List<String> started=Collections.synchronizedList(new ArrayList<String>());
+		CountDownLatch release=new CountDownLatch(0);
+
+		public void serviceRequest(UIRequest ui) throws UIException {
+			String path=ui.getPrincipalPath()[0];
+			started.add(path);
+			if(path.startsWith("wait"))
+				try {
+					release.await(5,TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new UIException("interrupted");
+				}
+			ui.sendUnknown(path,"text/plain",null);
+		}
+	}
+
+	@Test public void testSequentialByDefault() throws Exception {
+		CompositeExecutor composite=new CompositeExecutor("t",0,0);
+		assertFalse(composite.isParallel());
+		EchoUI ui=new EchoUI();
+		Map<String,CompositeWebUIRequestPart> parts=new LinkedHashMap<String,CompositeWebUIRequestPart>();
+		parts.put("z",part("GET","/a"));
+		parts.put("y",part("GET","/b"));
+		Map<String,JSONObject> out=composite.run(ui,parts);
+		assertEquals("[z, y]",out.keySet().toString());
+		assertEquals("a",out.get("z").getString("body"));
+		assertEquals("[a, b]",ui.started.toString());
+	}
+
+	@Test public void testReadsRunTogetherInOrder() throws Exception {
+		CompositeExecutor composite=new CompositeExecutor("t",4,5000);
+		try {
+			final EchoUI ui=new EchoUI();
+			ui.release=new CountDownLatch(1);
+			Map<String,CompositeWebUIRequestPart> parts=new LinkedHashMap<String,CompositeWebUIRequestPart>();
+			parts.put("c",part("GET","/wait1"));
+			parts.put("b",part("GET","/wait2"));
+			parts.put("a",part("GET","/wait3"));
+			// Would wait the full five seconds each if run in turn
+			new Thread() {
+				public void run() {
+					long end=System.currentTimeMillis()+5000;
+					while(ui.started.size()<3 && System.currentTimeMillis()<end)
+						Thread.yield();
+					ui.release.countDown();
+				}
+			}.start();
+			long start=System.currentTimeMillis();
+			Map<String,JSONObject> out=composite.run(ui,parts);
+			assertTrue(System.currentTimeMillis()-start<5000);
+			assertEquals("[c, b, a]",out.keySet().toString());
+			assertEquals("wait1",out.get("c").getString("body"));
+			assertEquals("wait3",out.get("a").getString("body"));
+			assertEquals(200,out.get("a").getInt("status"));
+		} finally {
+			composite.shutdown();
+		}
+	}
+
+	@Test public void testWritesAreBarriers() throws Exception {
+		CompositeExecutor composite=new CompositeExecutor("t",4,5000);
+		try {
+			EchoUI ui=new EchoUI();
+			Map<String,CompositeWebUIRequestPart> parts=new LinkedHashMap<String,CompositeWebUIRequestPart>();
+			parts.put("1",part("GET","/a"));
+			parts.put("2",part("GET","/b"));
+			parts.put("3",part("POST","/c"));
+			parts.put("4",part("GET","/d"));
+			Map<String,JSONObject> out=composite.run(ui,parts);
+			assertEquals("[1, 2, 3, 4]",out.keySet().toString());
+			assertEquals("c",out.get("3").getString("body"));
+			assertEquals(4,ui.started.size());
+			assertEquals("c",ui.started.get(2));
+			assertEquals("d",ui.started.get(3));
+		} finally {
+			composite.shutdown();
+		}
+	}
+
+	@Test public void testDeadline() throws Exception {
+		CompositeExecutor composite=new CompositeExecutor("t",2,200);
+		try {
+			EchoUI ui=new EchoUI();
+			ui.release=new CountDownLatch(1);
+			Map<String,CompositeWebUIRequestPart> parts=new LinkedHashMap<String,CompositeWebUIRequestPart>();
+			parts.put("slow",part("GET","/wait"));
+			parts.put("fast",part("GET","/a"));
+			parts.put("write",part("PUT","/b"));
+			Map<String,JSONObject> out=composite.run(ui,parts);
+			assertEquals("[slow, fast, write]",out.keySet().toString());
+			assertEquals(CompositeExecutor.TIMEOUT_STATUS,out.get("slow").getInt("status"));
+			assertEquals(200,out.get("fast").getInt("status"));
+			assertEquals(CompositeExecutor.TIMEOUT_STATUS,out.get("write").getInt("status"));
+			assertFalse(ui.started.contains("b"));
+		} finally {
+			composite.shutdown();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.collectionspace.chain.controller;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestSessionStore {
+
+	@Test public void testIndexedByTenant() throws Exception {
+		SessionStore a=new SessionStore("a");
+		SessionStore b=new SessionStore("b");
+		WebUISession sa=new WebUISession(null);
+		WebUISession sb=new WebUISession(null);
+		a.put(sa);
+		b.put(sb);
+		assertEquals("a",SessionStore.getTenantForSession(sa.getID()));
+		assertEquals("b",SessionStore.getTenantForSession(sb.getID()));
+		assertSame(sa,a.get(sa.getID()));
+		assertNull(a.get(sb.getID()));
+		a.remove(sa.getID());
+		assertNull(SessionStore.getTenantForSession(sa.getID()));
+		assertNull(a.get(sa.getID()));
+	}
+
+	@Test public void testLRUEviction() throws Exception {
+		SessionStore store=new SessionStore("lru");
+		store.setMaxSessions(2);
+		WebUISession s1=new WebUISession(null);
+		WebUISession s2=new WebUISession(null);
+		WebUISession s3=new WebUISession(null);
+		store.put(s1);
+		store.put(s2);
+		store.get(s1.getID()); // s2 is now least recently used
+		store.put(s3);
+		assertEquals(2,store.getActiveSessions());
+		assertEquals(1,store.getEvictedSessions());
+		assertNotNull(store.get(s1.getID()));
+		assertNull(store.get(s2.getID()));
+		assertNotNull(store.get(s3.getID()));
+		assertNull(SessionStore.getTenantForSession(s2.getID()));
+	}
+
+	@Test public void testExpiry() throws Exception {
+		SessionStore store=new SessionStore("expiry");
+		store.setIdleTimeout(20);
+		WebUISession idle=new WebUISession(null);
+		store.put(idle);
+		Thread.sleep(50);
+		assertNull(store.get(idle.getID()));
+		assertEquals(1,store.getExpiredSessions());
+
+		store.setIdleTimeout(0);
+		store.setAbsoluteTimeout(20);
+		WebUISession old=new WebUISession(null);
+		store.put(old);
+		Thread.sleep(50);
+		assertEquals(1,store.expire());
+		assertEquals(0,store.getActiveSessions());
+		assertNull(SessionStore.getTenantForSession(old.getID()));
+	}
+
+	@Test public void testStatistics() throws Exception {
+		SessionStore store=new SessionStore("stats");
+		store.setMaxSessions(1);
+		store.put(new WebUISession(null));
+		store.put(new WebUISession(null));
+		JSONObject out=store.getStatistics();
+		assertEquals("stats",out.getString("tenant"));
+		assertEquals(1,out.getInt("active"));
+		assertEquals(2,out.getLong("created"));
+		assertEquals(1,out.getLong("evicted"));
+		assertEquals(0,out.getLong("expired"));
+		assertEquals(1,out.getInt("maxSessions"));
+	}
+
+	@Test public void testNullValueRemoves() throws Exception {
+		WebUISession session=new WebUISession(null);
+		session.setValue("key","value");
+		assertEquals("value",session.getValue("key"));
+		session.setValue("key",null);
+		assertNull(session.getValue("key"));
+	}
+}
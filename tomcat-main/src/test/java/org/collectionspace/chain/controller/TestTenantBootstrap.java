@@ -0,0 +1,83 @@
+package org.collectionspace.chain.controller;
+
+import static org.junit.Assert.*;
+
+import org.collectionspace.chain.csp.persistence.services.fake.FakeServices;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mortbay.jetty.servlet.ServletHolder;
+import org.mortbay.jetty.testing.HttpTester;
+import org.mortbay.jetty.testing.ServletTester;
+
+public class TestTenantBootstrap {
+	private static ServletTester jetty;
+
+	@BeforeClass public static void setUp() throws Exception {
+		FakeServices.startIfWanted();
+		jetty=new ServletTester();
+		jetty.setContextPath("/tenant");
+		ServletHolder tenants=jetty.addServlet(TenantServlet.class,"/*");
+		tenants.setInitParameter("bootstrap","true");
+		tenants.setInitParameter("bootstrap-tenants","core");
+		tenants.setInitOrder(1);
+		jetty.addServlet(ReadinessServlet.class,"/ready");
+		jetty.setAttribute("config-filename","default.xml");
+		jetty.start();
+	}
+
+	@AfterClass public static void tearDown() throws Exception {
+		jetty.stop();
+	}
+
+	private HttpTester get(String path) throws Exception {
+		HttpTester request=new HttpTester();
+		HttpTester response=new HttpTester();
+		request.setMethod("GET");
+		request.setHeader("Host","tester");
+		request.setURI("/tenant"+path);
+		request.setVersion("HTTP/1.0");
+		response.parse(jetty.getResponses(request.generate()));
+		return response;
+	}
+
+	private HttpTester ready() throws Exception {
+		return get("/ready");
+	}
+
+	private HttpTester awaitReady() throws Exception {
+		HttpTester out=ready();
+		long deadline=System.currentTimeMillis()+5*60*1000;
+		while(out.getStatus()!=200 && System.currentTimeMillis()<deadline) {
+			assertEquals(503,out.getStatus());
+			Thread.sleep(250);
+			out=ready();
+		}
+		return out;
+	}
+
+	@Test public void testBecomesReady() throws Exception {
+		// Not asked for: the tenant comes up by itself
+		HttpTester out=awaitReady();
+		assertEquals(200,out.getStatus());
+		JSONObject status=new JSONObject(out.getContent());
+		assertTrue(status.getBoolean("ready"));
+		JSONObject core=status.getJSONObject("tenants").getJSONObject("core");
+		assertEquals(TenantBootstrap.READY,core.getString("state"));
+		assertTrue(core.getLong("millis")>=0);
+	}
+
+	@Test public void testUnknownTenant() throws Exception {
+		assertEquals(200,awaitReady().getStatus());
+		// a tenant nobody configured, and /chain without a cookie to say whose
+		get("/nosuchtenant/cataloging/uispec");
+		get("/chain/cataloging/uispec");
+		HttpTester out=ready();
+		assertEquals(200,out.getStatus());
+		JSONObject tenants=new JSONObject(out.getContent()).getJSONObject("tenants");
+		assertFalse(tenants.has("nosuchtenant"));
+		assertFalse(tenants.has(""));
+		assertFalse(TenantBootstrap.isTracked("nosuchtenant"));
+	}
+}
@@ -0,0 +1,85 @@
+package org.collectionspace.chain.controller;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.io.IOUtils;
+import org.collectionspace.csp.api.ui.UIException;
+import org.junit.Test;
+
+public class TestWebUIRequest {
+	private static final String BOUNDARY="----TestWebUIRequest";
+
+	private static String field(String name,String value) {
+		return "--"+BOUNDARY+"\r\nContent-Disposition: form-data; name=\""+name+"\"\r\n\r\n"+value+"\r\n";
+	}
+
+	private static String file(String filename,String type,String data) {
+		return "--"+BOUNDARY+"\r\nContent-Disposition: form-data; name=\"file\"; filename=\""+filename+"\"\r\n"
+				+"Content-Type: "+type+"\r\n\r\n"+data+"\r\n";
+	}
+
+	/* Just enough of a multipart POST for the upload to be parsed */
+	private static WebUIRequest upload(String... parts) throws Exception {
+		StringBuffer body=new StringBuffer();
+		for(String part : parts)
+			body.append(part);
+		body.append("--"+BOUNDARY+"--\r\n");
+		final byte[] data=body.toString().getBytes("UTF-8");
+		final InputStream in=new ByteArrayInputStream(data);
+		final ServletInputStream stream=new ServletInputStream() {
+			@Override
+			public int read() throws IOException {
+				return in.read();
+			}
+		};
+		HttpServletRequest request=(HttpServletRequest)Proxy.newProxyInstance(TestWebUIRequest.class.getClassLoader(),
+				new Class[]{HttpServletRequest.class},new InvocationHandler() {
+			public Object invoke(Object proxy,Method method,Object[] args) {
+				String name=method.getName();
+				if("getMethod".equals(name))
+					return "POST";
+				if("getContentType".equals(name))
+					return "multipart/form-data; boundary="+BOUNDARY;
+				if("getContentLength".equals(name))
+					return data.length;
+				if("getInputStream".equals(name))
+					return stream;
+				return null;
+			}
+		});
+		return new WebUIRequest(new WebUIUmbrella(null,"upload"),request,null,new ArrayList<String>());
+	}
+
+	@Test public void testFileLast() throws Exception {
+		WebUIRequest request=upload(field("before","x"),file("a.png","image/png","picture"));
+		assertEquals("a.png",request.getFileName());
+		assertEquals("image/png",request.getContentType());
+		assertEquals("picture",IOUtils.toString(request.getbyteBodyStream(),"UTF-8"));
+	}
+
+	@Test public void testFieldAfterFile() throws Exception {
+		WebUIRequest request=upload(file("a.png","image/png","picture"),field("after","x"));
+		try {
+			IOUtils.toString(request.getbyteBodyStream(),"UTF-8");
+			fail("the field after the file would have been lost");
+		} catch (IOException x) {
+			assertTrue(x.getMessage(),x.getMessage().contains("\"after\""));
+		}
+		request=upload(file("a.png","image/png","picture"),field("after","x"));
+		try {
+			request.getbyteBody();
+			fail("the field after the file would have been lost");
+		} catch (UIException x) {}
+	}
+}
@@ -20,6 +20,7 @@ import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
 import org.collectionspace.chain.controller.TenantServlet;
+import org.collectionspace.chain.csp.persistence.services.fake.FakeServices;
 import org.collectionspace.chain.storage.UTF8SafeHttpTester;
 import org.collectionspace.chain.util.json.JSONUtils;
 import org.json.JSONArray;
@@ -132,6 +133,7 @@ public class TestBase extends TestData {
 	}
 	public  ServletTester setupJetty(String tenant, JSONObject user, Boolean isUTF8, String configfile) throws Exception {
 		String base = "";
+		FakeServices.startIfWanted();
 				
 		ServletTester tester = new ServletTester();
 		tester.setContextPath("/tenant");
@@ -0,0 +1,209 @@
+package org.collectionspace.chain.csp.webui.authorities;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.collectionspace.chain.csp.persistence.TestBase;
+import org.collectionspace.chain.csp.schema.Instance;
+import org.collectionspace.chain.csp.schema.Option;
+import org.collectionspace.chain.csp.schema.Record;
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.csp.api.persistence.ExistException;
+import org.collectionspace.csp.api.persistence.Storage;
+import org.collectionspace.csp.api.persistence.UnderlyingStorageException;
+import org.collectionspace.csp.api.persistence.UnimplementedException;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.mortbay.jetty.testing.ServletTester;
+
+public class TestTermLoader {
+	private static TestBase tester = new TestBase();
+	static ServletTester jetty;
+	static {
+		try{
+			jetty=tester.setupJetty();
+			}
+		catch(Exception ex){
+
+		}
+	}
+
+	@AfterClass public static void testStop() throws Exception {
+		tester.stopJetty(jetty);
+	}
+
+	/* Just enough of the services for a term list: terms by csid, listed a page at a time */
+	private static class Terms implements Storage {
+		private Map<String,String> terms=new LinkedHashMap<String,String>();
+		private Set<String> failing=new HashSet<String>();
+		private int next=0,writes=0;
+
+		synchronized void add(String shortIdentifier) {
+			terms.put("csid"+(next++),shortIdentifier);
+		}
+
+		synchronized Set<String> shortIdentifiers() {
+			return new HashSet<String>(terms.values());
+		}
+
+		public synchronized JSONObject getPathsJSON(String rootPath,JSONObject restrictions) throws UnderlyingStorageException {
+			try {
+				int pageSize=restrictions.getInt("pageSize");
+				int pageNum=restrictions.getInt("pageNum");
+				List<String> csids=new ArrayList<String>(terms.keySet());
+				List<String> page=csids.subList(Math.min(csids.size(),pageSize*pageNum),Math.min(csids.size(),pageSize*(pageNum+1)));
+				JSONObject pagination=new JSONObject();
+				pagination.put("totalItems",csids.size());
+				pagination.put("pageSize",pageSize);
+				pagination.put("pageNum",pageNum);
+				pagination.put("itemsInPage",page.size());
+				JSONObject out=new JSONObject();
+				out.put("listItems",page.toArray(new String[0]));
+				out.put("pagination",pagination);
+				return out;
+			} catch(Exception e) {
+				throw new UnderlyingStorageException("Bad listing",e);
+			}
+		}
+
+		public synchronized JSONObject retrieveJSON(String filePath,JSONObject restrictions) throws ExistException, UnderlyingStorageException {
+			String[] parts=filePath.split("/");
+			String shortIdentifier=terms.get(parts[parts.length-2]);
+			if(shortIdentifier==null)
+				throw new ExistException("No such term "+filePath);
+			try {
+				JSONObject out=new JSONObject();
+				out.put("shortIdentifier",shortIdentifier);
+				return out;
+			} catch(Exception e) {
+				throw new UnderlyingStorageException("Bad term",e);
+			}
+		}
+
+		public synchronized String autocreateJSON(String filePath,JSONObject jsonObject,JSONObject restrictions) throws UnderlyingStorageException {
+			String shortIdentifier=jsonObject.optString("shortIdentifier");
+			if(failing.contains(shortIdentifier))
+				throw new UnderlyingStorageException("Cannot create "+shortIdentifier,500,filePath);
+			writes++;
+			add(shortIdentifier);
+			return "csid"+(next-1);
+		}
+
+		public synchronized void deleteJSON(String filePath) throws ExistException {
+			String[] parts=filePath.split("/");
+			if(terms.remove(parts[parts.length-1])==null)
+				throw new ExistException("No such term "+filePath);
+			writes++;
+		}
+
+		public void updateJSON(String filePath,JSONObject jsonObject,JSONObject restrictions) throws UnimplementedException {
+			throw new UnimplementedException("Not needed");
+		}
+
+		public void createJSON(String filePath,JSONObject jsonObject) throws UnimplementedException {
+			throw new UnimplementedException("Not needed");
+		}
+
+		public String[] getPaths(String rootPath,JSONObject restrictions) throws UnimplementedException {
+			throw new UnimplementedException("Not needed");
+		}
+
+		public void transitionWorkflowJSON(String filePath,String workflowTransition) throws UnimplementedException {
+			throw new UnimplementedException("Not needed");
+		}
+	}
+
+	private static TermLoader.StorageSource source(final Storage storage) {
+		return new TermLoader.StorageSource() {
+			public Storage getStorage() {
+				return storage;
+			}
+		};
+	}
+
+	/* A term list with a few terms, all with shortIdentifiers */
+	private static Instance termList(Spec spec) {
+		for(Instance n : spec.getRecord("vocab").getAllInstances()) {
+			Option[] opts=n.getAllOptions();
+			if(opts.length<3)
+				continue;
+			boolean named=true;
+			for(Option opt : opts)
+				if(opt.getID()==null || opt.getID().equals(""))
+					named=false;
+			if(named)
+				return n;
+		}
+		fail("No suitable term list");
+		return null;
+	}
+
+	private static Set<String> ids(Option[] opts) {
+		Set<String> out=new HashSet<String>();
+		for(Option opt : opts)
+			out.add(opt.getID());
+		return out;
+	}
+
+	@Test public void testDiff() throws Exception {
+		Spec spec=tester.getSpec(jetty);
+		Instance n=termList(spec);
+		Record r=n.getRecord();
+		Option[] opts=n.getAllOptions();
+		Terms storage=new Terms();
+		storage.add(opts[0].getID());
+		storage.add("stale");
+		TermLoader.Report report=new TermLoader(4).load(storage,source(storage),r,n,opts,false,null);
+		assertTrue(report.success());
+		assertEquals(1,report.getExisting());
+		assertEquals(ids(opts).size()-1,report.getCreated());
+		assertEquals(1,report.getDeleted());
+		assertEquals(ids(opts),storage.shortIdentifiers());
+	}
+
+	@Test public void testAppend() throws Exception {
+		Spec spec=tester.getSpec(jetty);
+		Instance n=termList(spec);
+		Option[] opts=n.getAllOptions();
+		Terms storage=new Terms();
+		storage.add("kept");
+		TermLoader.Report report=new TermLoader(1).load(storage,null,n.getRecord(),n,opts,true,null);
+		assertEquals(0,report.getDeleted());
+		assertTrue(storage.shortIdentifiers().contains("kept"));
+	}
+
+	@Test public void testRestart() throws Exception {
+		Spec spec=tester.getSpec(jetty);
+		Instance n=termList(spec);
+		Option[] opts=n.getAllOptions();
+		Terms storage=new Terms();
+		String bad=opts[1].getID();
+		storage.failing.add(bad);
+		TermLoader.Report report=new TermLoader(4).load(storage,source(storage),n.getRecord(),n,opts,false,null);
+		// The others go in regardless
+		assertFalse(report.success());
+		assertEquals(1,report.getErrors().size());
+		assertTrue(report.getErrors().containsKey(bad));
+		assertEquals(ids(opts).size()-1,report.getCreated());
+		try {
+			report.rethrow();
+			fail("should rethrow");
+		} catch(UnderlyingStorageException e) {}
+		// Again, and only the failed term is sent
+		storage.failing.clear();
+		int writes=storage.writes;
+		report=new TermLoader(4).load(storage,source(storage),n.getRecord(),n,opts,false,null);
+		assertTrue(report.success());
+		assertEquals(1,report.getCreated());
+		assertEquals(ids(opts).size()-1,report.getExisting());
+		assertEquals(writes+1,storage.writes);
+		assertEquals(ids(opts),storage.shortIdentifiers());
+	}
+}
@@ -0,0 +1,302 @@
+package org.collectionspace.chain.csp.webui.main;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.collectionspace.chain.csp.persistence.TestBase;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.mortbay.jetty.LocalConnector;
+import org.mortbay.jetty.testing.HttpTester;
+import org.mortbay.jetty.testing.ServletTester;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hammers routes from many threads at once, each with its own connector so requests really are
+ * concurrent, and checks every response is the one that request should get. Handlers are shared
+ * between requests, so any per-request state kept in them shows up here as a wrong answer.
+ */
+public class TestConcurrentRoutes {
+	private static final Logger log=LoggerFactory.getLogger(TestConcurrentRoutes.class);
+	private static final int THREADS=16;
+	private static final int ROUNDS=10;
+	private static final String[] ROUTES={
+		"/cataloging/uispec",
+		"/cataloging/uischema",
+		"/cataloging-search/uispec",
+		"/cataloging-search/uischema",
+		"/intake/uispec",
+		"/intake-search/uischema",
+		"/acquisition/uischema",
+		"/movement/uispec",
+		"/media/uischema",
+		"/person/uispec",
+		"/person/uischema",
+		"/recordtypes/uischema",
+		"/recordlist/uischema",
+	};
+
+	private static TestBase tester = new TestBase();
+	static ServletTester jetty;
+	static {
+		try{
+			jetty=tester.setupJetty();
+			}
+		catch(Exception ex){
+
+		}
+	}
+
+	@AfterClass public static void testStop() throws Exception {
+		tester.stopJetty(jetty);
+	}
+
+	private static HttpTester request(LocalConnector connector,String method,String path,String data) throws Exception {
+		HttpTester request = new HttpTester();
+		HttpTester response = new HttpTester();
+		request.setMethod(method);
+		request.setHeader("Host", "tester");
+		request.setURI("/tenant/core"+path);
+		request.setVersion("HTTP/1.0");
+		if (tester.cookie != null)
+			request.addHeader("Cookie", tester.cookie);
+		if (data != null)
+			request.setContent(data);
+		response.parse(jetty.getResponses(request.generate(),connector));
+		return response;
+	}
+
+	private static HttpTester get(LocalConnector connector,String path) throws Exception {
+		return request(connector,"GET",path,null);
+	}
+
+	/* One thread's share of the work, with its own connector */
+	private interface Task {
+		void run(LocalConnector connector,int thread) throws Exception;
+	}
+
+	/* Run the task on every thread at once, failing with the first thread to fail */
+	private static void hammer(String what,final Task task) throws Exception {
+		ExecutorService pool=Executors.newFixedThreadPool(THREADS);
+		List<Future<Object>> results=new ArrayList<Future<Object>>();
+		long start=System.currentTimeMillis();
+		for(int t=0;t<THREADS;t++) {
+			final int thread=t;
+			results.add(pool.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					task.run(jetty.createLocalConnector(),thread);
+					return null;
+				}
+			}));
+		}
+		try {
+			for(Future<Object> f : results)
+				f.get(5,TimeUnit.MINUTES);
+		} finally {
+			pool.shutdown();
+		}
+		log.info(what+" from "+THREADS+" threads in "+(System.currentTimeMillis()-start)+"ms");
+	}
+
+	private static String create(String path,JSONObject fields) throws Exception {
+		HttpTester out=tester.POSTData(path,tester.makeRequest(fields),jetty);
+		return out.getHeader("Location");
+	}
+
+	private static int relations(String id) throws Exception {
+		JSONObject relations=new JSONObject(tester.GETData(id,jetty).getContent()).optJSONObject("relations");
+		JSONArray cataloging=relations==null?null:relations.optJSONArray("cataloging");
+		return cataloging==null?0:cataloging.length();
+	}
+
+	@Test public void testConcurrentReads() throws Exception {
+		final Map<String,String> expected=new HashMap<String,String>();
+		LocalConnector own=jetty.createLocalConnector();
+		for(String route : ROUTES) {
+			HttpTester out=get(own,route);
+			assertEquals("GET "+route,200,out.getStatus());
+			expected.put(route,out.getContent());
+		}
+		ExecutorService pool=Executors.newFixedThreadPool(THREADS);
+		List<Future<Integer>> results=new ArrayList<Future<Integer>>();
+		long start=System.currentTimeMillis();
+		for(int t=0;t<THREADS;t++) {
+			final int offset=t;
+			results.add(pool.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					LocalConnector connector=jetty.createLocalConnector();
+					int done=0;
+					for(int i=0;i<ROUNDS*ROUTES.length;i++) {
+						// Each thread goes round the routes from a different place, so they overlap
+						String route=ROUTES[(i+offset)%ROUTES.length];
+						HttpTester out=get(connector,route);
+						assertEquals("GET "+route,200,out.getStatus());
+						assertEquals("GET "+route+" under load",expected.get(route),out.getContent());
+						done++;
+					}
+					return done;
+				}
+			}));
+		}
+		int total=0;
+		for(Future<Integer> f : results)
+			total+=f.get(5,TimeUnit.MINUTES);
+		pool.shutdown();
+		assertEquals(THREADS*ROUNDS*ROUTES.length,total);
+		log.info(total+" concurrent requests in "+(System.currentTimeMillis()-start)+"ms");
+	}
+
+	@Test public void testServicesSchema() throws Exception {
+		final String[][] sections={
+			{"common","targetNamespace=\"http://collectionspace.org/services/collectionobject\""},
+			{"collectionspace_core","targetNamespace=\"http://collectionspace.org/collectionspace_core/\""},
+		};
+		hammer("service schemas",new Task() {
+			public void run(LocalConnector connector,int thread) throws Exception {
+				for(int i=0;i<ROUNDS;i++) {
+					// Each request asks for its own section, which must not become every later request's
+					String[] section=sections[(i+thread)%sections.length];
+					HttpTester out=get(connector,"/cataloging/serviceschema/"+section[0]);
+					assertEquals(200,out.getStatus());
+					assertTrue("serviceschema/"+section[0],out.getContent().contains(section[1]));
+				}
+			}
+		});
+	}
+
+	@Test public void testRecordReadAndTraverse() throws Exception {
+		final List<String> ids=new ArrayList<String>();
+		for(int t=0;t<THREADS;t++) {
+			JSONObject fields=new JSONObject();
+			fields.put("objectNumber","concurrent-"+t);
+			fields.put("distinguishingFeatures","concurrentroutes");
+			ids.add(create("/cataloging/",fields));
+		}
+		try {
+			hammer("record reads",new Task() {
+				public void run(LocalConnector connector,int thread) throws Exception {
+					for(int i=0;i<ROUNDS;i++) {
+						HttpTester out=get(connector,ids.get(thread));
+						assertEquals(200,out.getStatus());
+						assertEquals("concurrent-"+thread,new JSONObject(out.getContent()).getJSONObject("fields").getString("objectNumber"));
+					}
+				}
+			});
+
+			HttpTester out=tester.GETData("/cataloging/search?query=concurrentroutes&pageNum=0&pageSize=5",jetty);
+			final String token=new JSONObject(out.getContent()).getJSONObject("pagination").getString("traverser");
+			final Map<Integer,String> expected=new HashMap<Integer,String>();
+			LocalConnector own=jetty.createLocalConnector();
+			int total=new JSONObject(get(own,"/adjacentRecords/"+token+"/0").getContent()).getInt("total");
+			assertTrue(total>=THREADS);
+			for(int i=0;i<total;i++)
+				expected.put(i,get(own,"/adjacentRecords/"+token+"/"+i).getContent());
+			final int positions=total;
+			hammer("record traversals",new Task() {
+				public void run(LocalConnector connector,int thread) throws Exception {
+					for(int i=0;i<ROUNDS;i++) {
+						// the threads are on different pages of the one search
+						int index=(thread*ROUNDS+i)%positions;
+						HttpTester out=get(connector,"/adjacentRecords/"+token+"/"+index);
+						assertEquals(200,out.getStatus());
+						JSONObject adjacent=new JSONObject(out.getContent());
+						assertEquals(index,adjacent.getInt("index"));
+						assertEquals("adjacentRecords/"+index,expected.get(index),out.getContent());
+					}
+				}
+			});
+		} finally {
+			for(String id : ids)
+				tester.DELETEData(id,jetty);
+		}
+	}
+
+	@Test public void testRelateDelete() throws Exception {
+		final List<String> sources=new ArrayList<String>();
+		final List<String> targets=new ArrayList<String>();
+		final List<String> relations=new ArrayList<String>();
+		for(int t=0;t<THREADS;t++) {
+			JSONObject fields=new JSONObject();
+			fields.put("objectNumber","relate-"+t);
+			String[] src=create("/cataloging/",fields).split("/");
+			String[] dst=create("/cataloging/",fields).split("/");
+			JSONObject relation=new JSONObject();
+			relation.put("source",new JSONObject().put("csid",src[2]).put("recordtype",src[1]));
+			relation.put("target",new JSONObject().put("csid",dst[2]).put("recordtype",dst[1]));
+			relation.put("type","affects");
+			relation.put("one-way",false);
+			HttpTester out=tester.POSTData("/relationships",relation,jetty);
+			sources.add("/"+src[1]+"/"+src[2]);
+			targets.add("/"+dst[1]+"/"+dst[2]);
+			relations.add(new JSONObject(out.getContent()).getString("csid"));
+		}
+		try {
+			hammer("relation deletes",new Task() {
+				public void run(LocalConnector connector,int thread) throws Exception {
+					// half the requests ask for one way only: the others must still delete both
+					boolean oneway=(thread%2==0);
+					HttpTester out=request(connector,"DELETE","/relationships/"+relations.get(thread)+"?one-way="+oneway,null);
+					assertEquals(200,out.getStatus());
+				}
+			});
+			for(int t=0;t<THREADS;t++) {
+				assertEquals("forward relation "+t,0,relations(sources.get(t)));
+				assertEquals("reverse relation "+t,t%2==0?1:0,relations(targets.get(t)));
+			}
+		} finally {
+			for(int t=0;t<THREADS;t++) {
+				tester.DELETEData(sources.get(t),jetty);
+				tester.DELETEData(targets.get(t),jetty);
+			}
+		}
+	}
+
+	@Test public void testTermListCreate() throws Exception {
+		final String[] created=new String[THREADS];
+		try {
+			hammer("term list creates",new Task() {
+				public void run(LocalConnector connector,int thread) throws Exception {
+					JSONObject fields=new JSONObject(tester.getResourceString("termlistCreate.json"));
+					fields.put("displayName","Concurrent List "+thread);
+					fields.put("shortIdentifier","concurrentlist"+thread);
+					JSONArray terms=fields.getJSONArray("terms");
+					for(int i=0;i<terms.length();i++)
+						terms.getJSONObject(i).put("shortIdentifier","concurrent"+thread+"term"+i);
+					HttpTester out=request(connector,"POST","/termlist/",tester.makeRequest(fields).toString());
+					assertEquals(201,out.getStatus());
+					created[thread]=out.getHeader("Location");
+					JSONObject back=new JSONObject(out.getContent()).getJSONObject("fields");
+					assertEquals("Concurrent List "+thread,back.getString("displayName"));
+					assertEquals("concurrentlist"+thread,back.getString("shortIdentifier"));
+				}
+			});
+		} finally {
+			for(String id : created) {
+				if(id!=null)
+					tester.DELETEData(id,jetty);
+			}
+		}
+	}
+
+	@Test public void testInitialise() throws Exception {
+		hammer("authority initialisations",new Task() {
+			public void run(LocalConnector connector,int thread) throws Exception {
+				HttpTester out=get(connector,TestBase.AUTHS_INIT_PATH);
+				assertEquals(200,out.getStatus());
+				assertFalse(out.getContent(),out.getContent().contains("*** ERROR ***"));
+			}
+		});
+	}
+}
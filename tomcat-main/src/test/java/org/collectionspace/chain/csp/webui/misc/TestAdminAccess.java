@@ -0,0 +1,65 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.misc;
+
+import static org.junit.Assert.*;
+
+import org.collectionspace.chain.csp.persistence.TestBase;
+import org.collectionspace.chain.csp.persistence.services.fake.FakeServices;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.mortbay.jetty.testing.HttpTester;
+import org.mortbay.jetty.testing.ServletTester;
+
+/**
+ * The /admin pages are only for administrators
+ */
+public class TestAdminAccess {
+	private static TestBase tester = new TestBase();
+	static ServletTester jetty;
+	static {
+		try{
+			// the default user administers the tenant, as with real services
+			FakeServices fake=FakeServices.startIfWanted();
+			if(fake!=null)
+				fake.grant("authorization/roles");
+			jetty=tester.setupJetty();
+			}
+		catch(Exception ex){
+
+		}
+	}
+
+	@AfterClass public static void testStop() throws Exception {
+		tester.stopJetty(jetty);
+	}
+
+	/* As someone who has not logged in */
+	private HttpTester anonymous(String path) throws Exception {
+		return new TestBase().jettyDo(jetty,"GET","/tenant/core"+path,null);
+	}
+
+	@Test public void testConnectionPool() throws Exception {
+		assertEquals(401,anonymous("/admin/connectionpool").getStatus());
+		HttpTester out=tester.GETData("/admin/connectionpool",jetty);
+		assertTrue(new JSONObject(out.getContent()).length()>0);
+	}
+
+	@Test public void testSlowRequests() throws Exception {
+		assertEquals(401,anonymous("/admin/slowrequests").getStatus());
+		HttpTester out=tester.GETData("/admin/slowrequests",jetty);
+		assertTrue(new JSONObject(out.getContent()).has("requests"));
+	}
+
+	@Test public void testSessions() throws Exception {
+		assertEquals(401,anonymous("/admin/sessions").getStatus());
+		HttpTester out=tester.GETData("/admin/sessions",jetty);
+		// ours, at least
+		assertTrue(new JSONObject(out.getContent()).getInt("active")>0);
+	}
+}
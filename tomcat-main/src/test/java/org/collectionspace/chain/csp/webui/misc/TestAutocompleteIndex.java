@@ -0,0 +1,76 @@
+package org.collectionspace.chain.csp.webui.misc;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestAutocompleteIndex {
+
+	private static AutocompleteIndex.Term term(String csid,String... names) {
+		return new AutocompleteIndex.Term(csid,"urn:cspace:name("+csid+")'"+names[0]+"'",names,"person","project","person");
+	}
+
+	private static AutocompleteIndex.Terms terms() {
+		AutocompleteIndex.Terms out=new AutocompleteIndex.Terms();
+		out.put(term("1","John Smith","Smith, John"));
+		out.put(term("2","Jane Smithson"));
+		out.put(term("3","Émile Zola"));
+		out.put(term("4","Mary-Jane Doe"));
+		return out;
+	}
+
+	@Test public void testAnywhere() throws Exception {
+		AutocompleteIndex.Terms t=terms();
+		List<AutocompleteIndex.Term> got=t.query("smi",0,0);
+		assertEquals(2,got.size());
+		// Each term only once, even though both of John Smith's names match
+		assertEquals(1,t.query("john",0,0).size());
+		assertEquals(2,t.query("jane",0,0).size());
+		// Not just at the start of words, as the services match
+		assertEquals(2,t.query("mith",0,0).size());
+		assertEquals("4",t.query("y-j",0,0).get(0).getCsid());
+		assertEquals(0,t.query("smithy",0,0).size());
+	}
+
+	@Test public void testNormalised() throws Exception {
+		AutocompleteIndex.Terms t=terms();
+		assertEquals("3",t.query("ÉMILE",0,0).get(0).getCsid());
+		assertEquals("3",t.query(" émile z ",0,0).get(0).getCsid());
+		// Only case is ignored, as by the services
+		assertEquals(0,t.query("emile",0,0).size());
+	}
+
+	@Test public void testOrder() throws Exception {
+		AutocompleteIndex.Terms t=terms();
+		List<AutocompleteIndex.Term> got=t.query("j",0,0);
+		assertEquals(3,got.size());
+		assertEquals("2",got.get(0).getCsid());
+		assertEquals("1",got.get(1).getCsid());
+		assertEquals("4",got.get(2).getCsid());
+	}
+
+	@Test public void testPaging() throws Exception {
+		AutocompleteIndex.Terms t=terms();
+		assertEquals(4,t.query("",0,0).size());
+		assertEquals(3,t.query("",3,0).size());
+		assertEquals(1,t.query("",3,1).size());
+	}
+
+	@Test public void testUpdateAndRemove() throws Exception {
+		AutocompleteIndex.Terms t=terms();
+		t.put(term("2","Jane Jones"));
+		assertEquals(1,t.query("smi",0,0).size());
+		assertEquals("2",t.query("jones",0,0).get(0).getCsid());
+		t.remove("1");
+		assertEquals(0,t.query("smi",0,0).size());
+		assertEquals(3,t.size());
+	}
+
+	@Test public void testJSON() throws Exception {
+		AutocompleteIndex.Term t=term("1","John Smith");
+		assertEquals("urn:cspace:name(1)",t.toJSON().getString("baseUrn"));
+		assertEquals("John Smith",t.toJSON().getJSONArray("displayNames").getString(0));
+	}
+}
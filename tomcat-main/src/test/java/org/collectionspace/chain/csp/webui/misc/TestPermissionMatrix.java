@@ -0,0 +1,112 @@
+package org.collectionspace.chain.csp.webui.misc;
+
+import static org.junit.Assert.*;
+
+import org.collectionspace.chain.csp.persistence.TestBase;
+import org.collectionspace.chain.csp.schema.Instance;
+import org.collectionspace.chain.csp.schema.Record;
+import org.collectionspace.chain.csp.schema.Spec;
+import org.collectionspace.chain.csp.webui.main.WebMethod;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.mortbay.jetty.testing.ServletTester;
+
+public class TestPermissionMatrix {
+	private static TestBase tester = new TestBase();
+	static ServletTester jetty;
+	static {
+		try{
+			jetty=tester.setupJetty();
+			}
+		catch(Exception ex){
+
+		}
+	}
+
+	@AfterClass public static void testStop() throws Exception {
+		tester.stopJetty(jetty);
+	}
+
+	private static JSONObject perm(String resource,String actionGroup) throws Exception {
+		JSONObject out=new JSONObject();
+		out.put("resourceName",resource);
+		out.put("actionGroup",actionGroup);
+		return out;
+	}
+
+	private static JSONObject accountperms(JSONObject... perms) throws Exception {
+		JSONObject account=new JSONObject();
+		account.put("accountId","1234");
+		account.put("userId","test@example.org");
+		account.put("tenantId","1");
+		JSONArray permission=new JSONArray();
+		for(JSONObject p : perms)
+			permission.put(p);
+		JSONObject out=new JSONObject();
+		out.put("account",account);
+		out.put("permission",permission);
+		return out;
+	}
+
+	private static String workflow(Record r,String transition) {
+		return "/"+r.getID()+WebMethod.WORKFLOW_SUB_RESOURCE+transition;
+	}
+
+	@Test public void testMerge() throws Exception {
+		Spec spec=tester.getSpec(jetty);
+		PermissionMatrix matrix=new PermissionMatrix(spec);
+		Record intake=spec.getRecordByWebUrl("intake");
+		Record movement=spec.getRecordByWebUrl("movement");
+		Record media=spec.getRecordByWebUrl("media");
+		PermissionMatrix.Grant grant=matrix.compile(accountperms(
+			perm(intake.getID(),"RL"),
+			perm(intake.getID(),"CU"),
+			// Workflow delete on its own means everything
+			perm(workflow(movement,"delete"),"CRUDL"),
+			// but only adds delete to what is already there
+			perm(media.getID(),"RL"),
+			perm(workflow(media,"delete"),"RUL"),
+			// and is ignored if the transition can't be written
+			perm(workflow(intake,"lock"),"RL"),
+			perm(workflow(intake,"sometransition"),"CRUDL")));
+		assertEquals(PermissionMatrix.PRESENT|PermissionMatrix.CREATE|PermissionMatrix.READ|PermissionMatrix.UPDATE|PermissionMatrix.LIST,matrix.get(grant,"intake"));
+		assertEquals(PermissionMatrix.PRESENT|PermissionMatrix.CRUDL,matrix.get(grant,"movement"));
+		assertEquals(PermissionMatrix.PRESENT|PermissionMatrix.READ|PermissionMatrix.LIST|PermissionMatrix.DELETE,matrix.get(grant,"media"));
+		// Records nobody mentioned are there with no verbs
+		assertEquals(PermissionMatrix.PRESENT,matrix.get(grant,"cataloging"));
+		assertTrue(matrix.owns(grant));
+		assertFalse(new PermissionMatrix(spec).owns(grant));
+		assertEquals("1234",grant.getCsid());
+		assertEquals("test@example.org",grant.getScreenName());
+	}
+
+	@Test public void testJSON() throws Exception {
+		Spec spec=tester.getSpec(jetty);
+		PermissionMatrix matrix=new PermissionMatrix(spec);
+		Record intake=spec.getRecordByWebUrl("intake");
+		JSONObject out=matrix.toJSON(matrix.compile(accountperms(perm(intake.getID(),"LRC"))));
+		JSONArray verbs=out.getJSONArray("intake");
+		assertEquals(3,verbs.length());
+		assertEquals("create",verbs.getString(0));
+		assertEquals("read",verbs.getString(1));
+		assertEquals("list",verbs.getString(2));
+		for(Record r : spec.getAllRecords())
+			assertTrue(r.getWebURL(),out.has(r.getWebURL()));
+		// No permissions at all means no roles
+		assertNull(matrix.compile(new JSONObject()));
+	}
+
+	@Test public void testAuthorityInstances() throws Exception {
+		Spec spec=tester.getSpec(jetty);
+		PermissionMatrix matrix=new PermissionMatrix(spec);
+		for(Record r : spec.getAllRecords()) {
+			if(!r.isType("authority") || r.getWebURL().equals("vocab"))
+				continue;
+			PermissionMatrix.Grant grant=matrix.compile(accountperms(perm(r.getID(),"RL")));
+			for(Instance ins : r.getAllInstances())
+				assertEquals(ins.getID(),matrix.get(grant,r.getWebURL()),matrix.get(grant,ins.getID()));
+		}
+	}
+}
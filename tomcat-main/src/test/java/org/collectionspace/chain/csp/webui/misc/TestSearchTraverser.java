@@ -0,0 +1,116 @@
+package org.collectionspace.chain.csp.webui.misc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.collectionspace.csp.api.ui.UISession;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestSearchTraverser {
+
+	private static JSONArray page(int page,int items) throws Exception {
+		JSONArray out=new JSONArray();
+		for(int i=0;i<items;i++) {
+			JSONObject item=new JSONObject();
+			item.put("csid","csid-"+(page*10+i));
+			out.put(item);
+		}
+		return out;
+	}
+
+	private static SearchTraverser traverser() throws Exception {
+		return new SearchTraverser("intake","","items",new JSONObject("{\"pageNum\":0}"),25,10,1);
+	}
+
+	@Test public void testWindow() throws Exception {
+		SearchTraverser t=traverser();
+		t.setPage(0,page(0,10));
+		assertEquals("csid-9",t.getItem(9).getString("csid"));
+		assertNull(t.getItem(10));
+		t.setPage(1,page(1,10));
+		t.setPage(2,page(2,5));
+		// Only the last two pages of mini-records are kept
+		assertNull(t.getItem(0));
+		assertNull(t.getItem(9));
+		assertEquals("csid-10",t.getItem(10).getString("csid"));
+		assertEquals("csid-24",t.getItem(24).getString("csid"));
+		assertNull(t.getItem(25));
+	}
+
+	@Test public void testRestrictionCopied() throws Exception {
+		SearchTraverser t=traverser();
+		t.getRestriction().put("pageNum",2);
+		assertEquals(0,t.getRestriction().getInt("pageNum"));
+	}
+
+	@Test public void testStoreLRU() throws Exception {
+		SearchTraverser.Store store=new SearchTraverser.Store(2);
+		store.put("a",traverser());
+		store.put("b",traverser());
+		store.get("a");
+		store.put("c",traverser());
+		assertEquals(2,store.size());
+		assertNotNull(store.get("a"));
+		assertNull(store.get("b"));
+		assertNotNull(store.get("c"));
+	}
+
+	/* A session slow enough to look in that concurrent requests would both find nothing there */
+	private static class SlowSession implements UISession {
+		private final Map<String,Object> values=new HashMap<String,Object>();
+
+		public Object getValue(String key) {
+			Object out;
+			synchronized(values) {
+				out=values.get(key);
+			}
+			try {
+				Thread.sleep(5);
+			} catch(InterruptedException e) {}
+			return out;
+		}
+
+		public void setValue(String key,Object value) {
+			synchronized(values) {
+				values.put(key,value);
+			}
+		}
+
+		public void deleteValue(String key) {
+			synchronized(values) {
+				values.remove(key);
+			}
+		}
+	}
+
+	@Test public void testStoreShared() throws Exception {
+		final UISession session=new SlowSession();
+		final CountDownLatch go=new CountDownLatch(1);
+		ExecutorService pool=Executors.newFixedThreadPool(8);
+		List<Future<SearchTraverser.Store>> stores=new ArrayList<Future<SearchTraverser.Store>>();
+		for(int i=0;i<8;i++) {
+			stores.add(pool.submit(new Callable<SearchTraverser.Store>() {
+				public SearchTraverser.Store call() throws Exception {
+					go.await();
+					return SearchTraverser.getStore(session,5);
+				}
+			}));
+		}
+		go.countDown();
+		SearchTraverser.Store first=stores.get(0).get();
+		for(Future<SearchTraverser.Store> f : stores)
+			assertSame(first,f.get());
+		pool.shutdown();
+	}
+}
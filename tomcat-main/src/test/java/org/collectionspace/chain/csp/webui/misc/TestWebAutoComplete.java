@@ -0,0 +1,25 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.csp.webui.misc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestWebAutoComplete {
+	@Test public void testPaging() {
+		assertEquals("20",WebAutoComplete.page("20",1));
+		assertEquals("0",WebAutoComplete.page(" 0 ",0));
+		assertNull(WebAutoComplete.page(null,1));
+		// bad arguments fall back to the defaults, rather than failing the request
+		assertNull(WebAutoComplete.page("ten",1));
+		assertNull(WebAutoComplete.page("",0));
+		assertNull(WebAutoComplete.page("0",1));
+		assertNull(WebAutoComplete.page("-1",0));
+		assertNull(WebAutoComplete.page("99999999999",1));
+	}
+}
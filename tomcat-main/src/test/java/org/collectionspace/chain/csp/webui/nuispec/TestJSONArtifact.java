@@ -0,0 +1,29 @@
+package org.collectionspace.chain.csp.webui.nuispec;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestJSONArtifact {
+
+	@Test public void testStableETag() throws Exception {
+		JSONArtifact a=new JSONArtifact(new JSONObject("{\"a\":\"b\"}"));
+		JSONArtifact b=new JSONArtifact(new JSONObject("{\"a\":\"b\"}"));
+		JSONArtifact c=new JSONArtifact(new JSONObject("{\"a\":\"c\"}"));
+		assertEquals(a.getETag(),b.getETag());
+		assertFalse(a.getETag().equals(c.getETag()));
+		assertTrue(a.getETag().startsWith("\"") && a.getETag().endsWith("\""));
+	}
+
+	@Test public void testIfNoneMatch() throws Exception {
+		JSONArtifact a=new JSONArtifact(new JSONObject("{\"a\":\"b\"}"));
+		String tag=a.getETag();
+		assertFalse(a.matches(null));
+		assertTrue(a.matches(tag));
+		assertTrue(a.matches("\"old\", "+tag));
+		assertTrue(a.matches("W/"+tag));
+		assertTrue(a.matches("*"));
+		assertFalse(a.matches("\"old\""));
+	}
+}
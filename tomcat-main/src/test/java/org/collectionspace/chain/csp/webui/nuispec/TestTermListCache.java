@@ -0,0 +1,69 @@
+package org.collectionspace.chain.csp.webui.nuispec;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestTermListCache {
+
+	private static JSONArray terms(String... names) throws Exception {
+		JSONArray out=new JSONArray();
+		for(String name : names) {
+			JSONObject term=new JSONObject();
+			term.put("displayName",name);
+			out.put(term);
+		}
+		return out;
+	}
+
+	@Test public void testHitAndCopy() throws Exception {
+		TermListCache cache=new TermListCache(60000,10);
+		assertNull(cache.get("vocab/languages:LIMIT0"));
+		cache.put("vocab/languages:LIMIT0",terms("English","French"),cache.getGeneration());
+		JSONArray got=cache.get("vocab/languages:LIMIT0");
+		assertEquals(2,got.length());
+		// Callers can't change what others see
+		got.put("junk");
+		assertEquals(2,cache.get("vocab/languages:LIMIT0").length());
+		assertEquals(2,cache.getHits());
+		assertEquals(1,cache.getMisses());
+	}
+
+	@Test public void testInvalidateAllLimits() throws Exception {
+		TermListCache cache=new TermListCache(60000,10);
+		cache.put("vocab/languages:LIMIT0",terms("English"),cache.getGeneration());
+		cache.put("vocab/languages:LIMIT40",terms("English"),cache.getGeneration());
+		cache.put("vocab/languagesplus:LIMIT0",terms("Welsh"),cache.getGeneration());
+		cache.invalidate("vocab/languages");
+		assertNull(cache.get("vocab/languages:LIMIT0"));
+		assertNull(cache.get("vocab/languages:LIMIT40"));
+		assertNotNull(cache.get("vocab/languagesplus:LIMIT0"));
+	}
+
+	@Test public void testLoadRacingInvalidationIsDropped() throws Exception {
+		TermListCache cache=new TermListCache(60000,10);
+		long generation=cache.getGeneration();
+		cache.invalidate("vocab/languages");
+		cache.put("vocab/languages:LIMIT0",terms("Stale"),generation);
+		assertNull(cache.get("vocab/languages:LIMIT0"));
+	}
+
+	@Test public void testExpiryAndSize() throws Exception {
+		TermListCache cache=new TermListCache(50,2);
+		cache.put("a:LIMIT0",terms("a"),cache.getGeneration());
+		cache.put("b:LIMIT0",terms("b"),cache.getGeneration());
+		cache.get("a:LIMIT0");
+		cache.put("c:LIMIT0",terms("c"),cache.getGeneration());
+		assertEquals(2,cache.size());
+		assertNull(cache.get("b:LIMIT0"));
+		Thread.sleep(100);
+		assertNull(cache.get("a:LIMIT0"));
+
+		TermListCache off=new TermListCache(0,10);
+		assertFalse(off.isEnabled());
+		off.put("a:LIMIT0",terms("a"),off.getGeneration());
+		assertNull(off.get("a:LIMIT0"));
+	}
+}
@@ -0,0 +1,139 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.load;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.cookie.CookiePolicy;
+import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.json.JSONObject;
+
+/**
+ * One user of the app, talking HTTP to a tenant: keeps its own session cookie, and times each request.
+ */
+public class LoadClient {
+	/* the services entry of a Server-Timing header, see RequestTrace.getServerTiming */
+	private static final Pattern SERVICES_TIMING=Pattern.compile("(?:^|,)\\s*services;dur=\\d+;desc=\"(\\d+)\"");
+
+	private final HttpClient client;
+	private final String base;
+
+	/**
+	 * @param manager shared between the clients, as connections to the app are
+	 * @param base eg http://127.0.0.1:8180/tenant/core
+	 */
+	public LoadClient(HttpConnectionManager manager,String base) {
+		this.base=base;
+		client=new HttpClient(manager);
+		client.setState(new HttpState());
+		client.getParams().setCookiePolicy(CookiePolicy.BROWSER_COMPATIBILITY);
+	}
+
+	/**
+	 * What came back for one request
+	 */
+	public static class Response {
+		private final int status;
+		private final String body;
+		private final String location;
+		private final int services_calls;
+		private final long latency;
+
+		Response(int status,String body,String location,int services_calls,long latency) {
+			this.status=status;
+			this.body=body;
+			this.location=location;
+			this.services_calls=services_calls;
+			this.latency=latency;
+		}
+
+		public int getStatus() { return status; }
+		public String getBody() { return body; }
+		public String getLocation() { return location; }
+		public int getServicesCalls() { return services_calls; }
+		public long getLatency() { return latency; }
+
+		/** The last step of the Location header, which for a new record is its csid */
+		public String getLocationTail() {
+			if(location==null)
+				return null;
+			return location.substring(location.lastIndexOf('/')+1);
+		}
+
+		/**
+		 * Whether it worked. The app reports some failures as 200 with an error object, so look inside
+		 * those too, as the webapp tests do.
+		 */
+		public boolean isOK() {
+			if(status>=400)
+				return false;
+			if(body!=null && body.startsWith("{") && body.contains("\"isError\"")) {
+				try {
+					return !new JSONObject(body).optBoolean("isError",false);
+				} catch(Exception e) {
+					return true;
+				}
+			}
+			return true;
+		}
+	}
+
+	public Response request(String method,String path,String data) throws IOException {
+		HttpMethod m;
+		if("POST".equals(method))
+			m=new PostMethod(base+path);
+		else if("PUT".equals(method))
+			m=new PutMethod(base+path);
+		else if("DELETE".equals(method))
+			m=new DeleteMethod(base+path);
+		else
+			m=new GetMethod(base+path);
+		// the app answers login with a redirect, which is what we want to see
+		m.setFollowRedirects(false);
+		if(data!=null && m instanceof EntityEnclosingMethod)
+			((EntityEnclosingMethod)m).setRequestEntity(new StringRequestEntity(data,"application/json","UTF-8"));
+		long start=System.currentTimeMillis();
+		try {
+			int status=client.executeMethod(m);
+			String body=m.getResponseBodyAsString();
+			long latency=System.currentTimeMillis()-start;
+			Header location=m.getResponseHeader("Location");
+			return new Response(status,body,location==null?null:location.getValue(),servicesCalls(m.getResponseHeader("Server-Timing")),latency);
+		} finally {
+			m.releaseConnection();
+		}
+	}
+
+	public Response get(String path) throws IOException { return request("GET",path,null); }
+	public Response post(String path,String data) throws IOException { return request("POST",path,data); }
+	public Response put(String path,String data) throws IOException { return request("PUT",path,data); }
+
+	/** Forget the session, so the next request is from someone who hasn't logged in */
+	public void logout() {
+		client.getState().clearCookies();
+	}
+
+	static int servicesCalls(Header timing) {
+		if(timing==null)
+			return -1;
+		Matcher m=SERVICES_TIMING.matcher(timing.getValue());
+		// a traced request which made no services calls has no services entry
+		return m.find()?Integer.parseInt(m.group(1)):0;
+	}
+}
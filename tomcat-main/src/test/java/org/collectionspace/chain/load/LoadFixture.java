@@ -0,0 +1,125 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.load;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.collectionspace.chain.load.LoadClient.Response;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The records the scenarios work on, made through the app before a run: cataloging records, person
+ * terms for autocomplete, and intakes related to half of the cataloging records.
+ */
+public class LoadFixture {
+	private static final Logger log=LoggerFactory.getLogger(LoadFixture.class);
+	private static final String[] FORENAMES={"Ada","Basil","Clara","Dmitri","Edith","Farid","Greta","Hiro","Ines","Jonas"};
+	private static final String[] SURNAMES={"Abbott","Brandt","Castillo","Dubois","Eriksen","Fischer","Gallo","Hughes","Ivanova","Jensen"};
+	private static final String[] KEYWORDS={"vase","bowl","jug","plate","lamp","chair","coin","mask","print","quilt"};
+
+	private final JSONObject user;
+	private final List<String> records=new ArrayList<String>();
+	private final List<String> related=new ArrayList<String>();
+	private final List<String> terms=new ArrayList<String>();
+
+	public LoadFixture(JSONObject user) {
+		this.user=user;
+	}
+
+	public JSONObject getUser() { return user; }
+
+	private static Response check(String what,Response response) throws IOException {
+		if(!response.isOK())
+			throw new IOException("Could not "+what+": "+response.getStatus()+" "+response.getBody());
+		return response;
+	}
+
+	private static String request(JSONObject fields) throws JSONException {
+		JSONObject out=new JSONObject();
+		out.put("fields",fields);
+		return out.toString();
+	}
+
+	private static JSONObject mini(String type,String csid) throws JSONException {
+		JSONObject out=new JSONObject();
+		out.put("csid",csid);
+		out.put("recordtype",type);
+		return out;
+	}
+
+	/** Fields for a cataloging record, varying with n */
+	public JSONObject getRecordFields(int n) throws JSONException {
+		JSONObject out=new JSONObject();
+		out.put("objectNumber","LOAD."+n);
+		out.put("description","A "+KEYWORDS[n%KEYWORDS.length]+" made for load testing, number "+n);
+		out.put("comments","Saved at "+System.currentTimeMillis());
+		return out;
+	}
+
+	/**
+	 * Make the records, logged in as client
+	 * @param client
+	 * @param count how many cataloging records
+	 */
+	public void seed(LoadClient client,int count) throws Exception {
+		check("initialise authorities",client.get("/authorities/initialise"));
+		List<String> people=new ArrayList<String>();
+		for(int i=0;i<Math.max(10,count/2);i++) {
+			String name=FORENAMES[i%FORENAMES.length]+" "+SURNAMES[(i/FORENAMES.length)%SURNAMES.length];
+			JSONObject term=new JSONObject();
+			term.put("termDisplayName",name);
+			JSONObject fields=new JSONObject();
+			fields.put("personTermGroup",new JSONArray().put(term));
+			Response made=check("create person",client.post("/vocabularies/person/",request(fields)));
+			people.add(new JSONObject(made.getBody()).optString("urn",name));
+			terms.add(name);
+		}
+		for(int i=0;i<count;i++) {
+			String csid=check("create cataloging",client.post("/cataloging/",request(getRecordFields(i)))).getLocationTail();
+			records.add(csid);
+			if(i%2!=0)
+				continue;
+			JSONObject intake=new JSONObject();
+			intake.put("entryNumber","LOADIN."+i);
+			intake.put("depositor",people.get(i%people.size()));
+			String intake_csid=check("create intake",client.post("/intake/",request(intake))).getLocationTail();
+			JSONObject relation=new JSONObject();
+			relation.put("source",mini("cataloging",csid));
+			relation.put("target",mini("intake",intake_csid));
+			relation.put("type","affects");
+			relation.put("one-way",false);
+			check("relate",client.post("/relationships",relation.toString()));
+			related.add(csid);
+		}
+		log.info("Seeded "+records.size()+" cataloging records, "+related.size()+" with intakes, and "+terms.size()+" people");
+	}
+
+	public String getRecord(Random random) {
+		return records.get(random.nextInt(records.size()));
+	}
+
+	public String getRelatedRecord(Random random) {
+		return related.get(random.nextInt(related.size()));
+	}
+
+	/** The first few letters of one of the people's names, as someone would type them */
+	public String getTermPrefix(Random random) {
+		String term=terms.get(random.nextInt(terms.size()));
+		return term.substring(0,Math.min(term.length(),3+random.nextInt(3)));
+	}
+
+	public String getKeyword(Random random) {
+		return KEYWORDS[random.nextInt(KEYWORDS.length)];
+	}
+}
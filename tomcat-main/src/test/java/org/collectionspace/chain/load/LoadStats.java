@@ -0,0 +1,127 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.load;
+
+import java.util.Arrays;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * What happened to the UI requests of one scenario: how long each took, how many failed, and how many
+ * services calls they made between them.
+ */
+public class LoadStats {
+	private final String scenario;
+	private long[] latencies=new long[1024];
+	private int count=0,errors=0;
+	private long services_calls=0,traced=0;
+	private long started=-1,finished=-1;
+	private long fake_calls=-1;
+
+	public LoadStats(String scenario) {
+		this.scenario=scenario;
+	}
+
+	public String getScenario() { return scenario; }
+
+	/**
+	 * @param latency ms the request took
+	 * @param ok whether it succeeded
+	 * @param services_calls how many services calls it made, as its Server-Timing says, or -1 if unknown
+	 */
+	public synchronized void record(long latency,boolean ok,int services_calls) {
+		if(count==latencies.length)
+			latencies=Arrays.copyOf(latencies,count*2);
+		latencies[count++]=latency;
+		if(!ok)
+			errors++;
+		if(services_calls>=0) {
+			this.services_calls+=services_calls;
+			traced++;
+		}
+	}
+
+	public synchronized void start() { started=System.currentTimeMillis(); }
+	public synchronized void finish() { finished=System.currentTimeMillis(); }
+
+	/** Services calls counted at the services' end over the run, for when they can be, as with the fake */
+	public synchronized void setServicesRequests(long calls) { fake_calls=calls; }
+
+	public synchronized int getCount() { return count; }
+	public synchronized int getErrors() { return errors; }
+
+	/**
+	 * The latency which pc percent of requests took no longer than (nearest rank)
+	 * @param pc
+	 * @return
+	 */
+	public synchronized long getPercentile(double pc) {
+		if(count==0)
+			return 0;
+		long[] sorted=Arrays.copyOf(latencies,count);
+		Arrays.sort(sorted);
+		int rank=(int)Math.ceil(pc/100.0*count);
+		return sorted[Math.max(0,Math.min(count,rank)-1)];
+	}
+
+	public synchronized double getMean() {
+		if(count==0)
+			return 0;
+		long total=0;
+		for(int i=0;i<count;i++)
+			total+=latencies[i];
+		return (double)total/count;
+	}
+
+	/** Requests a second, over the time from start to finish */
+	public synchronized double getThroughput() {
+		long elapsed=finished-started;
+		if(started<0 || elapsed<=0)
+			return 0;
+		return count*1000.0/elapsed;
+	}
+
+	/** Mean services calls per UI request, from the requests' Server-Timing, or -1 if none had it */
+	public synchronized double getServicesCallsPerRequest() {
+		return traced==0?-1:(double)services_calls/traced;
+	}
+
+	public synchronized JSONObject toJSON() throws JSONException {
+		JSONObject out=new JSONObject();
+		out.put("scenario",scenario);
+		out.put("requests",count);
+		out.put("errors",errors);
+		out.put("elapsedMs",finished-started);
+		out.put("throughput",round(getThroughput()));
+		out.put("meanMs",round(getMean()));
+		out.put("p50Ms",getPercentile(50));
+		out.put("p90Ms",getPercentile(90));
+		out.put("p95Ms",getPercentile(95));
+		out.put("p99Ms",getPercentile(99));
+		out.put("maxMs",getPercentile(100));
+		out.put("servicesCallsPerRequest",round(getServicesCallsPerRequest()));
+		if(fake_calls>=0 && count>0)
+			out.put("servicesRequestsPerRequest",round((double)fake_calls/count));
+		return out;
+	}
+
+	@Override
+	public synchronized String toString() {
+		double calls=getServicesCallsPerRequest();
+		return String.format("%-14s %8d %6d %9.1f %7.1f %7d %7d %7d %7d %9s",scenario,count,errors,getThroughput(),getMean(),
+				getPercentile(50),getPercentile(90),getPercentile(99),getPercentile(100),calls<0?"-":String.format("%.1f",calls));
+	}
+
+	public static String header() {
+		return String.format("%-14s %8s %6s %9s %7s %7s %7s %7s %7s %9s","scenario","requests","errors","req/s","mean","p50","p90","p99","max","svc/req");
+	}
+
+	private static double round(double in) {
+		return Math.round(in*100)/100.0;
+	}
+}
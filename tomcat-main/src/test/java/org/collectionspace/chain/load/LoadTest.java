@@ -0,0 +1,256 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.collectionspace.chain.controller.TenantServlet;
+import org.collectionspace.chain.csp.persistence.TestData;
+import org.collectionspace.chain.csp.persistence.services.ServicesStorageGenerator;
+import org.collectionspace.chain.csp.persistence.services.fake.FakeServices;
+import org.collectionspace.chain.load.LoadClient.Response;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.mortbay.jetty.testing.ServletTester;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives concurrent UI traffic through TenantServlet, over HTTP, to see how the app behaves under load:
+ * latency percentiles, throughput and services calls per UI request for each scenario (see Scenario).
+ *
+ * The app runs in an embedded Jetty, against FakeServices unless cspace.services.url names real ones.
+ * Some records are made first (see LoadFixture), then each scenario named in load.scenarios is run in
+ * turn, by load.threads users at once, each logged in with their own session and making
+ * load.iterations requests after load.warmup unmeasured ones. Scenarios run one at a time so that the
+ * services calls the fake counts belong to just one of them.
+ *
+ * The load-test profile in tomcat-main's pom runs it; everything is set with system properties:
+ *
+ *   load.threads      concurrent users (8)
+ *   load.iterations   measured requests per user per scenario (100)
+ *   load.warmup       unmeasured requests per user per scenario first (10)
+ *   load.scenarios    which scenarios, in order (login,read,save,autocomplete,search,related)
+ *   load.records      cataloging records to make first (50)
+ *   load.seed         random seed, for repeatable runs (1)
+ *   load.config       tenant config file (default.xml)
+ *   load.user, load.password  who to log in as (the config's admin user)
+ *   load.report       where to write the results as JSON (target/load-report.json)
+ *
+ * and cspace.services.fake.latency and .jitter (ms) slow the fake's responses down, to look more like
+ * real services.
+ */
+public class LoadTest {
+	private static final Logger log=LoggerFactory.getLogger(LoadTest.class);
+	private static final String TENANT="core";
+
+	private final int threads=Integer.getInteger("load.threads",8);
+	private final int iterations=Integer.getInteger("load.iterations",100);
+	private final int warmup=Integer.getInteger("load.warmup",10);
+	private final int records=Integer.getInteger("load.records",50);
+	private final long seed=Long.getLong("load.seed",1);
+	private final String scenarios=System.getProperty("load.scenarios","login,read,save,autocomplete,search,related");
+	private final String config=System.getProperty("load.config","default.xml");
+	private final String report=System.getProperty("load.report","target/load-report.json");
+
+	private FakeServices fake;
+	private ServletTester tester;
+	private MultiThreadedHttpConnectionManager connections;
+	private String base;
+
+	/* The property, or null if it isn't set or is empty, as unset properties are when passed on from maven */
+	private static String property(String name) {
+		String out=System.getProperty(name);
+		return out==null || out.trim().length()==0?null:out.trim();
+	}
+
+	private void start() throws Exception {
+		if(property(ServicesStorageGenerator.URL_PROPERTY)==null) {
+			System.clearProperty(ServicesStorageGenerator.URL_PROPERTY);
+			System.setProperty(FakeServices.FAKE_PROPERTY,"true");
+			fake=FakeServices.startIfWanted();
+			// so the load test user may see /admin/connectionpool, as an administrator would
+			fake.grant("authorization/roles");
+		}
+		tester=new ServletTester();
+		tester.setContextPath("/tenant");
+		tester.addServlet(TenantServlet.class,"/*");
+		tester.addServlet("org.mortbay.jetty.servlet.DefaultServlet","/");
+		tester.setAttribute("config-filename",config);
+		String url=tester.createSocketConnector(true);
+		tester.start();
+		base=url+"/tenant/"+TENANT;
+		connections=new MultiThreadedHttpConnectionManager();
+		connections.getParams().setMaxTotalConnections(threads*2);
+		connections.getParams().setDefaultMaxConnectionsPerHost(threads*2);
+		log.info("App listening at "+base+", services at "+System.getProperty(ServicesStorageGenerator.URL_PROPERTY,"the config's url"));
+	}
+
+	private void stop() throws Exception {
+		if(connections!=null)
+			connections.shutdown();
+		if(tester!=null)
+			tester.stop();
+		if(fake!=null)
+			fake.stop();
+	}
+
+	private JSONObject getUser() throws Exception {
+		JSONObject user=new TestData().getDefaultUser(tester);
+		if(property("load.user")!=null)
+			user.put("userid",property("load.user"));
+		if(property("load.password")!=null)
+			user.put("password",property("load.password"));
+		return user;
+	}
+
+	private LoadClient login(LoadFixture fixture) throws Exception {
+		LoadClient out=new LoadClient(connections,base);
+		Scenario login=Scenario.getAll().get("login");
+		Response r=login.run(out,fixture,null);
+		if(!login.isOK(r))
+			throw new Exception("Could not log in as "+fixture.getUser().optString("userid")+": "+r.getStatus()+" "+r.getLocation());
+		return out;
+	}
+
+	/* Every user makes count requests of the scenario, all at once. Recorded into stats, unless null */
+	private void phase(ExecutorService pool,final List<LoadClient> users,final List<Random> randoms,final Scenario scenario,
+			final LoadFixture fixture,final int count,final LoadStats stats) throws Exception {
+		List<Future<Void>> done=new ArrayList<Future<Void>>();
+		for(int i=0;i<users.size();i++) {
+			final LoadClient user=users.get(i);
+			final Random random=randoms.get(i);
+			done.add(pool.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					for(int j=0;j<count;j++) {
+						Response r;
+						long start=System.currentTimeMillis();
+						try {
+							r=scenario.run(user,fixture,random);
+						} catch(Exception e) {
+							log.warn(scenario.getName()+" failed: "+e.getMessage());
+							if(stats!=null)
+								stats.record(System.currentTimeMillis()-start,false,-1);
+							continue;
+						}
+						boolean ok=scenario.isOK(r);
+						if(!ok)
+							log.debug(scenario.getName()+" got "+r.getStatus()+": "+r.getBody());
+						if(stats!=null)
+							stats.record(r.getLatency(),ok,r.getServicesCalls());
+					}
+					return null;
+				}
+			}));
+		}
+		for(Future<Void> f : done)
+			f.get();
+	}
+
+	public List<LoadStats> run() throws Exception {
+		Map<String,Scenario> all=Scenario.getAll();
+		List<Scenario> chosen=new ArrayList<Scenario>();
+		for(String name : scenarios.split(",")) {
+			Scenario s=all.get(name.trim());
+			if(s==null)
+				throw new IllegalArgumentException("No such scenario "+name+", there are "+all.keySet());
+			chosen.add(s);
+		}
+		List<LoadStats> out=new ArrayList<LoadStats>();
+		start();
+		ExecutorService pool=Executors.newFixedThreadPool(threads);
+		try {
+			LoadFixture fixture=new LoadFixture(getUser());
+			fixture.seed(login(fixture),records);
+			List<LoadClient> users=new ArrayList<LoadClient>();
+			List<Random> randoms=new ArrayList<Random>();
+			for(int i=0;i<threads;i++) {
+				users.add(login(fixture));
+				randoms.add(new Random(seed*31+i));
+			}
+			for(Scenario scenario : chosen) {
+				log.info("Running "+scenario.getName()+": "+threads+" users, "+warmup+"+"+iterations+" requests each");
+				phase(pool,users,randoms,scenario,fixture,warmup,null);
+				LoadStats stats=new LoadStats(scenario.getName());
+				long calls=fake==null?0:fake.getRequestCount();
+				stats.start();
+				phase(pool,users,randoms,scenario,fixture,iterations,stats);
+				stats.finish();
+				if(fake!=null)
+					stats.setServicesRequests(fake.getRequestCount()-calls);
+				out.add(stats);
+			}
+			write(out,users.get(0));
+		} finally {
+			pool.shutdownNow();
+			stop();
+		}
+		return out;
+	}
+
+	private void write(List<LoadStats> results,LoadClient client) throws Exception {
+		System.out.println();
+		System.out.println(LoadStats.header());
+		for(LoadStats s : results)
+			System.out.println(s);
+		System.out.println();
+
+		JSONObject out=new JSONObject();
+		out.put("threads",threads);
+		out.put("iterations",iterations);
+		out.put("warmup",warmup);
+		out.put("records",records);
+		out.put("services",fake==null?System.getProperty(ServicesStorageGenerator.URL_PROPERTY):"fake");
+		if(fake!=null) {
+			out.put("servicesLatencyMs",Integer.getInteger(FakeServices.LATENCY_PROPERTY,0));
+			out.put("servicesJitterMs",Integer.getInteger(FakeServices.JITTER_PROPERTY,0));
+		}
+		JSONArray list=new JSONArray();
+		for(LoadStats s : results)
+			list.put(s.toJSON());
+		out.put("scenarios",list);
+		// how the services connection pool fared, for sizing it
+		Response pool=client.get("/admin/connectionpool");
+		if(pool.getStatus()==200 && pool.getBody().startsWith("{"))
+			out.put("connectionPool",new JSONObject(pool.getBody()));
+		File file=new File(report);
+		if(file.getParentFile()!=null)
+			file.getParentFile().mkdirs();
+		Writer w=new OutputStreamWriter(new FileOutputStream(file),"UTF-8");
+		try {
+			w.write(out.toString(2));
+		} finally {
+			w.close();
+		}
+		log.info("Results written to "+file.getAbsolutePath());
+	}
+
+	public static void main(String[] args) throws Exception {
+		int errors=0;
+		try {
+			for(LoadStats s : new LoadTest().run())
+				errors+=s.getErrors();
+		} catch(Exception e) {
+			log.error("Load test failed",e);
+			System.exit(2);
+		}
+		// the app leaves pooled threads about, so don't wait for them
+		System.exit(errors>0?1:0);
+	}
+}
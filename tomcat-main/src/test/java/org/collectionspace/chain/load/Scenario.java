@@ -0,0 +1,117 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.load;
+
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.collectionspace.chain.load.LoadClient.Response;
+import org.json.JSONObject;
+
+/**
+ * One kind of thing a user does, as a single UI request, made over and over by each user during a run.
+ */
+public abstract class Scenario {
+	private final String name;
+
+	protected Scenario(String name) {
+		this.name=name;
+	}
+
+	public String getName() { return name; }
+
+	public abstract Response run(LoadClient client,LoadFixture fixture,Random random) throws Exception;
+
+	/** Whether the request did what it should */
+	public boolean isOK(Response response) {
+		return response.isOK();
+	}
+
+	/**
+	 * The scenarios there are, by name, in the order they are run by default
+	 */
+	public static Map<String,Scenario> getAll() {
+		Map<String,Scenario> out=new LinkedHashMap<String,Scenario>();
+		for(Scenario s : new Scenario[]{new Login(),new Read(),new Save(),new Autocomplete(),new Search(),new Related()})
+			out.put(s.getName(),s);
+		return out;
+	}
+
+	/* Log in afresh: the app checks the user against the services and loads their permissions */
+	static class Login extends Scenario {
+		Login() { super("login"); }
+
+		@Override
+		public Response run(LoadClient client,LoadFixture fixture,Random random) throws Exception {
+			client.logout();
+			return client.post("/login/",fixture.getUser().toString());
+		}
+
+		@Override
+		public boolean isOK(Response response) {
+			// a failed login is also a redirect, to the page which says so
+			return response.getStatus()==303 && response.getLocation()!=null && !response.getLocation().contains("result=");
+		}
+	}
+
+	/* Open a cataloging record */
+	static class Read extends Scenario {
+		Read() { super("read"); }
+
+		@Override
+		public Response run(LoadClient client,LoadFixture fixture,Random random) throws Exception {
+			return client.get("/cataloging/"+fixture.getRecord(random));
+		}
+	}
+
+	/* Save a changed cataloging record */
+	static class Save extends Scenario {
+		Save() { super("save"); }
+
+		@Override
+		public Response run(LoadClient client,LoadFixture fixture,Random random) throws Exception {
+			JSONObject fields=fixture.getRecordFields(random.nextInt(1000000));
+			JSONObject data=new JSONObject();
+			data.put("fields",fields);
+			return client.put("/cataloging/"+fixture.getRecord(random),data.toString());
+		}
+	}
+
+	/* Type the start of a name into a person field */
+	static class Autocomplete extends Scenario {
+		Autocomplete() { super("autocomplete"); }
+
+		@Override
+		public Response run(LoadClient client,LoadFixture fixture,Random random) throws Exception {
+			String q=fixture.getTermPrefix(random);
+			return client.get("/intake/autocomplete/depositor?q="+URLEncoder.encode(q,"UTF-8")+"&limit=150");
+		}
+	}
+
+	/* Keyword search of the cataloging records */
+	static class Search extends Scenario {
+		Search() { super("search"); }
+
+		@Override
+		public Response run(LoadClient client,LoadFixture fixture,Random random) throws Exception {
+			String q=fixture.getKeyword(random);
+			return client.get("/cataloging/search?query="+URLEncoder.encode(q,"UTF-8")+"&pageSize=40&pageNum=0");
+		}
+	}
+
+	/* The intakes related to a cataloging record, as the record's sidebar shows them */
+	static class Related extends Scenario {
+		Related() { super("related"); }
+
+		@Override
+		public Response run(LoadClient client,LoadFixture fixture,Random random) throws Exception {
+			return client.get("/cataloging/intake/"+fixture.getRelatedRecord(random));
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/* Copyright 2010 University of Cambridge
+ * Licensed under the Educational Community License (ECL), Version 2.0. You may not use this file except in
+ * compliance with this License.
+ *
+ * You may obtain a copy of the ECL 2.0 License at https://source.collectionspace.org/collection-space/LICENSE.txt
+ */
+package org.collectionspace.chain.load;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.httpclient.Header;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestLoadStats {
+	@Test public void testPercentiles() throws Exception {
+		LoadStats stats=new LoadStats("read");
+		assertEquals(0,stats.getPercentile(50));
+		// 1..2000, recorded backwards, so the latencies have to be sorted and the array grown
+		for(int i=2000;i>0;i--)
+			stats.record(i,i%100!=0,i%2==0?4:-1);
+		assertEquals(2000,stats.getCount());
+		assertEquals(20,stats.getErrors());
+		assertEquals(1000,stats.getPercentile(50));
+		assertEquals(1800,stats.getPercentile(90));
+		assertEquals(1980,stats.getPercentile(99));
+		assertEquals(2000,stats.getPercentile(100));
+		assertEquals(1,stats.getPercentile(0));
+		assertEquals(1000.5,stats.getMean(),0.001);
+		// only the half with a Server-Timing count
+		assertEquals(4.0,stats.getServicesCallsPerRequest(),0.001);
+	}
+
+	@Test public void testJSON() throws Exception {
+		LoadStats stats=new LoadStats("save");
+		assertEquals(-1,stats.getServicesCallsPerRequest(),0.001);
+		stats.start();
+		stats.record(10,true,-1);
+		stats.record(30,true,-1);
+		Thread.sleep(20);
+		stats.finish();
+		stats.setServicesRequests(6);
+		JSONObject out=stats.toJSON();
+		assertEquals("save",out.getString("scenario"));
+		assertEquals(2,out.getInt("requests"));
+		assertEquals(10,out.getLong("p50Ms"));
+		assertEquals(30,out.getLong("maxMs"));
+		assertEquals(3.0,out.getDouble("servicesRequestsPerRequest"),0.001);
+		assertTrue(out.getDouble("throughput")>0);
+	}
+
+	@Test public void testServerTiming() throws Exception {
+		assertEquals(-1,LoadClient.servicesCalls(null));
+		assertEquals(3,LoadClient.servicesCalls(new Header("Server-Timing","total;dur=12, services;dur=9;desc=\"3\", xmljson;dur=1;desc=\"2\"")));
+		assertEquals(0,LoadClient.servicesCalls(new Header("Server-Timing","total;dur=1, glean-hit;desc=\"2\"")));
+	}
+}